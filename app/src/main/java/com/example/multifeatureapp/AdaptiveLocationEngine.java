@@ -0,0 +1,152 @@
+package com.example.multifeatureapp;
+
+import android.annotation.SuppressLint;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import java.util.List;
+
+// Requests location updates with the settings of the current motion profile
+// and swaps the request whenever MotionClassifier moves to another profile:
+// balanced power, a long interval and batching while stationary, high
+// accuracy at walking pace, and one fix a second while driving. A timer
+// drops a moving profile to stationary when fixes stop for the dwell time.
+public class AdaptiveLocationEngine {
+    public interface Listener {
+        // Every batch, in order, on the looper's thread
+        void onLocations(List<Location> locations);
+
+        void onProfileChanged(MotionClassifier.Profile profile);
+    }
+
+    private static final float UNKNOWN_ACCURACY_METERS = 50f;
+
+    private final FusedLocationProviderClient client;
+    private final Looper looper;
+    private final Listener listener;
+    private final MotionClassifier classifier;
+    private final Handler handler;
+    private final Runnable silenceCheck = this::onSilence;
+    private boolean running;
+    private long requestUpdates;
+
+    private final LocationCallback callback = new LocationCallback() {
+        @Override
+        public void onLocationResult(LocationResult result) {
+            onLocationBatch(result.getLocations());
+        }
+    };
+
+    public AdaptiveLocationEngine(FusedLocationProviderClient client, Looper looper,
+                                  MotionClassifier.Profile initial, Listener listener) {
+        this.client = client;
+        this.looper = looper;
+        this.listener = listener;
+        this.classifier = new MotionClassifier(initial);
+        this.handler = new Handler(looper);
+    }
+
+    public void start() {
+        if (!running) {
+            running = true;
+            request(classifier.getProfile());
+            armSilenceCheck();
+        }
+    }
+
+    public void stop() {
+        if (running) {
+            running = false;
+            handler.removeCallbacks(silenceCheck);
+            client.removeLocationUpdates(callback);
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public MotionClassifier.Profile getProfile() {
+        return classifier.getProfile();
+    }
+
+    // Fix counts, fix rate and time per profile
+    public MotionClassifier getClassifier() {
+        return classifier;
+    }
+
+    // How many times a location request was sent, the first one included
+    public long getRequestUpdates() {
+        return requestUpdates;
+    }
+
+    public LocationRequest getCurrentRequest() {
+        return buildRequest(classifier.getProfile());
+    }
+
+    public static LocationRequest buildRequest(MotionClassifier.Profile profile) {
+        LocationRequest request = LocationRequest.create();
+        request.setInterval(profile.intervalMs);
+        request.setFastestInterval(profile.fastestIntervalMs);
+        request.setSmallestDisplacement(profile.minDisplacementMeters);
+        request.setMaxWaitTime(profile.maxDelayMs);
+        request.setPriority(profile.highAccuracy ? LocationRequest.PRIORITY_HIGH_ACCURACY
+                : LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY);
+        return request;
+    }
+
+    private void onLocationBatch(List<Location> locations) {
+        MotionClassifier.Profile before = classifier.getProfile();
+        for (int i = 0; i < locations.size(); i++) {
+            Location location = locations.get(i);
+            // Monotonic, so clock changes can't distort speeds or profile times
+            classifier.onFix(location.getElapsedRealtimeNanos() / 1_000_000,
+                    location.getLatitude(), location.getLongitude(),
+                    location.hasSpeed() ? location.getSpeed() : Float.NaN,
+                    location.hasAccuracy() ? location.getAccuracy() : UNKNOWN_ACCURACY_METERS);
+        }
+        listener.onLocations(locations);
+        switchIfChanged(before);
+        armSilenceCheck();
+    }
+
+    private void onSilence() {
+        MotionClassifier.Profile before = classifier.getProfile();
+        classifier.onSilence(SystemClock.elapsedRealtime());
+        switchIfChanged(before);
+        armSilenceCheck();
+    }
+
+    private void switchIfChanged(MotionClassifier.Profile before) {
+        MotionClassifier.Profile after = classifier.getProfile();
+        if (after != before && running) {
+            // A new request for the same callback replaces the old one
+            request(after);
+            listener.onProfileChanged(after);
+        }
+    }
+
+    // Restarts the wait for the next fix while in a moving profile
+    private void armSilenceCheck() {
+        handler.removeCallbacks(silenceCheck);
+        if (running && classifier.getProfile() != MotionClassifier.Profile.STATIONARY) {
+            handler.postDelayed(silenceCheck, MotionClassifier.DOWNGRADE_DWELL_MS);
+        }
+    }
+
+    // Callers check the permission before starting
+    @SuppressLint("MissingPermission")
+    private void request(MotionClassifier.Profile profile) {
+        try {
+            client.requestLocationUpdates(buildRequest(profile), callback, looper);
+            requestUpdates++;
+        } catch (SecurityException e) {
+            running = false;
+        }
+    }
+}
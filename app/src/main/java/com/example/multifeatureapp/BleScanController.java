@@ -0,0 +1,114 @@
+package com.example.multifeatureapp;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.os.ParcelUuid;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// BLE scanning through BluetoothLeScanner. Batching is handed to the
+// controller where the chip supports it, so the app is woken once per report
+// delay instead of per advertisement. Scans are unfiltered unless service
+// UUIDs are set. Callbacks arrive on the main thread.
+public class BleScanController {
+    public interface Listener {
+        // A single result or a whole batch, delivered together
+        void onResults(List<ScanResult> results);
+
+        void onScanFailed(int errorCode);
+    }
+
+    private final BluetoothAdapter adapter;
+    private final Listener listener;
+    private final List<ScanFilter> filters = new ArrayList<>();
+    private final List<ScanResult> single = new ArrayList<>(1);
+    private BluetoothScanMode activeMode;
+
+    private final ScanCallback callback = new ScanCallback() {
+        @Override
+        public void onScanResult(int callbackType, ScanResult result) {
+            single.clear();
+            single.add(result);
+            listener.onResults(single);
+        }
+
+        @Override
+        public void onBatchScanResults(List<ScanResult> results) {
+            if (!results.isEmpty()) {
+                listener.onResults(results);
+            }
+        }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+            activeMode = null;
+            listener.onScanFailed(errorCode);
+        }
+    };
+
+    public BleScanController(BluetoothAdapter adapter, Listener listener) {
+        this.adapter = adapter;
+        this.listener = listener;
+    }
+
+    // Restricts results to devices advertising one of the services, or lifts
+    // the restriction when empty
+    public void setServiceFilters(List<ParcelUuid> serviceUuids) {
+        filters.clear();
+        for (ParcelUuid uuid : serviceUuids) {
+            filters.add(new ScanFilter.Builder().setServiceUuid(uuid).build());
+        }
+        if (activeMode != null) {
+            BluetoothScanMode mode = activeMode;
+            stop();
+            start(mode);
+        }
+    }
+
+    // Returns false if BLE scanning is not available right now
+    public boolean start(BluetoothScanMode mode) {
+        if (!mode.isBle()) {
+            throw new IllegalArgumentException("Not a BLE scan mode: " + mode);
+        }
+        BluetoothLeScanner scanner = adapter.getBluetoothLeScanner();
+        if (scanner == null) {
+            return false;
+        }
+        if (activeMode != null) {
+            scanner.stopScan(callback);
+        }
+        ScanSettings.Builder settings = new ScanSettings.Builder().setScanMode(mode.bleScanMode);
+        if (mode.reportDelayMs > 0 && adapter.isOffloadedScanBatchingSupported()) {
+            settings.setReportDelay(mode.reportDelayMs);
+        }
+        scanner.startScan(filters, settings.build(), callback);
+        activeMode = mode;
+        return true;
+    }
+
+    public void stop() {
+        if (activeMode == null) {
+            return;
+        }
+        BluetoothLeScanner scanner = adapter.getBluetoothLeScanner();
+        if (scanner != null) {
+            // Delivers whatever is still buffered before the scan stops
+            scanner.flushPendingScanResults(callback);
+            scanner.stopScan(callback);
+        }
+        activeMode = null;
+    }
+
+    public boolean isScanning() {
+        return activeMode != null;
+    }
+
+    public BluetoothScanMode getActiveMode() {
+        return activeMode;
+    }
+}
@@ -1,57 +1,179 @@
 package com.example.multifeatureapp;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import android.Manifest;
 import android.app.AlertDialog;
 import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothClass;
 import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothSocket;
 import android.bluetooth.BluetoothManager;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.PackageManager;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.os.ParcelUuid;
+import android.os.Parcelable;
 import android.widget.ArrayAdapter;
 import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 import com.google.android.material.button.MaterialButton;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class BluetoothActivity extends AppCompatActivity {
     private static final int PERMISSION_REQUEST_CODE = 1;
+    private static final int FRAME_BUFFER_SIZE = 128 * 1024;
+    private static final long DEVICE_TTL_MS = 60000;
+    private static final long CACHE_WRITE_DELAY_MS = 10000;
+    private static final long RECONNECT_BASE_DELAY_MS = 1000;
+    private static final long RECONNECT_MAX_DELAY_MS = 60000;
+    private static final int RECONNECT_MAX_ATTEMPTS = 10;
+    // Holds a whole chunk plus framing, acks and small frames share it
+    private static final int FRAME_BATCH_SIZE = 32 * 1024;
+    private static final long FRAME_SEND_TIMEOUT_MS = 5000;
     private static final UUID MY_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
 
     private BluetoothAdapter bluetoothAdapter;
-    private BluetoothSocket bluetoothSocket;
+    private BluetoothConnectionManager connectionManager;
+    private final BluetoothSocketTransport.ChannelCache channelCache =
+            new BluetoothSocketTransport.ChannelCache();
     private TextView tvBluetoothStatus;
     private TextView tvConnectionStatus;
     private MaterialButton btnToggleBluetooth;
     private MaterialButton btnScanDevices;
+    private MaterialButton btnScanMode;
+    private MaterialButton btnDutyCycle;
+    private TextView tvScanStats;
     private ListView lvDevices;
     private ArrayAdapter<BluetoothDeviceWrapper> deviceArrayAdapter;
     private ArrayList<BluetoothDeviceWrapper> deviceList;
+    private FrameCoalescer deviceListUpdater;
+    private final Map<String, FrameCodec.Decoder> frameDecoders = new ConcurrentHashMap<>();
+    private final Map<String, FileTransfer.Receiver> fileReceivers = new ConcurrentHashMap<>();
+    private final Map<String, OutgoingFile> outgoingFiles = new ConcurrentHashMap<>();
+    private ExecutorService fileTransferExecutor;
+    private File receivedFilesDir;
+    private String fileTargetAddress;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private HandlerThread broadcastThread;
+    // Set in onDestroy, read by the broadcast thread
+    private volatile boolean destroyed;
+    private EventDrain<DeviceEvent> deviceEvents;
+    // Device model, only touched by the broadcast thread
+    private final BluetoothDeviceRegistry<BluetoothDevice> deviceRegistry = new BluetoothDeviceRegistry<>();
+    private final List<BluetoothDevice> pairedDevices = new ArrayList<>();
+    private final Set<String> pairedAddresses = new HashSet<>();
+    private boolean pairedLoaded;
+    private boolean modelChanged;
+    // Rows built from the model, drawn on the next frame
+    private final AtomicReference<List<BluetoothDeviceWrapper>> publishedRows = new AtomicReference<>();
+    private BleScanController bleScanController;
+    private ScanDutyCycle scanDutyCycle;
+    private ScheduledExecutorService cacheExecutor;
+    private BluetoothDeviceCache deviceCache;
+    private BluetoothScanMode scanMode = BluetoothScanMode.CLASSIC;
+    private final EnumMap<BluetoothScanMode, ScanHitStats> scanStats = new EnumMap<>(BluetoothScanMode.class);
+    private final StringBuilder scanStatsText = new StringBuilder();
     private boolean isScanning = false;
     private boolean isHandlingStop = false;
 
+    // A change to the device model, applied in order on the broadcast thread
+    private static final class DeviceEvent {
+        static final int FOUND = 0;
+        static final int INFO = 1;
+        static final int UUIDS = 2;
+        static final int BOND = 3;
+        static final int RELOAD_PAIRED = 4;
+        static final int EXPIRE = 5;
+        static final int CLEAR = 6;
+
+        final int type;
+        final BluetoothDevice device;
+        final long timeMillis;
+        int rssi = BluetoothDeviceRegistry.RSSI_UNKNOWN;
+        String name;
+        int deviceClass = BluetoothDeviceCache.UNKNOWN;
+        int bondState = BluetoothDeviceCache.UNKNOWN;
+        List<UUID> uuids;
+        BluetoothScanMode source;
+
+        DeviceEvent(int type, BluetoothDevice device, long timeMillis) {
+            this.type = type;
+            this.device = device;
+            this.timeMillis = timeMillis;
+        }
+    }
+
+    // A file being sent to one device, kept across reconnects until it completes
+    private static final class OutgoingFile {
+        final FileTransfer.Sender sender;
+        final ParcelFileDescriptor descriptor;
+        final String name;
+
+        OutgoingFile(FileTransfer.Sender sender, ParcelFileDescriptor descriptor, String name) {
+            this.sender = sender;
+            this.descriptor = descriptor;
+            this.name = name;
+        }
+    }
+
+    private final ActivityResultLauncher<String[]> openFileLauncher = registerForActivityResult(
+            new ActivityResultContracts.OpenDocument(),
+            uri -> {
+                String address = fileTargetAddress;
+                fileTargetAddress = null;
+                if (uri != null && address != null) {
+                    sendFile(address, uri);
+                }
+            }
+    );
+
     private class BluetoothDeviceWrapper {
         BluetoothDevice device;
         boolean isHeader;
         String displayName;
 
         BluetoothDeviceWrapper(BluetoothDevice device) {
+            this(device, BluetoothDeviceRegistry.RSSI_UNKNOWN);
+        }
+
+        BluetoothDeviceWrapper(BluetoothDevice device, int rssi) {
             this.device = device;
             this.isHeader = false;
-            this.displayName = (device.getName() != null ? device.getName() : "Unknown Device")
-                    + "\n" + device.getAddress();
+            this.displayName = displayName(device)
+                    + "\n" + device.getAddress()
+                    + (rssi != BluetoothDeviceRegistry.RSSI_UNKNOWN ? "  (" + rssi + " dBm)" : "");
         }
 
         BluetoothDeviceWrapper(String header) {
@@ -80,17 +202,147 @@ public class BluetoothActivity extends AppCompatActivity {
         tvConnectionStatus = findViewById(R.id.tvConnectionStatus);
         btnToggleBluetooth = findViewById(R.id.btnToggleBluetooth);
         btnScanDevices = findViewById(R.id.btnScanDevices);
+        btnScanMode = findViewById(R.id.btnScanMode);
+        btnDutyCycle = findViewById(R.id.btnDutyCycle);
+        tvScanStats = findViewById(R.id.tvScanStats);
         lvDevices = findViewById(R.id.lvDevices);
 
+        // Names and other metadata come from the cache, not the binder
+        cacheExecutor = Executors.newSingleThreadScheduledExecutor(
+                runnable -> new Thread(runnable, "bt-device-cache"));
+        deviceCache = new BluetoothDeviceCache(new File(getFilesDir(), "bt_device_cache.bin"),
+                cacheExecutor, CACHE_WRITE_DELAY_MS);
+        deviceCache.load().thenRun(() -> runOnUiThread(() -> {
+            if (!deviceList.isEmpty()) {
+                refreshDeviceList();
+            }
+        }));
+
         // Initialize lists
         deviceList = new ArrayList<>();
         deviceArrayAdapter = new ArrayAdapter<>(this,
                 android.R.layout.simple_list_item_1, deviceList);
         lvDevices.setAdapter(deviceArrayAdapter);
+        deviceListUpdater = new FrameCoalescer(this::renderDeviceList);
+
+        // Broadcasts and scan results are queued to one background consumer
+        // that owns the device model and publishes rows for the UI
+        broadcastThread = new HandlerThread("bt-broadcasts");
+        broadcastThread.start();
+        Handler broadcastHandler = new Handler(broadcastThread.getLooper());
+        deviceEvents = new EventDrain<>(task -> {
+            // post() returns false once the thread has quit
+            if (!broadcastHandler.post(task)) {
+                throw new RejectedExecutionException("bt-broadcasts has quit");
+            }
+        }, new EventDrain.Consumer<DeviceEvent>() {
+            @Override
+            public void onEvent(DeviceEvent event) {
+                applyDeviceEvent(event);
+            }
+
+            @Override
+            public void onDrained(int eventCount) {
+                if (modelChanged) {
+                    modelChanged = false;
+                    publishRows();
+                }
+            }
+        });
+
+        // BLE scanning beside classic discovery, with hit counters per mode
+        for (BluetoothScanMode mode : BluetoothScanMode.values()) {
+            scanStats.put(mode, new ScanHitStats());
+        }
+        if (bluetoothAdapter != null) {
+            bleScanController = new BleScanController(bluetoothAdapter, new BleScanController.Listener() {
+                @Override
+                public void onResults(List<ScanResult> results) {
+                    BluetoothScanMode mode = bleScanController.getActiveMode();
+                    long now = System.currentTimeMillis();
+                    for (int i = 0; i < results.size(); i++) {
+                        ScanResult result = results.get(i);
+                        DeviceEvent event = new DeviceEvent(DeviceEvent.FOUND, result.getDevice(), now);
+                        event.rssi = result.getRssi();
+                        event.source = mode != null ? mode : scanMode;
+                        ScanRecord record = result.getScanRecord();
+                        if (record != null) {
+                            event.name = record.getDeviceName();
+                            event.uuids = toUuids(record.getServiceUuids());
+                        }
+                        deviceEvents.offer(event);
+                    }
+                }
+
+                @Override
+                public void onScanFailed(int errorCode) {
+                    scanStats.get(scanMode).stop(System.currentTimeMillis());
+                    Toast.makeText(BluetoothActivity.this, "BLE scan failed (" + errorCode + ")",
+                            Toast.LENGTH_SHORT).show();
+                }
+            });
+        }
+
+        // RFCOMM sessions, one per device address, reconnected with backoff
+        connectionManager = new BluetoothConnectionManager(
+                address -> new BluetoothSocketTransport(bluetoothAdapter.getRemoteDevice(address),
+                        MY_UUID, channelCache),
+                new BluetoothConnectionManager.Listener() {
+                    @Override
+                    public void onSessionChanged(BluetoothConnectionManager.SessionInfo session) {
+                        runOnUiThread(() -> BluetoothActivity.this.onSessionChanged(session));
+                    }
+
+                    @Override
+                    public void onData(String address, byte[] buffer, int offset, int length) {
+                        // Each session's data arrives on its own dispatch thread
+                        FrameCodec.Decoder decoder = frameDecoders.get(address);
+                        if (decoder == null) {
+                            decoder = new FrameCodec.Decoder(FRAME_BUFFER_SIZE);
+                            frameDecoders.put(address, decoder);
+                        }
+                        decoder.feed(buffer, offset, length, (frame, frameOffset, frameLength) -> {
+                            if (FileTransfer.isTransferFrame(frame, frameOffset, frameLength)) {
+                                onTransferFrame(address, frame, frameOffset, frameLength);
+                                return;
+                            }
+                            // Sensor data consumers hook in here, frames are only valid during the call
+                        });
+                    }
+                },
+                new ReconnectPolicy(RECONNECT_BASE_DELAY_MS, RECONNECT_MAX_DELAY_MS,
+                        RECONNECT_MAX_ATTEMPTS));
+
+        // Files go out one at a time, each blocking its thread until acknowledged
+        fileTransferExecutor = Executors.newSingleThreadExecutor(
+                runnable -> new Thread(runnable, "bt-file-transfer"));
+        receivedFilesDir = new File(getFilesDir(), "received");
+        receivedFilesDir.mkdirs();
+
+        // Scanning runs in windows, and devices age out instead of being cleared per cycle
+        scanDutyCycle = new ScanDutyCycle(new ScanDutyCycle.Listener() {
+            @Override
+            public void onScanWindowStart() {
+                startScan();
+            }
+
+            @Override
+            public void onScanWindowEnd() {
+                stopScan();
+            }
+
+            @Override
+            public void onTick(long nowMillis) {
+                expireStaleDevices(nowMillis);
+                showScanStats();
+            }
+        });
 
         // Set click listeners
         btnToggleBluetooth.setOnClickListener(v -> toggleBluetooth());
         btnScanDevices.setOnClickListener(v -> toggleScanning());
+        btnScanMode.setOnClickListener(v -> cycleScanMode());
+        btnDutyCycle.setOnClickListener(v -> cycleDutyCycle());
 
         // Set device click listeners
         lvDevices.setOnItemClickListener((parent, view, position, id) -> {
@@ -114,26 +366,197 @@ public class BluetoothActivity extends AppCompatActivity {
         filter.addAction(BluetoothAdapter.ACTION_DISCOVERY_FINISHED);
         filter.addAction(BluetoothAdapter.ACTION_STATE_CHANGED);
         filter.addAction(BluetoothDevice.ACTION_BOND_STATE_CHANGED);
-        registerReceiver(receiver, filter);
+        filter.addAction(BluetoothDevice.ACTION_NAME_CHANGED);
+        filter.addAction(BluetoothDevice.ACTION_CLASS_CHANGED);
+        filter.addAction(BluetoothDevice.ACTION_UUID);
+        registerReceiver(receiver, filter, null, broadcastHandler);
 
         // Check initial Bluetooth state
         updateBluetoothStatus(bluetoothAdapter != null ? bluetoothAdapter.getState() :
                 BluetoothAdapter.ERROR);
     }
 
-    private void addDeviceToList(BluetoothDevice device) {
-        BluetoothDeviceWrapper newDevice = new BluetoothDeviceWrapper(device);
+    // Runs on the broadcast thread
+    private void applyDeviceEvent(DeviceEvent event) {
+        String address = event.device != null ? event.device.getAddress() : null;
+        switch (event.type) {
+            case DeviceEvent.FOUND:
+                // O(1) upsert, the rows are rebuilt once per drained batch
+                deviceCache.updateName(address, event.name, event.timeMillis);
+                deviceCache.updateDeviceClass(address, event.deviceClass, event.timeMillis);
+                deviceCache.updateUuids(address, event.uuids, event.timeMillis);
+                deviceCache.updateRssi(address, event.rssi, event.timeMillis);
+                deviceRegistry.upsert(address, event.device, event.rssi, event.timeMillis);
+                scanStats.get(event.source).recordHit(MacAddresses.pack(address), event.timeMillis);
+                modelChanged = true;
+                break;
+            case DeviceEvent.INFO:
+                modelChanged |= deviceCache.updateName(address, event.name, event.timeMillis);
+                modelChanged |= deviceCache.updateDeviceClass(address, event.deviceClass, event.timeMillis);
+                break;
+            case DeviceEvent.UUIDS:
+                deviceCache.updateUuids(address, event.uuids, event.timeMillis);
+                break;
+            case DeviceEvent.BOND:
+                deviceCache.updateBondState(address, event.bondState, event.timeMillis);
+                if (event.bondState == BluetoothDevice.BOND_BONDED
+                        || event.bondState == BluetoothDevice.BOND_NONE) {
+                    loadPairedDevices();
+                }
+                break;
+            case DeviceEvent.RELOAD_PAIRED:
+                loadPairedDevices();
+                break;
+            case DeviceEvent.EXPIRE:
+                // timeMillis is the cutoff
+                modelChanged |= deviceRegistry.expire(event.timeMillis) > 0;
+                break;
+            case DeviceEvent.CLEAR:
+                deviceRegistry.clear();
+                pairedDevices.clear();
+                pairedAddresses.clear();
+                pairedLoaded = false;
+                modelChanged = true;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void loadPairedDevices() {
+        Set<BluetoothDevice> bonded;
+        try {
+            bonded = bluetoothAdapter.getBondedDevices();
+        } catch (SecurityException e) {
+            return;
+        }
+        pairedDevices.clear();
+        pairedAddresses.clear();
+        long now = System.currentTimeMillis();
+        for (BluetoothDevice device : bonded) {
+            // Bonded names are stored locally, ask once and keep them
+            if (deviceCache.getName(device.getAddress()) == null) {
+                deviceCache.updateName(device.getAddress(), device.getName(), now);
+            }
+            deviceCache.updateBondState(device.getAddress(), BluetoothDevice.BOND_BONDED, now);
+            pairedDevices.add(device);
+            pairedAddresses.add(device.getAddress());
+        }
+        pairedLoaded = true;
+        modelChanged = true;
+    }
+
+    // Builds the rows on the broadcast thread and hands them to the UI as one
+    // immutable list, drawn at most once per frame
+    private void publishRows() {
+        if (destroyed) {
+            return;
+        }
+        List<BluetoothDeviceWrapper> rows = new ArrayList<>(pairedDevices.size() + deviceRegistry.size() + 2);
+        if (pairedLoaded) {
+            if (!pairedDevices.isEmpty()) {
+                rows.add(new BluetoothDeviceWrapper("=== Paired Devices ==="));
+                for (BluetoothDevice device : pairedDevices) {
+                    rows.add(new BluetoothDeviceWrapper(device));
+                }
+            }
+            rows.add(new BluetoothDeviceWrapper("=== Available Devices ==="));
+        }
+        for (BluetoothDeviceRegistry.Entry<BluetoothDevice> entry : deviceRegistry.getEntries()) {
+            if (!pairedAddresses.contains(entry.device.getAddress())) {
+                rows.add(new BluetoothDeviceWrapper(entry.device, Math.round(entry.smoothedRssi)));
+            }
+        }
+        publishedRows.set(rows);
+        mainHandler.post(() -> {
+            // Checked again on the main thread, destroy may have run since
+            if (!destroyed) {
+                deviceListUpdater.invalidate();
+            }
+        });
+    }
+
+    private void renderDeviceList() {
+        List<BluetoothDeviceWrapper> rows = publishedRows.get();
+        if (rows != null) {
+            deviceList.clear();
+            deviceList.addAll(rows);
+            deviceArrayAdapter.notifyDataSetChanged();
+        }
+        showScanStats();
+    }
 
-        // Check if device is already in the list
-        for (BluetoothDeviceWrapper wrapper : deviceList) {
-            if (!wrapper.isHeader &&
-                    wrapper.device.getAddress().equals(device.getAddress())) {
-                return; // Device already in list
+    private void showScanStats() {
+        long now = System.currentTimeMillis();
+        scanStatsText.setLength(0);
+        for (BluetoothScanMode mode : BluetoothScanMode.values()) {
+            ScanHitStats stats = scanStats.get(mode);
+            long activeMillis = stats.getActiveMillis(now);
+            if (activeMillis == 0) {
+                continue;
             }
+            if (scanStatsText.length() > 0) scanStatsText.append('\n');
+            scanStatsText.append(mode == scanMode && stats.isActive() ? "> " : "  ")
+                    .append(mode.label).append(": ")
+                    .append(stats.getUniqueDevices()).append(" devices, ")
+                    .append(Math.round(stats.getHitsPerMinute(now))).append(" hits/min, ")
+                    .append(Math.round(stats.getUniquePerMinute(now))).append(" new/min over ")
+                    .append(activeMillis / 1000).append('s');
         }
+        tvScanStats.setText(scanStatsText);
+    }
 
-        deviceList.add(newDevice);
-        deviceArrayAdapter.notifyDataSetChanged();
+    private void expireStaleDevices(long nowMillis) {
+        // A device must be missed for at least a whole duty cycle before it goes
+        long ttl = Math.max(DEVICE_TTL_MS, 2 * scanDutyCycle.getProfile().getPeriodMs());
+        deviceEvents.offer(new DeviceEvent(DeviceEvent.EXPIRE, null, nowMillis - ttl));
+    }
+
+    private void cycleDutyCycle() {
+        scanDutyCycle.setProfile(scanDutyCycle.getProfile().next());
+        btnDutyCycle.setText("Duty: " + scanDutyCycle.getProfile().label);
+    }
+
+    private void cycleScanMode() {
+        boolean restart = scanDutyCycle.isInScanWindow();
+        if (restart) {
+            stopScan();
+        }
+        scanMode = scanMode.next();
+        btnScanMode.setText("Mode: " + scanMode.label);
+        if (restart) {
+            startScan();
+        }
+        showScanStats();
+    }
+
+    private void startScan() {
+        if (!checkBluetoothPermissions()) {
+            return;
+        }
+        if (scanMode.isBle()) {
+            if (bleScanController == null || !bleScanController.start(scanMode)) {
+                Toast.makeText(this, "BLE scanning is not available", Toast.LENGTH_SHORT).show();
+                return;
+            }
+        } else {
+            if (bluetoothAdapter.isDiscovering()) {
+                bluetoothAdapter.cancelDiscovery();
+            }
+            bluetoothAdapter.startDiscovery();
+        }
+        scanStats.get(scanMode).start(System.currentTimeMillis());
+    }
+
+    private void stopScan() {
+        if (bleScanController != null) {
+            bleScanController.stop();
+        }
+        if (bluetoothAdapter != null && bluetoothAdapter.isDiscovering()) {
+            bluetoothAdapter.cancelDiscovery();
+        }
+        scanStats.get(scanMode).stop(System.currentTimeMillis());
+        showScanStats();
     }
 
     private void toggleScanning() {
@@ -142,54 +565,117 @@ public class BluetoothActivity extends AppCompatActivity {
             isHandlingStop = true;  // Set flag before stopping
             isScanning = false;
             btnScanDevices.setText("Scan for Devices");
-            if (bluetoothAdapter != null && bluetoothAdapter.isDiscovering()) {
-                bluetoothAdapter.cancelDiscovery();
-            }
+            scanDutyCycle.stop();
         } else {
             // Start scanning
             isHandlingStop = false;  // Reset flag
             isScanning = true;
             btnScanDevices.setText("Stop Scanning");
             refreshDeviceList();
+            scanDutyCycle.start();
         }
     }
 
-    // Update the BroadcastReceiver's onReceive method:
+    // Runs on the broadcast thread. Device changes only read the intent and
+    // queue an event; adapter and discovery changes drive the UI, so they are
+    // posted to the main thread.
     private final BroadcastReceiver receiver = new BroadcastReceiver() {
         public void onReceive(Context context, Intent intent) {
             String action = intent.getAction();
-            if (BluetoothDevice.ACTION_FOUND.equals(action)) {
-                BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
-                if (device != null) {
-                    addDeviceToList(device);
-                }
-            } else if (BluetoothAdapter.ACTION_DISCOVERY_FINISHED.equals(action)) {
-                btnScanDevices.setText("Scan for Devices");
-                if (isHandlingStop) {
-                    // Only show message if this was triggered by user stopping the scan
-                    Toast.makeText(context, "Scanning finished", Toast.LENGTH_SHORT).show();
-                    isHandlingStop = false;  // Reset the flag
-                }
-                if (isScanning && !isHandlingStop) {
-                    // If we're still supposed to be scanning, restart discovery
-                    refreshDeviceList();
-                }
+            long now = System.currentTimeMillis();
+            if (BluetoothAdapter.ACTION_DISCOVERY_FINISHED.equals(action)) {
+                mainHandler.post(BluetoothActivity.this::onDiscoveryFinished);
+                return;
             } else if (BluetoothAdapter.ACTION_STATE_CHANGED.equals(action)) {
                 int state = intent.getIntExtra(BluetoothAdapter.EXTRA_STATE, BluetoothAdapter.ERROR);
-                updateBluetoothStatus(state);
+                mainHandler.post(() -> updateBluetoothStatus(state));
+                return;
+            }
+            BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
+            if (device == null) {
+                return;
+            }
+            if (BluetoothDevice.ACTION_FOUND.equals(action)) {
+                // The intent carries name and class, so no IPC is needed for them
+                DeviceEvent event = deviceInfoEvent(DeviceEvent.FOUND, device, intent, now);
+                event.rssi = intent.getShortExtra(BluetoothDevice.EXTRA_RSSI,
+                        (short) BluetoothDeviceRegistry.RSSI_UNKNOWN);
+                event.source = BluetoothScanMode.CLASSIC;
+                deviceEvents.offer(event);
             } else if (BluetoothDevice.ACTION_BOND_STATE_CHANGED.equals(action)) {
-                BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
-                if (device != null) {
-                    if (device.getBondState() == BluetoothDevice.BOND_BONDED) {
-                        Toast.makeText(context, "Successfully paired with " + device.getName(),
-                                Toast.LENGTH_SHORT).show();
-                        refreshDeviceList();
+                DeviceEvent event = new DeviceEvent(DeviceEvent.BOND, device, now);
+                event.bondState = intent.getIntExtra(BluetoothDevice.EXTRA_BOND_STATE,
+                        BluetoothDevice.ERROR);
+                deviceEvents.offer(event);
+                if (event.bondState == BluetoothDevice.BOND_BONDED) {
+                    mainHandler.post(() -> Toast.makeText(BluetoothActivity.this,
+                            "Successfully paired with " + displayName(device),
+                            Toast.LENGTH_SHORT).show());
+                }
+            } else if (BluetoothDevice.ACTION_NAME_CHANGED.equals(action)
+                    || BluetoothDevice.ACTION_CLASS_CHANGED.equals(action)) {
+                deviceEvents.offer(deviceInfoEvent(DeviceEvent.INFO, device, intent, now));
+            } else if (BluetoothDevice.ACTION_UUID.equals(action)) {
+                Parcelable[] uuids = intent.getParcelableArrayExtra(BluetoothDevice.EXTRA_UUID);
+                if (uuids != null) {
+                    DeviceEvent event = new DeviceEvent(DeviceEvent.UUIDS, device, now);
+                    event.uuids = new ArrayList<>(uuids.length);
+                    for (Parcelable uuid : uuids) {
+                        event.uuids.add(((ParcelUuid) uuid).getUuid());
                     }
+                    deviceEvents.offer(event);
                 }
             }
         }
     };
 
+    private static DeviceEvent deviceInfoEvent(int type, BluetoothDevice device, Intent intent, long now) {
+        DeviceEvent event = new DeviceEvent(type, device, now);
+        event.name = intent.getStringExtra(BluetoothDevice.EXTRA_NAME);
+        BluetoothClass bluetoothClass = intent.getParcelableExtra(BluetoothDevice.EXTRA_CLASS);
+        if (bluetoothClass != null) {
+            event.deviceClass = bluetoothClass.getDeviceClass();
+        }
+        return event;
+    }
+
+    private void onDiscoveryFinished() {
+        if (!isScanning) {
+            // Also sent when switching to a BLE mode cancels discovery
+            btnScanDevices.setText("Scan for Devices");
+        }
+        if (isHandlingStop) {
+            // Only show message if this was triggered by user stopping the scan
+            Toast.makeText(this, "Scanning finished", Toast.LENGTH_SHORT).show();
+            isHandlingStop = false;  // Reset the flag
+        }
+        if (isScanning && scanMode == BluetoothScanMode.CLASSIC
+                && scanDutyCycle.isInScanWindow()) {
+            // An inquiry lasts about 12 s, keep going until the window ends
+            startScan();
+        }
+    }
+
+    private static List<UUID> toUuids(List<ParcelUuid> serviceUuids) {
+        if (serviceUuids == null || serviceUuids.isEmpty()) {
+            return null;
+        }
+        List<UUID> uuids = new ArrayList<>(serviceUuids.size());
+        for (ParcelUuid uuid : serviceUuids) {
+            uuids.add(uuid.getUuid());
+        }
+        return uuids;
+    }
+
+    private String displayName(BluetoothDevice device) {
+        return displayName(device.getAddress());
+    }
+
+    private String displayName(String address) {
+        String name = deviceCache.getName(address);
+        return name != null ? name : "Unknown Device";
+    }
+
     private void updateBluetoothStatus(int state) {
         switch (state) {
             case BluetoothAdapter.STATE_ON:
@@ -201,8 +687,7 @@ public class BluetoothActivity extends AppCompatActivity {
                 tvBluetoothStatus.setText("Status: Disabled");
                 btnToggleBluetooth.setText("Turn Bluetooth On");
                 btnScanDevices.setEnabled(false);
-                deviceList.clear();
-                deviceArrayAdapter.notifyDataSetChanged();
+                deviceEvents.offer(new DeviceEvent(DeviceEvent.CLEAR, null, System.currentTimeMillis()));
                 break;
             default:
                 tvBluetoothStatus.setText("Status: Unknown");
@@ -227,15 +712,8 @@ public class BluetoothActivity extends AppCompatActivity {
                         bluetoothAdapter.cancelDiscovery();
                     }
 
-                    // Close any existing connection
-                    if (bluetoothSocket != null) {
-                        try {
-                            bluetoothSocket.close();
-                        } catch (IOException e) {
-                            // Handle close exception
-                        }
-                        bluetoothSocket = null;
-                    }
+                    // Close any existing connections
+                    connectionManager.disconnectAll();
 
                     // Turn off Bluetooth using system settings
                     Intent intent = new Intent(android.provider.Settings.ACTION_BLUETOOTH_SETTINGS);
@@ -243,8 +721,7 @@ public class BluetoothActivity extends AppCompatActivity {
 
                     // Clear UI
                     tvConnectionStatus.setText("");
-                    deviceList.clear();
-                    deviceArrayAdapter.notifyDataSetChanged();
+                    deviceEvents.offer(new DeviceEvent(DeviceEvent.CLEAR, null, System.currentTimeMillis()));
 
                     Toast.makeText(this, "Please turn off Bluetooth in settings",
                             Toast.LENGTH_LONG).show();
@@ -256,47 +733,32 @@ public class BluetoothActivity extends AppCompatActivity {
         }
     }
 
+    // Reloads the paired section on the broadcast thread. Discovered devices
+    // stay in the registry and are drawn again below it.
     private void refreshDeviceList() {
         if (!checkBluetoothPermissions()) {
             return;
         }
-
-        deviceList.clear();
-
-        // Add paired devices
-        Set<BluetoothDevice> pairedDevices = bluetoothAdapter.getBondedDevices();
-        if (pairedDevices.size() > 0) {
-            deviceList.add(new BluetoothDeviceWrapper("=== Paired Devices ==="));
-            for (BluetoothDevice device : pairedDevices) {
-                deviceList.add(new BluetoothDeviceWrapper(device));
-            }
-        }
-
-        deviceList.add(new BluetoothDeviceWrapper("=== Available Devices ==="));
-        deviceArrayAdapter.notifyDataSetChanged();
-
-        // Start discovery only if we're in scanning mode
-        if (isScanning && !isHandlingStop) {
-            if (bluetoothAdapter.isDiscovering()) {
-                bluetoothAdapter.cancelDiscovery();
-            }
-            bluetoothAdapter.startDiscovery();
-        }
+        deviceEvents.offer(new DeviceEvent(DeviceEvent.RELOAD_PAIRED, null, System.currentTimeMillis()));
     }
 
     private void showDeviceOptionsDialog(BluetoothDevice device) {
         String[] options;
-        if (device.getBondState() == BluetoothDevice.BOND_BONDED) {
+        if (connectionManager.isConnected(device.getAddress())) {
+            options = new String[]{"Send File", "Unpair", "Cancel"};
+        } else if (device.getBondState() == BluetoothDevice.BOND_BONDED) {
             options = new String[]{"Connect", "Unpair", "Cancel"};
         } else {
             options = new String[]{"Pair", "Cancel"};
         }
 
         new AlertDialog.Builder(this)
-                .setTitle(device.getName() != null ? device.getName() : "Unknown Device")
+                .setTitle(displayName(device))
                 .setItems(options, (dialog, which) -> {
                     if (options[which].equals("Pair") || options[which].equals("Connect")) {
                         connectToDevice(device);
+                    } else if (options[which].equals("Send File")) {
+                        pickFileToSend(device);
                     } else if (options[which].equals("Unpair")) {
                         unpairDevice(device);
                     }
@@ -316,49 +778,223 @@ public class BluetoothActivity extends AppCompatActivity {
             bluetoothAdapter.cancelDiscovery();
         }
 
-        new Thread(() -> {
-            try {
-                if (bluetoothSocket != null) {
-                    bluetoothSocket.close();
+        if (connectionManager.isConnected(device.getAddress())) {
+            Toast.makeText(this, "Already connected to " + displayName(device),
+                    Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (!connectionManager.connect(device.getAddress())) {
+            Toast.makeText(this, "Too many pending connections", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void onSessionChanged(BluetoothConnectionManager.SessionInfo session) {
+        switch (session.state) {
+            case CONNECTING:
+                tvConnectionStatus.setText("Connecting to: " + displayName(session.address));
+                break;
+            case CONNECTED:
+                Toast.makeText(this, "Connected to " + displayName(session.address),
+                        Toast.LENGTH_SHORT).show();
+                // A file interrupted by the drop continues where the receiver stopped
+                OutgoingFile pending = outgoingFiles.get(session.address);
+                if (pending != null) {
+                    startFileTransfer(session.address, pending);
+                }
+                break;
+            case RECONNECTING:
+                if (session.attempt == 1) {
+                    Toast.makeText(this, "Lost " + displayName(session.address)
+                            + ", reconnecting", Toast.LENGTH_SHORT).show();
                 }
+                releaseLinkState(session.address, false);
+                break;
+            case FAILED:
+                Toast.makeText(this, "Connection failed: " + session.failure,
+                        Toast.LENGTH_SHORT).show();
+                releaseLinkState(session.address, true);
+                break;
+            case CLOSED:
+                releaseLinkState(session.address, true);
+                break;
+            default:
+                break;
+        }
+        showSessions();
+    }
+
+    // Drops per-connection stream state. Outgoing files survive a reconnect
+    // and are only cancelled when the session ends for good.
+    private void releaseLinkState(String address, boolean sessionEnded) {
+        frameDecoders.remove(address);
+        FileTransfer.Receiver fileReceiver = fileReceivers.remove(address);
+        if (fileReceiver != null) {
+            // Doesn't wait for a chunk being written, the dispatch thread closes after it
+            fileReceiver.close();
+        }
+        OutgoingFile outgoing = sessionEnded ? outgoingFiles.remove(address) : outgoingFiles.get(address);
+        if (outgoing != null) {
+            outgoing.sender.abort(new IOException("Connection lost"));
+            if (sessionEnded) {
+                closeQuietly(outgoing.descriptor);
+            }
+        }
+    }
 
-                bluetoothSocket = device.createRfcommSocketToServiceRecord(MY_UUID);
+    // No flush timer, FileTransfer flushes when it waits or replies
+    private FrameCodec.Writer frameWriter(String address) {
+        return new FrameCodec.Writer(connectionManager.frameSink(address, FRAME_SEND_TIMEOUT_MS),
+                FRAME_BATCH_SIZE, null, Long.MAX_VALUE);
+    }
+
+    // Called on the session's dispatch thread
+    private void onTransferFrame(String address, ByteBuffer frame, int offset, int length) {
+        OutgoingFile outgoing = outgoingFiles.get(address);
+        if (outgoing != null && outgoing.sender.onFrame(frame, offset, length)) {
+            return;
+        }
+        FileTransfer.Receiver fileReceiver = fileReceivers.get(address);
+        if (fileReceiver == null) {
+            fileReceiver = new FileTransfer.Receiver(receivedFilesDir, frameWriter(address),
+                    new FileTransfer.Receiver.Listener() {
+                        @Override
+                        public void onProgress(String name, long received, long size) {
+                        }
 
-                runOnUiThread(() -> {
-                    tvConnectionStatus.setText("Connecting to: " + device.getName());
-                });
+                        @Override
+                        public void onReceived(File file, long size) {
+                            runOnUiThread(() -> Toast.makeText(BluetoothActivity.this,
+                                    "Received " + file.getName() + " (" + size / 1024 + " KB) from "
+                                            + displayName(address), Toast.LENGTH_SHORT).show());
+                        }
 
-                bluetoothSocket.connect();
+                        @Override
+                        public void onFailed(String name, IOException cause) {
+                            runOnUiThread(() -> Toast.makeText(BluetoothActivity.this,
+                                    "Receiving " + name + " failed: " + cause.getMessage(),
+                                    Toast.LENGTH_SHORT).show());
+                        }
+                    });
+            fileReceivers.put(address, fileReceiver);
+        }
+        fileReceiver.onFrame(frame, offset, length);
+    }
 
-                runOnUiThread(() -> {
-                    tvConnectionStatus.setText("Connected to: " + device.getName());
-                    Toast.makeText(this, "Connected to " + device.getName(),
-                            Toast.LENGTH_SHORT).show();
-                });
+    private void pickFileToSend(BluetoothDevice device) {
+        if (outgoingFiles.containsKey(device.getAddress())) {
+            Toast.makeText(this, "Already sending a file to " + displayName(device),
+                    Toast.LENGTH_SHORT).show();
+            return;
+        }
+        fileTargetAddress = device.getAddress();
+        openFileLauncher.launch(new String[]{"*/*"});
+    }
+
+    private void sendFile(String address, Uri uri) {
+        ParcelFileDescriptor descriptor = null;
+        try {
+            descriptor = getContentResolver().openFileDescriptor(uri, "r");
+            if (descriptor == null) {
+                throw new IOException("Cannot open " + uri);
+            }
+            String name = uri.getLastPathSegment() != null ? uri.getLastPathSegment() : "file";
+            name = name.substring(name.lastIndexOf('/') + 1);
+            FileChannel channel = new FileInputStream(descriptor.getFileDescriptor()).getChannel();
+            // Same file, same id, so sending it again after a restart resumes too
+            long transferId = ((long) uri.toString().hashCode() << 32) ^ channel.size();
+            OutgoingFile outgoing = new OutgoingFile(new FileTransfer.Sender(channel, transferId, name),
+                    descriptor, name);
+            if (outgoingFiles.putIfAbsent(address, outgoing) != null) {
+                closeQuietly(descriptor);
+                return;
+            }
+            startFileTransfer(address, outgoing);
+        } catch (IOException | SecurityException e) {
+            closeQuietly(descriptor);
+            Toast.makeText(this, "Cannot send file: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void startFileTransfer(String address, OutgoingFile outgoing) {
+        fileTransferExecutor.execute(() -> {
+            if (outgoingFiles.get(address) != outgoing || outgoing.sender.isComplete()) {
+                return;
+            }
+            try {
+                FileTransfer.Result result = outgoing.sender.run(frameWriter(address));
+                if (outgoingFiles.remove(address, outgoing)) {
+                    closeQuietly(outgoing.descriptor);
+                }
+                runOnUiThread(() -> Toast.makeText(this, "Sent " + outgoing.name + ": " + result,
+                        Toast.LENGTH_LONG).show());
             } catch (IOException e) {
-                runOnUiThread(() -> {
-                    tvConnectionStatus.setText("Connection failed");
-                    Toast.makeText(this, "Connection failed: " + e.getMessage(),
-                            Toast.LENGTH_SHORT).show();
-                });
-                try {
-                    bluetoothSocket.close();
-                } catch (IOException closeException) {
-                    // Handle close exception
+                // Kept for the next CONNECTED if the session is reconnecting
+                if (!connectionManager.isConnected(address) && outgoingFiles.containsKey(address)) {
+                    return;
                 }
+                if (outgoingFiles.remove(address, outgoing)) {
+                    closeQuietly(outgoing.descriptor);
+                }
+                runOnUiThread(() -> Toast.makeText(this, "Sending " + outgoing.name + " failed: "
+                        + e.getMessage(), Toast.LENGTH_SHORT).show());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-        }).start();
+        });
+    }
+
+    private static void closeQuietly(ParcelFileDescriptor descriptor) {
+        if (descriptor == null) {
+            return;
+        }
+        try {
+            descriptor.close();
+        } catch (IOException e) {
+            // Ignore close exception
+        }
+    }
+
+    private void showSessions() {
+        List<BluetoothConnectionManager.SessionInfo> sessions = connectionManager.snapshot();
+        if (sessions.isEmpty()) {
+            tvConnectionStatus.setText("");
+            return;
+        }
+        StringBuilder status = new StringBuilder();
+        for (BluetoothConnectionManager.SessionInfo session : sessions) {
+            if (status.length() > 0) status.append("\n");
+            switch (session.state) {
+                case CONNECTED:
+                    status.append("Connected to: ");
+                    break;
+                case RECONNECTING:
+                    status.append("Reconnecting (attempt ").append(session.attempt).append(") to: ");
+                    break;
+                default:
+                    status.append("Connecting to: ");
+                    break;
+            }
+            status.append(displayName(session.address));
+            ConnectTelemetry.DeviceStats stats = connectionManager.getTelemetry().get(session.address);
+            if (stats != null && stats.successes > 0) {
+                status.append("  [connect p50 ").append(stats.p50Micros / 1000)
+                        .append(" ms, p95 ").append(stats.p95Micros / 1000)
+                        .append(" ms, ").append(Math.round(stats.getSuccessRate() * 100))
+                        .append("% of ").append(stats.attempts).append(" ok]");
+            }
+        }
+        tvConnectionStatus.setText(status);
     }
 
     private void pairDevice(BluetoothDevice device) {
         try {
             if (device.getBondState() != BluetoothDevice.BOND_BONDED) {
-                tvConnectionStatus.setText("Pairing with: " + device.getName());
+                tvConnectionStatus.setText("Pairing with: " + displayName(device));
                 device.createBond();
-                Toast.makeText(this, "Pairing with " + device.getName(),
+                Toast.makeText(this, "Pairing with " + displayName(device),
                         Toast.LENGTH_SHORT).show();
             } else {
-                Toast.makeText(this, "Already paired with " + device.getName(),
+                Toast.makeText(this, "Already paired with " + displayName(device),
                         Toast.LENGTH_SHORT).show();
             }
         } catch (Exception e) {
@@ -371,16 +1007,13 @@ public class BluetoothActivity extends AppCompatActivity {
     private void unpairDevice(BluetoothDevice device) {
         try {
             // First disconnect if connected
-            if (bluetoothSocket != null && bluetoothSocket.isConnected()) {
-                bluetoothSocket.close();
-                tvConnectionStatus.setText("");
-            }
+            connectionManager.disconnect(device.getAddress());
 
             // Then unpair
             Method method = device.getClass().getMethod("removeBond", (Class[]) null);
             method.invoke(device, (Object[]) null);
 
-            Toast.makeText(this, "Unpairing " + device.getName(), Toast.LENGTH_SHORT).show();
+            Toast.makeText(this, "Unpairing " + displayName(device), Toast.LENGTH_SHORT).show();
             refreshDeviceList();
         } catch (Exception e) {
             Toast.makeText(this, "Error unpairing device: " + e.getMessage(),
@@ -417,19 +1050,28 @@ public class BluetoothActivity extends AppCompatActivity {
         super.onDestroy();
         isScanning = false;
         isHandlingStop = false;
-        if (receiver != null) {
-            unregisterReceiver(receiver);
+        scanDutyCycle.stop();
+        deviceListUpdater.cancel();
+        // Stop every event source first; the scanner flushes into the drain
+        if (bleScanController != null) {
+            bleScanController.stop();
         }
         if (bluetoothAdapter != null && bluetoothAdapter.isDiscovering()) {
             bluetoothAdapter.cancelDiscovery();
         }
-        if (bluetoothSocket != null) {
-            try {
-                bluetoothSocket.close();
-            } catch (IOException e) {
-                // Handle close exception
-            }
+        if (receiver != null) {
+            unregisterReceiver(receiver);
         }
+        // Queued events are still applied before the thread exits, but their
+        // rows are no longer published
+        destroyed = true;
+        broadcastThread.quitSafely();
+        mainHandler.removeCallbacksAndMessages(null);
+        connectionManager.shutdown();
+        fileTransferExecutor.shutdownNow();
+        // Queued behind any pending write, the executor finishes it before exiting
+        deviceCache.flush();
+        cacheExecutor.shutdown();
     }
 
     @Override
@@ -447,6 +1089,9 @@ public class BluetoothActivity extends AppCompatActivity {
             if (allGranted) {
                 if (isScanning) {
                     refreshDeviceList();
+                    if (scanDutyCycle.isInScanWindow()) {
+                        startScan();
+                    }
                 }
             } else {
                 Toast.makeText(this, "All permissions are required for Bluetooth scanning",
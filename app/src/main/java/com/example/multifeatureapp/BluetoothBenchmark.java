@@ -0,0 +1,259 @@
+package com.example.multifeatureapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Measures the app's RFCOMM path end to end: BluetoothConnectionManager,
+// RfcommConnection and FrameCodec, against any transport whose far end echoes
+// the bytes back. Every frame carries its send time, so each echo gives one
+// round-trip sample. A window of frames is kept in flight, the same way
+// FileTransfer streams.
+public class BluetoothBenchmark {
+    private static final int BATCH_SIZE = 64 * 1024;
+    private static final int DECODER_SIZE = 128 * 1024;
+    private static final int HEADER_SIZE = 8; // Send time in nanoseconds
+    private static final long SEND_TIMEOUT_MS = 5000;
+
+    public static class Result {
+        public final int frameSize;
+        public final long messages;
+        public final long bytes;
+        public final long elapsedNanos;
+        public final LatencyHistogram latency;
+        // -1 where the runtime can't count allocations per thread
+        public final long allocatedBytes;
+
+        Result(int frameSize, long messages, long bytes, long elapsedNanos,
+               LatencyHistogram latency, long allocatedBytes) {
+            this.frameSize = frameSize;
+            this.messages = messages;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+            this.latency = latency;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        public double getMegabytesPerSecond() {
+            return elapsedNanos > 0 ? bytes * 1000.0 / elapsedNanos : 0;
+        }
+
+        public double getMessagesPerSecond() {
+            return elapsedNanos > 0 ? messages * 1e9 / elapsedNanos : 0;
+        }
+
+        public double getAllocatedBytesPerMessage() {
+            return allocatedBytes >= 0 && messages > 0 ? (double) allocatedBytes / messages : -1;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%d B frames: %.2f MB/s, %.0f msg/s, RTT p50 %.2f ms, p99 %.2f ms, %s",
+                    frameSize, getMegabytesPerSecond(), getMessagesPerSecond(),
+                    latency.getPercentile(50) / 1000.0, latency.getPercentile(99) / 1000.0,
+                    allocatedBytes >= 0
+                            ? String.format(Locale.US, "%.0f B/msg allocated", getAllocatedBytesPerMessage())
+                            : "allocations not measured");
+        }
+    }
+
+    private final BluetoothConnectionManager.TransportFactory transportFactory;
+    private final String address;
+    private final int window;
+    private final long timeoutMs;
+    // Echo bookkeeping, written by the dispatch thread
+    private final Semaphore inFlight;
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private volatile LatencyHistogram latency = new LatencyHistogram();
+    private volatile CountDownLatch allReceived = new CountDownLatch(0);
+    private volatile long expected;
+
+    // window is how many frames may wait for their echo at once
+    public BluetoothBenchmark(BluetoothConnectionManager.TransportFactory transportFactory, String address,
+                              int window, long timeoutMs) {
+        this.transportFactory = transportFactory;
+        this.address = address;
+        this.window = window;
+        this.timeoutMs = timeoutMs;
+        this.inFlight = new Semaphore(window);
+    }
+
+    // Runs each frame size in turn over one connection, after a short warm-up
+    public List<Result> run(int[] frameSizes, int messagesPerSize) throws IOException, InterruptedException {
+        CountDownLatch connected = new CountDownLatch(1);
+        AtomicLong failures = new AtomicLong();
+        FrameCodec.Decoder decoder = new FrameCodec.Decoder(DECODER_SIZE);
+        FrameCodec.FrameHandler onEcho = (frame, offset, length) -> {
+            if (length >= HEADER_SIZE) {
+                latency.record((System.nanoTime() - frame.getLong(offset)) / 1000);
+            }
+            receivedBytes.addAndGet(length);
+            inFlight.release();
+            if (received.incrementAndGet() == expected) {
+                allReceived.countDown();
+            }
+        };
+        BluetoothConnectionManager manager = new BluetoothConnectionManager(transportFactory,
+                new BluetoothConnectionManager.Listener() {
+                    @Override
+                    public void onSessionChanged(BluetoothConnectionManager.SessionInfo session) {
+                        if (session.state == BluetoothConnectionManager.SessionState.CONNECTED) {
+                            connected.countDown();
+                        } else if (session.state == BluetoothConnectionManager.SessionState.FAILED
+                                || session.state == BluetoothConnectionManager.SessionState.CLOSED) {
+                            failures.incrementAndGet();
+                            connected.countDown();
+                            // Wake a run waiting for echoes that will never come
+                            inFlight.release(window);
+                            allReceived.countDown();
+                        }
+                    }
+
+                    @Override
+                    public void onData(String address, byte[] buffer, int offset, int length) {
+                        decoder.feed(buffer, offset, length, onEcho);
+                    }
+                });
+        try {
+            if (!manager.connect(address) || !connected.await(timeoutMs, TimeUnit.MILLISECONDS)
+                    || failures.get() > 0) {
+                throw new IOException("Could not connect to " + address);
+            }
+            FrameCodec.Writer writer = new FrameCodec.Writer(manager.frameSink(address, SEND_TIMEOUT_MS),
+                    BATCH_SIZE, null, Long.MAX_VALUE);
+            List<Result> results = new ArrayList<>(frameSizes.length);
+            for (int frameSize : frameSizes) {
+                // Lets the JIT and the buffers settle before measuring
+                measure(writer, frameSize, Math.max(1, messagesPerSize / 10));
+                results.add(measure(writer, frameSize, messagesPerSize));
+                if (failures.get() > 0) {
+                    throw new IOException("Connection to " + address + " dropped");
+                }
+            }
+            return results;
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    private Result measure(FrameCodec.Writer writer, int frameSize, int messages)
+            throws IOException, InterruptedException {
+        if (frameSize < HEADER_SIZE || frameSize > FrameCodec.MAX_PAYLOAD) {
+            throw new IllegalArgumentException("Frame size out of range: " + frameSize);
+        }
+        ByteBuffer payload = ByteBuffer.allocate(frameSize);
+        for (int i = HEADER_SIZE; i < frameSize; i++) {
+            payload.put(i, (byte) i);
+        }
+        latency = new LatencyHistogram();
+        received.set(0);
+        receivedBytes.set(0);
+        expected = messages;
+        allReceived = new CountDownLatch(1);
+
+        long[] threads = benchmarkThreads();
+        long allocatedBefore = allocatedBytes(threads);
+        long start = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            if (!inFlight.tryAcquire()) {
+                // Window full, put what is batched on the link and wait for echoes
+                writer.flush();
+                if (!inFlight.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                    throw new IOException("No echo within " + timeoutMs + " ms");
+                }
+            }
+            payload.clear();
+            payload.putLong(0, System.nanoTime());
+            writer.write(payload);
+        }
+        writer.flush();
+        if (!allReceived.await(timeoutMs, TimeUnit.MILLISECONDS) || received.get() < messages) {
+            throw new IOException("Only " + received.get() + " of " + messages + " echoes arrived");
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocatedAfter = allocatedBytes(threads);
+        long allocated = allocatedBefore >= 0 && allocatedAfter >= 0 ? allocatedAfter - allocatedBefore : -1;
+        return new Result(frameSize, messages, receivedBytes.get(), elapsed, latency, allocated);
+    }
+
+    // The caller plus the session's reader, dispatch and writer threads
+    private long[] benchmarkThreads() {
+        List<Long> ids = new ArrayList<>();
+        ids.add(Thread.currentThread().getId());
+        for (Map.Entry<Thread, StackTraceElement[]> entry : Thread.getAllStackTraces().entrySet()) {
+            if (entry.getKey().getName().endsWith("-" + address)
+                    && entry.getKey().getName().startsWith("rfcomm-")) {
+                ids.add(entry.getKey().getId());
+            }
+        }
+        long[] result = new long[ids.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(i);
+        }
+        return result;
+    }
+
+    // Sum of bytes allocated by the threads, through the HotSpot extension of
+    // ThreadMXBean. java.lang.management doesn't exist on Android, so it is
+    // only reached by reflection and reports -1 there.
+    static long allocatedBytes(long[] threadIds) {
+        try {
+            Class<?> factory = Class.forName("java.lang.management.ManagementFactory");
+            Object bean = factory.getMethod("getThreadMXBean").invoke(null);
+            Class<?> hotspotBean = Class.forName("com.sun.management.ThreadMXBean");
+            if (!hotspotBean.isInstance(bean)) {
+                return -1;
+            }
+            Method perThread = hotspotBean.getMethod("getThreadAllocatedBytes", long[].class);
+            long[] bytes = (long[]) perThread.invoke(bean, (Object) threadIds);
+            long total = 0;
+            for (long value : bytes) {
+                if (value < 0) {
+                    return -1;
+                }
+                total += value;
+            }
+            return total;
+        } catch (ReflectiveOperationException | LinkageError | SecurityException e) {
+            return -1;
+        }
+    }
+
+    // Transports whose far end is a thread echoing every byte back, for
+    // running the benchmark on a plain JVM
+    public static BluetoothConnectionManager.TransportFactory loopbackEchoFactory() {
+        return address -> {
+            LoopbackTransport[] pair = LoopbackTransport.createPair();
+            Thread echo = new Thread(() -> echo(pair[1]), "bt-bench-echo-" + address);
+            echo.setDaemon(true);
+            echo.start();
+            return pair[0];
+        };
+    }
+
+    private static void echo(LoopbackTransport transport) {
+        byte[] buffer = new byte[16 * 1024];
+        try (LoopbackTransport remote = transport) {
+            InputStream in = remote.getInputStream();
+            OutputStream out = remote.getOutputStream();
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            // The benchmark closed its end
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package com.example.multifeatureapp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Keeps any number of RFCOMM sessions open at once, keyed by device address.
+// Connect attempts run on a small fixed pool of named threads with a bounded
+// queue, so repeated taps can't pile up threads, and an attempt still in
+// connect() can be cancelled by closing its transport. With a ReconnectPolicy,
+// failed connects and dropped links are retried with backoff until the policy
+// gives up or the session is disconnected.
+public class BluetoothConnectionManager {
+    private static final int MAX_CONCURRENT_CONNECTS = 3;
+    private static final int MAX_QUEUED_CONNECTS = 8;
+    // Room for the largest frame, which is queued in one piece
+    private static final int STREAM_BUFFER_SIZE = 128 * 1024;
+    // A link that drops sooner keeps backing off from where it got to
+    static final long MIN_STABLE_MS = 10_000;
+
+    public interface TransportFactory {
+        // Creates the transport for an address without connecting it
+        RfcommTransport create(String address) throws IOException;
+    }
+
+    public interface Listener {
+        void onSessionChanged(SessionInfo session);
+
+        // Called on the session's dispatch thread
+        void onData(String address, byte[] buffer, int offset, int length);
+    }
+
+    public enum SessionState {
+        CONNECTING,
+        RECONNECTING, // Waiting out the backoff before the next attempt
+        CONNECTED,
+        CLOSED,
+        FAILED
+    }
+
+    public static class SessionInfo {
+        public final String address;
+        public final SessionState state;
+        public final long connectedAtMillis;
+        public final RfcommConnection.Stats stats;
+        public final String failure;
+        public final int attempt;
+
+        SessionInfo(String address, SessionState state, long connectedAtMillis,
+                    RfcommConnection.Stats stats, String failure, int attempt) {
+            this.address = address;
+            this.state = state;
+            this.connectedAtMillis = connectedAtMillis;
+            this.stats = stats;
+            this.failure = failure;
+            this.attempt = attempt;
+        }
+    }
+
+    private final TransportFactory transportFactory;
+    private final Listener listener;
+    private final ReconnectPolicy reconnectPolicy;
+    private final ConnectTelemetry telemetry = new ConnectTelemetry();
+    private final ConcurrentHashMap<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor connectExecutor;
+    private final ScheduledExecutorService retryScheduler;
+
+    public BluetoothConnectionManager(TransportFactory transportFactory, Listener listener) {
+        this(transportFactory, listener, null);
+    }
+
+    // A null policy reports failures and drops without retrying
+    public BluetoothConnectionManager(TransportFactory transportFactory, Listener listener,
+                                      ReconnectPolicy reconnectPolicy) {
+        this.transportFactory = transportFactory;
+        this.listener = listener;
+        this.reconnectPolicy = reconnectPolicy;
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(
+                runnable -> new Thread(runnable, "bt-reconnect"));
+        AtomicInteger threadCount = new AtomicInteger();
+        connectExecutor = new ThreadPoolExecutor(MAX_CONCURRENT_CONNECTS, MAX_CONCURRENT_CONNECTS,
+                30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_QUEUED_CONNECTS),
+                runnable -> new Thread(runnable, "bt-connect-" + threadCount.incrementAndGet()));
+        connectExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    // Starts connecting unless a session for the address is already live.
+    // Returns false if the address is invalid or too many connects are queued.
+    public boolean connect(String address) {
+        long key = MacAddresses.pack(address);
+        if (key == MacAddresses.INVALID) {
+            return false;
+        }
+        Session session = new Session(address, 0, SessionState.CONNECTING);
+        Session existing = sessions.putIfAbsent(key, session);
+        if (existing != null) {
+            return true;
+        }
+        listener.onSessionChanged(session.toInfo());
+        return submitConnect(key, session);
+    }
+
+    public boolean send(String address, byte[] data, long timeoutMs) throws InterruptedException {
+        return send(address, data, 0, data.length, timeoutMs);
+    }
+
+    public boolean send(String address, byte[] data, int offset, int length, long timeoutMs)
+            throws InterruptedException {
+        Session session = sessions.get(MacAddresses.pack(address));
+        RfcommConnection connection = session != null ? session.connection : null;
+        return connection != null && connection.send(data, offset, length, timeoutMs);
+    }
+
+    // Sends FrameCodec batches on whichever connection the address has at
+    // the time, so a writer can outlive a reconnect
+    public FrameCodec.Sink frameSink(String address, long timeoutMs) {
+        return batch -> {
+            try {
+                boolean sent;
+                if (batch.hasArray()) {
+                    sent = send(address, batch.array(), batch.arrayOffset() + batch.position(),
+                            batch.remaining(), timeoutMs);
+                } else {
+                    // Only oversized direct payloads take this path
+                    byte[] copy = new byte[batch.remaining()];
+                    batch.duplicate().get(copy);
+                    sent = send(address, copy, timeoutMs);
+                }
+                if (!sent) {
+                    throw new IOException("Not connected or stalled");
+                }
+                batch.position(batch.limit());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while sending");
+            }
+        };
+    }
+
+    // Closes a live session or cancels one that is still connecting
+    public void disconnect(String address) {
+        long key = MacAddresses.pack(address);
+        Session session = sessions.remove(key);
+        if (session != null) {
+            session.close(SessionState.CLOSED, null);
+            listener.onSessionChanged(session.toInfo());
+        }
+    }
+
+    public void disconnectAll() {
+        for (Session session : new ArrayList<>(sessions.values())) {
+            disconnect(session.address);
+        }
+    }
+
+    public boolean isConnected(String address) {
+        Session session = sessions.get(MacAddresses.pack(address));
+        return session != null && session.state == SessionState.CONNECTED;
+    }
+
+    public List<SessionInfo> snapshot() {
+        List<SessionInfo> infos = new ArrayList<>(sessions.size());
+        for (Session session : sessions.values()) {
+            infos.add(session.toInfo());
+        }
+        return infos;
+    }
+
+    public ConnectTelemetry getTelemetry() {
+        return telemetry;
+    }
+
+    public void shutdown() {
+        disconnectAll();
+        retryScheduler.shutdownNow();
+        connectExecutor.shutdownNow();
+    }
+
+    private boolean submitConnect(long key, Session session) {
+        try {
+            session.future = connectExecutor.submit(() -> runConnect(key, session));
+            return true;
+        } catch (RejectedExecutionException e) {
+            fail(key, session, "Too many pending connections");
+            return false;
+        }
+    }
+
+    private void runConnect(long key, Session session) {
+        long startNanos = System.nanoTime();
+        try {
+            RfcommTransport transport = transportFactory.create(session.address);
+            if (!session.attach(transport)) {
+                return; // Cancelled before the transport existed
+            }
+            transport.connect();
+            telemetry.recordSuccess(session.address, (System.nanoTime() - startNanos) / 1000);
+            RfcommConnection connection = new RfcommConnection(session.address, transport,
+                    STREAM_BUFFER_SIZE, new RfcommConnection.Listener() {
+                        @Override
+                        public void onData(byte[] buffer, int offset, int length) {
+                            listener.onData(session.address, buffer, offset, length);
+                        }
+
+                        @Override
+                        public void onClosed(IOException cause) {
+                            String reason = cause != null ? cause.getMessage() : null;
+                            // A drop with a cause is the link failing, not a local close
+                            long upMs = System.currentTimeMillis() - session.connectedAtMillis;
+                            int attempt = upMs >= MIN_STABLE_MS ? 1 : session.attempt + 1;
+                            if (cause != null && scheduleReconnect(key, session, attempt, reason)) {
+                                return;
+                            }
+                            if (sessions.remove(key, session)) {
+                                session.close(SessionState.CLOSED, reason);
+                                listener.onSessionChanged(session.toInfo());
+                            }
+                        }
+                    });
+            if (!session.connected(connection)) {
+                connection.close();
+                return;
+            }
+            // Announced before the threads start, so a link that drops at once
+            // still reports CONNECTED ahead of RECONNECTING or CLOSED
+            listener.onSessionChanged(session.toInfo());
+            connection.start();
+        } catch (IOException e) {
+            if (!session.isClosed()) {
+                telemetry.recordFailure(session.address, e.getMessage());
+            }
+            if (!scheduleReconnect(key, session, session.attempt + 1, e.getMessage())) {
+                fail(key, session, e.getMessage());
+            }
+        } catch (RuntimeException e) {
+            // A bad address or a missing permission; retrying will not help
+            String reason = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            if (!session.isClosed()) {
+                telemetry.recordFailure(session.address, reason);
+            }
+            fail(key, session, reason);
+        }
+    }
+
+    // Replaces the session with one that connects again after the backoff.
+    // Returns false if the policy gives up or the session was already closed.
+    private boolean scheduleReconnect(long key, Session session, int attempt, String reason) {
+        if (reconnectPolicy == null || !reconnectPolicy.shouldRetry(attempt) || session.isClosed()) {
+            return false;
+        }
+        Session next = new Session(session.address, attempt, SessionState.RECONNECTING);
+        next.failure = reason;
+        if (!sessions.replace(key, session, next)) {
+            return false;
+        }
+        // Called from the session's own connect task or connection thread, so
+        // only its resources are released here
+        session.retire(reason);
+        try {
+            next.future = retryScheduler.schedule(() -> {
+                if (next.beginAttempt()) {
+                    listener.onSessionChanged(next.toInfo());
+                    submitConnect(key, next);
+                }
+            }, reconnectPolicy.getDelayMs(attempt), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            sessions.remove(key, next);
+            return false;
+        }
+        listener.onSessionChanged(next.toInfo());
+        return true;
+    }
+
+    private void fail(long key, Session session, String reason) {
+        if (sessions.remove(key, session)) {
+            session.close(SessionState.FAILED, reason);
+            listener.onSessionChanged(session.toInfo());
+        }
+    }
+
+    private static class Session {
+        final String address;
+        final int attempt;
+        volatile SessionState state;
+        volatile Future<?> future;
+        volatile long connectedAtMillis;
+        volatile String failure;
+        private RfcommTransport transport;
+        volatile RfcommConnection connection;
+
+        Session(String address, int attempt, SessionState state) {
+            this.address = address;
+            this.attempt = attempt;
+            this.state = state;
+        }
+
+        synchronized boolean beginAttempt() {
+            if (state != SessionState.RECONNECTING) {
+                return false;
+            }
+            state = SessionState.CONNECTING;
+            return true;
+        }
+
+        boolean isClosed() {
+            SessionState current = state;
+            return current == SessionState.CLOSED || current == SessionState.FAILED;
+        }
+
+        // Like close(), but leaves the running task alone because it is the caller
+        synchronized void retire(String reason) {
+            Future<?> running = future;
+            future = null;
+            close(SessionState.FAILED, reason);
+            future = running;
+        }
+
+        synchronized boolean attach(RfcommTransport transport) {
+            if (state != SessionState.CONNECTING) {
+                closeQuietly(transport);
+                return false;
+            }
+            this.transport = transport;
+            return true;
+        }
+
+        synchronized boolean connected(RfcommConnection connection) {
+            if (state != SessionState.CONNECTING) {
+                return false;
+            }
+            this.connection = connection;
+            this.connectedAtMillis = System.currentTimeMillis();
+            this.state = SessionState.CONNECTED;
+            return true;
+        }
+
+        synchronized void close(SessionState finalState, String reason) {
+            if (state == SessionState.CLOSED || state == SessionState.FAILED) {
+                return;
+            }
+            state = finalState;
+            failure = reason;
+            if (connection != null) {
+                connection.close();
+            } else if (transport != null) {
+                // Aborts a blocking connect()
+                closeQuietly(transport);
+            }
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+
+        SessionInfo toInfo() {
+            RfcommConnection current = connection;
+            return new SessionInfo(address, state, connectedAtMillis,
+                    current != null ? current.getStats() : null, failure, attempt);
+        }
+
+        private static void closeQuietly(RfcommTransport transport) {
+            try {
+                transport.close();
+            } catch (IOException e) {
+                // Ignore close exception
+            }
+        }
+    }
+}
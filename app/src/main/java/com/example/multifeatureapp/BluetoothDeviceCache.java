@@ -0,0 +1,345 @@
+package com.example.multifeatureapp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// What we last learned about each Bluetooth device (name, class, RSSI, bond
+// state, SDP UUIDs), kept in memory by packed address and persisted to one
+// small file. Lookups never touch the binder, so lists can show names the
+// stack would only return after SDP. Loading happens on the executor, and
+// changes are written back at most once per write delay. At most
+// MAX_RECORDS devices are kept; a new one replaces the least recently seen.
+//
+// File layout:
+//   magic int, version int, count int, then per record:
+//   address long, lastSeen long, name UTF ("" if unknown), class int,
+//   rssi short, bond state byte, UUID count byte, UUIDs as two longs each
+public class BluetoothDeviceCache {
+    public static final int UNKNOWN = -1;
+    public static final int MAX_RECORDS = 512;
+
+    private static final int MAGIC = 0x42444331; // "BDC1"
+    private static final int VERSION = 1;
+    private static final int MAX_UUIDS = 64;
+
+    public static final class Record {
+        public final long address;
+        public final String name;
+        public final int deviceClass;
+        public final int rssi;
+        public final int bondState;
+        public final List<UUID> uuids;
+        public final long lastSeenMillis;
+
+        Record(long address, String name, int deviceClass, int rssi, int bondState,
+               List<UUID> uuids, long lastSeenMillis) {
+            this.address = address;
+            this.name = name;
+            this.deviceClass = deviceClass;
+            this.rssi = rssi;
+            this.bondState = bondState;
+            this.uuids = uuids;
+            this.lastSeenMillis = lastSeenMillis;
+        }
+    }
+
+    private final File file;
+    private final ScheduledExecutorService executor;
+    private final long writeDelayMs;
+    private final LongIntMap index = new LongIntMap(MAX_RECORDS);
+    private final ArrayList<Record> records = new ArrayList<>();
+    private final Runnable writeBack = this::writeBack;
+    private ScheduledFuture<?> pendingWrite;
+    private CompletableFuture<Integer> loaded;
+    private boolean fileLoaded;
+    private int writeCount;
+
+    public BluetoothDeviceCache(File file, ScheduledExecutorService executor, long writeDelayMs) {
+        this.file = file;
+        this.executor = executor;
+        this.writeDelayMs = writeDelayMs;
+    }
+
+    // Reads the file on the executor once and completes with the record count.
+    // Updates made before it completes are kept over the stored values.
+    public synchronized CompletableFuture<Integer> load() {
+        if (loaded == null) {
+            loaded = CompletableFuture.supplyAsync(this::readFile, executor);
+        }
+        return loaded;
+    }
+
+    public synchronized Record get(String address) {
+        int position = index.get(MacAddresses.pack(address));
+        return position == LongIntMap.MISSING ? null : records.get(position);
+    }
+
+    public synchronized String getName(String address) {
+        Record record = get(address);
+        return record != null ? record.name : null;
+    }
+
+    public synchronized int size() {
+        return records.size();
+    }
+
+    // The update methods ignore unknown values and return true if the stored
+    // record changed. Only the first change in a write delay schedules a write.
+    public synchronized boolean updateName(String address, String name, long nowMillis) {
+        Record current = getOrEmpty(address);
+        if (current == null || name == null || name.isEmpty() || name.equals(current.name)) {
+            return touch(current, nowMillis);
+        }
+        return put(new Record(current.address, name, current.deviceClass, current.rssi,
+                current.bondState, current.uuids, nowMillis), true);
+    }
+
+    public synchronized boolean updateDeviceClass(String address, int deviceClass, long nowMillis) {
+        Record current = getOrEmpty(address);
+        if (current == null || deviceClass == UNKNOWN || deviceClass == current.deviceClass) {
+            return touch(current, nowMillis);
+        }
+        return put(new Record(current.address, current.name, deviceClass, current.rssi,
+                current.bondState, current.uuids, nowMillis), true);
+    }
+
+    public synchronized boolean updateRssi(String address, int rssi, long nowMillis) {
+        Record current = getOrEmpty(address);
+        if (current == null || rssi == BluetoothDeviceRegistry.RSSI_UNKNOWN) {
+            return touch(current, nowMillis);
+        }
+        return put(new Record(current.address, current.name, current.deviceClass, rssi,
+                current.bondState, current.uuids, nowMillis), rssi != current.rssi);
+    }
+
+    public synchronized boolean updateBondState(String address, int bondState, long nowMillis) {
+        Record current = getOrEmpty(address);
+        if (current == null || bondState == UNKNOWN || bondState == current.bondState) {
+            return touch(current, nowMillis);
+        }
+        return put(new Record(current.address, current.name, current.deviceClass, current.rssi,
+                bondState, current.uuids, nowMillis), true);
+    }
+
+    public synchronized boolean updateUuids(String address, List<UUID> uuids, long nowMillis) {
+        Record current = getOrEmpty(address);
+        if (current == null || uuids == null || uuids.isEmpty() || uuids.equals(current.uuids)) {
+            return touch(current, nowMillis);
+        }
+        List<UUID> copy = Collections.unmodifiableList(
+                new ArrayList<>(uuids.subList(0, Math.min(uuids.size(), MAX_UUIDS))));
+        return put(new Record(current.address, current.name, current.deviceClass, current.rssi,
+                current.bondState, copy, nowMillis), true);
+    }
+
+    // Writes pending changes now, on the executor
+    public CompletableFuture<Void> flush() {
+        synchronized (this) {
+            if (pendingWrite != null) {
+                pendingWrite.cancel(false);
+                pendingWrite = null;
+            }
+        }
+        return CompletableFuture.runAsync(this::writeBack, executor);
+    }
+
+    synchronized int getWriteCount() {
+        return writeCount;
+    }
+
+    private Record getOrEmpty(String address) {
+        long key = MacAddresses.pack(address);
+        if (key == MacAddresses.INVALID) {
+            return null;
+        }
+        int position = index.get(key);
+        if (position != LongIntMap.MISSING) {
+            return records.get(position);
+        }
+        return new Record(key, null, UNKNOWN, BluetoothDeviceRegistry.RSSI_UNKNOWN, UNKNOWN,
+                Collections.emptyList(), 0);
+    }
+
+    // Keeps lastSeen current without forcing a write on its own
+    private boolean touch(Record current, long nowMillis) {
+        if (current == null || index.get(current.address) == LongIntMap.MISSING) {
+            return false;
+        }
+        put(new Record(current.address, current.name, current.deviceClass, current.rssi,
+                current.bondState, current.uuids, nowMillis), false);
+        return false;
+    }
+
+    private boolean put(Record record, boolean changed) {
+        int position = index.get(record.address);
+        if (position == LongIntMap.MISSING) {
+            if (records.size() >= MAX_RECORDS) {
+                evictLeastRecentlySeen();
+            }
+            index.put(record.address, records.size());
+            records.add(record);
+        } else {
+            records.set(position, record);
+        }
+        if (changed && pendingWrite == null) {
+            pendingWrite = executor.schedule(writeBack, writeDelayMs, TimeUnit.MILLISECONDS);
+        }
+        return changed;
+    }
+
+    private int readFile() {
+        synchronized (this) {
+            if (fileLoaded) {
+                return records.size();
+            }
+        }
+        List<Record> stored = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a device cache file");
+            }
+            int count = Math.min(in.readInt(), MAX_RECORDS);
+            for (int i = 0; i < count; i++) {
+                stored.add(readRecord(in));
+            }
+        } catch (FileNotFoundException e) {
+            stored.clear();
+        } catch (EOFException e) {
+            // Keep the records read before the truncation
+        } catch (IOException e) {
+            stored.clear();
+        }
+        synchronized (this) {
+            fileLoaded = true;
+            for (Record record : stored) {
+                int position = index.get(record.address);
+                if (position == LongIntMap.MISSING) {
+                    index.put(record.address, records.size());
+                    records.add(record);
+                } else {
+                    records.set(position, merge(records.get(position), record));
+                }
+            }
+            if (records.size() > MAX_RECORDS) {
+                // Keep the most recently seen devices
+                records.sort(Comparator.comparingLong((Record r) -> r.lastSeenMillis).reversed());
+                records.subList(MAX_RECORDS, records.size()).clear();
+                reindex();
+            }
+            return records.size();
+        }
+    }
+
+    private void evictLeastRecentlySeen() {
+        int oldest = 0;
+        for (int i = 1; i < records.size(); i++) {
+            if (records.get(i).lastSeenMillis < records.get(oldest).lastSeenMillis) {
+                oldest = i;
+            }
+        }
+        // The last record fills the gap instead of shifting the rest down
+        Record last = records.remove(records.size() - 1);
+        if (oldest < records.size()) {
+            records.set(oldest, last);
+        }
+        reindex();
+    }
+
+    // LongIntMap can't remove keys, so evictions rebuild it
+    private void reindex() {
+        index.clear();
+        for (int i = 0; i < records.size(); i++) {
+            index.put(records.get(i).address, i);
+        }
+    }
+
+    // Values learned before loading win, the stored record fills the gaps
+    private static Record merge(Record fresh, Record stored) {
+        return new Record(fresh.address,
+                fresh.name != null ? fresh.name : stored.name,
+                fresh.deviceClass != UNKNOWN ? fresh.deviceClass : stored.deviceClass,
+                fresh.rssi != BluetoothDeviceRegistry.RSSI_UNKNOWN ? fresh.rssi : stored.rssi,
+                fresh.bondState != UNKNOWN ? fresh.bondState : stored.bondState,
+                !fresh.uuids.isEmpty() ? fresh.uuids : stored.uuids,
+                Math.max(fresh.lastSeenMillis, stored.lastSeenMillis));
+    }
+
+    private static Record readRecord(DataInputStream in) throws IOException {
+        long address = in.readLong();
+        long lastSeen = in.readLong();
+        String name = in.readUTF();
+        int deviceClass = in.readInt();
+        int rssi = in.readShort();
+        int bondState = in.readByte();
+        int uuidCount = in.readUnsignedByte();
+        List<UUID> uuids = new ArrayList<>(uuidCount);
+        for (int i = 0; i < uuidCount; i++) {
+            uuids.add(new UUID(in.readLong(), in.readLong()));
+        }
+        return new Record(address, name.isEmpty() ? null : name, deviceClass, rssi, bondState,
+                Collections.unmodifiableList(uuids), lastSeen);
+    }
+
+    private void writeBack() {
+        // Never replace stored records that were not read yet
+        readFile();
+        List<Record> snapshot;
+        synchronized (this) {
+            pendingWrite = null;
+            snapshot = new ArrayList<>(records);
+        }
+        // Written to a temporary file and renamed, so a crash leaves the old cache
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(snapshot.size());
+            for (Record record : snapshot) {
+                writeRecord(out, record);
+            }
+            out.flush();
+            stream.getFD().sync();
+        } catch (IOException e) {
+            temp.delete();
+            return;
+        }
+        if (temp.renameTo(file)) {
+            synchronized (this) {
+                writeCount++;
+            }
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, Record record) throws IOException {
+        out.writeLong(record.address);
+        out.writeLong(record.lastSeenMillis);
+        out.writeUTF(record.name != null ? record.name : "");
+        out.writeInt(record.deviceClass);
+        out.writeShort(Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, record.rssi)));
+        out.writeByte(record.bondState);
+        out.writeByte(record.uuids.size());
+        for (UUID uuid : record.uuids) {
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        }
+    }
+}
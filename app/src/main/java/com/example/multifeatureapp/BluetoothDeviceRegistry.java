@@ -0,0 +1,129 @@
+package com.example.multifeatureapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Discovered devices keyed by their MAC address packed into a long. Upserts
+// are O(1) through a LongIntMap index into an insertion-ordered list, so the
+// list order stays stable as devices are seen again. RSSI is smoothed with an
+// exponential moving average, and devices not seen for a while can be expired.
+public class BluetoothDeviceRegistry<T> {
+    public static final int RSSI_UNKNOWN = Short.MIN_VALUE;
+    public static final float DEFAULT_RSSI_ALPHA = 0.3f;
+
+    public static final class Entry<T> {
+        public final long address;
+        public T device;
+        public int rssi = RSSI_UNKNOWN;
+        public float smoothedRssi = RSSI_UNKNOWN;
+        public long firstSeenMillis;
+        public long lastSeenMillis;
+        public int sightings;
+
+        Entry(long address) {
+            this.address = address;
+        }
+    }
+
+    private final LongIntMap index = new LongIntMap(256);
+    private final ArrayList<Entry<T>> entries = new ArrayList<>();
+    private final List<Entry<T>> entriesView = Collections.unmodifiableList(entries);
+    private final float rssiAlpha;
+    private int version;
+
+    public BluetoothDeviceRegistry() {
+        this(DEFAULT_RSSI_ALPHA);
+    }
+
+    // rssiAlpha is the weight of a new reading, 1 disables smoothing
+    public BluetoothDeviceRegistry(float rssiAlpha) {
+        if (rssiAlpha <= 0 || rssiAlpha > 1) {
+            throw new IllegalArgumentException("rssiAlpha must be in (0, 1]");
+        }
+        this.rssiAlpha = rssiAlpha;
+    }
+
+    // Returns true if the device was not known before
+    public boolean upsert(String address, T device, int rssi, long nowMillis) {
+        long key = MacAddresses.pack(address);
+        if (key == MacAddresses.INVALID) {
+            return false;
+        }
+        int position = index.get(key);
+        boolean added = position == LongIntMap.MISSING;
+        Entry<T> entry;
+        if (added) {
+            entry = new Entry<>(key);
+            entry.firstSeenMillis = nowMillis;
+            index.put(key, entries.size());
+            entries.add(entry);
+        } else {
+            entry = entries.get(position);
+        }
+        entry.device = device;
+        if (rssi != RSSI_UNKNOWN) {
+            entry.rssi = rssi;
+            entry.smoothedRssi = entry.smoothedRssi == RSSI_UNKNOWN
+                    ? rssi : entry.smoothedRssi + rssiAlpha * (rssi - entry.smoothedRssi);
+        }
+        entry.lastSeenMillis = nowMillis;
+        entry.sightings++;
+        version++;
+        return added;
+    }
+
+    public Entry<T> get(String address) {
+        int position = index.get(MacAddresses.pack(address));
+        return position == LongIntMap.MISSING ? null : entries.get(position);
+    }
+
+    public boolean contains(String address) {
+        return index.get(MacAddresses.pack(address)) != LongIntMap.MISSING;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Read-only and live, so callers can't break the index but must not hold
+    // on to it across upserts
+    public List<Entry<T>> getEntries() {
+        return entriesView;
+    }
+
+    // Bumped on every change, lets the UI skip frames where nothing changed
+    public int getVersion() {
+        return version;
+    }
+
+    // Drops devices last seen before cutoffMillis, keeping the order of the
+    // rest. Returns how many were removed.
+    public int expire(long cutoffMillis) {
+        int kept = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            Entry<T> entry = entries.get(i);
+            if (entry.lastSeenMillis >= cutoffMillis) {
+                entries.set(kept++, entry);
+            }
+        }
+        int removed = entries.size() - kept;
+        if (removed == 0) {
+            return 0;
+        }
+        entries.subList(kept, entries.size()).clear();
+        // The index can't remove keys, so it is rebuilt from the survivors
+        index.clear();
+        for (int i = 0; i < kept; i++) {
+            index.put(entries.get(i).address, i);
+        }
+        version++;
+        return removed;
+    }
+
+    public void clear() {
+        entries.clear();
+        index.clear();
+        version++;
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.multifeatureapp;
+
+import android.bluetooth.le.ScanSettings;
+
+// How BluetoothActivity looks for devices: classic inquiry, or a BLE scan in
+// one of the three power profiles. BLE results are batched in the controller
+// for reportDelayMs before they are delivered.
+public enum BluetoothScanMode {
+    CLASSIC("Classic discovery", -1, 0),
+    BLE_LOW_LATENCY("BLE low latency", ScanSettings.SCAN_MODE_LOW_LATENCY, 0),
+    BLE_BALANCED("BLE balanced", ScanSettings.SCAN_MODE_BALANCED, 1000),
+    BLE_LOW_POWER("BLE low power", ScanSettings.SCAN_MODE_LOW_POWER, 5000);
+
+    public final String label;
+    public final int bleScanMode;
+    public final long reportDelayMs;
+
+    BluetoothScanMode(String label, int bleScanMode, long reportDelayMs) {
+        this.label = label;
+        this.bleScanMode = bleScanMode;
+        this.reportDelayMs = reportDelayMs;
+    }
+
+    public boolean isBle() {
+        return this != CLASSIC;
+    }
+
+    public BluetoothScanMode next() {
+        BluetoothScanMode[] modes = values();
+        return modes[(ordinal() + 1) % modes.length];
+    }
+}
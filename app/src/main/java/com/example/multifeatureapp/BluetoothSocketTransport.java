@@ -0,0 +1,185 @@
+package com.example.multifeatureapp;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothSocket;
+import android.os.Build;
+import android.util.Log;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class BluetoothSocketTransport implements RfcommTransport {
+    private static final String TAG = "BluetoothSocketTransport";
+
+    // Channel caching rests on two non-SDK interfaces: the hidden method
+    // BluetoothDevice.createRfcommSocket(int) and the private field
+    // BluetoothSocket.mPort. Since Android 9 the platform may deny them
+    // based on targetSdk, so the first denial turns caching off for the
+    // process, logged once, and every connect does the SDP lookup.
+    private static final AtomicBoolean hiddenApisDenied = new AtomicBoolean();
+
+    // RFCOMM channels found through SDP, by packed device address. Connecting
+    // straight to a known channel skips the service lookup, which is often
+    // most of the connect time.
+    public static class ChannelCache {
+        private final ConcurrentHashMap<Long, Integer> channels = new ConcurrentHashMap<>();
+
+        public int get(String address) {
+            Integer channel = channels.get(MacAddresses.pack(address));
+            return channel != null ? channel : -1;
+        }
+
+        void put(String address, int channel) {
+            channels.put(MacAddresses.pack(address), channel);
+        }
+
+        void invalidate(String address) {
+            channels.remove(MacAddresses.pack(address));
+        }
+    }
+
+    private final BluetoothDevice device;
+    private final UUID serviceUuid;
+    private final ChannelCache channelCache;
+    private BluetoothSocket socket;
+    private boolean closed;
+
+    public BluetoothSocketTransport(BluetoothSocket socket) {
+        this.device = null;
+        this.serviceUuid = null;
+        this.channelCache = null;
+        this.socket = socket;
+    }
+
+    // Connects to the service by UUID, or to its cached channel when known
+    public BluetoothSocketTransport(BluetoothDevice device, UUID serviceUuid, ChannelCache channelCache) {
+        this.device = device;
+        this.serviceUuid = serviceUuid;
+        this.channelCache = channelCache;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        if (device == null) {
+            currentSocket().connect();
+            return;
+        }
+        String address = device.getAddress();
+        int channel = hiddenApisDenied.get() ? -1 : channelCache.get(address);
+        if (channel > 0) {
+            BluetoothSocket direct = createOnChannel(device, channel);
+            if (direct != null && use(direct)) {
+                try {
+                    direct.connect();
+                    return;
+                } catch (IOException e) {
+                    // The service may have moved, so the next attempt looks it
+                    // up again. Doing that now would stack a second page and
+                    // SDP timeout onto this one.
+                    channelCache.invalidate(address);
+                    closeQuietly(direct);
+                    throw e;
+                }
+            }
+        }
+        BluetoothSocket lookedUp = device.createRfcommSocketToServiceRecord(serviceUuid);
+        if (!use(lookedUp)) {
+            throw new IOException("Transport closed");
+        }
+        lookedUp.connect();
+        int found = hiddenApisDenied.get() ? -1 : channelOf(lookedUp);
+        if (found > 0) {
+            channelCache.put(address, found);
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return currentSocket().getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return currentSocket().getOutputStream();
+    }
+
+    @Override
+    public void close() throws IOException {
+        BluetoothSocket current;
+        synchronized (this) {
+            closed = true;
+            current = socket;
+        }
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private synchronized BluetoothSocket currentSocket() throws IOException {
+        if (socket == null) {
+            throw new IOException("Not connected");
+        }
+        return socket;
+    }
+
+    // Makes the socket the one close() aborts, unless close() already ran
+    private boolean use(BluetoothSocket next) {
+        synchronized (this) {
+            if (!closed) {
+                socket = next;
+                return true;
+            }
+        }
+        closeQuietly(next);
+        return false;
+    }
+
+    // Non-SDK, see hiddenApisDenied
+    private static BluetoothSocket createOnChannel(BluetoothDevice device, int channel) {
+        try {
+            Method method = device.getClass().getMethod("createRfcommSocket", int.class);
+            return (BluetoothSocket) method.invoke(device, channel);
+        } catch (InvocationTargetException e) {
+            // The method itself failed, e.g. with Bluetooth off
+            return null;
+        } catch (Exception e) {
+            denyHiddenApis("BluetoothDevice.createRfcommSocket(int)", e);
+            return null;
+        }
+    }
+
+    // Non-SDK, see hiddenApisDenied
+    private static int channelOf(BluetoothSocket socket) {
+        try {
+            Field port = BluetoothSocket.class.getDeclaredField("mPort");
+            port.setAccessible(true);
+            return port.getInt(socket);
+        } catch (Exception e) {
+            denyHiddenApis("BluetoothSocket.mPort", e);
+            return -1;
+        }
+    }
+
+    private static void denyHiddenApis(String member, Exception cause) {
+        if (hiddenApisDenied.compareAndSet(false, true)) {
+            String reason = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                    ? "restricted as a non-SDK interface" : "not available";
+            Log.w(TAG, member + " is " + reason + " on API " + Build.VERSION.SDK_INT
+                    + ", connecting through SDP only", cause);
+        }
+    }
+
+    private static void closeQuietly(BluetoothSocket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignore close exception
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.multifeatureapp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Fixed-size blocking byte queue for one producer and one consumer. Writers
+// block while it is full, which is how backpressure reaches the socket.
+public class ByteRingBuffer {
+    private final byte[] buffer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private int head; // next byte to read
+    private int size;
+    private boolean closed;
+
+    public ByteRingBuffer(int capacity) {
+        buffer = new byte[capacity];
+    }
+
+    // Writes all bytes or none, waiting up to timeoutMs until length bytes are
+    // free. A timed-out write leaves nothing behind, so the reader never sees
+    // part of a message, and messages from several writers never interleave.
+    // Returns length, 0 on timeout and -1 once closed.
+    public int write(byte[] src, int offset, int length, long timeoutMs) throws InterruptedException {
+        if (length > buffer.length) {
+            throw new IllegalArgumentException("length " + length + " exceeds capacity " + buffer.length);
+        }
+        long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        lock.lock();
+        try {
+            while (buffer.length - size < length) {
+                if (closed) {
+                    return -1;
+                }
+                if (remainingNanos <= 0) {
+                    return 0;
+                }
+                remainingNanos = notFull.awaitNanos(remainingNanos);
+            }
+            if (closed) {
+                return -1;
+            }
+            int tail = (head + size) % buffer.length;
+            int first = Math.min(length, buffer.length - tail);
+            System.arraycopy(src, offset, buffer, tail, first);
+            System.arraycopy(src, offset + first, buffer, 0, length - first);
+            size += length;
+            notEmpty.signal();
+            return length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Reads at least one byte, blocking until data arrives. Returns -1 once the
+    // buffer is closed and drained.
+    public int read(byte[] dst, int offset, int length) throws InterruptedException {
+        lock.lock();
+        try {
+            while (size == 0) {
+                if (closed) {
+                    return -1;
+                }
+                notEmpty.await();
+            }
+            int chunk = Math.min(length, Math.min(size, buffer.length - head));
+            System.arraycopy(buffer, head, dst, offset, chunk);
+            head = (head + chunk) % buffer.length;
+            size -= chunk;
+            // Waiting writers need different amounts of space
+            notFull.signalAll();
+            return chunk;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int available() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.multifeatureapp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Connect attempts per device: how many succeeded, and a latency histogram of
+// the successful ones, from starting connect() to the link being up.
+public class ConnectTelemetry {
+    public static class DeviceStats {
+        public final String address;
+        public final long attempts;
+        public final long successes;
+        public final long p50Micros;
+        public final long p95Micros;
+        public final long maxMicros;
+        public final String lastFailure;
+
+        DeviceStats(String address, long attempts, long successes, long p50Micros,
+                    long p95Micros, long maxMicros, String lastFailure) {
+            this.address = address;
+            this.attempts = attempts;
+            this.successes = successes;
+            this.p50Micros = p50Micros;
+            this.p95Micros = p95Micros;
+            this.maxMicros = maxMicros;
+            this.lastFailure = lastFailure;
+        }
+
+        public double getSuccessRate() {
+            return attempts > 0 ? (double) successes / attempts : 0;
+        }
+    }
+
+    private static class Device {
+        final String address;
+        final LatencyHistogram latency = new LatencyHistogram();
+        long attempts;
+        long successes;
+        String lastFailure;
+
+        Device(String address) {
+            this.address = address;
+        }
+
+        synchronized DeviceStats toStats() {
+            return new DeviceStats(address, attempts, successes, latency.getPercentile(50),
+                    latency.getPercentile(95), latency.getMax(), lastFailure);
+        }
+    }
+
+    private final ConcurrentHashMap<Long, Device> devices = new ConcurrentHashMap<>();
+
+    public void recordSuccess(String address, long latencyMicros) {
+        Device device = device(address);
+        if (device == null) {
+            return;
+        }
+        synchronized (device) {
+            device.attempts++;
+            device.successes++;
+            device.latency.record(latencyMicros);
+        }
+    }
+
+    public void recordFailure(String address, String reason) {
+        Device device = device(address);
+        if (device == null) {
+            return;
+        }
+        synchronized (device) {
+            device.attempts++;
+            device.lastFailure = reason;
+        }
+    }
+
+    public DeviceStats get(String address) {
+        Device device = devices.get(MacAddresses.pack(address));
+        return device != null ? device.toStats() : null;
+    }
+
+    public List<DeviceStats> snapshot() {
+        List<DeviceStats> stats = new ArrayList<>(devices.size());
+        for (Device device : devices.values()) {
+            stats.add(device.toStats());
+        }
+        return stats;
+    }
+
+    private Device device(String address) {
+        long key = MacAddresses.pack(address);
+        if (key == MacAddresses.INVALID) {
+            return null;
+        }
+        return devices.computeIfAbsent(key, k -> new Device(address));
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.multifeatureapp;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Races a set of endpoints against each other: the first one to validate
+// wins and every probe still in flight is cancelled. The endpoints answer
+// 204 with an empty body, so any other answer, such as a captive portal's
+// login page or redirect, counts as a failed probe.
+public class ConnectivityProber {
+    public interface Transport {
+        Call newCall(String endpoint);
+    }
+
+    public interface Call {
+        // True only when the endpoint answered 204 with an empty body
+        boolean execute() throws IOException;
+
+        void cancel();
+    }
+
+    public static class Result {
+        public final String endpoint;
+        public final long latencyMs;
+        public final int probesStarted;
+
+        Result(String endpoint, long latencyMs, int probesStarted) {
+            this.endpoint = endpoint;
+            this.latencyMs = latencyMs;
+            this.probesStarted = probesStarted;
+        }
+
+        public boolean isConnected() {
+            return endpoint != null;
+        }
+    }
+
+    private final List<String> endpoints;
+    private final Transport transport;
+    private final ExecutorService executor;
+    private final long timeoutMs;
+
+    public ConnectivityProber(List<String> endpoints, Transport transport,
+                              ExecutorService executor, long timeoutMs) {
+        this.endpoints = Collections.unmodifiableList(new ArrayList<>(endpoints));
+        this.transport = transport;
+        this.executor = executor;
+        this.timeoutMs = timeoutMs;
+    }
+
+    // contentLength is -1 when the response declared none
+    static boolean isValidated(int statusCode, long contentLength) {
+        return statusCode == HttpURLConnection.HTTP_NO_CONTENT && contentLength <= 0;
+    }
+
+    public Result probe() throws InterruptedException {
+        CompletionService<Boolean> completionService = new ExecutorCompletionService<>(executor);
+        List<Call> calls = new ArrayList<>(endpoints.size());
+        List<Future<Boolean>> futures = new ArrayList<>(endpoints.size());
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+
+        for (String endpoint : endpoints) {
+            Call call = transport.newCall(endpoint);
+            calls.add(call);
+            futures.add(completionService.submit(call::execute));
+        }
+
+        try {
+            for (int pending = futures.size(); pending > 0; pending--) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                Future<Boolean> done = completionService.poll(remaining, TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    break; // Timed out
+                }
+                try {
+                    if (done.get()) {
+                        long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                        return new Result(endpoints.get(futures.indexOf(done)), latencyMs, futures.size());
+                    }
+                } catch (ExecutionException e) {
+                    // This endpoint failed, wait for the others
+                }
+            }
+            return new Result(null, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), futures.size());
+        } finally {
+            for (int i = 0; i < futures.size(); i++) {
+                if (!futures.get(i).isDone()) {
+                    futures.get(i).cancel(true);
+                    calls.get(i).cancel();
+                }
+            }
+        }
+    }
+
+    // Default transport, one HttpURLConnection per call
+    public static class UrlConnectionTransport implements Transport {
+        private final int timeoutMs;
+
+        public UrlConnectionTransport(int timeoutMs) {
+            this.timeoutMs = timeoutMs;
+        }
+
+        @Override
+        public Call newCall(String endpoint) {
+            return new Call() {
+                private volatile HttpURLConnection connection;
+
+                @Override
+                public boolean execute() throws IOException {
+                    HttpURLConnection urlConnection = (HttpURLConnection) new URL(endpoint).openConnection();
+                    connection = urlConnection;
+                    try {
+                        urlConnection.setRequestProperty("User-Agent", "Android");
+                        urlConnection.setConnectTimeout(timeoutMs);
+                        urlConnection.setReadTimeout(timeoutMs);
+                        // A portal's redirect must not be followed to a page that answers 2xx
+                        urlConnection.setInstanceFollowRedirects(false);
+                        return isValidated(urlConnection.getResponseCode(), urlConnection.getContentLengthLong());
+                    } finally {
+                        urlConnection.disconnect();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    HttpURLConnection urlConnection = connection;
+                    if (urlConnection != null) {
+                        urlConnection.disconnect();
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.multifeatureapp;
+
+// Appends fixed-point numbers to a StringBuilder without String.format, so
+// labels updated for every fix don't create a Formatter and its garbage.
+public final class CoordinateFormat {
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L
+    };
+
+    private CoordinateFormat() {
+    }
+
+    // Rounds half away from zero to at most 8 decimals, like %.Nf
+    public static StringBuilder appendFixed(StringBuilder out, double value, int decimals) {
+        if (decimals < 0 || decimals >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("decimals out of range: " + decimals);
+        }
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return out.append(value);
+        }
+        long scale = POWERS_OF_TEN[decimals];
+        double scaled = Math.abs(value) * scale;
+        if (scaled >= Long.MAX_VALUE) {
+            return out.append(value);
+        }
+        long rounded = (long) (scaled + 0.5);
+        if (value < 0 && rounded != 0) {
+            out.append('-');
+        }
+        out.append(rounded / scale);
+        if (decimals > 0) {
+            out.append('.');
+            long fraction = rounded % scale;
+            // Leading zeros of the fraction
+            for (long limit = scale / 10; limit > 1 && fraction < limit; limit /= 10) {
+                out.append('0');
+            }
+            out.append(fraction);
+        }
+        return out;
+    }
+}
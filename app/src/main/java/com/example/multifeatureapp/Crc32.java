@@ -0,0 +1,39 @@
+package com.example.multifeatureapp;
+
+import java.nio.ByteBuffer;
+
+// Table driven CRC-32 (IEEE) over ByteBuffer ranges using absolute gets, so
+// checking a frame in place neither copies nor moves the buffer position.
+// java.util.zip.CRC32.update(ByteBuffer) only exists from API 26.
+public final class Crc32 {
+    private static final int[] TABLE = new int[256];
+
+    static {
+        for (int n = 0; n < 256; n++) {
+            int c = n;
+            for (int k = 0; k < 8; k++) {
+                c = (c & 1) != 0 ? 0xEDB88320 ^ (c >>> 1) : c >>> 1;
+            }
+            TABLE[n] = c;
+        }
+    }
+
+    private Crc32() {
+    }
+
+    public static int compute(ByteBuffer buffer, int offset, int length) {
+        int crc = 0xFFFFFFFF;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            crc = TABLE[(crc ^ buffer.get(i)) & 0xFF] ^ (crc >>> 8);
+        }
+        return ~crc;
+    }
+
+    public static int compute(byte[] data, int offset, int length) {
+        int crc = 0xFFFFFFFF;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            crc = TABLE[(crc ^ data[i]) & 0xFF] ^ (crc >>> 8);
+        }
+        return ~crc;
+    }
+}
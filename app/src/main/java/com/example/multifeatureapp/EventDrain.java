@@ -0,0 +1,67 @@
+package com.example.multifeatureapp;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Lock-free hand-off from any number of producer threads to one consumer.
+// Producers never block; events wait in a ConcurrentLinkedQueue and the
+// consumer applies everything queued in one pass on its executor, then gets a
+// single onDrained() call, so a burst costs one wakeup instead of one each.
+public class EventDrain<E> {
+    public interface Consumer<E> {
+        void onEvent(E event);
+
+        // After each pass, a good place to publish derived state once
+        void onDrained(int eventCount);
+    }
+
+    private final ConcurrentLinkedQueue<E> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Executor consumerExecutor;
+    private final Consumer<E> consumer;
+    private final Runnable drain = this::drain;
+
+    // The executor must run tasks one at a time, e.g. a Handler on a HandlerThread,
+    // and throw RejectedExecutionException when it can't take one
+    public EventDrain(Executor consumerExecutor, Consumer<E> consumer) {
+        this.consumerExecutor = consumerExecutor;
+        this.consumer = consumer;
+    }
+
+    public void offer(E event) {
+        queue.offer(event);
+        pending.incrementAndGet();
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                consumerExecutor.execute(drain);
+            } catch (RejectedExecutionException e) {
+                // The event stays queued; let the next offer try to schedule
+                // a pass instead of waiting for one that never runs
+                scheduled.set(false);
+            }
+        }
+    }
+
+    public int getPending() {
+        return pending.get();
+    }
+
+    private void drain() {
+        // Cleared first, so an event offered during the pass schedules another one
+        scheduled.set(false);
+        int count = 0;
+        E event;
+        while ((event = queue.poll()) != null) {
+            pending.decrementAndGet();
+            consumer.onEvent(event);
+            count++;
+        }
+        if (count > 0) {
+            consumer.onDrained(count);
+        }
+    }
+}
@@ -0,0 +1,538 @@
+package com.example.multifeatureapp;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+// Chunked file transfer over FrameCodec frames that resumes after a disconnect.
+//
+//   OFFER  [magic][type][u64 id][u64 size][UTF-8 name]  sender -> receiver
+//   RESUME [magic][type][u64 id][u64 offset]            receiver -> sender, where to (re)start
+//   CHUNK  [magic][type][u64 id][u64 offset][data]      sender -> receiver
+//   ACK    [magic][type][u64 id][u64 offset]            receiver -> sender, bytes stored so far
+//   REJECT [magic][type][u64 id][u64 max size]          receiver -> sender, offer refused
+//
+// The 4 byte magic keeps application frames that happen to start with a
+// type byte from being taken for transfer messages.
+// Each chunk is one frame, so it is covered by the frame's CRC-32 and a
+// damaged chunk is dropped by the decoder. The sender keeps a window of
+// unacknowledged bytes in flight. The receiver only appends in order: on a
+// gap it answers RESUME once and the sender goes back to that offset, and an
+// ack timeout does the same. Partial files are named after the transfer id,
+// so offering the same id again, on a new connection or after a restart,
+// continues from the bytes already stored. The receiver refuses files over
+// its size limit or larger than the free space, and deletes partial files
+// abandoned for longer than PARTIAL_MAX_AGE_MS.
+public final class FileTransfer {
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024;
+    public static final int DEFAULT_WINDOW_CHUNKS = 8;
+    public static final long DEFAULT_ACK_TIMEOUT_MS = 3000;
+    public static final long DEFAULT_MAX_FILE_SIZE = 512L * 1024 * 1024;
+    // Left free on the receiving volume for everything else
+    public static final long FREE_SPACE_MARGIN = 64L * 1024 * 1024;
+    public static final long PARTIAL_MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000;
+
+    static final int MAGIC = 0x42544654; // "BTFT"
+    static final byte OFFER = 0x70;
+    static final byte RESUME = 0x71;
+    static final byte CHUNK = 0x72;
+    static final byte ACK = 0x73;
+    static final byte REJECT = 0x74;
+
+    private static final int TYPE_OFFSET = 4;
+    private static final int ID_OFFSET = 5;
+    private static final int VALUE_OFFSET = 13;
+    private static final int CONTROL_SIZE = 21;
+    private static final int CHUNK_HEADER_SIZE = 21;
+    public static final int MAX_CHUNK_SIZE = FrameCodec.MAX_PAYLOAD - CHUNK_HEADER_SIZE;
+    // Ack timeouts in a row before the sender gives up on the link
+    private static final int MAX_TIMEOUTS = 5;
+    private static final String PARTIAL_SUFFIX = ".part";
+
+    private FileTransfer() {
+    }
+
+    public static boolean isTransferFrame(ByteBuffer buffer, int offset, int length) {
+        if (length < CONTROL_SIZE || buffer.getInt(offset) != MAGIC) {
+            return false;
+        }
+        byte type = buffer.get(offset + TYPE_OFFSET);
+        return type >= OFFER && type <= REJECT;
+    }
+
+    public static class Result {
+        public final long size;
+        public final long startOffset;
+        // Chunk bytes put on the link, including resent ones
+        public final long bytesSent;
+        public final long elapsedNanos;
+
+        Result(long size, long startOffset, long bytesSent, long elapsedNanos) {
+            this.size = size;
+            this.startOffset = startOffset;
+            this.bytesSent = bytesSent;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getBytesTransferred() {
+            return size - startOffset;
+        }
+
+        public double getThroughputBytesPerSecond() {
+            return elapsedNanos > 0 ? getBytesTransferred() * 1e9 / elapsedNanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            long resent = Math.max(0, bytesSent - getBytesTransferred());
+            return getBytesTransferred() / 1024 + " KB in " + elapsedNanos / 1_000_000 + " ms, "
+                    + Math.round(getThroughputBytesPerSecond() / 1024) + " KB/s"
+                    + (startOffset > 0 ? ", resumed at " + startOffset : "")
+                    + (resent > 0 ? ", " + resent / 1024 + " KB resent" : "");
+        }
+    }
+
+    // Streams a file straight from its channel. run() blocks on the calling
+    // thread while onFrame() is fed the replies from the connection's
+    // dispatch thread.
+    public static class Sender {
+        private final FileChannel file;
+        private final long transferId;
+        private final byte[] name;
+        private final long size;
+        private final int chunkSize;
+        private final long windowBytes;
+        private final long ackTimeoutMs;
+        // Frame header and data, reused for every chunk
+        private final ByteBuffer chunk;
+        private final ByteBuffer offer;
+        // Guarded by this
+        private long acked;
+        private long next;
+        private long resumeOffset = -1;
+        private long progress;
+        private IOException failure;
+
+        public Sender(FileChannel file, long transferId, String name) throws IOException {
+            this(file, transferId, name, DEFAULT_CHUNK_SIZE, DEFAULT_WINDOW_CHUNKS, DEFAULT_ACK_TIMEOUT_MS);
+        }
+
+        public Sender(FileChannel file, long transferId, String name, int chunkSize,
+                      int windowChunks, long ackTimeoutMs) throws IOException {
+            if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE || windowChunks <= 0) {
+                throw new IllegalArgumentException("Bad chunk size or window");
+            }
+            this.file = file;
+            this.transferId = transferId;
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            if (this.name.length > FrameCodec.MAX_PAYLOAD - CONTROL_SIZE) {
+                throw new IllegalArgumentException("Name too long");
+            }
+            this.size = file.size();
+            this.chunkSize = chunkSize;
+            this.windowBytes = (long) chunkSize * windowChunks;
+            this.ackTimeoutMs = ackTimeoutMs;
+            this.chunk = ByteBuffer.allocate(CHUNK_HEADER_SIZE + chunkSize);
+            this.offer = ByteBuffer.allocate(CONTROL_SIZE + this.name.length);
+        }
+
+        public long getTransferId() {
+            return transferId;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public synchronized long getConfirmedOffset() {
+            return acked;
+        }
+
+        public synchronized boolean isComplete() {
+            return acked >= size && resumeOffset >= 0;
+        }
+
+        // Sends the file and returns once the receiver has stored all of it.
+        // After a failure it can be run again with the writer of a new
+        // connection, and continues from what the receiver confirmed.
+        public Result run(FrameCodec.Writer writer) throws IOException, InterruptedException {
+            synchronized (this) {
+                resumeOffset = -1;
+                failure = null;
+            }
+            long startNanos = System.nanoTime();
+            long startOffset = awaitResume(writer);
+            long bytesSent = 0;
+            int timeouts = 0;
+            while (true) {
+                long offset = -1;
+                int length = 0;
+                synchronized (this) {
+                    checkFailure();
+                    if (acked >= size) {
+                        break;
+                    }
+                    if (next < size && next - acked < windowBytes) {
+                        offset = next;
+                        length = (int) Math.min(chunkSize, size - offset);
+                        next += length;
+                    }
+                }
+                // Never write while holding the lock, onFrame() needs it to drain acks
+                if (offset >= 0) {
+                    sendChunk(writer, offset, length);
+                    bytesSent += length;
+                    continue;
+                }
+                writer.flush();
+                synchronized (this) {
+                    if (awaitProgress()) {
+                        timeouts = 0;
+                    } else if (++timeouts > MAX_TIMEOUTS) {
+                        throw new IOException("No acknowledgement from receiver");
+                    } else {
+                        // Go back and resend everything after the last ack
+                        next = acked;
+                    }
+                }
+            }
+            return new Result(size, startOffset, bytesSent, System.nanoTime() - startNanos);
+        }
+
+        // Wakes run() with an error, e.g. when the connection closes
+        public synchronized void abort(IOException cause) {
+            failure = cause != null ? cause : new IOException("Transfer aborted");
+            notifyAll();
+        }
+
+        // Returns true if the frame was a reply to this transfer
+        public boolean onFrame(ByteBuffer buffer, int offset, int length) {
+            if (!isTransferFrame(buffer, offset, length) || buffer.getLong(offset + ID_OFFSET) != transferId) {
+                return false;
+            }
+            byte type = buffer.get(offset + TYPE_OFFSET);
+            long value = buffer.getLong(offset + VALUE_OFFSET);
+            if (type == REJECT) {
+                abort(new IOException("Receiver refused the file, it takes at most " + value + " bytes"));
+                return true;
+            }
+            if (value < 0 || value > size) {
+                return false;
+            }
+            synchronized (this) {
+                if (type == RESUME) {
+                    // The first one starts the run, later ones report a gap
+                    if (resumeOffset < 0) {
+                        resumeOffset = value;
+                        acked = value;
+                        next = value;
+                    } else if (value >= acked) {
+                        acked = value;
+                        next = value;
+                    }
+                } else if (type == ACK) {
+                    if (value <= acked) {
+                        return true;
+                    }
+                    acked = value;
+                    if (next < acked) {
+                        next = acked;
+                    }
+                } else {
+                    return false;
+                }
+                progress++;
+                notifyAll();
+            }
+            return true;
+        }
+
+        private long awaitResume(FrameCodec.Writer writer) throws IOException, InterruptedException {
+            for (int attempt = 0; attempt <= MAX_TIMEOUTS; attempt++) {
+                offer.clear();
+                offer.putInt(MAGIC).put(OFFER).putLong(transferId).putLong(size).put(name);
+                offer.flip();
+                writer.write(offer);
+                writer.flush();
+                synchronized (this) {
+                    long deadline = System.currentTimeMillis() + ackTimeoutMs;
+                    long remaining = ackTimeoutMs;
+                    while (resumeOffset < 0 && failure == null && remaining > 0) {
+                        wait(remaining);
+                        remaining = deadline - System.currentTimeMillis();
+                    }
+                    checkFailure();
+                    if (resumeOffset >= 0) {
+                        return resumeOffset;
+                    }
+                }
+            }
+            throw new IOException("Receiver did not answer the offer");
+        }
+
+        // Called holding the lock. Returns false if the ack timeout passed with no reply.
+        private boolean awaitProgress() throws IOException, InterruptedException {
+            long seen = progress;
+            long deadline = System.currentTimeMillis() + ackTimeoutMs;
+            long remaining = ackTimeoutMs;
+            while (progress == seen && failure == null && remaining > 0) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+            checkFailure();
+            return progress != seen;
+        }
+
+        private void sendChunk(FrameCodec.Writer writer, long offset, int length) throws IOException {
+            chunk.clear();
+            chunk.putInt(MAGIC).put(CHUNK).putLong(transferId).putLong(offset);
+            chunk.limit(CHUNK_HEADER_SIZE + length);
+            while (chunk.hasRemaining()) {
+                int read = file.read(chunk, offset + chunk.position() - CHUNK_HEADER_SIZE);
+                if (read < 0) {
+                    throw new EOFException("File shrank during transfer");
+                }
+            }
+            chunk.flip();
+            writer.write(chunk);
+        }
+
+        private void checkFailure() throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    // Stores offered files in a directory. Feed it from the connection's
+    // dispatch thread only; close() may come from any thread and is carried
+    // out by the dispatch thread if a frame is being handled.
+    public static class Receiver {
+        public interface Listener {
+            void onProgress(String name, long received, long size);
+
+            void onReceived(File file, long size);
+
+            void onFailed(String name, IOException cause);
+        }
+
+        private final File directory;
+        private final FrameCodec.Writer replies;
+        private final Listener listener;
+        private final ByteBuffer reply = ByteBuffer.allocate(CONTROL_SIZE);
+        private final long maxFileSize;
+        // Guards the two flags below, so close() can hand over to a frame in progress
+        private final Object closeLock = new Object();
+        private boolean handlingFrame;
+        private boolean closed;
+        private long transferId;
+        private String name;
+        private long size;
+        private File partialFile;
+        private FileChannel partial;
+        private long expected;
+        private long nackedOffset = -1;
+        // Answers a repeated offer when the final ack was lost
+        private long completedId;
+        private long completedSize = -1;
+
+        public Receiver(File directory, FrameCodec.Writer replies, Listener listener) {
+            this(directory, replies, listener, DEFAULT_MAX_FILE_SIZE);
+        }
+
+        public Receiver(File directory, FrameCodec.Writer replies, Listener listener, long maxFileSize) {
+            this.directory = directory;
+            this.replies = replies;
+            this.listener = listener;
+            this.maxFileSize = maxFileSize;
+            deleteStalePartials(directory, System.currentTimeMillis() - PARTIAL_MAX_AGE_MS);
+        }
+
+        // Returns true if the frame belonged to the transfer protocol
+        public boolean onFrame(ByteBuffer buffer, int offset, int length) {
+            if (!isTransferFrame(buffer, offset, length)) {
+                return false;
+            }
+            byte type = buffer.get(offset + TYPE_OFFSET);
+            if (type != OFFER && type != CHUNK) {
+                return false;
+            }
+            synchronized (closeLock) {
+                if (closed) {
+                    return true;
+                }
+                handlingFrame = true;
+            }
+            try {
+                handleFrame(type, buffer, offset, length);
+            } finally {
+                synchronized (closeLock) {
+                    handlingFrame = false;
+                    if (closed) {
+                        closePartial();
+                    }
+                }
+            }
+            return true;
+        }
+
+        // Stops the receiver for good. The partial file is closed now, or by
+        // the dispatch thread once the frame it is writing is done.
+        public void close() {
+            synchronized (closeLock) {
+                closed = true;
+                if (!handlingFrame) {
+                    closePartial();
+                }
+            }
+        }
+
+        private void handleFrame(byte type, ByteBuffer buffer, int offset, int length) {
+            long id = buffer.getLong(offset + ID_OFFSET);
+            long value = buffer.getLong(offset + VALUE_OFFSET);
+            try {
+                if (type == OFFER) {
+                    byte[] nameBytes = new byte[length - CONTROL_SIZE];
+                    for (int i = 0; i < nameBytes.length; i++) {
+                        nameBytes[i] = buffer.get(offset + CONTROL_SIZE + i);
+                    }
+                    onOffer(id, value, new String(nameBytes, StandardCharsets.UTF_8));
+                } else if (partial != null && id == transferId) {
+                    onChunk(value, buffer, offset + CHUNK_HEADER_SIZE, length - CHUNK_HEADER_SIZE);
+                }
+            } catch (IOException e) {
+                String failedName = name;
+                closePartial();
+                listener.onFailed(failedName, e);
+            }
+        }
+
+        private void closePartial() {
+            if (partial != null) {
+                try {
+                    partial.close();
+                } catch (IOException e) {
+                    // Ignore close exception
+                }
+                partial = null;
+            }
+        }
+
+        private void onOffer(long id, long offeredSize, String offeredName) throws IOException {
+            if (offeredSize < 0) {
+                return;
+            }
+            if (completedSize >= 0 && id == completedId) {
+                sendReply(RESUME, id, completedSize);
+                return;
+            }
+            if (partial != null && id != transferId) {
+                closePartial();
+            }
+            if (partial == null) {
+                File offeredFile = new File(directory, Long.toHexString(id) + PARTIAL_SUFFIX);
+                long stored = offeredFile.length();
+                long needed = offeredSize - (stored <= offeredSize ? stored : 0);
+                if (offeredSize > maxFileSize
+                        || needed > directory.getUsableSpace() - FREE_SPACE_MARGIN) {
+                    listener.onFailed(offeredName, new IOException("Refused " + offeredSize
+                            + " bytes, the limit is " + maxFileSize + " and free space "
+                            + directory.getUsableSpace()));
+                    sendReply(REJECT, id, maxFileSize);
+                    return;
+                }
+                transferId = id;
+                name = offeredName;
+                size = offeredSize;
+                partialFile = offeredFile;
+                // java.nio.file needs API 26
+                partial = new RandomAccessFile(partialFile, "rw").getChannel();
+                expected = partial.size();
+                if (expected > size) {
+                    // Left over from something else with the same id
+                    partial.truncate(0);
+                    expected = 0;
+                }
+            }
+            nackedOffset = -1;
+            sendReply(RESUME, id, expected);
+            if (expected == size) {
+                complete();
+            }
+        }
+
+        private void onChunk(long chunkOffset, ByteBuffer buffer, int dataOffset, int dataLength)
+                throws IOException {
+            if (chunkOffset < 0 || chunkOffset + dataLength > size) {
+                return;
+            }
+            if (chunkOffset == expected) {
+                ByteBuffer data = buffer.duplicate();
+                data.limit(dataOffset + dataLength);
+                data.position(dataOffset);
+                while (data.hasRemaining()) {
+                    expected += partial.write(data, expected);
+                }
+                nackedOffset = -1;
+                listener.onProgress(name, expected, size);
+                if (expected == size) {
+                    complete();
+                } else {
+                    sendReply(ACK, transferId, expected);
+                }
+            } else if (chunkOffset < expected) {
+                // Resent after an ack was lost, repeat where we are
+                sendReply(ACK, transferId, expected);
+            } else if (nackedOffset != expected) {
+                // A chunk went missing, ask once for everything after it
+                nackedOffset = expected;
+                sendReply(RESUME, transferId, expected);
+            }
+        }
+
+        private void complete() throws IOException {
+            partial.force(true);
+            closePartial();
+            File target = new File(directory, safeName(name, transferId));
+            if (target.exists() && !target.delete()) {
+                throw new IOException("Cannot replace " + target);
+            }
+            if (!partialFile.renameTo(target)) {
+                throw new IOException("Cannot rename " + partialFile);
+            }
+            completedId = transferId;
+            completedSize = size;
+            listener.onReceived(target, size);
+            sendReply(ACK, transferId, size);
+        }
+
+        private void sendReply(byte type, long id, long value) throws IOException {
+            reply.clear();
+            reply.putInt(MAGIC).put(type).putLong(id).putLong(value);
+            reply.flip();
+            replies.write(reply);
+            replies.flush();
+        }
+
+        private static void deleteStalePartials(File directory, long cutoffMillis) {
+            File[] files = directory.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                if (file.getName().endsWith(PARTIAL_SUFFIX) && file.lastModified() < cutoffMillis) {
+                    file.delete();
+                }
+            }
+        }
+
+        private static String safeName(String name, long id) {
+            String base = new File(name).getName();
+            return base.isEmpty() || base.endsWith(PARTIAL_SUFFIX) ? Long.toHexString(id) : base;
+        }
+    }
+}
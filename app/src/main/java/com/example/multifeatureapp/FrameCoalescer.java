@@ -0,0 +1,34 @@
+package com.example.multifeatureapp;
+
+import android.view.Choreographer;
+
+// Collapses any number of invalidate() calls into a single run of the update
+// on the next display frame. Must be used from the main thread.
+public class FrameCoalescer implements Choreographer.FrameCallback {
+    private final Runnable update;
+    private boolean scheduled;
+
+    public FrameCoalescer(Runnable update) {
+        this.update = update;
+    }
+
+    public void invalidate() {
+        if (!scheduled) {
+            scheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    public void cancel() {
+        if (scheduled) {
+            scheduled = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        scheduled = false;
+        update.run();
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.multifeatureapp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Length prefixed, CRC checked framing for byte streams such as RFCOMM.
+//
+// Frame: [0xA5 sync][u16 payload length][payload][u32 CRC-32 of payload]
+//
+// The sync byte lets the decoder find the next frame again after corruption.
+public final class FrameCodec {
+    public static final int HEADER_SIZE = 3;
+    public static final int TRAILER_SIZE = 4;
+    public static final int OVERHEAD = HEADER_SIZE + TRAILER_SIZE;
+    public static final int MAX_PAYLOAD = 0xFFFF;
+
+    private static final byte SYNC = (byte) 0xA5;
+
+    private FrameCodec() {
+    }
+
+    // Where a batch of encoded frames goes
+    public interface Sink {
+        void write(ByteBuffer batch) throws IOException;
+    }
+
+    public static Sink channelSink(WritableByteChannel channel) {
+        return batch -> {
+            while (batch.hasRemaining()) {
+                channel.write(batch);
+            }
+        };
+    }
+
+    public static Sink connectionSink(RfcommConnection connection, long timeoutMs) {
+        return batch -> {
+            try {
+                boolean sent;
+                if (batch.hasArray()) {
+                    sent = connection.send(batch.array(), batch.arrayOffset() + batch.position(),
+                            batch.remaining(), timeoutMs);
+                } else {
+                    // Only oversized direct payloads take this path
+                    byte[] copy = new byte[batch.remaining()];
+                    batch.duplicate().get(copy);
+                    sent = connection.send(copy, timeoutMs);
+                }
+                if (!sent) {
+                    throw new IOException("Connection closed or stalled");
+                }
+                batch.position(batch.limit());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while sending");
+            }
+        };
+    }
+
+    // Encodes frames into one batch buffer and hands the batch to the sink when
+    // it is full, when flush() is called, or flushWindowMs after the first frame
+    // of the batch was queued. Small writes inside the window share one socket
+    // write.
+    public static class Writer {
+        private final Sink sink;
+        private final ByteBuffer batch;
+        private final ScheduledExecutorService scheduler;
+        private final long flushWindowMs;
+        private final Runnable scheduledFlush = this::flushQuietly;
+        private ScheduledFuture<?> pendingFlush;
+        private long framesWritten;
+        private long batchesWritten;
+
+        // With a null scheduler batches are only sent when full or on flush()
+        public Writer(Sink sink, int batchSize, ScheduledExecutorService scheduler, long flushWindowMs) {
+            this.sink = sink;
+            this.batch = ByteBuffer.allocate(Math.max(batchSize, OVERHEAD + 1));
+            this.scheduler = scheduler;
+            this.flushWindowMs = flushWindowMs;
+        }
+
+        public synchronized void write(ByteBuffer payload) throws IOException {
+            int length = payload.remaining();
+            checkLength(length);
+            ensureRoom(length);
+            putHeader(length);
+            int crc = Crc32.compute(payload, payload.position(), length);
+            if (length <= batch.remaining() - TRAILER_SIZE) {
+                batch.put(payload);
+                batch.putInt(crc);
+                frameQueued();
+            } else {
+                // Larger than the batch buffer, send header, payload and trailer as they are
+                flush();
+                sink.write(payload);
+                batch.putInt(crc);
+                flush();
+                framesWritten++;
+            }
+        }
+
+        public synchronized void write(byte[] payload, int offset, int length) throws IOException {
+            write(ByteBuffer.wrap(payload, offset, length));
+        }
+
+        public synchronized void flush() throws IOException {
+            if (pendingFlush != null) {
+                pendingFlush.cancel(false);
+                pendingFlush = null;
+            }
+            if (batch.position() == 0) {
+                return;
+            }
+            batch.flip();
+            try {
+                sink.write(batch);
+            } finally {
+                batch.clear();
+            }
+            batchesWritten++;
+        }
+
+        public synchronized long getFramesWritten() {
+            return framesWritten;
+        }
+
+        public synchronized long getBatchesWritten() {
+            return batchesWritten;
+        }
+
+        private void ensureRoom(int length) throws IOException {
+            if (batch.remaining() < OVERHEAD + Math.min(length, batch.capacity() - OVERHEAD)) {
+                flush();
+            }
+        }
+
+        private void putHeader(int length) {
+            batch.put(SYNC);
+            batch.putShort((short) length);
+        }
+
+        private void frameQueued() throws IOException {
+            framesWritten++;
+            if (batch.remaining() < OVERHEAD) {
+                flush();
+            } else if (flushWindowMs <= 0) {
+                flush();
+            } else if (pendingFlush == null && scheduler != null) {
+                pendingFlush = scheduler.schedule(scheduledFlush, flushWindowMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void flushQuietly() {
+            synchronized (this) {
+                pendingFlush = null;
+                try {
+                    flush();
+                } catch (IOException e) {
+                    // The next write or flush reports the failure
+                }
+            }
+        }
+    }
+
+    // Called for every intact frame. The payload is a window into the
+    // decoder's receive buffer and is only valid until the call returns.
+    public interface FrameHandler {
+        void onFrame(ByteBuffer buffer, int offset, int length);
+    }
+
+    // Decodes frames in place from a single receive buffer. Bytes that do not
+    // make a valid frame are skipped until the next sync byte.
+    public static class Decoder {
+        private final ByteBuffer buffer;
+        private long framesDecoded;
+        private long corruptFrames;
+        private long bytesSkipped;
+
+        public Decoder(int bufferSize) {
+            buffer = ByteBuffer.allocate(Math.max(bufferSize, MAX_PAYLOAD + OVERHEAD));
+        }
+
+        // Reads what the channel has and decodes it. Returns -1 at end of stream.
+        public int readFrom(ReadableByteChannel channel, FrameHandler handler) throws IOException {
+            int read = channel.read(buffer);
+            if (read > 0) {
+                decodeBuffered(handler);
+            }
+            return read;
+        }
+
+        public void feed(byte[] data, int offset, int length, FrameHandler handler) {
+            while (length > 0) {
+                int chunk = Math.min(length, buffer.remaining());
+                buffer.put(data, offset, chunk);
+                offset += chunk;
+                length -= chunk;
+                decodeBuffered(handler);
+            }
+        }
+
+        public long getFramesDecoded() {
+            return framesDecoded;
+        }
+
+        public long getCorruptFrames() {
+            return corruptFrames;
+        }
+
+        public long getBytesSkipped() {
+            return bytesSkipped;
+        }
+
+        private void decodeBuffered(FrameHandler handler) {
+            int start = 0;
+            int end = buffer.position();
+            while (end - start >= HEADER_SIZE) {
+                if (buffer.get(start) != SYNC) {
+                    start++;
+                    bytesSkipped++;
+                    continue;
+                }
+                int length = buffer.getShort(start + 1) & 0xFFFF;
+                int frameSize = length + OVERHEAD;
+                if (end - start < frameSize) {
+                    break; // Wait for the rest of the frame
+                }
+                int payloadOffset = start + HEADER_SIZE;
+                int crc = buffer.getInt(payloadOffset + length);
+                if (Crc32.compute(buffer, payloadOffset, length) != crc) {
+                    corruptFrames++;
+                    start++;
+                    bytesSkipped++;
+                    continue;
+                }
+                framesDecoded++;
+                handler.onFrame(buffer, payloadOffset, length);
+                start += frameSize;
+            }
+            // Move the partial frame, if any, to the front
+            if (start > 0) {
+                buffer.limit(end);
+                buffer.position(start);
+                buffer.compact();
+            }
+        }
+    }
+
+    private static void checkLength(int length) {
+        if (length > MAX_PAYLOAD) {
+            throw new IllegalArgumentException("Frame payload too large: " + length);
+        }
+    }
+}
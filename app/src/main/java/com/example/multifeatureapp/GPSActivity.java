@@ -1,43 +1,81 @@
 package com.example.multifeatureapp;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import android.Manifest;
+import android.app.AlertDialog;
 import android.content.Intent;
 import android.content.IntentSender;
 import android.content.pm.PackageManager;
 import android.location.Location;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Looper;
 import android.widget.TextView;
 import android.widget.Toast;
 import com.google.android.gms.common.api.ResolvableApiException;
 import com.google.android.gms.location.FusedLocationProviderClient;
-import com.google.android.gms.location.LocationCallback;
-import com.google.android.gms.location.LocationRequest;
-import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.location.LocationSettingsRequest;
 import com.google.android.gms.location.LocationSettingsResponse;
 import com.google.android.gms.location.SettingsClient;
-import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
-import com.google.android.gms.maps.model.LatLng;
-import com.google.android.gms.maps.model.MarkerOptions;
 import com.google.android.material.button.MaterialButton;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class GPSActivity extends AppCompatActivity implements OnMapReadyCallback {
     private static final int LOCATION_PERMISSION_CODE = 101;
     private static final int REQUEST_CHECK_SETTINGS = 102;
+    private static final float CAMERA_FOLLOW_METERS = 25f;
+    // Upper bound on the fixes a crash can lose
+    private static final long TRACK_FLUSH_INTERVAL_MS = 60000;
+    // How far the drawn track may stray from the fixes, in dp on screen
+    private static final double TRACK_TOLERANCE_DP = 1.5;
     private GoogleMap mMap;
     private FusedLocationProviderClient fusedLocationClient;
     private TextView tvLocation;
-    private LocationCallback locationCallback;
-    private LocationRequest locationRequest;
+    private TextView tvLocationStats;
+    private LocationRenderer locationRenderer;
+    private TrackRenderer trackRenderer;
+    private KalmanLocationFilter locationFilter;
+    private AdaptiveLocationEngine locationEngine;
+    private final StringBuilder statsText = new StringBuilder(96);
+    private ExecutorService trackExecutor;
+    private File trackFile;
+    private TrackRecorder trackRecorder; // Only used on trackExecutor
+
+    private final ActivityResultLauncher<String> exportGpxLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument("application/gpx+xml"),
+            uri -> {
+                if (uri != null) {
+                    exportTrack(uri, false);
+                }
+            }
+    );
+
+    private final ActivityResultLauncher<String> exportGeoJsonLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument("application/geo+json"),
+            uri -> {
+                if (uri != null) {
+                    exportTrack(uri, true);
+                }
+            }
+    );
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -45,7 +83,11 @@ public class GPSActivity extends AppCompatActivity implements OnMapReadyCallback
         setContentView(R.layout.activity_gps);
 
         tvLocation = findViewById(R.id.tvLocation);
+        tvLocationStats = findViewById(R.id.tvLocationStats);
         MaterialButton btnGetLocation = findViewById(R.id.btnGetLocation);
+        MaterialButton btnExportTrack = findViewById(R.id.btnExportTrack);
+        locationRenderer = new LocationRenderer(tvLocation, CAMERA_FOLLOW_METERS);
+        trackRenderer = new TrackRenderer(TRACK_TOLERANCE_DP);
 
         // Initialize location client
         fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
@@ -57,36 +99,134 @@ public class GPSActivity extends AppCompatActivity implements OnMapReadyCallback
             mapFragment.getMapAsync(this);
         }
 
-        createLocationRequest();
-        createLocationCallback();
+        openTrack();
+        createLocationFilter();
+        createLocationEngine();
 
         btnGetLocation.setOnClickListener(v -> checkLocationSettingsAndStartUpdates());
+        btnExportTrack.setOnClickListener(v -> showExportDialog());
     }
 
-    private void createLocationRequest() {
-        locationRequest = LocationRequest.create();
-        locationRequest.setInterval(10000);
-        locationRequest.setFastestInterval(5000);
-        locationRequest.setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
+    private void openTrack() {
+        // Every fix is kept in one growing file, written off the main thread
+        trackFile = new File(getFilesDir(), "track.trk");
+        trackExecutor = Executors.newSingleThreadExecutor(
+                runnable -> new Thread(runnable, "track-recorder"));
+        trackExecutor.execute(() -> {
+            try {
+                trackRecorder = new TrackRecorder(trackFile, TRACK_FLUSH_INTERVAL_MS);
+            } catch (IOException e) {
+                runOnUiThread(() -> Toast.makeText(this, "Track recording unavailable: "
+                        + e.getMessage(), Toast.LENGTH_SHORT).show());
+            }
+        });
     }
 
-    private void createLocationCallback() {
-        locationCallback = new LocationCallback() {
-            @Override
-            public void onLocationResult(LocationResult locationResult) {
-                if (locationResult == null) {
-                    return;
+    private void recordFix(long time, double latitude, double longitude, float accuracy) {
+        trackExecutor.execute(() -> {
+            if (trackRecorder == null) {
+                return;
+            }
+            try {
+                trackRecorder.append(time, latitude, longitude, accuracy);
+            } catch (IOException e) {
+                // The fix is lost, the recorder carries on from its last good block
+            }
+        });
+    }
+
+    private void showExportDialog() {
+        String[] options = {"GPX", "GeoJSON", "Cancel"};
+        new AlertDialog.Builder(this)
+                .setTitle("Export Track")
+                .setItems(options, (dialog, which) -> {
+                    if (options[which].equals("GPX")) {
+                        exportGpxLauncher.launch("track.gpx");
+                    } else if (options[which].equals("GeoJSON")) {
+                        exportGeoJsonLauncher.launch("track.geojson");
+                    }
+                })
+                .show();
+    }
+
+    private void exportTrack(Uri uri, boolean geoJson) {
+        // Queued behind pending fixes, so the export includes them
+        trackExecutor.execute(() -> {
+            String message;
+            try {
+                if (trackRecorder != null) {
+                    trackRecorder.flush();
                 }
-                for (Location location : locationResult.getLocations()) {
-                    updateLocationUI(location);
+                long points;
+                try (OutputStream stream = getContentResolver().openOutputStream(uri)) {
+                    if (stream == null) {
+                        throw new IOException("Cannot open " + uri);
+                    }
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+                    points = geoJson ? TrackExport.writeGeoJson(trackFile, writer, "Track")
+                            : TrackExport.writeGpx(trackFile, writer, "Track");
                 }
+                message = "Exported " + points + " points";
+            } catch (IOException e) {
+                message = "Export failed: " + e.getMessage();
             }
-        };
+            String shown = message;
+            runOnUiThread(() -> Toast.makeText(this, shown, Toast.LENGTH_SHORT).show());
+        });
+    }
+
+    private void createLocationFilter() {
+        // Everything downstream sees smoothed fixes; outliers never reach the UI or the track
+        locationFilter = new KalmanLocationFilter(MotionClassifier.Profile.WALKING.accelerationMps2);
+        locationFilter.addListener((time, latitude, longitude, accuracy, speed) ->
+                locationRenderer.submit(latitude, longitude));
+        locationFilter.addListener((time, latitude, longitude, accuracy, speed) ->
+                trackRenderer.add(latitude, longitude));
+        locationFilter.addListener((time, latitude, longitude, accuracy, speed) ->
+                recordFix(time, latitude, longitude, accuracy));
+    }
+
+    private void createLocationEngine() {
+        // Starts at walking pace and adapts from the first fixes
+        locationEngine = new AdaptiveLocationEngine(fusedLocationClient, Looper.getMainLooper(),
+                MotionClassifier.Profile.WALKING, new AdaptiveLocationEngine.Listener() {
+            @Override
+            public void onLocations(List<Location> locations) {
+                // A batch is drawn once, on the next frame, with its newest fix
+                for (int i = 0; i < locations.size(); i++) {
+                    Location location = locations.get(i);
+                    locationFilter.onFix(location.getElapsedRealtimeNanos(), location.getTime(),
+                            location.getLatitude(), location.getLongitude(),
+                            location.hasAccuracy() ? location.getAccuracy() : Float.NaN);
+                }
+                showLocationStats();
+            }
+
+            @Override
+            public void onProfileChanged(MotionClassifier.Profile profile) {
+                locationFilter.setAcceleration(profile.accelerationMps2);
+                showLocationStats();
+            }
+        });
+    }
+
+    private void showLocationStats() {
+        MotionClassifier classifier = locationEngine.getClassifier();
+        statsText.setLength(0);
+        statsText.append(classifier.getProfile().label).append(" \u00b7 ");
+        CoordinateFormat.appendFixed(statsText, classifier.getFixesPerMinute(), 1);
+        statsText.append(" fixes/min \u00b7 ").append(classifier.getSwitches()).append(" switches \u00b7 ")
+                .append(locationFilter.getRejected()).append(" rejected");
+        for (MotionClassifier.Profile profile : MotionClassifier.Profile.values()) {
+            statsText.append('\n').append(profile.label).append(": ")
+                    .append(classifier.getMillisIn(profile) / 1000).append(" s");
+        }
+        tvLocationStats.setText(statsText);
     }
 
     private void checkLocationSettingsAndStartUpdates() {
         LocationSettingsRequest.Builder builder = new LocationSettingsRequest.Builder()
-                .addLocationRequest(locationRequest);
+                .addLocationRequest(locationEngine.getCurrentRequest());
 
         SettingsClient client = LocationServices.getSettingsClient(this);
         client.checkLocationSettings(builder.build())
@@ -112,6 +252,9 @@ public class GPSActivity extends AppCompatActivity implements OnMapReadyCallback
     @Override
     public void onMapReady(@NonNull GoogleMap googleMap) {
         mMap = googleMap;
+        locationRenderer.setMap(mMap);
+        trackRenderer.setMap(mMap);
+        mMap.setOnCameraIdleListener(() -> trackRenderer.setZoom(mMap.getCameraPosition().zoom));
         if (checkLocationPermission()) {
             mMap.setMyLocationEnabled(true);
             checkLocationSettingsAndStartUpdates();
@@ -131,32 +274,40 @@ public class GPSActivity extends AppCompatActivity implements OnMapReadyCallback
 
     private void startLocationUpdates() {
         if (checkLocationPermission()) {
-            fusedLocationClient.requestLocationUpdates(locationRequest,
-                    locationCallback,
-                    Looper.getMainLooper());
+            locationEngine.start();
         }
     }
 
-    private void updateLocationUI(Location location) {
-        double latitude = location.getLatitude();
-        double longitude = location.getLongitude();
-
-        // Update TextView
-        String locationText = String.format("Location:\nLatitude: %f\nLongitude: %f",
-                latitude, longitude);
-        tvLocation.setText(locationText);
-
-        // Update Map
-        LatLng currentLocation = new LatLng(latitude, longitude);
-        mMap.clear();
-        mMap.addMarker(new MarkerOptions().position(currentLocation).title("Current Location"));
-        mMap.moveCamera(CameraUpdateFactory.newLatLngZoom(currentLocation, 15f));
-    }
-
     @Override
     protected void onPause() {
         super.onPause();
-        fusedLocationClient.removeLocationUpdates(locationCallback);
+        locationEngine.stop();
+        locationRenderer.cancel();
+        trackRenderer.cancel();
+        trackExecutor.execute(() -> {
+            try {
+                if (trackRecorder != null) {
+                    trackRecorder.sync();
+                }
+            } catch (IOException e) {
+                // Retried on the next flush
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        trackExecutor.execute(() -> {
+            try {
+                if (trackRecorder != null) {
+                    trackRecorder.close();
+                }
+            } catch (IOException e) {
+                // Whatever reached the file is still readable
+            }
+        });
+        trackExecutor.shutdown();
     }
 
     @Override
@@ -0,0 +1,29 @@
+package com.example.multifeatureapp;
+
+// Distances on a spherical Earth, plain doubles so hot paths don't allocate.
+// Good to a fraction of a percent, which is far below GPS noise.
+public final class GeoMath {
+    public static final double EARTH_RADIUS_METERS = 6_371_008.8;
+
+    private GeoMath() {
+    }
+
+    // Great-circle distance (haversine)
+    public static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double sinDPhi = Math.sin((phi2 - phi1) / 2);
+        double sinDLambda = Math.sin(Math.toRadians(lon2 - lon1) / 2);
+        double a = sinDPhi * sinDPhi + Math.cos(phi1) * Math.cos(phi2) * sinDLambda * sinDLambda;
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    // Meters per degree of longitude at a latitude, for local flat projections
+    public static double metersPerDegreeLongitude(double latitude) {
+        return metersPerDegreeLatitude() * Math.cos(Math.toRadians(latitude));
+    }
+
+    public static double metersPerDegreeLatitude() {
+        return Math.toRadians(EARTH_RADIUS_METERS);
+    }
+}
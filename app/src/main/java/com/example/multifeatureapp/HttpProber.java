@@ -0,0 +1,402 @@
+package com.example.multifeatureapp;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+// Minimal HTTP/1.1 client for connectivity probes. Connections are kept alive
+// in a small per-host pool so repeated probes skip the TCP and TLS handshakes,
+// and every probe reports how long each phase took.
+public class HttpProber implements ConnectivityProber.Transport {
+    public static class Timing {
+        public final int statusCode;
+        public final boolean reused;
+        public final long dnsMicros;
+        public final long connectMicros;
+        public final long tlsMicros;
+        public final long firstByteMicros;
+        public final long totalMicros;
+        public final long bytesSent;
+        public final long bytesReceived;
+        // -1 when the response declared none
+        public final long contentLength;
+
+        Timing(int statusCode, boolean reused, long dnsMicros, long connectMicros, long tlsMicros,
+               long firstByteMicros, long totalMicros, long bytesSent, long bytesReceived,
+               long contentLength) {
+            this.statusCode = statusCode;
+            this.reused = reused;
+            this.dnsMicros = dnsMicros;
+            this.connectMicros = connectMicros;
+            this.tlsMicros = tlsMicros;
+            this.firstByteMicros = firstByteMicros;
+            this.totalMicros = totalMicros;
+            this.bytesSent = bytesSent;
+            this.bytesReceived = bytesReceived;
+            this.contentLength = contentLength;
+        }
+
+        // A 204 with an empty body, what a probe endpoint sends when nothing intercepts it
+        public boolean isValidated() {
+            return ConnectivityProber.isValidated(statusCode, contentLength);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "DNS %.1f ms, connect %.1f ms, TLS %.1f ms, first byte %.1f ms%s",
+                    dnsMicros / 1000.0, connectMicros / 1000.0, tlsMicros / 1000.0,
+                    firstByteMicros / 1000.0, reused ? " (reused)" : "");
+        }
+    }
+
+    private static final int MAX_IDLE_PER_HOST = 2;
+    private static final long KEEP_ALIVE_MS = 30000;
+
+    private final String method;
+    private final int timeoutMs;
+    private final Map<String, ArrayDeque<PooledConnection>> idleConnections = new HashMap<>();
+    private final Map<String, Timing> lastTimings = new ConcurrentHashMap<>();
+
+    public HttpProber(String method, int timeoutMs) {
+        this.method = method;
+        this.timeoutMs = timeoutMs;
+    }
+
+    @Override
+    public ConnectivityProber.Call newCall(String endpoint) {
+        return new ConnectivityProber.Call() {
+            private final Socket[] inFlight = new Socket[1];
+
+            @Override
+            public boolean execute() throws IOException {
+                return probe(endpoint, inFlight).isValidated();
+            }
+
+            @Override
+            public void cancel() {
+                synchronized (inFlight) {
+                    closeQuietly(inFlight[0]);
+                }
+            }
+        };
+    }
+
+    public Timing probe(String endpoint) throws IOException {
+        return probe(endpoint, new Socket[1]);
+    }
+
+    public Timing getLastTiming(String endpoint) {
+        return lastTimings.get(endpoint);
+    }
+
+    public void evictAll() {
+        synchronized (idleConnections) {
+            for (ArrayDeque<PooledConnection> connections : idleConnections.values()) {
+                for (PooledConnection connection : connections) {
+                    closeQuietly(connection.socket);
+                }
+            }
+            idleConnections.clear();
+        }
+    }
+
+    private Timing probe(String endpoint, Socket[] inFlight) throws IOException {
+        URI uri = URI.create(endpoint);
+        boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+        String host = uri.getHost();
+        int port = uri.getPort() != -1 ? uri.getPort() : (secure ? 443 : 80);
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null) {
+            path += "?" + uri.getRawQuery();
+        }
+        String poolKey = (secure ? "https://" : "http://") + host + ":" + port;
+
+        PooledConnection pooled = checkout(poolKey);
+        if (pooled != null) {
+            try {
+                return exchange(endpoint, poolKey, pooled, host, path, true, 0, 0, 0, inFlight);
+            } catch (IOException e) {
+                closeQuietly(pooled.socket);
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Probe cancelled");
+                }
+                // The server dropped the idle connection, retry on a fresh one
+            }
+        }
+
+        long start = System.nanoTime();
+        InetAddress address = InetAddress.getByName(host);
+        long resolved = System.nanoTime();
+
+        Socket socket = new Socket();
+        synchronized (inFlight) {
+            inFlight[0] = socket;
+        }
+        try {
+            socket.connect(new InetSocketAddress(address, port), timeoutMs);
+            socket.setSoTimeout(timeoutMs);
+            socket.setTcpNoDelay(true);
+            long connected = System.nanoTime();
+
+            if (secure) {
+                SSLSocket sslSocket = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault())
+                        .createSocket(socket, host, port, true);
+                SSLParameters parameters = sslSocket.getSSLParameters();
+                parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                sslSocket.setSSLParameters(parameters);
+                synchronized (inFlight) {
+                    inFlight[0] = sslSocket;
+                }
+                sslSocket.startHandshake();
+                socket = sslSocket;
+            }
+            long handshaken = System.nanoTime();
+
+            PooledConnection connection = new PooledConnection(socket);
+            return exchange(endpoint, poolKey, connection, host, path, false,
+                    micros(resolved - start), micros(connected - resolved),
+                    micros(handshaken - connected), inFlight);
+        } catch (IOException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+    }
+
+    private Timing exchange(String endpoint, String poolKey, PooledConnection connection,
+                            String host, String path, boolean reused, long dnsMicros,
+                            long connectMicros, long tlsMicros, Socket[] inFlight) throws IOException {
+        synchronized (inFlight) {
+            inFlight[0] = connection.socket;
+        }
+        byte[] request = (method + " " + path + " HTTP/1.1\r\n"
+                + "Host: " + host + "\r\n"
+                + "User-Agent: Android\r\n"
+                + "Connection: keep-alive\r\n"
+                + "\r\n").getBytes(StandardCharsets.US_ASCII);
+
+        long sent = System.nanoTime();
+        connection.out.write(request);
+        connection.out.flush();
+
+        InputStream in = connection.in;
+        int first = in.read();
+        if (first == -1) {
+            throw new EOFException("Connection closed before response");
+        }
+        long firstByte = System.nanoTime();
+        long received = 1;
+
+        // Status line
+        StringBuilder line = new StringBuilder();
+        line.append((char) first);
+        received += readLine(in, line);
+        String statusLine = line.toString();
+        int statusCode = parseStatusCode(statusLine);
+
+        // Headers
+        long contentLength = -1;
+        boolean chunked = false;
+        boolean keepAlive = true;
+        while (true) {
+            line.setLength(0);
+            received += readLine(in, line);
+            if (line.length() == 0) {
+                break;
+            }
+            int colon = line.indexOf(":");
+            if (colon <= 0) {
+                continue;
+            }
+            String name = line.substring(0, colon).trim().toLowerCase(Locale.US);
+            String value = line.substring(colon + 1).trim().toLowerCase(Locale.US);
+            if (name.equals("content-length")) {
+                contentLength = Long.parseLong(value);
+            } else if (name.equals("transfer-encoding")) {
+                chunked = value.contains("chunked");
+            } else if (name.equals("connection")) {
+                keepAlive = !value.contains("close");
+            }
+        }
+
+        // Body, drained so the connection can be reused
+        boolean noBody = method.equals("HEAD") || statusCode == 204 || statusCode == 304
+                || (statusCode >= 100 && statusCode < 200);
+        if (!noBody) {
+            if (chunked) {
+                received += drainChunked(in, line);
+            } else if (contentLength >= 0) {
+                received += skipFully(in, contentLength);
+            } else {
+                keepAlive = false; // Body runs until close
+            }
+        } else if (!method.equals("HEAD") && contentLength > 0) {
+            keepAlive = false; // A body where none belongs, don't trust the stream
+        }
+        long done = System.nanoTime();
+
+        if (keepAlive) {
+            checkin(poolKey, connection);
+        } else {
+            closeQuietly(connection.socket);
+        }
+        synchronized (inFlight) {
+            inFlight[0] = null;
+        }
+
+        Timing timing = new Timing(statusCode, reused, dnsMicros, connectMicros, tlsMicros,
+                micros(firstByte - sent), dnsMicros + connectMicros + tlsMicros + micros(done - sent),
+                request.length, received, contentLength);
+        lastTimings.put(endpoint, timing);
+        return timing;
+    }
+
+    private PooledConnection checkout(String poolKey) {
+        long now = System.currentTimeMillis();
+        synchronized (idleConnections) {
+            ArrayDeque<PooledConnection> connections = idleConnections.get(poolKey);
+            if (connections == null) {
+                return null;
+            }
+            Iterator<PooledConnection> iterator = connections.iterator();
+            while (iterator.hasNext()) {
+                PooledConnection connection = iterator.next();
+                iterator.remove();
+                if (now - connection.idleSince < KEEP_ALIVE_MS && !connection.socket.isClosed()) {
+                    return connection;
+                }
+                closeQuietly(connection.socket);
+            }
+            return null;
+        }
+    }
+
+    private void checkin(String poolKey, PooledConnection connection) {
+        connection.idleSince = System.currentTimeMillis();
+        synchronized (idleConnections) {
+            ArrayDeque<PooledConnection> connections = idleConnections.get(poolKey);
+            if (connections == null) {
+                connections = new ArrayDeque<>();
+                idleConnections.put(poolKey, connections);
+            }
+            connections.addFirst(connection);
+            while (connections.size() > MAX_IDLE_PER_HOST) {
+                closeQuietly(connections.removeLast().socket);
+            }
+        }
+    }
+
+    private static int parseStatusCode(String statusLine) throws IOException {
+        // HTTP/1.1 204 No Content
+        int space = statusLine.indexOf(' ');
+        if (!statusLine.startsWith("HTTP/") || space < 0 || statusLine.length() < space + 4) {
+            throw new IOException("Malformed status line: " + statusLine);
+        }
+        try {
+            return Integer.parseInt(statusLine.substring(space + 1, space + 4));
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed status line: " + statusLine);
+        }
+    }
+
+    private static int readLine(InputStream in, StringBuilder line) throws IOException {
+        int count = 0;
+        while (true) {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Connection closed mid-response");
+            }
+            count++;
+            if (b == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return count;
+            }
+            line.append((char) b);
+        }
+    }
+
+    private static long drainChunked(InputStream in, StringBuilder line) throws IOException {
+        long received = 0;
+        while (true) {
+            line.setLength(0);
+            received += readLine(in, line);
+            int extension = line.indexOf(";");
+            String size = (extension >= 0 ? line.substring(0, extension) : line.toString()).trim();
+            long chunkSize = Long.parseLong(size, 16);
+            if (chunkSize == 0) {
+                // Trailers end with an empty line
+                do {
+                    line.setLength(0);
+                    received += readLine(in, line);
+                } while (line.length() > 0);
+                return received;
+            }
+            received += skipFully(in, chunkSize);
+            line.setLength(0);
+            received += readLine(in, line);
+        }
+    }
+
+    private static long skipFully(InputStream in, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() == -1) {
+                    throw new EOFException("Connection closed mid-body");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+        return count;
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    private static void closeQuietly(Socket socket) {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ignore close exception
+            }
+        }
+    }
+
+    private static class PooledConnection {
+        final Socket socket;
+        final InputStream in;
+        final OutputStream out;
+        long idleSince;
+
+        PooledConnection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream(), 1024);
+            this.out = socket.getOutputStream();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.multifeatureapp;
+
+import java.util.ArrayList;
+
+// Smooths raw fixes with a constant-velocity Kalman filter and passes the
+// estimates on to its listeners.
+//
+// The state is position and velocity in meters on a flat projection around
+// a nearby origin. Each fix is weighted by its accuracy, used as the
+// standard deviation of each coordinate. Process noise is white
+// acceleration, so the filter follows turns faster when set higher.
+// Because both axes share the model and an isotropic measurement noise,
+// they also share one 2x2 covariance, so the whole filter is a few
+// primitive arrays and a fix allocates nothing.
+//
+// A fix whose innovation is improbable given the current uncertainty is
+// rejected. After a few rejections in a row the filter assumes it was
+// wrong rather than the fixes, and starts over from the newest one. Time
+// steps come from the monotonic elapsed realtime, since the wall clock of a
+// fix can jump; a fix that is not newer than the last one is dropped. Must
+// be used from one thread.
+public final class KalmanLocationFilter {
+    public interface Listener {
+        void onFiltered(long timeMillis, double latitude, double longitude, float accuracyMeters,
+                        float speedMps);
+    }
+
+    // Chi-square, 2 degrees of freedom, 99.99%
+    static final double OUTLIER_THRESHOLD = 18.42;
+    static final int MAX_REJECTIONS = 3;
+    private static final float UNKNOWN_ACCURACY_METERS = 50f;
+    // Speed is unknown at the start, (30 m/s)^2 also covers joining mid-drive
+    private static final double INITIAL_SPEED_VARIANCE = 900;
+    // Beyond this the flat projection is re-centered on the estimate
+    private static final double MAX_OFFSET_METERS = 20_000;
+
+    private static final int X = 0;
+    private static final int VX = 1;
+    private static final int Y = 2;
+    private static final int VY = 3;
+    private final double[] state = new double[4];
+    // Per axis [position variance, covariance, velocity variance]
+    private final double[] covariance = new double[3];
+
+    private final ArrayList<Listener> listeners = new ArrayList<>();
+    private double accelerationVariance;
+    private boolean initialized;
+    private long lastElapsedNanos;
+    private long lastTimeMillis;
+    private double originLatitude;
+    private double originLongitude;
+    private double metersPerDegreeLatitude;
+    private double metersPerDegreeLongitude;
+    private int consecutiveRejections;
+    private long accepted;
+    private long rejected;
+    private long resets;
+
+    // accelerationMps2 is the typical unmodelled acceleration
+    public KalmanLocationFilter(double accelerationMps2) {
+        setAcceleration(accelerationMps2);
+    }
+
+    public void setAcceleration(double accelerationMps2) {
+        accelerationVariance = accelerationMps2 * accelerationMps2;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // elapsedRealtimeNanos drives the model, timeMillis is the fix's wall
+    // time and only passed on to listeners. accuracyMeters is NaN when the
+    // fix has none. Returns false when the fix was rejected as an outlier or
+    // out of order; listeners only hear about accepted ones.
+    public boolean onFix(long elapsedRealtimeNanos, long timeMillis, double latitude, double longitude,
+                         float accuracyMeters) {
+        double accuracy = accuracyMeters > 0 ? accuracyMeters : UNKNOWN_ACCURACY_METERS;
+        double r = accuracy * accuracy;
+        if (!initialized) {
+            reset(elapsedRealtimeNanos, timeMillis, latitude, longitude, r);
+            publish();
+            return true;
+        }
+        if (elapsedRealtimeNanos <= lastElapsedNanos) {
+            // Reordered or repeated, the estimate has already moved past it
+            rejected++;
+            return false;
+        }
+
+        // Predict
+        double dt = (elapsedRealtimeNanos - lastElapsedNanos) / 1e9;
+        double[] p = covariance;
+        double q = accelerationVariance;
+        double p00 = p[0] + 2 * dt * p[1] + dt * dt * p[2] + q * dt * dt * dt / 3;
+        double p01 = p[1] + dt * p[2] + q * dt * dt / 2;
+        double p11 = p[2] + q * dt;
+        double predictedX = state[X] + dt * state[VX];
+        double predictedY = state[Y] + dt * state[VY];
+
+        // Gate on the innovation
+        double innovationX = (longitude - originLongitude) * metersPerDegreeLongitude - predictedX;
+        double innovationY = (latitude - originLatitude) * metersPerDegreeLatitude - predictedY;
+        double s = p00 + r;
+        if ((innovationX * innovationX + innovationY * innovationY) / s > OUTLIER_THRESHOLD) {
+            rejected++;
+            if (++consecutiveRejections >= MAX_REJECTIONS) {
+                resets++;
+                reset(elapsedRealtimeNanos, timeMillis, latitude, longitude, r);
+                publish();
+                return true;
+            }
+            return false;
+        }
+        consecutiveRejections = 0;
+
+        // Update
+        double gainPosition = p00 / s;
+        double gainVelocity = p01 / s;
+        state[X] = predictedX + gainPosition * innovationX;
+        state[VX] += gainVelocity * innovationX;
+        state[Y] = predictedY + gainPosition * innovationY;
+        state[VY] += gainVelocity * innovationY;
+        p[0] = (1 - gainPosition) * p00;
+        p[1] = (1 - gainPosition) * p01;
+        p[2] = p11 - gainVelocity * p01;
+        lastElapsedNanos = elapsedRealtimeNanos;
+        lastTimeMillis = timeMillis;
+        accepted++;
+
+        if (Math.abs(state[X]) > MAX_OFFSET_METERS || Math.abs(state[Y]) > MAX_OFFSET_METERS) {
+            setOrigin(getLatitude(), getLongitude());
+            state[X] = 0;
+            state[Y] = 0;
+        }
+        publish();
+        return true;
+    }
+
+    public double getLatitude() {
+        return originLatitude + state[Y] / metersPerDegreeLatitude;
+    }
+
+    public double getLongitude() {
+        return originLongitude + state[X] / metersPerDegreeLongitude;
+    }
+
+    // Standard deviation of each coordinate of the estimate
+    public float getAccuracyMeters() {
+        return (float) Math.sqrt(covariance[0]);
+    }
+
+    public float getSpeedMps() {
+        return (float) Math.hypot(state[VX], state[VY]);
+    }
+
+    public long getAccepted() {
+        return accepted;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    // Times the filter gave up on its estimate after repeated rejections
+    public long getResets() {
+        return resets;
+    }
+
+    public void clear() {
+        initialized = false;
+        consecutiveRejections = 0;
+    }
+
+    private void reset(long elapsedRealtimeNanos, long timeMillis, double latitude, double longitude,
+                       double r) {
+        setOrigin(latitude, longitude);
+        state[X] = 0;
+        state[VX] = 0;
+        state[Y] = 0;
+        state[VY] = 0;
+        covariance[0] = r;
+        covariance[1] = 0;
+        covariance[2] = INITIAL_SPEED_VARIANCE;
+        lastElapsedNanos = elapsedRealtimeNanos;
+        lastTimeMillis = timeMillis;
+        consecutiveRejections = 0;
+        initialized = true;
+    }
+
+    private void setOrigin(double latitude, double longitude) {
+        originLatitude = latitude;
+        originLongitude = longitude;
+        metersPerDegreeLatitude = GeoMath.metersPerDegreeLatitude();
+        metersPerDegreeLongitude = GeoMath.metersPerDegreeLongitude(latitude);
+    }
+
+    private void publish() {
+        double latitude = getLatitude();
+        double longitude = getLongitude();
+        float accuracy = getAccuracyMeters();
+        float speed = getSpeedMps();
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onFiltered(lastTimeMillis, latitude, longitude, accuracy, speed);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.multifeatureapp;
+
+import android.animation.ValueAnimator;
+import android.location.Location;
+import android.widget.TextView;
+import com.google.android.gms.maps.CameraUpdateFactory;
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+
+// Draws the latest fix on the map and in a label. Fixes can arrive in
+// batches; only the newest one is kept and it is applied on the next frame.
+// One marker is created and then slides to each new position, the label is
+// formatted into reused buffers, and the camera only follows once the fix is
+// more than a threshold away from where it last moved. Must be used from the
+// main thread.
+public class LocationRenderer {
+    private static final float INITIAL_ZOOM = 15f;
+    private static final long MARKER_ANIMATION_MS = 300;
+
+    private final TextView label;
+    private final float cameraThresholdMeters;
+    private final FrameCoalescer frameUpdater = new FrameCoalescer(this::render);
+    private final StringBuilder text = new StringBuilder(64);
+    private char[] textChars = new char[64];
+    private final float[] distance = new float[1];
+    private final ValueAnimator markerAnimator = ValueAnimator.ofFloat(0f, 1f);
+    private GoogleMap map;
+    private Marker marker;
+    private boolean pending;
+    private double pendingLatitude;
+    private double pendingLongitude;
+    private double fromLatitude;
+    private double fromLongitude;
+    private double toLatitude;
+    private double toLongitude;
+    private boolean cameraPlaced;
+    private double cameraLatitude;
+    private double cameraLongitude;
+    private long fixesSubmitted;
+    private long framesRendered;
+
+    public LocationRenderer(TextView label, float cameraThresholdMeters) {
+        this.label = label;
+        this.cameraThresholdMeters = cameraThresholdMeters;
+        markerAnimator.setDuration(MARKER_ANIMATION_MS);
+        markerAnimator.addUpdateListener(animation -> {
+            if (marker == null) {
+                return;
+            }
+            float t = animation.getAnimatedFraction();
+            // LatLng is immutable, so this is the one object made per animation frame
+            marker.setPosition(new LatLng(fromLatitude + (toLatitude - fromLatitude) * t,
+                    fromLongitude + (toLongitude - fromLongitude) * t));
+        });
+    }
+
+    public void setMap(GoogleMap map) {
+        this.map = map;
+        if (pending) {
+            frameUpdater.invalidate();
+        }
+    }
+
+    // Newer fixes replace older ones that haven't been drawn yet
+    public void submit(double latitude, double longitude) {
+        fixesSubmitted++;
+        pending = true;
+        pendingLatitude = latitude;
+        pendingLongitude = longitude;
+        frameUpdater.invalidate();
+    }
+
+    public long getFixesSubmitted() {
+        return fixesSubmitted;
+    }
+
+    public long getFramesRendered() {
+        return framesRendered;
+    }
+
+    public void cancel() {
+        frameUpdater.cancel();
+        markerAnimator.cancel();
+    }
+
+    private void render() {
+        if (!pending) {
+            return;
+        }
+        framesRendered++;
+        double latitude = pendingLatitude;
+        double longitude = pendingLongitude;
+        showText(latitude, longitude);
+        if (map == null) {
+            return; // Drawn once the map is ready
+        }
+        pending = false;
+        moveMarker(latitude, longitude);
+        followWithCamera(latitude, longitude);
+    }
+
+    private void showText(double latitude, double longitude) {
+        text.setLength(0);
+        text.append("Location:\nLatitude: ");
+        CoordinateFormat.appendFixed(text, latitude, 6);
+        text.append("\nLongitude: ");
+        CoordinateFormat.appendFixed(text, longitude, 6);
+        int length = text.length();
+        if (textChars.length < length) {
+            textChars = new char[length * 2];
+        }
+        text.getChars(0, length, textChars, 0);
+        // The char[] overload wraps the array instead of copying it into a String
+        label.setText(textChars, 0, length);
+    }
+
+    private void moveMarker(double latitude, double longitude) {
+        if (marker == null) {
+            marker = map.addMarker(new MarkerOptions()
+                    .position(new LatLng(latitude, longitude))
+                    .title("Current Location"));
+            toLatitude = latitude;
+            toLongitude = longitude;
+            return;
+        }
+        if (markerAnimator.isRunning()) {
+            // Continue from wherever the marker is now
+            markerAnimator.cancel();
+            LatLng current = marker.getPosition();
+            fromLatitude = current.latitude;
+            fromLongitude = current.longitude;
+        } else {
+            fromLatitude = toLatitude;
+            fromLongitude = toLongitude;
+        }
+        toLatitude = latitude;
+        toLongitude = longitude;
+        markerAnimator.start();
+    }
+
+    private void followWithCamera(double latitude, double longitude) {
+        if (!cameraPlaced) {
+            map.moveCamera(CameraUpdateFactory.newLatLngZoom(new LatLng(latitude, longitude), INITIAL_ZOOM));
+        } else {
+            Location.distanceBetween(cameraLatitude, cameraLongitude, latitude, longitude, distance);
+            if (distance[0] < cameraThresholdMeters) {
+                return;
+            }
+            // Keeps whatever zoom the user picked
+            map.animateCamera(CameraUpdateFactory.newLatLng(new LatLng(latitude, longitude)));
+        }
+        cameraPlaced = true;
+        cameraLatitude = latitude;
+        cameraLongitude = longitude;
+    }
+}
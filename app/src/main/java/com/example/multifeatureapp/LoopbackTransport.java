@@ -0,0 +1,54 @@
+package com.example.multifeatureapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+
+// In-process stand-in for an RFCOMM socket: createPair() returns two ends
+// where whatever one end writes the other reads. Backed by NIO pipes, so it
+// runs on a plain JVM and behaves like a socket when either end is closed.
+public class LoopbackTransport implements RfcommTransport {
+    private final Pipe.SourceChannel source;
+    private final Pipe.SinkChannel sink;
+    private final InputStream in;
+    private final OutputStream out;
+
+    private LoopbackTransport(Pipe.SourceChannel source, Pipe.SinkChannel sink) {
+        this.source = source;
+        this.sink = sink;
+        this.in = Channels.newInputStream(source);
+        this.out = Channels.newOutputStream(sink);
+    }
+
+    public static LoopbackTransport[] createPair() throws IOException {
+        Pipe aToB = Pipe.open();
+        Pipe bToA = Pipe.open();
+        return new LoopbackTransport[]{
+                new LoopbackTransport(bToA.source(), aToB.sink()),
+                new LoopbackTransport(aToB.source(), bToA.sink())
+        };
+    }
+
+    @Override
+    public void connect() {
+        // Pipes are connected from the start
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+        sink.close();
+    }
+}
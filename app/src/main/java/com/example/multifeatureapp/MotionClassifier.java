@@ -0,0 +1,231 @@
+package com.example.multifeatureapp;
+
+import java.util.Arrays;
+
+// Decides from recent fixes whether the device is stationary, walking or
+// driving. Speed is the median of the last few reported speeds, or, when
+// fixes carry no speed, the displacement across a short window beyond what
+// the accuracy circles explain. A faster profile is taken as soon as two
+// fixes in a row call for it; a slower one only after the speed stayed low
+// for a dwell time, so stopping at a light doesn't drop the fix rate. If
+// fixes stop coming for the dwell time in a moving profile, onSilence()
+// drops to stationary, since there is nothing left to measure a speed from.
+//
+// Also counts fixes and the time spent in each profile, measured on the fix
+// timestamps.
+public class MotionClassifier {
+    public enum Profile {
+        // label, interval, fastest interval, min displacement, max batching delay, high accuracy,
+        // typical acceleration for smoothing. Moving profiles ask for fixes
+        // without a displacement filter, or a device that stops would get none
+        // and never see the low speeds that let it downgrade.
+        STATIONARY("Stationary", 30000, 15000, 10f, 60000, false, 0.3),
+        WALKING("Walking", 5000, 2000, 0f, 0, true, 1.0),
+        DRIVING("Driving", 1000, 1000, 0f, 0, true, 3.0);
+
+        public final String label;
+        public final long intervalMs;
+        public final long fastestIntervalMs;
+        public final float minDisplacementMeters;
+        public final long maxDelayMs;
+        public final boolean highAccuracy;
+        public final double accelerationMps2;
+
+        Profile(String label, long intervalMs, long fastestIntervalMs, float minDisplacementMeters,
+                long maxDelayMs, boolean highAccuracy, double accelerationMps2) {
+            this.label = label;
+            this.intervalMs = intervalMs;
+            this.fastestIntervalMs = fastestIntervalMs;
+            this.minDisplacementMeters = minDisplacementMeters;
+            this.maxDelayMs = maxDelayMs;
+            this.highAccuracy = highAccuracy;
+            this.accelerationMps2 = accelerationMps2;
+        }
+    }
+
+    static final float WALKING_ENTER_MPS = 0.8f;
+    static final float WALKING_EXIT_MPS = 0.4f;
+    static final float DRIVING_ENTER_MPS = 6.0f;
+    static final float DRIVING_EXIT_MPS = 4.0f;
+    static final long DOWNGRADE_DWELL_MS = 30000;
+    private static final int WINDOW = 5;
+    private static final int UPGRADE_FIXES = 2;
+    private static final int SPEED_SAMPLES = 3;
+
+    // Ring of recent fixes
+    private final long[] times = new long[WINDOW];
+    private final double[] latitudes = new double[WINDOW];
+    private final double[] longitudes = new double[WINDOW];
+    private final float[] speeds = new float[WINDOW];
+    private final float[] accuracies = new float[WINDOW];
+    private final float[] sortScratch = new float[SPEED_SAMPLES];
+    private int head;
+    private int count;
+
+    private Profile profile;
+    private Profile candidate;
+    private int candidateFixes;
+    private long lowSinceMillis = -1;
+    private float speedMps;
+
+    private final long[] millisInProfile = new long[Profile.values().length];
+    private long fixes;
+    private long switches;
+    private long firstFixMillis = -1;
+    private long lastFixMillis = -1;
+    private long accountedUntilMillis = -1;
+
+    public MotionClassifier(Profile initial) {
+        this.profile = initial;
+    }
+
+    // speedMps is NaN when the fix has no speed. Returns the profile to use now.
+    public synchronized Profile onFix(long timeMillis, double latitude, double longitude,
+                                      float speedMps, float accuracyMeters) {
+        if (lastFixMillis >= 0 && timeMillis <= lastFixMillis) {
+            return profile; // Out of order or repeated
+        }
+        if (lastFixMillis >= 0) {
+            account(timeMillis);
+        } else {
+            firstFixMillis = timeMillis;
+            accountedUntilMillis = timeMillis;
+        }
+        lastFixMillis = timeMillis;
+        fixes++;
+
+        times[head] = timeMillis;
+        latitudes[head] = latitude;
+        longitudes[head] = longitude;
+        speeds[head] = speedMps;
+        accuracies[head] = accuracyMeters;
+        head = (head + 1) % WINDOW;
+        count = Math.min(count + 1, WINDOW);
+
+        this.speedMps = estimateSpeed();
+        if (Float.isNaN(this.speedMps)) {
+            return profile;
+        }
+        Profile target = classify(this.speedMps);
+        if (target.ordinal() > profile.ordinal()) {
+            lowSinceMillis = -1;
+            if (target == candidate) {
+                candidateFixes++;
+            } else {
+                candidate = target;
+                candidateFixes = 1;
+            }
+            if (candidateFixes >= UPGRADE_FIXES) {
+                switchTo(target);
+            }
+        } else if (target.ordinal() < profile.ordinal()) {
+            candidate = null;
+            if (lowSinceMillis < 0) {
+                lowSinceMillis = timeMillis;
+            } else if (timeMillis - lowSinceMillis >= DOWNGRADE_DWELL_MS) {
+                switchTo(target);
+            }
+        } else {
+            candidate = null;
+            lowSinceMillis = -1;
+        }
+        return profile;
+    }
+
+    // Called when no fix arrived for a while, on the same clock as the fixes.
+    // Returns the profile to use now.
+    public synchronized Profile onSilence(long nowMillis) {
+        if (profile == Profile.STATIONARY || lastFixMillis < 0
+                || nowMillis - lastFixMillis < DOWNGRADE_DWELL_MS) {
+            return profile;
+        }
+        account(nowMillis);
+        // The old fixes say nothing about the speed once fixes resume
+        count = 0;
+        speedMps = Float.NaN;
+        switchTo(Profile.STATIONARY);
+        return profile;
+    }
+
+    public synchronized Profile getProfile() {
+        return profile;
+    }
+
+    // NaN until two fixes or one with a speed have been seen
+    public synchronized float getSpeedMps() {
+        return speedMps;
+    }
+
+    public synchronized long getFixes() {
+        return fixes;
+    }
+
+    public synchronized long getSwitches() {
+        return switches;
+    }
+
+    // Time spent in the profile, up to the latest fix or silence
+    public synchronized long getMillisIn(Profile p) {
+        return millisInProfile[p.ordinal()];
+    }
+
+    public synchronized double getFixesPerMinute() {
+        long span = lastFixMillis - firstFixMillis;
+        return span > 0 ? (fixes - 1) * 60000.0 / span : 0;
+    }
+
+    Profile classify(float speed) {
+        if (speed >= DRIVING_ENTER_MPS || (profile == Profile.DRIVING && speed >= DRIVING_EXIT_MPS)) {
+            return Profile.DRIVING;
+        }
+        if (speed >= WALKING_ENTER_MPS || (profile != Profile.STATIONARY && speed >= WALKING_EXIT_MPS)) {
+            return Profile.WALKING;
+        }
+        return Profile.STATIONARY;
+    }
+
+    private void account(long untilMillis) {
+        if (untilMillis > accountedUntilMillis) {
+            millisInProfile[profile.ordinal()] += untilMillis - accountedUntilMillis;
+            accountedUntilMillis = untilMillis;
+        }
+    }
+
+    private void switchTo(Profile next) {
+        profile = next;
+        candidate = null;
+        candidateFixes = 0;
+        lowSinceMillis = -1;
+        switches++;
+    }
+
+    private float estimateSpeed() {
+        // Median of the newest reported speeds. They come from Doppler and are
+        // much steadier than positions.
+        int reported = 0;
+        for (int i = 1; i <= count && reported < SPEED_SAMPLES; i++) {
+            float speed = speeds[(head - i + WINDOW) % WINDOW];
+            if (!Float.isNaN(speed)) {
+                sortScratch[reported++] = speed;
+            }
+        }
+        if (reported == SPEED_SAMPLES || (reported > 0 && reported == count)) {
+            Arrays.sort(sortScratch, 0, reported);
+            return sortScratch[reported / 2];
+        }
+        if (count < 2) {
+            return Float.NaN;
+        }
+        int newest = (head - 1 + WINDOW) % WINDOW;
+        int oldest = (head - count + WINDOW) % WINDOW;
+        long dt = times[newest] - times[oldest];
+        if (dt <= 0) {
+            return Float.NaN;
+        }
+        double moved = GeoMath.distanceMeters(latitudes[oldest], longitudes[oldest],
+                latitudes[newest], longitudes[newest]);
+        // Jitter inside the accuracy circles is not movement
+        double noise = (accuracies[oldest] + accuracies[newest]) / 2;
+        return (float) (Math.max(0, moved - noise) * 1000 / dt);
+    }
+}
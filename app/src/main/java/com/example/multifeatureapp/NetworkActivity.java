@@ -9,9 +9,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.PackageManager;
-import android.net.ConnectivityManager;
-import android.net.Network;
-import android.net.NetworkCapabilities;
 import android.net.wifi.ScanResult;
 import android.net.wifi.WifiConfiguration;
 import android.net.wifi.WifiManager;
@@ -21,46 +18,81 @@ import android.provider.Settings;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
-import android.widget.ArrayAdapter;
 import android.widget.EditText;
 import android.widget.ImageButton;
-import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.appcompat.app.AlertDialog;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.button.MaterialButton;
+import java.io.File;
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 public class NetworkActivity extends AppCompatActivity {
+    private static final String[] PROBE_ENDPOINTS = {
+            "https://connectivitycheck.gstatic.com/generate_204",
+            "https://cp.cloudflare.com/generate_204"
+    };
+    private static final int PROBE_TIMEOUT_MS = 5000;
+    private static final int SCAN_HISTORY_CAPACITY = 1_000_000;
+    private static final String SPEED_TEST_LATENCY_URL = "https://speed.cloudflare.com/__down?bytes=0";
+    private static final String SPEED_TEST_DOWNLOAD_URL = "https://speed.cloudflare.com/__down?bytes=25000000";
+    private static final String SPEED_TEST_UPLOAD_URL = "https://speed.cloudflare.com/__up";
+    private static final int SPEED_TEST_PINGS = 20;
+    private static final long SPEED_TEST_BYTES = 10 * 1024 * 1024;
+    private static final long SPEED_TEST_DURATION_MS = 10000;
+
     private TextView tvConnectionStatus;
     private TextView tvConnectionType;
     private TextView tvTestResult;
+    private TextView tvWifiHeader;
     private MaterialButton btnCheckConnection;
     private MaterialButton btnTestConnection;
+    private MaterialButton btnSpeedTest;
     private MaterialButton btnScanWifi;
-    private ListView lvWifiNetworks;
+    private RecyclerView rvWifiNetworks;
     private WifiManager wifiManager;
     private ExecutorService executorService;
+    private ExecutorService scanExecutor;
     private Handler mainHandler;
-    private ArrayAdapter<String> wifiListAdapter;
-    private List<ScanResult> scanResults;
-    private BroadcastReceiver wifiScanReceiver;
+    private WifiListAdapter wifiListAdapter;
+    private WifiScanHistory scanHistory;
+    private WifiScanScheduler wifiScanScheduler;
+    private final WifiScanScheduler.Listener wifiScanListener = this::onScanResults;
     private BroadcastReceiver wifiStateReceiver;
     private WifiHelper wifiHelper;
+    private WifiConnectDriver connectDriver;
+    private NetworkStateStore networkStateStore;
+    private final NetworkStateStore.Listener networkStateListener =
+            snapshot -> updateConnectionStatus(snapshot.hasInternet, snapshot.getConnectionType());
+    private ExecutorService probeExecutor;
+    private HttpProber httpProber;
+    private ConnectivityProber connectivityProber;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_network);
 
-        // Initialize WifiHelper
+        // Initialize WifiHelper and the connection state machine
         wifiHelper = new WifiHelper(this);
+        connectDriver = new WifiConnectDriver(this, wifiHelper,
+                new WifiConnectStateMachine.Listener() {
+                    @Override
+                    public void onStateChanged(String ssid, WifiConnectStateMachine.State state) {
+                        Log.d("WifiConnect", ssid + " -> " + state);
+                    }
+
+                    @Override
+                    public void onAttemptFinished(WifiConnectStateMachine.Attempt attempt) {
+                        showConnectResult(attempt);
+                    }
+                });
 
         // Request all necessary permissions
         String[] permissions = {
@@ -82,45 +114,54 @@ public class NetworkActivity extends AppCompatActivity {
         tvConnectionStatus = findViewById(R.id.tvConnectionStatus);
         tvConnectionType = findViewById(R.id.tvConnectionType);
         tvTestResult = findViewById(R.id.tvTestResult);
+        tvWifiHeader = findViewById(R.id.tvWifiHeader);
         btnCheckConnection = findViewById(R.id.btnCheckConnection);
         btnTestConnection = findViewById(R.id.btnTestConnection);
+        btnSpeedTest = findViewById(R.id.btnSpeedTest);
         btnScanWifi = findViewById(R.id.btnScanWifi);
-        lvWifiNetworks = findViewById(R.id.lvWifiNetworks);
+        rvWifiNetworks = findViewById(R.id.rvWifiNetworks);
 
         // Initialize WiFi
         wifiManager = (WifiManager) getApplicationContext().getSystemService(Context.WIFI_SERVICE);
 
         // Initialize executor and handler
         executorService = Executors.newSingleThreadExecutor();
+        scanExecutor = Executors.newSingleThreadExecutor();
         mainHandler = new Handler(getMainLooper());
 
-        // Initialize WiFi list
-        wifiListAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, new ArrayList<>());
-        lvWifiNetworks.setAdapter(wifiListAdapter);
+        // Initialize connectivity prober
+        probeExecutor = Executors.newCachedThreadPool();
+        httpProber = new HttpProber("HEAD", PROBE_TIMEOUT_MS);
+        connectivityProber = new ConnectivityProber(
+                Arrays.asList(PROBE_ENDPOINTS), httpProber, probeExecutor, PROBE_TIMEOUT_MS);
+
+        // Initialize WiFi list, tapping a network opens the password dialog
+        wifiListAdapter = new WifiListAdapter(this::showWifiPasswordDialog);
+        rvWifiNetworks.setLayoutManager(new LinearLayoutManager(this));
+        rvWifiNetworks.setAdapter(wifiListAdapter);
 
         // Set click listeners
         btnCheckConnection.setOnClickListener(v -> checkNetworkConnection());
         btnTestConnection.setOnClickListener(v -> testInternetConnection());
+        btnSpeedTest.setOnClickListener(v -> runSpeedTest());
         btnScanWifi.setOnClickListener(v -> scanWifiNetworks());
 
-        // Set WiFi network click listener
-        lvWifiNetworks.setOnItemClickListener((parent, view, position, id) -> {
-            if (scanResults != null && position < scanResults.size()) {
-                showWifiPasswordDialog(scanResults.get(position));
+        // Keep every scan for site surveys
+        scanExecutor.execute(() -> {
+            try {
+                scanHistory = WifiScanHistory.acquire(new File(getFilesDir(), "wifi_scan_history.bin"),
+                        SCAN_HISTORY_CAPACITY);
+            } catch (IOException e) {
+                Log.e("WiFiScan", "Could not open scan history: " + e.getMessage());
             }
         });
 
-        // Initialize WiFi scan receiver
-        wifiScanReceiver = new BroadcastReceiver() {
-            @Override
-            public void onReceive(Context context, Intent intent) {
-                if (intent.getAction().equals(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION)) {
-                    scanSuccess(wifiManager.getScanResults());
-                } else {
-                    scanFailure();
-                }
-            }
-        };
+        // Scans are shared across the process, show the last results straight away
+        wifiScanScheduler = WifiScanScheduler.getInstance(this);
+        wifiScanScheduler.addListener(wifiScanListener);
+        if (!wifiScanScheduler.getCachedResults().isEmpty()) {
+            showScanResults(wifiScanScheduler.getCachedResults(), wifiScanScheduler.getCachedAtMillis());
+        }
 
         // Initialize WiFi state receiver
         wifiStateReceiver = new BroadcastReceiver() {
@@ -139,44 +180,20 @@ public class NetworkActivity extends AppCompatActivity {
         };
 
         // Register receivers
-        IntentFilter scanFilter = new IntentFilter(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION);
         IntentFilter stateFilter = new IntentFilter(WifiManager.WIFI_STATE_CHANGED_ACTION);
-        registerReceiver(wifiScanReceiver, scanFilter);
         registerReceiver(wifiStateReceiver, stateFilter);
 
+        // Follow network changes as they happen
+        networkStateStore = NetworkStateStore.getInstance(this);
+        networkStateStore.addListener(networkStateListener);
+
         // Initial check
         checkNetworkConnection();
     }
 
     private void checkNetworkConnection() {
-        ConnectivityManager connectivityManager =
-                (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
-        Network network = connectivityManager.getActiveNetwork();
-
-        if (network == null) {
-            updateConnectionStatus(false, "Not Connected");
-            return;
-        }
-
-        NetworkCapabilities capabilities =
-                connectivityManager.getNetworkCapabilities(network);
-        if (capabilities == null) {
-            updateConnectionStatus(false, "Not Connected");
-            return;
-        }
-
-        boolean hasInternet = capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
-        StringBuilder connectionType = new StringBuilder();
-
-        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
-            connectionType.append("WiFi");
-        }
-        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
-            if (connectionType.length() > 0) connectionType.append(" & ");
-            connectionType.append("Mobile Data");
-        }
-
-        updateConnectionStatus(hasInternet, connectionType.toString());
+        NetworkStateStore.Snapshot snapshot = networkStateStore.getSnapshot();
+        updateConnectionStatus(snapshot.hasInternet, snapshot.getConnectionType());
     }
 
     private void updateConnectionStatus(boolean isConnected, String connectionType) {
@@ -189,15 +206,19 @@ public class NetworkActivity extends AppCompatActivity {
         tvTestResult.setText("Testing internet connection...");
         executorService.execute(() -> {
             try {
-                // Test multiple reliable servers
-                boolean googleTest = checkSingleConnection("https://www.google.com");
-                boolean cloudflareTest = checkSingleConnection("https://1.1.1.1");
+                // Probe all endpoints at once, the first one to validate wins
+                ConnectivityProber.Result result = connectivityProber.probe();
+                HttpProber.Timing timing = result.isConnected()
+                        ? httpProber.getLastTiming(result.endpoint) : null;
 
                 mainHandler.post(() -> {
-                    if (googleTest || cloudflareTest) {
-                        tvTestResult.setText("✅ Internet connection is working well!");
+                    if (result.isConnected()) {
+                        tvTestResult.setText("✅ Internet connection is working well!\n"
+                                + "Reached " + result.endpoint + " in " + result.latencyMs + " ms"
+                                + (timing != null ? "\n" + timing : ""));
                     } else {
-                        tvTestResult.setText("❌ Internet connection test failed");
+                        tvTestResult.setText("❌ Internet connection test failed"
+                                + " (no internet or a captive portal)");
                     }
                 });
             } catch (Exception e) {
@@ -208,26 +229,27 @@ public class NetworkActivity extends AppCompatActivity {
         });
     }
 
-    private boolean checkSingleConnection(String urlString) {
-        HttpURLConnection urlConnection = null;
-        try {
-            URL url = new URL(urlString);
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestProperty("User-Agent", "Android");
-            urlConnection.setRequestProperty("Connection", "close");
-            urlConnection.setConnectTimeout(5000);
-            urlConnection.setReadTimeout(5000);
-            urlConnection.connect();
-
-            int responseCode = urlConnection.getResponseCode();
-            return responseCode >= 200 && responseCode < 300;
-        } catch (IOException e) {
-            return false;
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
+    private void runSpeedTest() {
+        tvTestResult.setText("Measuring latency and bandwidth...");
+        btnSpeedTest.setEnabled(false);
+        executorService.execute(() -> {
+            try {
+                SpeedTest speedTest = new SpeedTest(SPEED_TEST_LATENCY_URL,
+                        SPEED_TEST_DOWNLOAD_URL, SPEED_TEST_UPLOAD_URL, PROBE_TIMEOUT_MS);
+                SpeedTest.Result result = speedTest.run(SPEED_TEST_PINGS,
+                        SPEED_TEST_BYTES, SPEED_TEST_DURATION_MS);
+
+                mainHandler.post(() -> {
+                    tvTestResult.setText(result.toString());
+                    btnSpeedTest.setEnabled(true);
+                });
+            } catch (Exception e) {
+                mainHandler.post(() -> {
+                    tvTestResult.setText("❌ Speed test error: " + e.getMessage());
+                    btnSpeedTest.setEnabled(true);
+                });
             }
-        }
+        });
     }
 
     private void scanWifiNetworks() {
@@ -238,44 +260,47 @@ public class NetworkActivity extends AppCompatActivity {
         }
 
         if (checkLocationPermission()) {
-            wifiListAdapter.clear();
-            wifiManager.startScan();
+            if (wifiScanScheduler.requestScan() == WifiScanScheduler.Outcome.THROTTLED) {
+                long waitSeconds = (wifiScanScheduler.getNextScanAvailableInMs() + 999) / 1000;
+                Toast.makeText(this, "Scan limit reached, next scan in " + waitSeconds + "s",
+                        Toast.LENGTH_SHORT).show();
+            }
         }
     }
 
-    private void scanSuccess(List<ScanResult> results) {
-        scanResults = results;
-        wifiListAdapter.clear();
-        if (results != null) {
-            for (ScanResult result : results) {
-                String security = "";
-                if (result.capabilities.contains("WPA2")) {
-                    security = "WPA2";
-                } else if (result.capabilities.contains("WPA")) {
-                    security = "WPA";
-                } else if (result.capabilities.contains("WEP")) {
-                    security = "WEP";
-                } else {
-                    security = "Open";
-                }
-                wifiListAdapter.add(result.SSID + "\n" + security + " - Signal: " + result.level + " dBm");
-                Log.d("WiFiScan", "SSID: " + result.SSID + ", BSSID: " + result.BSSID + 
-                    ", Level: " + result.level + ", Capabilities: " + result.capabilities);
-            }
-            wifiListAdapter.notifyDataSetChanged();
+    private void onScanResults(List<ScanResult> results, long scannedAtMillis, boolean fresh) {
+        if (results.isEmpty()) {
+            Toast.makeText(this, fresh ? "No networks found" : "Failed to scan WiFi networks",
+                    Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (!fresh) {
+            Log.w("WiFiScan", "WiFi scan could not run, showing cached results");
         } else {
-            Toast.makeText(this, "No networks found", Toast.LENGTH_SHORT).show();
+            scanExecutor.execute(() -> {
+                if (scanHistory != null) {
+                    scanHistory.appendAll(results, scannedAtMillis);
+                }
+            });
         }
+        showScanResults(results, scannedAtMillis);
     }
 
-    private void scanFailure() {
-        Log.e("WiFiScan", "WiFi scan failed");
-        Toast.makeText(this, "Failed to scan WiFi networks", Toast.LENGTH_SHORT).show();
+    private void showScanResults(List<ScanResult> results, long scannedAtMillis) {
+        Log.d("WiFiScan", "Showing " + results.size() + " access points");
+        long ageSeconds = Math.max(0, (System.currentTimeMillis() - scannedAtMillis) / 1000);
+        tvWifiHeader.setText("Available WiFi Networks (updated " + ageSeconds + "s ago):");
+
+        // Build the rows off the main thread, the adapter diffs them in the background too
+        scanExecutor.execute(() -> {
+            List<WifiNetwork> networks = WifiNetwork.fromScanResults(results);
+            mainHandler.post(() -> wifiListAdapter.submitList(networks));
+        });
     }
 
-    private void showWifiPasswordDialog(ScanResult network) {
+    private void showWifiPasswordDialog(WifiNetwork network) {
         // Check if already connected to this network
-        if (isConnectedToWifi(network.SSID)) {
+        if (isConnectedToWifi(network.ssid)) {
             return; // Silently return if already connected
         }
 
@@ -301,70 +326,49 @@ public class NetworkActivity extends AppCompatActivity {
         });
 
         builder.setView(dialogView)
-                .setTitle("Connect to " + network.SSID)
+                .setTitle("Connect to " + network.title)
                 .setPositiveButton("Connect", (dialog, which) -> {
                     String password = passwordInput.getText().toString();
                     
                     // Check if network requires password
-                    boolean requiresPassword = network.capabilities.contains("WPA") || 
-                                            network.capabilities.contains("WPA2") || 
-                                            network.capabilities.contains("WEP");
-                    
-                    if (requiresPassword && password.trim().isEmpty()) {
+                    if (network.requiresPassword() && password.trim().isEmpty()) {
                         Toast.makeText(this, "Password is required for this network", Toast.LENGTH_LONG).show();
                         return;
                     }
 
-                    // Try the newer network suggestion method first
-                    wifiHelper.suggestWifiNetwork(network.SSID, password);
-                    
-                    // If that fails, fall back to the traditional method
-                    new Handler().postDelayed(() -> {
-                        if (!isConnectedToWifi(network.SSID)) {
-                            wifiHelper.connectToWifi(network.SSID, password);
-                            
-                            // Check connection status multiple times
-                            final java.util.concurrent.atomic.AtomicInteger attempts = new java.util.concurrent.atomic.AtomicInteger(0);
-                            Handler connectionCheckHandler = new Handler();
-                            Runnable connectionCheck = new Runnable() {
-                                @Override
-                                public void run() {
-                                    if (isConnectedToWifi(network.SSID)) {
-                                        Toast.makeText(NetworkActivity.this, 
-                                            "Connected to " + network.SSID, 
-                                            Toast.LENGTH_SHORT).show();
-                                        return;
-                                    }
-                                    
-                                    if (attempts.incrementAndGet() < 3) {
-                                        connectionCheckHandler.postDelayed(this, 2000);
-                                    } else {
-                                        Toast.makeText(NetworkActivity.this, 
-                                            "Failed to connect. Please check your password.", 
-                                            Toast.LENGTH_LONG).show();
-                                    }
-                                }
-                            };
-                            connectionCheckHandler.postDelayed(connectionCheck, 2000);
-                        }
-                    }, 2000);
+                    // Suggestion first, legacy fallback, both driven by network events
+                    connectDriver.getStateMachine().connect(network.ssid, password);
                 })
                 .setNegativeButton("Cancel", null)
                 .show();
     }
 
-    private boolean isConnectedToWifi(String ssid) {
-        ConnectivityManager connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
-        Network activeNetwork = connectivityManager.getActiveNetwork();
-        if (activeNetwork != null) {
-            NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(activeNetwork);
-            if (capabilities != null && capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
-                WifiManager wifiManager = (WifiManager) getApplicationContext().getSystemService(Context.WIFI_SERVICE);
-                String connectedSSID = wifiManager.getConnectionInfo().getSSID();
-                return connectedSSID != null && connectedSSID.equals("\"" + ssid + "\"");
-            }
+    private void showConnectResult(WifiConnectStateMachine.Attempt attempt) {
+        switch (attempt.failureReason) {
+            case NONE:
+                Toast.makeText(this, "Connected to " + attempt.ssid + " in " + attempt.durationMs + " ms",
+                        Toast.LENGTH_SHORT).show();
+                break;
+            case AUTHENTICATION:
+                Toast.makeText(this, "Failed to connect. Please check your password.",
+                        Toast.LENGTH_LONG).show();
+                break;
+            case CONFIGURATION:
+                Toast.makeText(this, "Could not configure " + attempt.ssid, Toast.LENGTH_LONG).show();
+                break;
+            case TIMEOUT:
+                Toast.makeText(this, "Failed to connect to " + attempt.ssid, Toast.LENGTH_LONG).show();
+                break;
+            case ERROR:
+                Toast.makeText(this, "Error while connecting to " + attempt.ssid, Toast.LENGTH_LONG).show();
+                break;
+            default:
+                break;
         }
-        return false;
+    }
+
+    private boolean isConnectedToWifi(String ssid) {
+        return networkStateStore.getSnapshot().isConnectedToWifi(ssid);
     }
 
     private boolean checkLocationPermission() {
@@ -380,12 +384,30 @@ public class NetworkActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        networkStateStore.removeListener(networkStateListener);
+        connectDriver.release();
+        wifiHelper.shutdown();
+        wifiScanScheduler.removeListener(wifiScanListener);
         try {
-            unregisterReceiver(wifiScanReceiver);
             unregisterReceiver(wifiStateReceiver);
         } catch (Exception e) {
             Log.e("NetworkActivity", "Error unregistering receivers: " + e.getMessage());
         }
         executorService.shutdown();
+        scanExecutor.execute(() -> {
+            if (scanHistory != null) {
+                WifiScanHistory history = scanHistory;
+                scanHistory = null;
+                try {
+                    // Closes the file unless a newer activity holds it too
+                    WifiScanHistory.release(history);
+                } catch (IOException e) {
+                    Log.e("WiFiScan", "Error closing scan history: " + e.getMessage());
+                }
+            }
+        });
+        scanExecutor.shutdown();
+        probeExecutor.shutdownNow();
+        httpProber.evictAll();
     }
 }
\ No newline at end of file
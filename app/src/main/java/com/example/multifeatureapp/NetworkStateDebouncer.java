@@ -0,0 +1,67 @@
+package com.example.multifeatureapp;
+
+// Decides when a new network state reaches NetworkStateStore's listeners.
+// Immediate listeners hear every state that differs from the one before at
+// once. Settled listeners get a state once it has held for DEBOUNCE_MS, and
+// no later than MAX_DELAY_MS after the first change while it keeps changing.
+// Updates that leave the snapshot as it was, like the signal strength changes
+// a NetworkCallback reports, are dropped and don't restart the wait. Must be
+// used from the scheduler's thread.
+public class NetworkStateDebouncer {
+    static final long DEBOUNCE_MS = 500;
+    static final long MAX_DELAY_MS = 2000;
+
+    public interface Scheduler {
+        void postDelayed(Runnable task, long delayMs);
+
+        void cancel(Runnable task);
+
+        // Monotonic
+        long nowMillis();
+    }
+
+    private final Scheduler scheduler;
+    private final NetworkStateStore.Listener immediateListener;
+    private final NetworkStateStore.Listener settledListener;
+    private NetworkStateStore.Snapshot published;
+    private NetworkStateStore.Snapshot latest;
+    // When the first unpublished change arrived, -1 if there is none
+    private long pendingSinceMillis = -1;
+
+    private final Runnable publish = this::publish;
+
+    public NetworkStateDebouncer(NetworkStateStore.Snapshot initial, Scheduler scheduler,
+                                 NetworkStateStore.Listener immediateListener,
+                                 NetworkStateStore.Listener settledListener) {
+        this.published = initial;
+        this.latest = initial;
+        this.scheduler = scheduler;
+        this.immediateListener = immediateListener;
+        this.settledListener = settledListener;
+    }
+
+    public void onStateChanged(NetworkStateStore.Snapshot next) {
+        if (next.sameStateAs(latest)) {
+            return;
+        }
+        latest = next;
+        immediateListener.onNetworkStateChanged(next);
+        long now = scheduler.nowMillis();
+        if (pendingSinceMillis < 0) {
+            pendingSinceMillis = now;
+        }
+        scheduler.cancel(publish);
+        long untilMaxDelay = pendingSinceMillis + MAX_DELAY_MS - now;
+        scheduler.postDelayed(publish, Math.max(0, Math.min(DEBOUNCE_MS, untilMaxDelay)));
+    }
+
+    private void publish() {
+        pendingSinceMillis = -1;
+        // Nothing to tell if the state went back to the published one
+        if (latest.sameStateAs(published)) {
+            return;
+        }
+        published = latest;
+        settledListener.onNetworkStateChanged(latest);
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.multifeatureapp;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.TransportInfo;
+import android.net.wifi.WifiInfo;
+import android.net.wifi.WifiManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Process-wide cache of the default network's state, fed by a
+// ConnectivityManager.NetworkCallback. Reading the snapshot never crosses
+// into system_server; listeners are told about changes once a transport has
+// settled, see NetworkStateDebouncer. Immediate listeners hear every change
+// at once, for callers that must not miss a short-lived state.
+public final class NetworkStateStore {
+
+    public static final class Snapshot {
+        public static final Snapshot DISCONNECTED =
+                new Snapshot(false, false, false, false, null, 0);
+
+        public final boolean connected;
+        public final boolean hasInternet;
+        public final boolean wifi;
+        public final boolean cellular;
+        public final String ssid;
+        public final long timestamp;
+
+        Snapshot(boolean connected, boolean hasInternet, boolean wifi, boolean cellular,
+                 String ssid, long timestamp) {
+            this.connected = connected;
+            this.hasInternet = hasInternet;
+            this.wifi = wifi;
+            this.cellular = cellular;
+            this.ssid = ssid;
+            this.timestamp = timestamp;
+        }
+
+        public boolean isConnectedToWifi(String ssid) {
+            return wifi && this.ssid != null && this.ssid.equals(ssid);
+        }
+
+        public String getConnectionType() {
+            StringBuilder connectionType = new StringBuilder();
+            if (wifi) {
+                connectionType.append("WiFi");
+            }
+            if (cellular) {
+                if (connectionType.length() > 0) connectionType.append(" & ");
+                connectionType.append("Mobile Data");
+            }
+            return connected ? connectionType.toString() : "Not Connected";
+        }
+
+        boolean sameStateAs(Snapshot other) {
+            return connected == other.connected && hasInternet == other.hasInternet
+                    && wifi == other.wifi && cellular == other.cellular
+                    && (ssid == null ? other.ssid == null : ssid.equals(other.ssid));
+        }
+    }
+
+    public interface Listener {
+        void onNetworkStateChanged(Snapshot snapshot);
+    }
+
+    private static NetworkStateStore instance;
+
+    private final WifiManager wifiManager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<Listener> immediateListeners = new CopyOnWriteArrayList<>();
+    private final NetworkStateDebouncer debouncer;
+    private volatile Snapshot snapshot;
+    // Set before the callback is registered, then only used on its thread.
+    // Before API 29 the SSID costs a binder call, and a network keeps its
+    // SSID, so it is looked up once per network.
+    private Network ssidNetwork;
+    private String networkSsid;
+
+    public static synchronized NetworkStateStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new NetworkStateStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private NetworkStateStore(Context context) {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+
+        // Seed the cache once, the callback keeps it current from here on
+        Network network = connectivityManager.getActiveNetwork();
+        NetworkCapabilities capabilities = network != null
+                ? connectivityManager.getNetworkCapabilities(network) : null;
+        snapshot = capabilities != null ? toSnapshot(network, capabilities) : Snapshot.DISCONNECTED;
+
+        debouncer = new NetworkStateDebouncer(snapshot, new NetworkStateDebouncer.Scheduler() {
+            @Override
+            public void postDelayed(Runnable task, long delayMs) {
+                mainHandler.postDelayed(task, delayMs);
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+                mainHandler.removeCallbacks(task);
+            }
+
+            @Override
+            public long nowMillis() {
+                return SystemClock.elapsedRealtime();
+            }
+        }, next -> {
+            for (Listener listener : immediateListeners) {
+                listener.onNetworkStateChanged(next);
+            }
+        }, next -> {
+            snapshot = next;
+            for (Listener listener : listeners) {
+                listener.onNetworkStateChanged(next);
+            }
+        });
+
+        // Without the flag the WifiInfo in the capabilities has no SSID from API 31
+        connectivityManager.registerDefaultNetworkCallback(Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+                ? new DefaultNetworkCallback(ConnectivityManager.NetworkCallback.FLAG_INCLUDE_LOCATION_INFO)
+                : new DefaultNetworkCallback());
+    }
+
+    private final class DefaultNetworkCallback extends ConnectivityManager.NetworkCallback {
+        DefaultNetworkCallback() {
+        }
+
+        DefaultNetworkCallback(int flags) {
+            super(flags);
+        }
+
+        @Override
+        public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+            Snapshot next = toSnapshot(network, capabilities);
+            mainHandler.post(() -> debouncer.onStateChanged(next));
+        }
+
+        @Override
+        public void onLost(Network network) {
+            mainHandler.post(() -> debouncer.onStateChanged(Snapshot.DISCONNECTED));
+        }
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    // Listeners are called on the main thread
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Called on the main thread for every change, without the debounce
+    public void addImmediateListener(Listener listener) {
+        immediateListeners.add(listener);
+    }
+
+    public void removeImmediateListener(Listener listener) {
+        immediateListeners.remove(listener);
+    }
+
+    private Snapshot toSnapshot(Network network, NetworkCapabilities capabilities) {
+        boolean wifi = capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI);
+        String ssid = null;
+        if (wifi) {
+            ssid = ssidOf(network, capabilities);
+        }
+        return new Snapshot(true,
+                capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET),
+                wifi,
+                capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR),
+                ssid,
+                System.currentTimeMillis());
+    }
+
+    // Only looked up when the network changes, never on read
+    private String ssidOf(Network network, NetworkCapabilities capabilities) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            TransportInfo transportInfo = capabilities.getTransportInfo();
+            if (transportInfo instanceof WifiInfo) {
+                return unquote(((WifiInfo) transportInfo).getSSID());
+            }
+        }
+        if (!network.equals(ssidNetwork)) {
+            WifiInfo info = wifiManager.getConnectionInfo();
+            ssidNetwork = network;
+            networkSsid = info != null ? unquote(info.getSSID()) : null;
+        }
+        return networkSsid;
+    }
+
+    static String unquote(String ssid) {
+        if (ssid != null && ssid.length() >= 2 && ssid.startsWith("\"") && ssid.endsWith("\"")) {
+            return ssid.substring(1, ssid.length() - 1);
+        }
+        return ssid;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.multifeatureapp;
+
+import java.util.Random;
+
+// Exponential backoff with jitter for reconnecting failed or dropped links.
+// The ceiling doubles from the base delay up to the cap, and each delay is
+// drawn between half the ceiling and the full ceiling, so links that dropped
+// together don't all retry at the same moment.
+public class ReconnectPolicy {
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final int maxAttempts;
+    private final Random random;
+
+    // maxAttempts of 0 retries forever
+    public ReconnectPolicy(long baseDelayMs, long maxDelayMs, int maxAttempts) {
+        this(baseDelayMs, maxDelayMs, maxAttempts, new Random());
+    }
+
+    ReconnectPolicy(long baseDelayMs, long maxDelayMs, int maxAttempts, Random random) {
+        if (baseDelayMs <= 0 || maxDelayMs < baseDelayMs) {
+            throw new IllegalArgumentException("Need 0 < baseDelayMs <= maxDelayMs");
+        }
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.maxAttempts = maxAttempts;
+        this.random = random;
+    }
+
+    // attempt counts the retries so far plus this one, starting at 1
+    public boolean shouldRetry(int attempt) {
+        return maxAttempts == 0 || attempt <= maxAttempts;
+    }
+
+    public long getDelayMs(int attempt) {
+        long ceiling = getCeilingMs(attempt);
+        long floor = ceiling / 2;
+        synchronized (random) {
+            return floor + (long) (random.nextDouble() * (ceiling - floor + 1));
+        }
+    }
+
+    long getCeilingMs(int attempt) {
+        int doublings = Math.max(0, attempt - 1);
+        // Stop shifting before it could overflow
+        if (doublings >= Long.numberOfLeadingZeros(baseDelayMs) - 1) {
+            return maxDelayMs;
+        }
+        return Math.min(maxDelayMs, baseDelayMs << doublings);
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.multifeatureapp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Full-duplex streaming over an RFCOMM transport. A reader thread moves bytes
+// from the socket into an inbound ring, a dispatch thread hands them to the
+// listener, and a writer thread drains the outbound ring into the socket.
+// Both rings are allocated once; when one fills up the side feeding it
+// blocks, so a slow listener stops the socket reads instead of growing memory.
+public class RfcommConnection implements Closeable {
+    public interface Listener {
+        // Called on the dispatch thread, the buffer is reused after returning
+        void onData(byte[] buffer, int offset, int length);
+
+        void onClosed(IOException cause);
+    }
+
+    public static class Stats {
+        public final long bytesIn;
+        public final long bytesOut;
+        public final long chunksIn;
+        public final long messagesOut;
+
+        Stats(long bytesIn, long bytesOut, long chunksIn, long messagesOut) {
+            this.bytesIn = bytesIn;
+            this.bytesOut = bytesOut;
+            this.chunksIn = chunksIn;
+            this.messagesOut = messagesOut;
+        }
+
+        @Override
+        public String toString() {
+            return "in " + bytesIn + " B / " + chunksIn + " chunks, out "
+                    + bytesOut + " B / " + messagesOut + " msg";
+        }
+    }
+
+    private static final int CHUNK_SIZE = 4096;
+
+    private final String name;
+    private final RfcommTransport transport;
+    private final Listener listener;
+    private final ByteRingBuffer inbound;
+    private final ByteRingBuffer outbound;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    // The stream has no message boundaries on the way in, only read chunks
+    private final AtomicLong chunksIn = new AtomicLong();
+    private final AtomicLong messagesOut = new AtomicLong();
+    private Thread readerThread;
+    private Thread dispatchThread;
+    private Thread writerThread;
+
+    public RfcommConnection(String name, RfcommTransport transport, int bufferSize, Listener listener) {
+        this.name = name;
+        this.transport = transport;
+        this.listener = listener;
+        this.inbound = new ByteRingBuffer(bufferSize);
+        this.outbound = new ByteRingBuffer(bufferSize);
+    }
+
+    public void start() throws IOException {
+        InputStream in = transport.getInputStream();
+        OutputStream out = transport.getOutputStream();
+        readerThread = new Thread(() -> readLoop(in), "rfcomm-read-" + name);
+        dispatchThread = new Thread(this::dispatchLoop, "rfcomm-dispatch-" + name);
+        writerThread = new Thread(() -> writeLoop(out), "rfcomm-write-" + name);
+        readerThread.start();
+        dispatchThread.start();
+        writerThread.start();
+    }
+
+    // Queues a message whole, blocking up to timeoutMs until the outbound ring
+    // has room for all of it. Returns false on timeout, leaving nothing queued,
+    // or once the connection is closed. Messages larger than the ring are
+    // rejected with IllegalArgumentException.
+    public boolean send(byte[] data, int offset, int length, long timeoutMs) throws InterruptedException {
+        int written = outbound.write(data, offset, length, timeoutMs);
+        if (written != length) {
+            return false;
+        }
+        messagesOut.incrementAndGet();
+        return true;
+    }
+
+    public boolean send(byte[] data, long timeoutMs) throws InterruptedException {
+        return send(data, 0, data.length, timeoutMs);
+    }
+
+    public Stats getStats() {
+        return new Stats(bytesIn.get(), bytesOut.get(), chunksIn.get(), messagesOut.get());
+    }
+
+    public boolean isOpen() {
+        return !closed.get();
+    }
+
+    @Override
+    public void close() {
+        shutdown(null);
+    }
+
+    private void readLoop(InputStream in) {
+        // Each read has to fit the inbound ring in one piece
+        byte[] chunk = new byte[Math.min(CHUNK_SIZE, inbound.capacity())];
+        try {
+            while (!closed.get()) {
+                int read = in.read(chunk);
+                if (read == -1) {
+                    shutdown(new IOException("Remote closed the connection"));
+                    return;
+                }
+                bytesIn.addAndGet(read);
+                // Blocks while the listener is behind
+                if (inbound.write(chunk, 0, read, Long.MAX_VALUE) < 0) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            shutdown(e);
+        } catch (InterruptedException e) {
+            shutdown(null);
+        }
+    }
+
+    private void dispatchLoop() {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        try {
+            int read;
+            while ((read = inbound.read(chunk, 0, chunk.length)) != -1) {
+                chunksIn.incrementAndGet();
+                listener.onData(chunk, 0, read);
+            }
+        } catch (InterruptedException e) {
+            shutdown(null);
+        }
+    }
+
+    private void writeLoop(OutputStream out) {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        try {
+            int read;
+            while ((read = outbound.read(chunk, 0, chunk.length)) != -1) {
+                out.write(chunk, 0, read);
+                bytesOut.addAndGet(read);
+                if (outbound.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            shutdown(e);
+        } catch (InterruptedException e) {
+            shutdown(null);
+        }
+    }
+
+    private void shutdown(IOException cause) {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        inbound.close();
+        outbound.close();
+        try {
+            transport.close();
+        } catch (IOException e) {
+            // Ignore close exception
+        }
+        listener.onClosed(cause);
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.multifeatureapp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// The byte stream under an RFCOMM connection. BluetoothSocketTransport wraps
+// a real socket, tests plug in piped streams instead.
+public interface RfcommTransport extends Closeable {
+    // Blocks until the link is up, close() from another thread aborts it
+    void connect() throws IOException;
+
+    InputStream getInputStream() throws IOException;
+
+    OutputStream getOutputStream() throws IOException;
+}
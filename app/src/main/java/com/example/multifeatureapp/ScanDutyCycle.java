@@ -0,0 +1,122 @@
+package com.example.multifeatureapp;
+
+import android.os.Handler;
+import android.os.Looper;
+
+// Runs scanning as alternating scan windows and idle gaps on the main thread,
+// and ticks while running so the caller can age out devices that went away.
+// A profile with no idle gap scans continuously.
+public class ScanDutyCycle {
+    public static final long TICK_MS = 2000;
+
+    public enum Profile {
+        CONTINUOUS("100%", 12000, 0),
+        HALF("50%", 12000, 12000),
+        QUARTER("25%", 12000, 36000);
+
+        public final String label;
+        public final long scanWindowMs;
+        public final long idleMs;
+
+        Profile(String label, long scanWindowMs, long idleMs) {
+            this.label = label;
+            this.scanWindowMs = scanWindowMs;
+            this.idleMs = idleMs;
+        }
+
+        public long getPeriodMs() {
+            return scanWindowMs + idleMs;
+        }
+
+        public Profile next() {
+            Profile[] profiles = values();
+            return profiles[(ordinal() + 1) % profiles.length];
+        }
+    }
+
+    public interface Listener {
+        void onScanWindowStart();
+
+        void onScanWindowEnd();
+
+        void onTick(long nowMillis);
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Listener listener;
+    private Profile profile = Profile.CONTINUOUS;
+    private boolean running;
+    private boolean inScanWindow;
+
+    private final Runnable openWindow = this::openWindow;
+    private final Runnable closeWindow = this::closeWindow;
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            listener.onTick(System.currentTimeMillis());
+            handler.postDelayed(this, TICK_MS);
+        }
+    };
+
+    public ScanDutyCycle(Listener listener) {
+        this.listener = listener;
+    }
+
+    // Takes effect immediately, a running cycle starts a fresh scan window
+    public void setProfile(Profile profile) {
+        this.profile = profile;
+        if (running) {
+            stop();
+            start();
+        }
+    }
+
+    public Profile getProfile() {
+        return profile;
+    }
+
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        handler.postDelayed(tick, TICK_MS);
+        openWindow();
+    }
+
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        handler.removeCallbacks(openWindow);
+        handler.removeCallbacks(closeWindow);
+        handler.removeCallbacks(tick);
+        if (inScanWindow) {
+            inScanWindow = false;
+            listener.onScanWindowEnd();
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public boolean isInScanWindow() {
+        return inScanWindow;
+    }
+
+    private void openWindow() {
+        inScanWindow = true;
+        listener.onScanWindowStart();
+        if (profile.idleMs > 0) {
+            handler.postDelayed(closeWindow, profile.scanWindowMs);
+        }
+    }
+
+    private void closeWindow() {
+        inScanWindow = false;
+        listener.onScanWindowEnd();
+        handler.postDelayed(openWindow, profile.idleMs);
+    }
+}
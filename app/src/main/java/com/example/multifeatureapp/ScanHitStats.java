@@ -0,0 +1,71 @@
+package com.example.multifeatureapp;
+
+// Hit counters for one scan mode, accumulated over every period the mode was
+// active so modes can be compared by results and distinct devices per minute.
+public class ScanHitStats {
+    private final LongIntMap seen = new LongIntMap(64);
+    private long hits;
+    private long activeMillis;
+    private long startedAtMillis = -1;
+    private long firstHitDelayMillis = -1;
+
+    public synchronized void start(long nowMillis) {
+        if (startedAtMillis < 0) {
+            startedAtMillis = nowMillis;
+        }
+    }
+
+    public synchronized void stop(long nowMillis) {
+        if (startedAtMillis >= 0) {
+            activeMillis += nowMillis - startedAtMillis;
+            startedAtMillis = -1;
+        }
+    }
+
+    public synchronized boolean isActive() {
+        return startedAtMillis >= 0;
+    }
+
+    // Returns true the first time this mode sees the address
+    public synchronized boolean recordHit(long address, long nowMillis) {
+        hits++;
+        if (firstHitDelayMillis < 0 && startedAtMillis >= 0) {
+            firstHitDelayMillis = activeMillis + nowMillis - startedAtMillis;
+        }
+        if (address == MacAddresses.INVALID || seen.get(address) != LongIntMap.MISSING) {
+            return false;
+        }
+        seen.put(address, seen.size());
+        return true;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized int getUniqueDevices() {
+        return seen.size();
+    }
+
+    public synchronized long getActiveMillis(long nowMillis) {
+        return activeMillis + (startedAtMillis >= 0 ? nowMillis - startedAtMillis : 0);
+    }
+
+    // Scan time until the first result, -1 if there was none yet
+    public synchronized long getFirstHitDelayMillis() {
+        return firstHitDelayMillis;
+    }
+
+    public synchronized double getHitsPerMinute(long nowMillis) {
+        return perMinute(hits, nowMillis);
+    }
+
+    public synchronized double getUniquePerMinute(long nowMillis) {
+        return perMinute(seen.size(), nowMillis);
+    }
+
+    private double perMinute(long count, long nowMillis) {
+        long active = getActiveMillis(nowMillis);
+        return active > 0 ? count * 60000.0 / active : 0;
+    }
+}
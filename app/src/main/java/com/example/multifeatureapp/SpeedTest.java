@@ -0,0 +1,174 @@
+package com.example.multifeatureapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Locale;
+import java.util.Random;
+
+// Measures round-trip latency and sustained download/upload throughput against
+// plain HTTP endpoints. Payloads stream through one reused direct buffer so a
+// run allocates nothing per chunk.
+public class SpeedTest {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static class Result {
+        public final LatencyHistogram latency;
+        public final long bytesDownloaded;
+        public final double downloadMbps;
+        public final long bytesUploaded;
+        public final double uploadMbps;
+
+        Result(LatencyHistogram latency, long bytesDownloaded, double downloadMbps,
+               long bytesUploaded, double uploadMbps) {
+            this.latency = latency;
+            this.bytesDownloaded = bytesDownloaded;
+            this.downloadMbps = downloadMbps;
+            this.bytesUploaded = bytesUploaded;
+            this.uploadMbps = uploadMbps;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "Latency p50 %.1f ms, p90 %.1f ms, p99 %.1f ms\n"
+                            + "Download %.2f Mbps\nUpload %.2f Mbps",
+                    latency.getPercentile(50) / 1000.0, latency.getPercentile(90) / 1000.0,
+                    latency.getPercentile(99) / 1000.0, downloadMbps, uploadMbps);
+        }
+    }
+
+    private final String latencyUrl;
+    private final String downloadUrl;
+    private final String uploadUrl;
+    private final int timeoutMs;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final HttpProber prober;
+
+    public SpeedTest(String latencyUrl, String downloadUrl, String uploadUrl, int timeoutMs) {
+        this.latencyUrl = latencyUrl;
+        this.downloadUrl = downloadUrl;
+        this.uploadUrl = uploadUrl;
+        this.timeoutMs = timeoutMs;
+        this.prober = new HttpProber("GET", timeoutMs);
+    }
+
+    public Result run(int latencySamples, long maxBytes, long maxDurationMs) throws IOException {
+        LatencyHistogram latency = measureLatency(latencySamples);
+        long[] download = measureDownload(maxBytes, maxDurationMs);
+        long[] upload = measureUpload(maxBytes, maxDurationMs);
+        return new Result(latency, download[0], toMbps(download[0], download[1]),
+                upload[0], toMbps(upload[0], upload[1]));
+    }
+
+    LatencyHistogram measureLatency(int samples) throws IOException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        try {
+            // The first probe pays for DNS, TCP and TLS, only time the reused ones
+            prober.probe(latencyUrl);
+            for (int i = 0; i < samples; i++) {
+                HttpProber.Timing timing = prober.probe(latencyUrl);
+                histogram.record(timing.firstByteMicros);
+            }
+        } finally {
+            prober.evictAll();
+        }
+        return histogram;
+    }
+
+    // Returns {bytes, nanos} measured from the first received byte
+    long[] measureDownload(long maxBytes, long maxDurationMs) throws IOException {
+        HttpURLConnection connection = open(downloadUrl);
+        try (InputStream in = connection.getInputStream();
+             ReadableByteChannel channel = Channels.newChannel(in)) {
+            long deadline = System.nanoTime() + maxDurationMs * 1_000_000L;
+            long firstByte = 0;
+            long total = 0;
+            while (total < maxBytes) {
+                buffer.clear();
+                int read = channel.read(buffer);
+                if (read == -1) {
+                    break;
+                }
+                long now = System.nanoTime();
+                if (firstByte == 0) {
+                    // Skip the first read so the request round trip isn't counted
+                    firstByte = now;
+                    continue;
+                }
+                total += read;
+                if (now >= deadline) {
+                    break;
+                }
+            }
+            return new long[]{total, System.nanoTime() - firstByte};
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    // Returns {bytes, nanos} including the wait for the server's response.
+    // Chunked, so the body can end at the deadline with fewer bytes.
+    long[] measureUpload(long maxBytes, long maxDurationMs) throws IOException {
+        fillPayload();
+        HttpURLConnection connection = open(uploadUrl);
+        try {
+            connection.setDoOutput(true);
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/octet-stream");
+            connection.setChunkedStreamingMode(BUFFER_SIZE);
+            long start = System.nanoTime();
+            long deadline = start + maxDurationMs * 1_000_000L;
+            long sent = 0;
+            try (OutputStream out = connection.getOutputStream();
+                 WritableByteChannel channel = Channels.newChannel(out)) {
+                while (sent < maxBytes) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), maxBytes - sent));
+                    while (buffer.hasRemaining()) {
+                        sent += channel.write(buffer);
+                    }
+                    if (System.nanoTime() >= deadline) {
+                        break;
+                    }
+                }
+            }
+            int responseCode = connection.getResponseCode();
+            if (responseCode < 200 || responseCode >= 300) {
+                throw new IOException("Upload rejected with HTTP " + responseCode);
+            }
+            return new long[]{sent, System.nanoTime() - start};
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private HttpURLConnection open(String urlString) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(urlString).openConnection();
+        connection.setRequestProperty("User-Agent", "Android");
+        connection.setConnectTimeout(timeoutMs);
+        connection.setReadTimeout(timeoutMs);
+        connection.setUseCaches(false);
+        return connection;
+    }
+
+    private void fillPayload() {
+        // Random bytes so compressing proxies can't inflate the numbers
+        byte[] chunk = new byte[1024];
+        new Random(42).nextBytes(chunk);
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            buffer.put(chunk, 0, Math.min(chunk.length, buffer.remaining()));
+        }
+    }
+
+    private static double toMbps(long bytes, long nanos) {
+        return nanos <= 0 ? 0 : bytes * 8 / (nanos / 1000.0);
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.multifeatureapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+
+// Streams a track file out as GPX or GeoJSON. Points are read one at a time
+// and formatted into a reused buffer that is handed to the writer in chunks,
+// so exporting a multi-day track takes the same memory as a short one.
+public final class TrackExport {
+    private static final int CHUNK_CHARS = 8192;
+    private static final int COORDINATE_DECIMALS = 7;
+
+    private TrackExport() {
+    }
+
+    // Returns the number of points written
+    public static long writeGpx(File track, Writer out, String name) throws IOException {
+        Output output = new Output(out);
+        StringBuilder text = output.text;
+        text.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<gpx version=\"1.1\" creator=\"MultiFeatureApp\" ")
+                .append("xmlns=\"http://www.topografix.com/GPX/1/1\">\n")
+                .append("<trk><name>");
+        appendXmlEscaped(text, name);
+        text.append("</name><trkseg>\n");
+        long points = 0;
+        try (TrackReader reader = new TrackReader(track)) {
+            while (reader.next()) {
+                text.append("<trkpt lat=\"");
+                CoordinateFormat.appendFixed(text, reader.getLatitude(), COORDINATE_DECIMALS);
+                text.append("\" lon=\"");
+                CoordinateFormat.appendFixed(text, reader.getLongitude(), COORDINATE_DECIMALS);
+                text.append("\"><time>");
+                appendIsoTime(text, reader.getTimeMillis());
+                text.append("</time></trkpt>\n");
+                points++;
+                output.maybeFlush();
+            }
+        }
+        text.append("</trkseg></trk>\n</gpx>\n");
+        output.flush();
+        return points;
+    }
+
+    // One LineString feature with [lon, lat] positions and the fix times in
+    // a parallel "coordTimes" property, as most GeoJSON tools expect. Takes
+    // two passes over the file instead of keeping the times around.
+    public static long writeGeoJson(File track, Writer out, String name) throws IOException {
+        Output output = new Output(out);
+        StringBuilder text = output.text;
+        text.append("{\"type\":\"FeatureCollection\",\"features\":[{\"type\":\"Feature\",")
+                .append("\"properties\":{\"name\":\"");
+        appendJsonEscaped(text, name);
+        text.append("\",\"coordTimes\":[");
+        long points = 0;
+        try (TrackReader reader = new TrackReader(track)) {
+            while (reader.next()) {
+                if (points++ > 0) {
+                    text.append(',');
+                }
+                text.append('"');
+                appendIsoTime(text, reader.getTimeMillis());
+                text.append('"');
+                output.maybeFlush();
+            }
+            text.append("]},\"geometry\":{\"type\":\"LineString\",\"coordinates\":[");
+            reader.rewind();
+            // Only the points seen in the first pass, in case more were appended since
+            for (long i = 0; i < points && reader.next(); i++) {
+                if (i > 0) {
+                    text.append(',');
+                }
+                text.append('[');
+                CoordinateFormat.appendFixed(text, reader.getLongitude(), COORDINATE_DECIMALS);
+                text.append(',');
+                CoordinateFormat.appendFixed(text, reader.getLatitude(), COORDINATE_DECIMALS);
+                text.append(']');
+                output.maybeFlush();
+            }
+        }
+        text.append("]}}]}\n");
+        output.flush();
+        return points;
+    }
+
+    // yyyy-MM-ddTHH:mm:ssZ in UTC, without Calendar or a formatter
+    static StringBuilder appendIsoTime(StringBuilder out, long epochMillis) {
+        long seconds = Math.floorDiv(epochMillis, 1000L);
+        long days = Math.floorDiv(seconds, 86400L);
+        int secondOfDay = (int) Math.floorMod(seconds, 86400L);
+        // Civil date from days since 1970-01-01 (proleptic Gregorian)
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097L);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        out.append(year).append('-');
+        appendTwoDigits(out, month).append('-');
+        appendTwoDigits(out, day).append('T');
+        appendTwoDigits(out, secondOfDay / 3600).append(':');
+        appendTwoDigits(out, secondOfDay / 60 % 60).append(':');
+        return appendTwoDigits(out, secondOfDay % 60).append('Z');
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder out, int value) {
+        return out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    private static void appendXmlEscaped(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '<': out.append("&lt;"); break;
+                case '>': out.append("&gt;"); break;
+                case '&': out.append("&amp;"); break;
+                case '"': out.append("&quot;"); break;
+                default: out.append(c);
+            }
+        }
+    }
+
+    private static void appendJsonEscaped(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append("\\u00").append(Character.forDigit(c >> 4, 16))
+                        .append(Character.forDigit(c & 0xF, 16));
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    // Hands the buffer to the writer whenever it passes a chunk
+    private static final class Output {
+        final StringBuilder text = new StringBuilder(CHUNK_CHARS + 256);
+        private final char[] chunk = new char[CHUNK_CHARS + 256];
+        private final Writer writer;
+
+        Output(Writer writer) {
+            this.writer = writer;
+        }
+
+        void maybeFlush() throws IOException {
+            if (text.length() >= CHUNK_CHARS) {
+                drain();
+            }
+        }
+
+        void flush() throws IOException {
+            drain();
+            writer.flush();
+        }
+
+        private void drain() throws IOException {
+            int length = text.length();
+            // The chunk array only grows for a very long track name
+            char[] out = length <= chunk.length ? chunk : new char[length];
+            text.getChars(0, length, out, 0);
+            writer.write(out, 0, length);
+            text.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.multifeatureapp;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Walks a TrackRecorder file one point at a time, holding a single block in
+// memory. Stops at the first torn or corrupt block. Sees the blocks that were
+// written when it was opened or rewound, so it can run next to a recorder.
+public final class TrackReader implements Closeable {
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final ByteBuffer block = ByteBuffer.allocate(TrackRecorder.BLOCK_SIZE);
+    private long size;
+    private long position;
+    private int pointsLeftInBlock;
+    private boolean firstInBlock;
+    private long time;
+    private long latitude;
+    private long longitude;
+    private long accuracyDecimeters;
+
+    public TrackReader(File track) throws IOException {
+        file = new RandomAccessFile(track, "r");
+        channel = file.getChannel();
+        if (TrackRecorder.readMagic(channel, block) != TrackRecorder.MAGIC) {
+            file.close();
+            throw new IOException("Not a track file");
+        }
+        rewind();
+    }
+
+    // Back to the first point, picking up blocks written since
+    public void rewind() throws IOException {
+        size = channel.size();
+        position = TrackRecorder.FILE_HEADER_BYTES;
+        pointsLeftInBlock = 0;
+    }
+
+    public boolean next() throws IOException {
+        while (pointsLeftInBlock == 0) {
+            int length = TrackRecorder.readBlock(channel, position, size, block);
+            if (length < 0) {
+                return false;
+            }
+            position += length;
+            pointsLeftInBlock = block.getInt(8);
+            block.position(TrackRecorder.BLOCK_HEADER_BYTES);
+            firstInBlock = true;
+        }
+        if (firstInBlock) {
+            time = TrackRecorder.unzigzag(getVarLong());
+            latitude = TrackRecorder.unzigzag(getVarLong());
+            longitude = TrackRecorder.unzigzag(getVarLong());
+            firstInBlock = false;
+        } else {
+            time += TrackRecorder.unzigzag(getVarLong());
+            latitude += TrackRecorder.unzigzag(getVarLong());
+            longitude += TrackRecorder.unzigzag(getVarLong());
+        }
+        accuracyDecimeters = getVarLong();
+        pointsLeftInBlock--;
+        return true;
+    }
+
+    public long getTimeMillis() {
+        return time;
+    }
+
+    public double getLatitude() {
+        return latitude / TrackRecorder.E7;
+    }
+
+    public double getLongitude() {
+        return longitude / TrackRecorder.E7;
+    }
+
+    // 0 when the fix had no accuracy
+    public float getAccuracyMeters() {
+        return accuracyDecimeters / 10f;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private long getVarLong() {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = block.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.multifeatureapp;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Appends fixes to a track file made of self-contained blocks:
+//
+//   file   [u32 magic "TRK1"] block*
+//   block  [u32 payload length][u32 crc of count + payload][u32 point count][payload]
+//   point  zigzag varints of time in ms and lat/lon in 1e-7 degrees, then a
+//          varint accuracy in decimeters. The first point of a block is
+//          absolute, later ones store time/lat/lon as deltas from the one before.
+//
+// Points collect in one reused block buffer that goes out in a single
+// positional write when it fills, on flush(), or once its oldest fix is older
+// than the flush interval. A block torn by a crash fails its CRC and is cut
+// off, together with anything after it, the next time the file is opened.
+// Memory use is the block buffer however long the track gets. Not thread
+// safe, keep a recorder on one thread.
+public final class TrackRecorder implements Closeable {
+    static final int MAGIC = 0x54524B31;
+    static final int FILE_HEADER_BYTES = 4;
+    static final int BLOCK_HEADER_BYTES = 12;
+    static final int BLOCK_SIZE = 4096;
+    static final double E7 = 1e7;
+    // Time delta, two 33 bit coordinate deltas and the accuracy
+    private static final int MAX_POINT_BYTES = 10 + 5 + 5 + 5;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long flushIntervalMs;
+    private final ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+    private int blockPoints;
+    private long firstBufferedMillis;
+    private long lastTime;
+    private long lastLatitude;
+    private long lastLongitude;
+    private long fileEnd;
+    private long pointCount;
+    private long blocksWritten;
+    private long droppedBytes;
+
+    public TrackRecorder(File track, long flushIntervalMs) throws IOException {
+        this.flushIntervalMs = flushIntervalMs;
+        file = new RandomAccessFile(track, "rw");
+        channel = file.getChannel();
+        try {
+            recover();
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        block.clear();
+        block.position(BLOCK_HEADER_BYTES);
+    }
+
+    // accuracyMeters is NaN when the fix has none and is then stored as 0
+    public void append(long timeMillis, double latitude, double longitude, float accuracyMeters)
+            throws IOException {
+        if (block.remaining() < MAX_POINT_BYTES) {
+            writeBlock(); // Left full by a failed write
+        }
+        long lat = Math.round(latitude * E7);
+        long lon = Math.round(longitude * E7);
+        if (blockPoints == 0) {
+            firstBufferedMillis = timeMillis;
+            putVarLong(zigzag(timeMillis));
+            putVarLong(zigzag(lat));
+            putVarLong(zigzag(lon));
+        } else {
+            putVarLong(zigzag(timeMillis - lastTime));
+            putVarLong(zigzag(lat - lastLatitude));
+            putVarLong(zigzag(lon - lastLongitude));
+        }
+        putVarLong(accuracyMeters > 0 ? Math.min(Math.round(accuracyMeters * 10.0), Integer.MAX_VALUE) : 0);
+        lastTime = timeMillis;
+        lastLatitude = lat;
+        lastLongitude = lon;
+        blockPoints++;
+        pointCount++;
+        if (block.remaining() < MAX_POINT_BYTES || timeMillis - firstBufferedMillis >= flushIntervalMs) {
+            writeBlock();
+        }
+    }
+
+    // Writes buffered points. They survive the app dying, not power loss.
+    public void flush() throws IOException {
+        writeBlock();
+    }
+
+    // Writes buffered points and waits for them to reach storage
+    public void sync() throws IOException {
+        writeBlock();
+        channel.force(false);
+    }
+
+    // Points recorded, including those recovered from the file and those still buffered
+    public long getPointCount() {
+        return pointCount;
+    }
+
+    public long getBlocksWritten() {
+        return blocksWritten;
+    }
+
+    // Bytes of a torn or corrupt tail cut off when the file was opened
+    public long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    public long getFileSize() {
+        return fileEnd;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writeBlock();
+        } finally {
+            file.close();
+        }
+    }
+
+    private void recover() throws IOException {
+        long size = channel.size();
+        if (size < FILE_HEADER_BYTES) {
+            // New, or torn before the header was complete
+            block.clear();
+            block.putInt(MAGIC).flip();
+            channel.truncate(0);
+            while (block.hasRemaining()) {
+                channel.write(block, block.position());
+            }
+            fileEnd = FILE_HEADER_BYTES;
+            return;
+        }
+        if (readMagic(channel, block) != MAGIC) {
+            throw new IOException("Not a track file");
+        }
+        long position = FILE_HEADER_BYTES;
+        int length;
+        while ((length = readBlock(channel, position, size, block)) > 0) {
+            pointCount += block.getInt(8);
+            position += length;
+        }
+        if (position < size) {
+            droppedBytes = size - position;
+            channel.truncate(position);
+        }
+        fileEnd = position;
+    }
+
+    private void writeBlock() throws IOException {
+        if (blockPoints == 0) {
+            return;
+        }
+        int length = block.position() - BLOCK_HEADER_BYTES;
+        block.putInt(0, length);
+        block.putInt(8, blockPoints);
+        block.putInt(4, Crc32.compute(block.array(), 8, 4 + length));
+        int end = block.position();
+        block.flip();
+        long position = fileEnd;
+        try {
+            while (block.hasRemaining()) {
+                position += channel.write(block, position);
+            }
+        } catch (IOException e) {
+            // Keep the points for the next attempt, which overwrites whatever got out
+            block.limit(block.capacity());
+            block.position(end);
+            throw e;
+        }
+        fileEnd = position;
+        block.clear();
+        block.position(BLOCK_HEADER_BYTES);
+        blockPoints = 0;
+        blocksWritten++;
+    }
+
+    private void putVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            block.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        block.put((byte) value);
+    }
+
+    static int readMagic(FileChannel channel, ByteBuffer scratch) throws IOException {
+        scratch.clear();
+        scratch.limit(FILE_HEADER_BYTES);
+        if (!readFully(channel, 0, scratch)) {
+            return 0;
+        }
+        return scratch.getInt(0);
+    }
+
+    // Reads the block at position into buffer and checks it. Returns its total
+    // length, or -1 when it is torn, corrupt or past size. On success the
+    // buffer holds the whole block from index 0.
+    static int readBlock(FileChannel channel, long position, long size, ByteBuffer buffer)
+            throws IOException {
+        if (size - position < BLOCK_HEADER_BYTES) {
+            return -1;
+        }
+        buffer.clear();
+        buffer.limit(BLOCK_HEADER_BYTES);
+        if (!readFully(channel, position, buffer)) {
+            return -1;
+        }
+        int length = buffer.getInt(0);
+        if (length <= 0 || length > buffer.capacity() - BLOCK_HEADER_BYTES
+                || size - position - BLOCK_HEADER_BYTES < length) {
+            return -1;
+        }
+        buffer.limit(BLOCK_HEADER_BYTES + length);
+        if (!readFully(channel, position + BLOCK_HEADER_BYTES, buffer)) {
+            return -1;
+        }
+        if (Crc32.compute(buffer, 8, 4 + length) != buffer.getInt(4) || buffer.getInt(8) <= 0) {
+            return -1;
+        }
+        return BLOCK_HEADER_BYTES + length;
+    }
+
+    private static boolean readFully(FileChannel channel, long position, ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        return true;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.multifeatureapp;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Polyline;
+import com.google.android.gms.maps.model.PolylineOptions;
+import java.util.ArrayList;
+
+// Draws the session's track as a single Polyline using the TrackSimplifier
+// level for the camera zoom. Fixes and zoom changes are applied once per
+// frame by updating the polyline's points; nothing else on the map is
+// touched. The point list only gains the newly kept points unless the level
+// changed. Must be used from the main thread.
+public class TrackRenderer {
+    private static final int LINE_COLOR = 0xFF1E88E5;
+    private static final float LINE_WIDTH_PX = 8f;
+
+    private final TrackSimplifier simplifier;
+    private final FrameCoalescer frameUpdater = new FrameCoalescer(this::render);
+    private final ArrayList<LatLng> points = new ArrayList<>();
+    private GoogleMap map;
+    private Polyline polyline;
+    private int level = TrackSimplifier.MAX_ZOOM;
+    private int shownLevel = -1;
+    private int shownKept;
+    private boolean shownTail;
+    private long framesRendered;
+
+    public TrackRenderer(double toleranceDp) {
+        simplifier = new TrackSimplifier(toleranceDp);
+    }
+
+    public void setMap(GoogleMap map) {
+        this.map = map;
+        polyline = null;
+        shownLevel = -1;
+        setZoom(map.getCameraPosition().zoom);
+        frameUpdater.invalidate();
+    }
+
+    // From the camera idle listener, so a pinch redraws once when it ends
+    public void setZoom(float zoom) {
+        int next = TrackSimplifier.levelFor(zoom);
+        if (next != level) {
+            level = next;
+            frameUpdater.invalidate();
+        }
+    }
+
+    public void add(double latitude, double longitude) {
+        simplifier.add(latitude, longitude);
+        frameUpdater.invalidate();
+    }
+
+    public TrackSimplifier getSimplifier() {
+        return simplifier;
+    }
+
+    // Points currently on the polyline
+    public int getPointsShown() {
+        return points.size();
+    }
+
+    public long getFramesRendered() {
+        return framesRendered;
+    }
+
+    public void cancel() {
+        frameUpdater.cancel();
+    }
+
+    private void render() {
+        if (map == null || simplifier.getPointsAdded() == 0) {
+            return;
+        }
+        framesRendered++;
+        if (level != shownLevel) {
+            points.clear();
+            shownLevel = level;
+            shownKept = 0;
+            shownTail = false;
+        }
+        if (shownTail) {
+            points.remove(points.size() - 1);
+        }
+        int kept = simplifier.getKeptCount(level);
+        for (int i = shownKept; i < kept; i++) {
+            points.add(new LatLng(simplifier.getKeptLatitude(level, i), simplifier.getKeptLongitude(level, i)));
+        }
+        shownKept = kept;
+        shownTail = simplifier.hasTail(level);
+        if (shownTail) {
+            points.add(new LatLng(simplifier.getLastLatitude(), simplifier.getLastLongitude()));
+        }
+        if (polyline == null) {
+            polyline = map.addPolyline(new PolylineOptions()
+                    .addAll(points)
+                    .color(LINE_COLOR)
+                    .width(LINE_WIDTH_PX));
+        } else {
+            polyline.setPoints(points);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.multifeatureapp;
+
+import java.util.Arrays;
+
+// Keeps a simplified copy of a growing track for each map zoom level, so a
+// long track can be drawn with only the points visible at the current zoom.
+//
+// Each level runs a streaming Douglas-Peucker: points after the level's last
+// kept point (its anchor) stay pending while all of them lie within the
+// level's tolerance of the segment from the anchor to the newest point. When
+// a new point breaks that, the point before it is kept and becomes the
+// anchor. Drawing a level's kept points followed by the newest point is
+// therefore never further than the tolerance from the real track. Pending
+// points of every level are a suffix of the same input, so one ring of
+// recent points is shared; a level that has been pending for a whole ring
+// keeps a point regardless. Not thread safe.
+public final class TrackSimplifier {
+    public static final int MIN_ZOOM = 10;
+    public static final int MAX_ZOOM = 20;
+    private static final int LEVELS = MAX_ZOOM - MIN_ZOOM + 1;
+    private static final int WINDOW = 64;
+    // Web Mercator ground resolution at zoom 0 on the equator, per 256 dp tile
+    private static final double METERS_PER_DP_AT_ZOOM_0 = 156543.03392;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final double toleranceDp;
+
+    // Local flat projection around the first point, in meters
+    private double originLatitude;
+    private double originLongitude;
+    private double metersPerDegreeLatitude;
+    private double metersPerDegreeLongitude;
+
+    // Ring of the newest projected points
+    private final double[] ringX = new double[WINDOW];
+    private final double[] ringY = new double[WINDOW];
+    private long added;
+    private double lastLatitude;
+    private double lastLongitude;
+
+    private final double[] toleranceSquared = new double[LEVELS];
+    private final double[] anchorX = new double[LEVELS];
+    private final double[] anchorY = new double[LEVELS];
+    private final int[] pending = new int[LEVELS];
+    private final double[][] keptLatitudes = new double[LEVELS][];
+    private final double[][] keptLongitudes = new double[LEVELS][];
+    private final int[] keptCounts = new int[LEVELS];
+
+    public TrackSimplifier(double toleranceDp) {
+        this.toleranceDp = toleranceDp;
+        for (int level = 0; level < LEVELS; level++) {
+            keptLatitudes[level] = new double[INITIAL_CAPACITY];
+            keptLongitudes[level] = new double[INITIAL_CAPACITY];
+        }
+    }
+
+    public void add(double latitude, double longitude) {
+        if (added == 0) {
+            setOrigin(latitude, longitude);
+        }
+        double x = (longitude - originLongitude) * metersPerDegreeLongitude;
+        double y = (latitude - originLatitude) * metersPerDegreeLatitude;
+        for (int level = 0; level < LEVELS; level++) {
+            if (added == 0) {
+                keep(level, latitude, longitude, x, y);
+            } else if (pending[level] == WINDOW - 1 || !fits(level, x, y)) {
+                // The previous point becomes the anchor, the new one is all that is pending
+                int previous = (int) ((added - 1) % WINDOW);
+                keep(level, lastLatitude, lastLongitude, ringX[previous], ringY[previous]);
+                pending[level] = 1;
+            } else {
+                pending[level]++;
+            }
+        }
+        int slot = (int) (added % WINDOW);
+        ringX[slot] = x;
+        ringY[slot] = y;
+        lastLatitude = latitude;
+        lastLongitude = longitude;
+        added++;
+    }
+
+    public long getPointsAdded() {
+        return added;
+    }
+
+    // Level to draw for a camera zoom, clamped to the levels kept
+    public static int levelFor(float zoom) {
+        int level = (int) Math.floor(zoom);
+        return Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, level));
+    }
+
+    // Kept points of a level. Draw them, then the newest point when hasTail().
+    public int getKeptCount(int zoom) {
+        return keptCounts[zoom - MIN_ZOOM];
+    }
+
+    public double getKeptLatitude(int zoom, int index) {
+        return keptLatitudes[zoom - MIN_ZOOM][index];
+    }
+
+    public double getKeptLongitude(int zoom, int index) {
+        return keptLongitudes[zoom - MIN_ZOOM][index];
+    }
+
+    // Whether the newest point is still pending at this level
+    public boolean hasTail(int zoom) {
+        return pending[zoom - MIN_ZOOM] > 0;
+    }
+
+    public double getLastLatitude() {
+        return lastLatitude;
+    }
+
+    public double getLastLongitude() {
+        return lastLongitude;
+    }
+
+    public void clear() {
+        added = 0;
+        for (int level = 0; level < LEVELS; level++) {
+            keptCounts[level] = 0;
+            pending[level] = 0;
+        }
+    }
+
+    private void setOrigin(double latitude, double longitude) {
+        originLatitude = latitude;
+        originLongitude = longitude;
+        metersPerDegreeLatitude = GeoMath.metersPerDegreeLatitude();
+        metersPerDegreeLongitude = GeoMath.metersPerDegreeLongitude(latitude);
+        double metersPerDp = METERS_PER_DP_AT_ZOOM_0 * Math.cos(Math.toRadians(latitude));
+        for (int level = 0; level < LEVELS; level++) {
+            double tolerance = toleranceDp * metersPerDp / (1L << (MIN_ZOOM + level));
+            toleranceSquared[level] = tolerance * tolerance;
+        }
+    }
+
+    // Whether the level's pending points stay within tolerance of anchor -> (x, y)
+    private boolean fits(int level, double x, double y) {
+        double ax = anchorX[level];
+        double ay = anchorY[level];
+        double dx = x - ax;
+        double dy = y - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double limit = toleranceSquared[level];
+        for (int i = 1; i <= pending[level]; i++) {
+            int slot = (int) ((added - i) % WINDOW);
+            double px = ringX[slot] - ax;
+            double py = ringY[slot] - ay;
+            double distanceSquared;
+            double t = lengthSquared > 0 ? (px * dx + py * dy) / lengthSquared : 0;
+            if (t <= 0) {
+                distanceSquared = px * px + py * py;
+            } else if (t >= 1) {
+                double ex = px - dx;
+                double ey = py - dy;
+                distanceSquared = ex * ex + ey * ey;
+            } else {
+                double cross = px * dy - py * dx;
+                distanceSquared = cross * cross / lengthSquared;
+            }
+            if (distanceSquared > limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void keep(int level, double latitude, double longitude, double x, double y) {
+        int count = keptCounts[level];
+        if (count == keptLatitudes[level].length) {
+            keptLatitudes[level] = Arrays.copyOf(keptLatitudes[level], count * 2);
+            keptLongitudes[level] = Arrays.copyOf(keptLongitudes[level], count * 2);
+        }
+        keptLatitudes[level][count] = latitude;
+        keptLongitudes[level][count] = longitude;
+        keptCounts[level] = count + 1;
+        anchorX[level] = x;
+        anchorY[level] = y;
+    }
+}
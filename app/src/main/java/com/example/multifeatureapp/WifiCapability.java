@@ -0,0 +1,53 @@
+package com.example.multifeatureapp;
+
+// Flags found in ScanResult.capabilities, e.g. "[WPA2-PSK-CCMP][ESS][WPS]".
+// parse() turns the string into a bitset so it is only scanned once per BSSID.
+public enum WifiCapability {
+    WEP("WEP"),
+    WPA("WPA-"),
+    WPA2("WPA2"),
+    RSN("RSN"),
+    PSK("PSK"),
+    SAE("SAE"),
+    EAP("EAP"),
+    OWE("OWE"),
+    TKIP("TKIP"),
+    CCMP("CCMP"),
+    WPS("WPS"),
+    ESS("ESS"),
+    IBSS("IBSS");
+
+    private static final WifiCapability[] VALUES = values();
+
+    private final String token;
+
+    WifiCapability(String token) {
+        this.token = token;
+    }
+
+    public int mask() {
+        return 1 << ordinal();
+    }
+
+    public boolean isSet(int bits) {
+        return (bits & mask()) != 0;
+    }
+
+    public static int parse(String capabilities) {
+        int bits = 0;
+        if (capabilities == null) {
+            return bits;
+        }
+        for (WifiCapability capability : VALUES) {
+            if (capabilities.contains(capability.token)) {
+                bits |= capability.mask();
+            }
+        }
+        return bits;
+    }
+
+    public static boolean isOpen(int bits) {
+        return (bits & (WEP.mask() | WPA.mask() | WPA2.mask() | RSN.mask()
+                | PSK.mask() | SAE.mask() | EAP.mask() | OWE.mask())) == 0;
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.multifeatureapp;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.wifi.SupplicantState;
+import android.net.wifi.WifiInfo;
+import android.net.wifi.WifiManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import java.util.concurrent.CompletableFuture;
+
+// Runs a WifiConnectStateMachine on the main thread and feeds it supplicant
+// broadcasts and every network change as it happens, not the debounced ones.
+public class WifiConnectDriver {
+    private static final String TAG = "WifiConnect";
+    private static final String UNKNOWN_SSID = "<unknown ssid>";
+
+    private final Context context;
+    private final WifiManager wifiManager;
+    private final NetworkStateStore networkStateStore;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final WifiConnectStateMachine stateMachine;
+
+    private final NetworkStateStore.Listener networkListener = snapshot -> {
+        if (snapshot.wifi) {
+            // Read through the getter, the field is assigned after this initializer
+            getStateMachine().onWifiConnected(snapshot.ssid);
+        }
+    };
+
+    private final BroadcastReceiver supplicantReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String ssid = currentSsid();
+            if (intent.getIntExtra(WifiManager.EXTRA_SUPPLICANT_ERROR, 0) == WifiManager.ERROR_AUTHENTICATING) {
+                stateMachine.onAuthenticationFailed(ssid);
+                return;
+            }
+            SupplicantState supplicantState = intent.getParcelableExtra(WifiManager.EXTRA_NEW_STATE);
+            WifiConnectStateMachine.SupplicantProgress progress = toProgress(supplicantState);
+            if (progress != null) {
+                stateMachine.onSupplicantStateChanged(ssid, progress);
+            }
+        }
+    };
+
+    public WifiConnectDriver(Context context, WifiHelper wifiHelper, WifiConnectStateMachine.Listener listener) {
+        this.context = context;
+        this.wifiManager = (WifiManager) context.getApplicationContext().getSystemService(Context.WIFI_SERVICE);
+        this.networkStateStore = NetworkStateStore.getInstance(context);
+        this.stateMachine = new WifiConnectStateMachine(new WifiConnectStateMachine.Connector() {
+            @Override
+            public CompletableFuture<Boolean> suggest(String ssid, String password) {
+                return wifiHelper.suggestWifiNetwork(ssid, password);
+            }
+
+            @Override
+            public CompletableFuture<Boolean> connectLegacy(String ssid, String password) {
+                return wifiHelper.connectToWifi(ssid, password);
+            }
+
+            @Override
+            public String getConnectedSsid() {
+                NetworkStateStore.Snapshot snapshot = networkStateStore.getSnapshot();
+                return snapshot.wifi ? snapshot.ssid : null;
+            }
+        }, new WifiConnectStateMachine.Scheduler() {
+            @Override
+            public void post(Runnable task) {
+                handler.post(task);
+            }
+
+            @Override
+            public void postDelayed(Runnable task, long delayMs) {
+                handler.postDelayed(task, delayMs);
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+                handler.removeCallbacks(task);
+            }
+
+            @Override
+            public long nowMillis() {
+                return SystemClock.elapsedRealtime();
+            }
+        }, new WifiConnectStateMachine.Listener() {
+            @Override
+            public void onStateChanged(String ssid, WifiConnectStateMachine.State state) {
+                listener.onStateChanged(ssid, state);
+            }
+
+            @Override
+            public void onAttemptFinished(WifiConnectStateMachine.Attempt attempt) {
+                Log.d(TAG, attempt.toString());
+                listener.onAttemptFinished(attempt);
+            }
+        });
+        networkStateStore.addImmediateListener(networkListener);
+        context.registerReceiver(supplicantReceiver,
+                new IntentFilter(WifiManager.SUPPLICANT_STATE_CHANGED_ACTION));
+    }
+
+    // Must be used on the main thread
+    public WifiConnectStateMachine getStateMachine() {
+        return stateMachine;
+    }
+
+    public void release() {
+        stateMachine.cancel();
+        networkStateStore.removeImmediateListener(networkListener);
+        try {
+            context.unregisterReceiver(supplicantReceiver);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Receiver was not registered: " + e.getMessage());
+        }
+    }
+
+    private String currentSsid() {
+        WifiInfo info = wifiManager.getConnectionInfo();
+        String ssid = info != null ? NetworkStateStore.unquote(info.getSSID()) : null;
+        return ssid == null || ssid.isEmpty() || ssid.equals(UNKNOWN_SSID) ? null : ssid;
+    }
+
+    private static WifiConnectStateMachine.SupplicantProgress toProgress(SupplicantState state) {
+        if (state == null) {
+            return null;
+        }
+        switch (state) {
+            case AUTHENTICATING:
+            case FOUR_WAY_HANDSHAKE:
+            case GROUP_HANDSHAKE:
+                return WifiConnectStateMachine.SupplicantProgress.HANDSHAKING;
+            case COMPLETED:
+                return WifiConnectStateMachine.SupplicantProgress.COMPLETED;
+            case DISCONNECTED:
+            case INACTIVE:
+            case SCANNING:
+                return WifiConnectStateMachine.SupplicantProgress.DISCONNECTED;
+            default:
+                return null;
+        }
+    }
+}
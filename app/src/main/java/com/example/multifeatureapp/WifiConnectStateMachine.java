@@ -0,0 +1,246 @@
+package com.example.multifeatureapp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// Drives one Wi-Fi connection attempt at a time. The network suggestion is
+// tried first and the legacy WifiConfiguration path is used if the suggestion
+// is rejected or no link comes up within SUGGESTION_TIMEOUT_MS. Progress comes
+// from supplicant and network events fed in by WifiConnectDriver, and only
+// events about the target SSID count. A handshake in progress holds the
+// fallback back; if it ends without a link, the fallback is taken as soon as
+// it is due. Every attempt is recorded. Must be used from the scheduler's
+// thread.
+public class WifiConnectStateMachine {
+    static final long SUGGESTION_TIMEOUT_MS = 3000;
+    static final long CONNECT_TIMEOUT_MS = 15000;
+    private static final int MAX_ATTEMPTS_KEPT = 20;
+
+    public enum State {
+        IDLE,
+        SUGGESTING,
+        CONNECTING,
+        AUTHENTICATING,
+        CONNECTED,
+        FAILED
+    }
+
+    public enum FailureReason {
+        NONE,
+        AUTHENTICATION,
+        CONFIGURATION,
+        TIMEOUT,
+        CANCELLED,
+        ERROR // The platform call threw
+    }
+
+    // What the supplicant is doing, reduced to what the machine needs
+    public enum SupplicantProgress {
+        HANDSHAKING,
+        COMPLETED,
+        DISCONNECTED
+    }
+
+    public static class Attempt {
+        public final String ssid;
+        public final boolean usedFallback;
+        public final long durationMs;
+        public final FailureReason failureReason;
+
+        Attempt(String ssid, boolean usedFallback, long durationMs, FailureReason failureReason) {
+            this.ssid = ssid;
+            this.usedFallback = usedFallback;
+            this.durationMs = durationMs;
+            this.failureReason = failureReason;
+        }
+
+        public boolean isSuccessful() {
+            return failureReason == FailureReason.NONE;
+        }
+
+        @Override
+        public String toString() {
+            return ssid + ": " + (isSuccessful() ? "connected" : failureReason)
+                    + " after " + durationMs + " ms" + (usedFallback ? " (legacy fallback)" : "");
+        }
+    }
+
+    public interface Listener {
+        void onStateChanged(String ssid, State state);
+
+        void onAttemptFinished(Attempt attempt);
+    }
+
+    public interface Connector {
+        CompletableFuture<Boolean> suggest(String ssid, String password);
+
+        CompletableFuture<Boolean> connectLegacy(String ssid, String password);
+
+        // SSID of the Wi-Fi network in use, null if none
+        String getConnectedSsid();
+    }
+
+    public interface Scheduler {
+        void post(Runnable task);
+
+        void postDelayed(Runnable task, long delayMs);
+
+        void cancel(Runnable task);
+
+        // Monotonic
+        long nowMillis();
+    }
+
+    private final Connector connector;
+    private final Scheduler scheduler;
+    private final Listener listener;
+    private final ArrayDeque<Attempt> attempts = new ArrayDeque<>();
+
+    private State state = State.IDLE;
+    private String ssid;
+    private String password;
+    private long startedAt;
+    // Tells the results of an earlier attempt's futures apart
+    private long attemptId;
+    private boolean usedFallback;
+    private boolean fallbackDue;
+
+    private final Runnable suggestionTimeout = () -> {
+        fallbackDue = true;
+        maybeFallBack();
+    };
+    private final Runnable connectTimeout = () -> finish(State.FAILED, FailureReason.TIMEOUT);
+
+    public WifiConnectStateMachine(Connector connector, Scheduler scheduler, Listener listener) {
+        this.connector = connector;
+        this.scheduler = scheduler;
+        this.listener = listener;
+    }
+
+    public void connect(String ssid, String password) {
+        if (isActive()) {
+            finish(State.FAILED, FailureReason.CANCELLED);
+        }
+        this.ssid = ssid;
+        this.password = password;
+        this.startedAt = scheduler.nowMillis();
+        this.usedFallback = false;
+        this.fallbackDue = false;
+        long id = ++attemptId;
+
+        if (ssid.equals(connector.getConnectedSsid())) {
+            finish(State.CONNECTED, FailureReason.NONE);
+            return;
+        }
+        setState(State.SUGGESTING);
+        connector.suggest(ssid, password).whenComplete((accepted, error) -> scheduler.post(() -> {
+            if (id != attemptId || !isActive()) {
+                return;
+            }
+            if (error != null) {
+                finish(State.FAILED, FailureReason.ERROR);
+            } else if (!accepted) {
+                // A rejected suggestion doesn't need to wait for the timeout
+                fallbackDue = true;
+                maybeFallBack();
+            }
+        }));
+        scheduler.postDelayed(suggestionTimeout, SUGGESTION_TIMEOUT_MS);
+        scheduler.postDelayed(connectTimeout, CONNECT_TIMEOUT_MS);
+    }
+
+    public void cancel() {
+        if (isActive()) {
+            finish(State.FAILED, FailureReason.CANCELLED);
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public List<Attempt> getAttempts() {
+        return new ArrayList<>(attempts);
+    }
+
+    // The device joined a Wi-Fi network
+    public void onWifiConnected(String connectedSsid) {
+        if (isActive() && ssid.equals(connectedSsid)) {
+            finish(State.CONNECTED, FailureReason.NONE);
+        }
+    }
+
+    // currentSsid is null when the supplicant no longer reports one
+    public void onSupplicantStateChanged(String currentSsid, SupplicantProgress progress) {
+        if (!isActive()) {
+            return;
+        }
+        if (progress == SupplicantProgress.HANDSHAKING) {
+            if (ssid.equals(currentSsid)) {
+                setState(State.AUTHENTICATING);
+            }
+        } else if (progress == SupplicantProgress.DISCONNECTED && state == State.AUTHENTICATING
+                && (currentSsid == null || ssid.equals(currentSsid))) {
+            // The handshake gave up without a link, carry on where it interrupted
+            setState(usedFallback ? State.CONNECTING : State.SUGGESTING);
+            maybeFallBack();
+        }
+    }
+
+    // A supplicant authentication error. Only ours if it names the target or,
+    // without an SSID, arrives during the target's handshake.
+    public void onAuthenticationFailed(String currentSsid) {
+        if (!isActive()) {
+            return;
+        }
+        if (ssid.equals(currentSsid) || (currentSsid == null && state == State.AUTHENTICATING)) {
+            finish(State.FAILED, FailureReason.AUTHENTICATION);
+        }
+    }
+
+    private void maybeFallBack() {
+        if (!fallbackDue || usedFallback || !isActive() || state == State.AUTHENTICATING) {
+            return;
+        }
+        scheduler.cancel(suggestionTimeout);
+        usedFallback = true;
+        setState(State.CONNECTING);
+        long id = attemptId;
+        connector.connectLegacy(ssid, password).whenComplete((added, error) -> scheduler.post(() -> {
+            if (id != attemptId || !isActive()) {
+                return;
+            }
+            if (error != null) {
+                finish(State.FAILED, FailureReason.ERROR);
+            } else if (!added) {
+                finish(State.FAILED, FailureReason.CONFIGURATION);
+            }
+        }));
+    }
+
+    private boolean isActive() {
+        return state == State.SUGGESTING || state == State.CONNECTING || state == State.AUTHENTICATING;
+    }
+
+    private void setState(State newState) {
+        if (state != newState) {
+            state = newState;
+            listener.onStateChanged(ssid, newState);
+        }
+    }
+
+    private void finish(State finalState, FailureReason reason) {
+        scheduler.cancel(suggestionTimeout);
+        scheduler.cancel(connectTimeout);
+        Attempt attempt = new Attempt(ssid, usedFallback, scheduler.nowMillis() - startedAt, reason);
+        attempts.addLast(attempt);
+        if (attempts.size() > MAX_ATTEMPTS_KEPT) {
+            attempts.removeFirst();
+        }
+        password = null;
+        setState(finalState);
+        listener.onAttemptFinished(attempt);
+    }
+}
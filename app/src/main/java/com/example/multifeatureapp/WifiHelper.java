@@ -4,35 +4,67 @@ import android.content.Context;
 import android.net.wifi.WifiConfiguration;
 import android.net.wifi.WifiManager;
 import android.net.wifi.WifiNetworkSuggestion;
+import android.os.Handler;
+import android.os.Looper;
 import android.widget.Toast;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+// All WifiManager calls run on one background thread and complete futures,
+// so the UI thread never waits on system_server. Configuration changes are
+// batched into transactions that save the configuration once.
 public class WifiHelper {
     private WifiManager wifiManager;
     private Context context;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "WifiHelper"));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Only touched on the executor thread
+    private List<WifiConfiguration> configuredNetworks;
 
     public WifiHelper(Context context) {
         this.context = context;
         this.wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
     }
 
-    public void connectToWifi(String ssid, String password) {
-        // First check if we're already connected to this network
-        if (isConnectedToWifi(ssid)) {
-            return; // Silently return if already connected
-        }
+    // Completes with false if the network could not be added
+    public CompletableFuture<Boolean> connectToWifi(String ssid, String password) {
+        return CompletableFuture.supplyAsync(() -> {
+            // First check if we're already connected to this network
+            if (isConnectedToWifi(ssid)) {
+                return true;
+            }
 
-        if (!wifiManager.isWifiEnabled()) {
-            wifiManager.setWifiEnabled(true);
-        }
+            if (!wifiManager.isWifiEnabled()) {
+                wifiManager.setWifiEnabled(true);
+            }
+
+            // Replace any existing configuration for this network in one transaction
+            List<Integer> networkIds = beginTransaction()
+                    .remove(ssid)
+                    .add(createConfiguration(ssid, password))
+                    .apply();
+            int networkId = networkIds.get(0);
+            if (networkId == -1) {
+                return false;
+            }
 
-        // Remove any existing configuration for this network first
-        removeExistingNetwork(ssid);
+            wifiManager.disconnect();
+            wifiManager.enableNetwork(networkId, true);
+            wifiManager.reconnect();
+            return true;
+        }, executor);
+    }
 
+    private WifiConfiguration createConfiguration(String ssid, String password) {
         WifiConfiguration wifiConfig = new WifiConfiguration();
         wifiConfig.SSID = "\"" + ssid + "\"";
-        
+
         // Set security type based on password
         if (password != null && !password.isEmpty()) {
             wifiConfig.preSharedKey = "\"" + password + "\"";
@@ -48,15 +80,7 @@ public class WifiHelper {
         } else {
             wifiConfig.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.NONE);
         }
-
-        int networkId = wifiManager.addNetwork(wifiConfig);
-        if (networkId == -1) {
-            return; // Silently return if fails
-        }
-
-        wifiManager.disconnect();
-        wifiManager.enableNetwork(networkId, true);
-        wifiManager.reconnect();
+        return wifiConfig;
     }
 
     private boolean isConnectedToWifi(String ssid) {
@@ -64,64 +88,122 @@ public class WifiHelper {
         return connectedSSID != null && connectedSSID.equals("\"" + ssid + "\"");
     }
 
-    private void removeExistingNetwork(String ssid) {
-        List<WifiConfiguration> configuredNetworks = wifiManager.getConfiguredNetworks();
-        if (configuredNetworks != null) {
-            for (WifiConfiguration config : configuredNetworks) {
-                if (config.SSID != null && config.SSID.equals("\"" + ssid + "\"")) {
-                    wifiManager.removeNetwork(config.networkId);
-                    wifiManager.saveConfiguration();
-                }
+    // Completes with true once the suggestion has been accepted by the system
+    public CompletableFuture<Boolean> suggestWifiNetwork(String ssid, String password) {
+        return CompletableFuture.supplyAsync(() -> {
+            // First check if we're already connected to this network
+            if (isConnectedToWifi(ssid)) {
+                return true;
             }
-        }
-    }
 
-    public void suggestWifiNetwork(String ssid, String password) {
-        // First check if we're already connected to this network
-        if (isConnectedToWifi(ssid)) {
-            return; // Silently return if already connected
-        }
+            // Ensure Wi-Fi is enabled
+            if (!wifiManager.isWifiEnabled()) {
+                wifiManager.setWifiEnabled(true);
+            }
 
-        // Ensure Wi-Fi is enabled
-        if (!wifiManager.isWifiEnabled()) {
-            wifiManager.setWifiEnabled(true);
-        }
+            // Create a Wi-Fi network suggestion
+            WifiNetworkSuggestion.Builder builder = new WifiNetworkSuggestion.Builder()
+                    .setSsid(ssid)
+                    .setIsAppInteractionRequired(true);
 
-        // Create a Wi-Fi network suggestion
-        WifiNetworkSuggestion.Builder builder = new WifiNetworkSuggestion.Builder()
-                .setSsid(ssid)
-                .setIsAppInteractionRequired(true);
+            if (password != null && !password.isEmpty()) {
+                builder.setWpa2Passphrase(password);
+            }
 
-        if (password != null && !password.isEmpty()) {
-            builder.setWpa2Passphrase(password);
-        }
+            List<WifiNetworkSuggestion> suggestions =
+                    Collections.singletonList(builder.build());
 
-        WifiNetworkSuggestion suggestion = builder.build();
+            // Remove any existing suggestions for this network
+            wifiManager.removeNetworkSuggestions(suggestions);
 
-        // Add suggestion to a list
-        List<WifiNetworkSuggestion> suggestions = new ArrayList<>();
-        suggestions.add(suggestion);
+            // Suggest the network
+            int status = wifiManager.addNetworkSuggestions(suggestions);
 
-        // Remove any existing suggestions for this network
-        wifiManager.removeNetworkSuggestions(suggestions);
+            if (status == WifiManager.STATUS_NETWORK_SUGGESTIONS_SUCCESS) {
+                mainHandler.post(() ->
+                        Toast.makeText(context, "Connecting to " + ssid, Toast.LENGTH_SHORT).show());
+                return true;
+            }
+            return false;
+        }, executor);
+    }
 
-        // Suggest the network
-        int status = wifiManager.addNetworkSuggestions(suggestions);
+    public CompletableFuture<List<String>> listConfiguredNetworks() {
+        return CompletableFuture.supplyAsync(() -> {
+            List<WifiConfiguration> networks = getConfiguredNetworks();
+            List<String> ssids = new ArrayList<>(networks.size());
+            for (WifiConfiguration config : networks) {
+                String ssid = config.SSID != null ? config.SSID : "Unknown";
+                android.util.Log.d("WifiConfig", "SSID: " + ssid + ", Network ID: " + config.networkId);
+                ssids.add(ssid);
+            }
+            if (networks.isEmpty()) {
+                mainHandler.post(() -> Toast.makeText(context,
+                        "No configured networks found or permission denied", Toast.LENGTH_SHORT).show());
+            }
+            return ssids;
+        }, executor);
+    }
 
-        if (status == WifiManager.STATUS_NETWORK_SUGGESTIONS_SUCCESS) {
-            Toast.makeText(context, "Connecting to " + ssid, Toast.LENGTH_SHORT).show();
+    public Transaction beginTransaction() {
+        return new Transaction();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // Must be called on the executor thread
+    private List<WifiConfiguration> getConfiguredNetworks() {
+        if (configuredNetworks == null) {
+            List<WifiConfiguration> networks = wifiManager.getConfiguredNetworks();
+            configuredNetworks = networks != null ? networks : Collections.<WifiConfiguration>emptyList();
         }
+        return configuredNetworks;
     }
 
-    public void listConfiguredNetworks() {
-        List<WifiConfiguration> configuredNetworks = wifiManager.getConfiguredNetworks();
-        if (configuredNetworks != null) {
-            for (WifiConfiguration config : configuredNetworks) {
-                String ssid = config.SSID != null ? config.SSID : "Unknown";
-                android.util.Log.d("WifiConfig", "SSID: " + ssid + ", Network ID: " + config.networkId);
+    // Collects removals and additions and applies them with a single
+    // saveConfiguration() call
+    public class Transaction {
+        private final List<String> ssidsToRemove = new ArrayList<>();
+        private final List<WifiConfiguration> configsToAdd = new ArrayList<>();
+
+        public Transaction remove(String ssid) {
+            ssidsToRemove.add("\"" + ssid + "\"");
+            return this;
+        }
+
+        public Transaction add(WifiConfiguration config) {
+            configsToAdd.add(config);
+            return this;
+        }
+
+        // Completes with the network id of each added configuration, -1 for failures
+        public CompletableFuture<List<Integer>> commit() {
+            return CompletableFuture.supplyAsync(this::apply, executor);
+        }
+
+        // Must be called on the executor thread
+        private List<Integer> apply() {
+            boolean changed = false;
+            if (!ssidsToRemove.isEmpty()) {
+                for (WifiConfiguration config : getConfiguredNetworks()) {
+                    if (config.SSID != null && ssidsToRemove.contains(config.SSID)) {
+                        changed |= wifiManager.removeNetwork(config.networkId);
+                    }
+                }
             }
-        } else {
-            Toast.makeText(context, "No configured networks found or permission denied", Toast.LENGTH_SHORT).show();
+            List<Integer> networkIds = new ArrayList<>(configsToAdd.size());
+            for (WifiConfiguration config : configsToAdd) {
+                int networkId = wifiManager.addNetwork(config);
+                changed |= networkId != -1;
+                networkIds.add(networkId);
+            }
+            if (changed) {
+                wifiManager.saveConfiguration();
+                configuredNetworks = null;
+            }
+            return networkIds;
         }
     }
-} 
\ No newline at end of file
+}
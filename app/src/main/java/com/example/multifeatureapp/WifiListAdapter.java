@@ -0,0 +1,66 @@
+package com.example.multifeatureapp;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+// Scan list adapter. submitList() diffs on a background thread keyed by
+// BSSID, so only access points that appeared, vanished or changed rebind.
+public class WifiListAdapter extends ListAdapter<WifiNetwork, WifiListAdapter.ViewHolder> {
+    public interface OnNetworkClickListener {
+        void onNetworkClick(WifiNetwork network);
+    }
+
+    private static final DiffUtil.ItemCallback<WifiNetwork> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<WifiNetwork>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull WifiNetwork oldItem, @NonNull WifiNetwork newItem) {
+                    return oldItem.bssid.equals(newItem.bssid);
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull WifiNetwork oldItem, @NonNull WifiNetwork newItem) {
+                    return oldItem.equals(newItem);
+                }
+            };
+
+    private final OnNetworkClickListener clickListener;
+
+    public WifiListAdapter(OnNetworkClickListener clickListener) {
+        super(DIFF_CALLBACK);
+        this.clickListener = clickListener;
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_wifi_network, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        WifiNetwork network = getItem(position);
+        holder.tvSsid.setVisibility(network.firstInGroup ? View.VISIBLE : View.GONE);
+        holder.tvSsid.setText(network.title);
+        holder.tvDetails.setText(network.details);
+        holder.itemView.setOnClickListener(v -> clickListener.onNetworkClick(network));
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView tvSsid;
+        final TextView tvDetails;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            tvSsid = itemView.findViewById(R.id.tvSsid);
+            tvDetails = itemView.findViewById(R.id.tvDetails);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.multifeatureapp;
+
+import android.net.wifi.ScanResult;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Immutable row of the Wi-Fi scan list. Display strings are built once when
+// the scan is converted, off the main thread, so binding a row only sets text.
+public final class WifiNetwork {
+    public final String bssid;
+    public final String ssid;
+    public final String capabilities;
+    public final String security;
+    public final int level;
+    public final int frequency;
+    public final boolean firstInGroup;
+    public final String title;
+    public final String details;
+
+    public WifiNetwork(String bssid, String ssid, String capabilities, int level, int frequency) {
+        this(bssid, ssid, capabilities, level, frequency, true);
+    }
+
+    private WifiNetwork(String bssid, String ssid, String capabilities, int level, int frequency,
+                        boolean firstInGroup) {
+        this.bssid = bssid;
+        this.ssid = ssid != null ? ssid : "";
+        this.capabilities = capabilities != null ? capabilities : "";
+        this.security = securityOf(this.capabilities);
+        this.level = level;
+        this.frequency = frequency;
+        this.firstInGroup = firstInGroup;
+        this.title = this.ssid.isEmpty() ? "Hidden Network" : this.ssid;
+        this.details = security + " - Signal: " + level + " dBm - "
+                + (frequency >= 5925 ? "6" : frequency >= 4900 ? "5" : "2.4") + " GHz - " + bssid;
+    }
+
+    public static WifiNetwork from(ScanResult result) {
+        return new WifiNetwork(result.BSSID, result.SSID, result.capabilities,
+                result.level, result.frequency);
+    }
+
+    public static List<WifiNetwork> fromScanResults(List<ScanResult> results) {
+        List<WifiNetwork> networks = new ArrayList<>(results.size());
+        for (ScanResult result : results) {
+            networks.add(from(result));
+        }
+        return groupAndSort(networks);
+    }
+
+    // Groups access points by SSID, strongest group first, strongest AP first
+    // within a group. Ties fall back to BSSID so the order is stable.
+    public static List<WifiNetwork> groupAndSort(List<WifiNetwork> networks) {
+        Map<String, List<WifiNetwork>> groups = new HashMap<>();
+        for (WifiNetwork network : networks) {
+            List<WifiNetwork> group = groups.get(network.ssid);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(network.ssid, group);
+            }
+            group.add(network);
+        }
+
+        List<List<WifiNetwork>> sortedGroups = new ArrayList<>(groups.values());
+        for (List<WifiNetwork> group : sortedGroups) {
+            Collections.sort(group, (a, b) -> a.level != b.level
+                    ? Integer.compare(b.level, a.level) : a.bssid.compareTo(b.bssid));
+        }
+        Collections.sort(sortedGroups, (a, b) -> {
+            WifiNetwork strongestA = a.get(0);
+            WifiNetwork strongestB = b.get(0);
+            if (strongestA.level != strongestB.level) {
+                return Integer.compare(strongestB.level, strongestA.level);
+            }
+            return strongestA.ssid.compareTo(strongestB.ssid);
+        });
+
+        List<WifiNetwork> sorted = new ArrayList<>(networks.size());
+        for (List<WifiNetwork> group : sortedGroups) {
+            for (int i = 0; i < group.size(); i++) {
+                WifiNetwork network = group.get(i);
+                boolean first = i == 0;
+                sorted.add(network.firstInGroup == first ? network : new WifiNetwork(network.bssid,
+                        network.ssid, network.capabilities, network.level, network.frequency, first));
+            }
+        }
+        return sorted;
+    }
+
+    // OWE encrypts without a password, like open networks it needs none
+    public boolean requiresPassword() {
+        return !security.equals("Open") && !security.equals("OWE");
+    }
+
+    static String securityOf(String capabilities) {
+        int bits = WifiCapability.parse(capabilities);
+        if (WifiCapability.SAE.isSet(bits)) {
+            // Transition mode networks also take WPA2-PSK
+            return WifiCapability.PSK.isSet(bits) ? "WPA2/WPA3" : "WPA3";
+        } else if (WifiCapability.OWE.isSet(bits)) {
+            return "OWE";
+        } else if (WifiCapability.WPA2.isSet(bits) || WifiCapability.RSN.isSet(bits)) {
+            return "WPA2";
+        } else if (WifiCapability.WPA.isSet(bits)) {
+            return "WPA";
+        } else if (WifiCapability.WEP.isSet(bits)) {
+            return "WEP";
+        }
+        return "Open";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof WifiNetwork)) return false;
+        WifiNetwork other = (WifiNetwork) o;
+        return level == other.level && frequency == other.frequency
+                && firstInGroup == other.firstInGroup && bssid.equals(other.bssid)
+                && ssid.equals(other.ssid) && capabilities.equals(other.capabilities);
+    }
+
+    @Override
+    public int hashCode() {
+        return bssid.hashCode() * 31 + level;
+    }
+}
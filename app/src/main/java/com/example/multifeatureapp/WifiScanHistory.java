@@ -0,0 +1,301 @@
+package com.example.multifeatureapp;
+
+import android.net.wifi.ScanResult;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Append-only history of RSSI samples for site surveys, stored in one
+// memory-mapped file. Each sample takes 7 bytes spread over three columns
+// (seconds since the first sample, BSSID index, RSSI). BSSIDs, SSIDs and
+// parsed capability bits live in small dictionary tables at the front.
+//
+// File layout:
+//   header       64 bytes
+//   BSSID table  MAX_BSSIDS * 16 (mac long, ssid index int, capability bits int)
+//   SSID table   MAX_SSIDS * 33 (length byte + up to 32 UTF-8 bytes)
+//   time column  capacity * 4
+//   BSSID column capacity * 2
+//   RSSI column  capacity * 1
+public class WifiScanHistory implements AutoCloseable {
+    public interface SampleVisitor {
+        void visit(long timestampMillis, int rssi);
+    }
+
+    static final int MAX_BSSIDS = 8192;
+    static final int MAX_SSIDS = 4096;
+
+    private static final int MAGIC = 0x57534831; // "WSH1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int BSSID_ENTRY_SIZE = 16;
+    private static final int SSID_ENTRY_SIZE = 33;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int BASE_TIME_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int SAMPLE_COUNT_OFFSET = 20;
+    private static final int BSSID_COUNT_OFFSET = 24;
+    private static final int SSID_COUNT_OFFSET = 28;
+
+    private static final int BSSID_TABLE_OFFSET = HEADER_SIZE;
+    private static final int SSID_TABLE_OFFSET = BSSID_TABLE_OFFSET + MAX_BSSIDS * BSSID_ENTRY_SIZE;
+    private static final int TIME_COLUMN_OFFSET = SSID_TABLE_OFFSET + MAX_SSIDS * SSID_ENTRY_SIZE;
+
+    private static WifiScanHistory shared;
+    private static int sharedHolders;
+
+    private final File path;
+    private final RandomAccessFile file;
+    private final MappedByteBuffer map;
+    private final int capacity;
+    private final int bssidColumnOffset;
+    private final int rssiColumnOffset;
+    private final LongIntMap bssidIndex = new LongIntMap(1024);
+    private final Map<String, Integer> ssidIndex = new HashMap<>();
+    private long baseTimeMillis;
+    private int sampleCount;
+    private int bssidCount;
+    private int ssidCount;
+    private int lastSeconds;
+
+    // The process-wide history on the file, opened by the first holder and
+    // closed when the last one releases it, so a recreated activity never maps
+    // the file a second time
+    public static synchronized WifiScanHistory acquire(File path, int capacity) throws IOException {
+        if (shared == null) {
+            shared = new WifiScanHistory(path, capacity);
+        } else if (!shared.path.equals(path)) {
+            throw new IllegalStateException("Scan history already open on " + shared.path);
+        }
+        sharedHolders++;
+        return shared;
+    }
+
+    public static synchronized void release(WifiScanHistory history) throws IOException {
+        if (history != shared) {
+            return;
+        }
+        if (--sharedHolders == 0) {
+            shared = null;
+            history.close();
+        }
+    }
+
+    public WifiScanHistory(File path, int capacity) throws IOException {
+        this.path = path;
+        file = new RandomAccessFile(path, "rw");
+        boolean existing = file.length() >= HEADER_SIZE;
+        if (existing) {
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(MAGIC_OFFSET) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION) {
+                file.close();
+                throw new IOException("Not a scan history file: " + path);
+            }
+            capacity = header.getInt(CAPACITY_OFFSET);
+        }
+        this.capacity = capacity;
+        bssidColumnOffset = TIME_COLUMN_OFFSET + capacity * 4;
+        rssiColumnOffset = bssidColumnOffset + capacity * 2;
+        long size = (long) rssiColumnOffset + capacity;
+        map = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        if (existing) {
+            load();
+        } else {
+            map.putInt(MAGIC_OFFSET, MAGIC);
+            map.putInt(VERSION_OFFSET, VERSION);
+            map.putLong(BASE_TIME_OFFSET, 0);
+            map.putInt(CAPACITY_OFFSET, capacity);
+        }
+    }
+
+    private void load() {
+        baseTimeMillis = map.getLong(BASE_TIME_OFFSET);
+        sampleCount = map.getInt(SAMPLE_COUNT_OFFSET);
+        bssidCount = map.getInt(BSSID_COUNT_OFFSET);
+        ssidCount = map.getInt(SSID_COUNT_OFFSET);
+        for (int i = 0; i < bssidCount; i++) {
+            bssidIndex.put(map.getLong(BSSID_TABLE_OFFSET + i * BSSID_ENTRY_SIZE), i);
+        }
+        for (int i = 0; i < ssidCount; i++) {
+            ssidIndex.put(getSsid(i), i);
+        }
+        lastSeconds = sampleCount > 0 ? map.getInt(TIME_COLUMN_OFFSET + (sampleCount - 1) * 4) : 0;
+    }
+
+    public synchronized int appendAll(List<ScanResult> results, long timestampMillis) {
+        int appended = 0;
+        for (ScanResult result : results) {
+            if (append(timestampMillis, result.BSSID, result.SSID, result.capabilities, result.level)) {
+                appended++;
+            }
+        }
+        return appended;
+    }
+
+    // Returns false when the store or one of its dictionaries is full
+    public synchronized boolean append(long timestampMillis, String bssid, String ssid,
+                                       String capabilities, int rssi) {
+        long mac = MacAddresses.pack(bssid);
+        if (mac == MacAddresses.INVALID || sampleCount >= capacity) {
+            return false;
+        }
+        int bssidIdx = bssidIndex.get(mac);
+        if (bssidIdx == LongIntMap.MISSING) {
+            bssidIdx = addBssid(mac, ssid, capabilities);
+            if (bssidIdx == LongIntMap.MISSING) {
+                return false;
+            }
+        }
+
+        if (sampleCount == 0 && baseTimeMillis == 0) {
+            baseTimeMillis = timestampMillis;
+            map.putLong(BASE_TIME_OFFSET, baseTimeMillis);
+        }
+        // Keep the time column sorted even if the wall clock steps back
+        int seconds = (int) Math.max(lastSeconds, (timestampMillis - baseTimeMillis) / 1000);
+        lastSeconds = seconds;
+
+        map.putInt(TIME_COLUMN_OFFSET + sampleCount * 4, seconds);
+        map.putShort(bssidColumnOffset + sampleCount * 2, (short) bssidIdx);
+        map.put(rssiColumnOffset + sampleCount, (byte) Math.max(-128, Math.min(127, rssi)));
+        // Publishing the count last keeps a half written sample invisible
+        sampleCount++;
+        map.putInt(SAMPLE_COUNT_OFFSET, sampleCount);
+        return true;
+    }
+
+    // Visits the samples of one BSSID between from and to (inclusive) without
+    // creating objects, returns how many were visited
+    public synchronized int query(String bssid, long fromMillis, long toMillis, SampleVisitor visitor) {
+        int bssidIdx = bssidIndex.get(MacAddresses.pack(bssid));
+        if (bssidIdx == LongIntMap.MISSING || sampleCount == 0) {
+            return 0;
+        }
+        long fromSeconds = Math.max(0, (fromMillis - baseTimeMillis + 999) / 1000);
+        long toSeconds = (toMillis - baseTimeMillis) / 1000;
+        int visited = 0;
+        for (int i = firstSampleAtOrAfter(fromSeconds); i < sampleCount; i++) {
+            int seconds = map.getInt(TIME_COLUMN_OFFSET + i * 4);
+            if (seconds > toSeconds) {
+                break;
+            }
+            if (map.getShort(bssidColumnOffset + i * 2) == (short) bssidIdx) {
+                visitor.visit(baseTimeMillis + seconds * 1000L, map.get(rssiColumnOffset + i));
+                visited++;
+            }
+        }
+        return visited;
+    }
+
+    public synchronized String getSsid(String bssid) {
+        int bssidIdx = bssidIndex.get(MacAddresses.pack(bssid));
+        if (bssidIdx == LongIntMap.MISSING) {
+            return null;
+        }
+        return getSsid(map.getInt(BSSID_TABLE_OFFSET + bssidIdx * BSSID_ENTRY_SIZE + 8));
+    }
+
+    public synchronized int getCapabilities(String bssid) {
+        int bssidIdx = bssidIndex.get(MacAddresses.pack(bssid));
+        if (bssidIdx == LongIntMap.MISSING) {
+            return 0;
+        }
+        return map.getInt(BSSID_TABLE_OFFSET + bssidIdx * BSSID_ENTRY_SIZE + 12);
+    }
+
+    public synchronized int getSampleCount() {
+        return sampleCount;
+    }
+
+    public synchronized int getBssidCount() {
+        return bssidCount;
+    }
+
+    public synchronized boolean isFull() {
+        return sampleCount >= capacity;
+    }
+
+    public synchronized void flush() {
+        map.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        map.force();
+        file.close();
+    }
+
+    private int addBssid(long mac, String ssid, String capabilities) {
+        if (bssidCount >= MAX_BSSIDS) {
+            return LongIntMap.MISSING;
+        }
+        int ssidIdx = internSsid(ssid != null ? ssid : "");
+        if (ssidIdx < 0) {
+            return LongIntMap.MISSING;
+        }
+        int idx = bssidCount;
+        int offset = BSSID_TABLE_OFFSET + idx * BSSID_ENTRY_SIZE;
+        map.putLong(offset, mac);
+        map.putInt(offset + 8, ssidIdx);
+        map.putInt(offset + 12, WifiCapability.parse(capabilities));
+        bssidCount++;
+        map.putInt(BSSID_COUNT_OFFSET, bssidCount);
+        bssidIndex.put(mac, idx);
+        return idx;
+    }
+
+    private int internSsid(String ssid) {
+        Integer existing = ssidIndex.get(ssid);
+        if (existing != null) {
+            return existing;
+        }
+        if (ssidCount >= MAX_SSIDS) {
+            return -1;
+        }
+        byte[] bytes = ssid.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, SSID_ENTRY_SIZE - 1);
+        int offset = SSID_TABLE_OFFSET + ssidCount * SSID_ENTRY_SIZE;
+        map.put(offset, (byte) length);
+        for (int i = 0; i < length; i++) {
+            map.put(offset + 1 + i, bytes[i]);
+        }
+        int idx = ssidCount++;
+        map.putInt(SSID_COUNT_OFFSET, ssidCount);
+        ssidIndex.put(ssid, idx);
+        return idx;
+    }
+
+    private String getSsid(int ssidIdx) {
+        int offset = SSID_TABLE_OFFSET + ssidIdx * SSID_ENTRY_SIZE;
+        int length = map.get(offset) & 0xFF;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = map.get(offset + 1 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int firstSampleAtOrAfter(long seconds) {
+        int low = 0;
+        int high = sampleCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (map.getInt(TIME_COLUMN_OFFSET + mid * 4) < seconds) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
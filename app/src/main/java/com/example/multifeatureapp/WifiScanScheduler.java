@@ -0,0 +1,159 @@
+package com.example.multifeatureapp;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Process-wide Wi-Fi scan scheduler. Android throttles foreground apps to
+// four scans every two minutes, so this keeps its own budget, folds requests
+// made while a scan is running into that scan, and otherwise hands back the
+// last results together with when they were taken.
+public final class WifiScanScheduler {
+    private static final int MAX_SCANS = 4;
+    private static final long THROTTLE_WINDOW_MS = 2 * 60 * 1000;
+    private static final long SCAN_TIMEOUT_MS = 30000;
+
+    public enum Outcome {
+        STARTED,
+        MERGED,
+        THROTTLED
+    }
+
+    public interface Listener {
+        // fresh is false when the system could not complete a new scan
+        void onScanResults(List<ScanResult> results, long scannedAtMillis, boolean fresh);
+    }
+
+    private static WifiScanScheduler instance;
+
+    private final WifiManager wifiManager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ScanBudget budget = new ScanBudget(MAX_SCANS, THROTTLE_WINDOW_MS);
+    private List<ScanResult> cachedResults = Collections.emptyList();
+    private long cachedAtMillis;
+    private boolean scanInFlight;
+
+    private final Runnable scanTimeout = () -> scanInFlight = false;
+
+    public static synchronized WifiScanScheduler getInstance(Context context) {
+        if (instance == null) {
+            instance = new WifiScanScheduler(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private WifiScanScheduler(Context context) {
+        wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+
+        // Registered once for the whole process, so scans other apps trigger
+        // keep the cache warm too
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                boolean updated = intent.getBooleanExtra(WifiManager.EXTRA_RESULTS_UPDATED, true);
+                onScanCompleted(updated);
+            }
+        }, new IntentFilter(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION));
+    }
+
+    // Must be called on the main thread
+    public Outcome requestScan() {
+        if (scanInFlight) {
+            return Outcome.MERGED;
+        }
+        if (!budget.tryAcquire(SystemClock.elapsedRealtime())) {
+            deliverCached(false);
+            return Outcome.THROTTLED;
+        }
+        if (!wifiManager.startScan()) {
+            // Throttled by the system anyway, our budget was out of step
+            budget.exhaust(SystemClock.elapsedRealtime());
+            deliverCached(false);
+            return Outcome.THROTTLED;
+        }
+        scanInFlight = true;
+        mainHandler.postDelayed(scanTimeout, SCAN_TIMEOUT_MS);
+        return Outcome.STARTED;
+    }
+
+    public List<ScanResult> getCachedResults() {
+        return cachedResults;
+    }
+
+    public long getCachedAtMillis() {
+        return cachedAtMillis;
+    }
+
+    public long getNextScanAvailableInMs() {
+        long now = SystemClock.elapsedRealtime();
+        return Math.max(0, budget.nextAvailableAt(now) - now);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void onScanCompleted(boolean updated) {
+        scanInFlight = false;
+        mainHandler.removeCallbacks(scanTimeout);
+        if (updated || cachedResults.isEmpty()) {
+            List<ScanResult> results = wifiManager.getScanResults();
+            cachedResults = results != null
+                    ? Collections.unmodifiableList(results) : Collections.<ScanResult>emptyList();
+            cachedAtMillis = System.currentTimeMillis();
+        }
+        deliverCached(updated);
+    }
+
+    private void deliverCached(boolean fresh) {
+        for (Listener listener : listeners) {
+            listener.onScanResults(cachedResults, cachedAtMillis, fresh);
+        }
+    }
+
+    // Sliding window of the last maxScans scan start times
+    static final class ScanBudget {
+        private final long[] startTimes;
+        private final long windowMs;
+        private int next;
+
+        ScanBudget(int maxScans, long windowMs) {
+            this.startTimes = new long[maxScans];
+            this.windowMs = windowMs;
+            Arrays.fill(startTimes, Long.MIN_VALUE / 2);
+        }
+
+        boolean tryAcquire(long now) {
+            // The oldest slot is the one about to be overwritten
+            if (now - startTimes[next] < windowMs) {
+                return false;
+            }
+            startTimes[next] = now;
+            next = (next + 1) % startTimes.length;
+            return true;
+        }
+
+        long nextAvailableAt(long now) {
+            return Math.max(now, startTimes[next] + windowMs);
+        }
+
+        void exhaust(long now) {
+            Arrays.fill(startTimes, now);
+        }
+    }
+}
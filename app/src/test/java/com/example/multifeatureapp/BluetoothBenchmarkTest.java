@@ -0,0 +1,57 @@
+package com.example.multifeatureapp;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BluetoothBenchmarkTest {
+    private static final String ADDRESS = "00:00:00:00:00:0B";
+
+    @Test
+    public void measuresLoopbackEcho() throws Exception {
+        BluetoothBenchmark benchmark = new BluetoothBenchmark(BluetoothBenchmark.loopbackEchoFactory(),
+                ADDRESS, 32, 10_000);
+
+        List<BluetoothBenchmark.Result> results = benchmark.run(new int[]{16, 1024, 16 * 1024}, 2000);
+
+        assertEquals(3, results.size());
+        for (BluetoothBenchmark.Result result : results) {
+            assertEquals(2000, result.messages);
+            assertEquals(2000L * result.frameSize, result.bytes);
+            assertEquals(2000, result.latency.getCount());
+            assertTrue(result.latency.getPercentile(99) >= result.latency.getPercentile(50));
+            assertTrue(result.getMegabytesPerSecond() > 0);
+            assertTrue(result.getMessagesPerSecond() > 0);
+            // The frame path reuses its buffers, so a message costs far less than its size
+            if (result.allocatedBytes >= 0 && result.frameSize >= 1024) {
+                assertTrue(result.toString(), result.getAllocatedBytesPerMessage() < result.frameSize);
+            }
+        }
+    }
+
+    @Test
+    public void reportsAllocationsOnThisJvm() {
+        long[] self = {Thread.currentThread().getId()};
+        long before = BluetoothBenchmark.allocatedBytes(self);
+        byte[][] garbage = new byte[100][];
+        for (int i = 0; i < garbage.length; i++) {
+            garbage[i] = new byte[1024];
+        }
+        long after = BluetoothBenchmark.allocatedBytes(self);
+        assertNotNull(garbage[99]);
+        if (before >= 0) {
+            assertTrue(after - before >= 100 * 1024);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void failsWhenTransportCannotConnect() throws Exception {
+        BluetoothBenchmark benchmark = new BluetoothBenchmark(address -> {
+            throw new IOException("Page timeout");
+        }, ADDRESS, 4, 2000);
+        benchmark.run(new int[]{64}, 10);
+    }
+}
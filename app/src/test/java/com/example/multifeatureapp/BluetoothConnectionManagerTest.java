@@ -0,0 +1,333 @@
+package com.example.multifeatureapp;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BluetoothConnectionManagerTest {
+    private final Map<String, LoopbackTransport> remoteEnds = new ConcurrentHashMap<>();
+    private final Map<String, BluetoothConnectionManager.SessionState> lastStates = new ConcurrentHashMap<>();
+    private BluetoothConnectionManager manager;
+
+    @After
+    public void tearDown() {
+        if (manager != null) {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    public void keepsSessionsPerAddress() throws Exception {
+        CountDownLatch connected = new CountDownLatch(3);
+        manager = new BluetoothConnectionManager(address -> {
+            LoopbackTransport[] pair = LoopbackTransport.createPair();
+            remoteEnds.put(address, pair[1]);
+            return pair[0];
+        }, listener(connected));
+
+        assertTrue(manager.connect("00:00:00:00:00:01"));
+        assertTrue(manager.connect("00:00:00:00:00:02"));
+        assertTrue(manager.connect("00:00:00:00:00:03"));
+        assertTrue(manager.connect("00:00:00:00:00:01"));
+        assertTrue(connected.await(5, TimeUnit.SECONDS));
+
+        List<BluetoothConnectionManager.SessionInfo> sessions = manager.snapshot();
+        assertEquals(3, sessions.size());
+        for (BluetoothConnectionManager.SessionInfo session : sessions) {
+            assertEquals(BluetoothConnectionManager.SessionState.CONNECTED, session.state);
+        }
+
+        assertTrue(manager.send("00:00:00:00:00:02", new byte[]{1, 2, 3}, 1000));
+        byte[] received = new byte[3];
+        InputStream remoteIn = remoteEnds.get("00:00:00:00:00:02").getInputStream();
+        int read = 0;
+        while (read < 3) {
+            read += remoteIn.read(received, read, 3 - read);
+        }
+        assertArrayEquals(new byte[]{1, 2, 3}, received);
+
+        manager.disconnect("00:00:00:00:00:02");
+        assertEquals(2, manager.snapshot().size());
+        assertFalse(manager.isConnected("00:00:00:00:00:02"));
+    }
+
+    @Test
+    public void cancelsConnectInFlight() throws Exception {
+        CountDownLatch connectStarted = new CountDownLatch(1);
+        CountDownLatch connectAborted = new CountDownLatch(1);
+        manager = new BluetoothConnectionManager(address -> new HangingTransport(connectStarted, connectAborted),
+                listener(new CountDownLatch(1)));
+
+        assertTrue(manager.connect("00:00:00:00:00:09"));
+        assertTrue(connectStarted.await(5, TimeUnit.SECONDS));
+        assertEquals(BluetoothConnectionManager.SessionState.CONNECTING, manager.snapshot().get(0).state);
+
+        manager.disconnect("00:00:00:00:00:09");
+
+        assertTrue(connectAborted.await(5, TimeUnit.SECONDS));
+        assertTrue(manager.snapshot().isEmpty());
+        assertEquals(BluetoothConnectionManager.SessionState.CLOSED, lastStates.get("00:00:00:00:00:09"));
+    }
+
+    @Test
+    public void reportsFailedConnect() throws Exception {
+        CountDownLatch failed = new CountDownLatch(1);
+        manager = new BluetoothConnectionManager(address -> {
+            throw new IOException("Service discovery failed");
+        }, new BluetoothConnectionManager.Listener() {
+            @Override
+            public void onSessionChanged(BluetoothConnectionManager.SessionInfo session) {
+                if (session.state == BluetoothConnectionManager.SessionState.FAILED) {
+                    assertEquals("Service discovery failed", session.failure);
+                    failed.countDown();
+                }
+            }
+
+            @Override
+            public void onData(String address, byte[] buffer, int offset, int length) {
+            }
+        });
+
+        assertTrue(manager.connect("00:00:00:00:00:01"));
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+        assertTrue(manager.snapshot().isEmpty());
+        assertFalse(manager.connect("not an address"));
+    }
+
+    @Test
+    public void failsSessionWhenConnectThrowsUnchecked() throws Exception {
+        CountDownLatch failed = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        manager = new BluetoothConnectionManager(address -> {
+            calls.incrementAndGet();
+            throw new SecurityException("Need BLUETOOTH_CONNECT permission");
+        }, new BluetoothConnectionManager.Listener() {
+            @Override
+            public void onSessionChanged(BluetoothConnectionManager.SessionInfo session) {
+                if (session.state == BluetoothConnectionManager.SessionState.FAILED) {
+                    assertEquals("Need BLUETOOTH_CONNECT permission", session.failure);
+                    failed.countDown();
+                }
+            }
+
+            @Override
+            public void onData(String address, byte[] buffer, int offset, int length) {
+            }
+        }, new ReconnectPolicy(10, 50, 5));
+
+        assertTrue(manager.connect("00:00:00:00:00:0A"));
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+        assertTrue(manager.snapshot().isEmpty());
+        assertEquals(1, calls.get());
+        assertEquals("Need BLUETOOTH_CONNECT permission",
+                manager.getTelemetry().get("00:00:00:00:00:0A").lastFailure);
+        // The address is free for a new attempt
+        assertTrue(manager.connect("00:00:00:00:00:0A"));
+    }
+
+    @Test
+    public void retriesFailedConnectWithBackoff() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch connected = new CountDownLatch(1);
+        manager = new BluetoothConnectionManager(address -> {
+            if (calls.incrementAndGet() <= 2) {
+                throw new IOException("Page timeout");
+            }
+            return LoopbackTransport.createPair()[0];
+        }, listener(connected), new ReconnectPolicy(10, 50, 5));
+
+        assertTrue(manager.connect("00:00:00:00:00:07"));
+        assertTrue(connected.await(5, TimeUnit.SECONDS));
+
+        assertEquals(3, calls.get());
+        ConnectTelemetry.DeviceStats stats = manager.getTelemetry().get("00:00:00:00:00:07");
+        assertEquals(3, stats.attempts);
+        assertEquals(1, stats.successes);
+        assertEquals(1.0 / 3, stats.getSuccessRate(), 1e-9);
+        assertEquals("Page timeout", stats.lastFailure);
+    }
+
+    @Test
+    public void givesUpWhenPolicyIsExhausted() throws Exception {
+        CountDownLatch failed = new CountDownLatch(1);
+        AtomicInteger reconnecting = new AtomicInteger();
+        manager = new BluetoothConnectionManager(address -> {
+            throw new IOException("Host is down");
+        }, new BluetoothConnectionManager.Listener() {
+            @Override
+            public void onSessionChanged(BluetoothConnectionManager.SessionInfo session) {
+                if (session.state == BluetoothConnectionManager.SessionState.RECONNECTING) {
+                    reconnecting.incrementAndGet();
+                } else if (session.state == BluetoothConnectionManager.SessionState.FAILED) {
+                    failed.countDown();
+                }
+            }
+
+            @Override
+            public void onData(String address, byte[] buffer, int offset, int length) {
+            }
+        }, new ReconnectPolicy(5, 20, 2));
+
+        assertTrue(manager.connect("00:00:00:00:00:08"));
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+        assertEquals(2, reconnecting.get());
+        assertEquals(3, manager.getTelemetry().get("00:00:00:00:00:08").attempts);
+        assertTrue(manager.snapshot().isEmpty());
+    }
+
+    @Test
+    public void reconnectsAfterLinkDrops() throws Exception {
+        CountDownLatch connectedTwice = new CountDownLatch(2);
+        manager = new BluetoothConnectionManager(address -> {
+            LoopbackTransport[] pair = LoopbackTransport.createPair();
+            remoteEnds.put(address, pair[1]);
+            return pair[0];
+        }, listener(connectedTwice), new ReconnectPolicy(10, 50, 3));
+
+        assertTrue(manager.connect("00:00:00:00:00:05"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!manager.isConnected("00:00:00:00:00:05") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        remoteEnds.get("00:00:00:00:00:05").close();
+
+        assertTrue(connectedTwice.await(5, TimeUnit.SECONDS));
+        assertTrue(manager.isConnected("00:00:00:00:00:05"));
+        assertEquals(2, manager.getTelemetry().get("00:00:00:00:00:05").successes);
+    }
+
+    @Test
+    public void linkThatKeepsDroppingKeepsBackingOff() throws Exception {
+        List<Integer> attempts = new CopyOnWriteArrayList<>();
+        CountDownLatch closed = new CountDownLatch(1);
+        manager = new BluetoothConnectionManager(address -> {
+            LoopbackTransport[] pair = LoopbackTransport.createPair();
+            remoteEnds.put(address, pair[1]);
+            return pair[0];
+        }, new BluetoothConnectionManager.Listener() {
+            @Override
+            public void onSessionChanged(BluetoothConnectionManager.SessionInfo session) {
+                try {
+                    if (session.state == BluetoothConnectionManager.SessionState.CONNECTED) {
+                        // Drops as soon as it comes up
+                        remoteEnds.get(session.address).close();
+                    } else if (session.state == BluetoothConnectionManager.SessionState.RECONNECTING) {
+                        attempts.add(session.attempt);
+                    } else if (session.state == BluetoothConnectionManager.SessionState.CLOSED) {
+                        closed.countDown();
+                    }
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+
+            @Override
+            public void onData(String address, byte[] buffer, int offset, int length) {
+            }
+        }, new ReconnectPolicy(5, 20, 3));
+
+        assertTrue(manager.connect("00:00:00:00:00:0B"));
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        // Never up long enough to start the backoff over, so the policy runs out
+        assertEquals(Arrays.asList(1, 2, 3), attempts);
+        assertEquals(4, manager.getTelemetry().get("00:00:00:00:00:0B").successes);
+        assertTrue(manager.snapshot().isEmpty());
+    }
+
+    @Test
+    public void disconnectCancelsPendingReconnect() throws Exception {
+        CountDownLatch reconnecting = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        manager = new BluetoothConnectionManager(address -> {
+            calls.incrementAndGet();
+            throw new IOException("Page timeout");
+        }, new BluetoothConnectionManager.Listener() {
+            @Override
+            public void onSessionChanged(BluetoothConnectionManager.SessionInfo session) {
+                lastStates.put(session.address, session.state);
+                if (session.state == BluetoothConnectionManager.SessionState.RECONNECTING) {
+                    reconnecting.countDown();
+                }
+            }
+
+            @Override
+            public void onData(String address, byte[] buffer, int offset, int length) {
+            }
+        }, new ReconnectPolicy(60_000, 60_000, 0));
+
+        assertTrue(manager.connect("00:00:00:00:00:06"));
+        assertTrue(reconnecting.await(5, TimeUnit.SECONDS));
+        manager.disconnect("00:00:00:00:00:06");
+
+        assertTrue(manager.snapshot().isEmpty());
+        assertEquals(BluetoothConnectionManager.SessionState.CLOSED, lastStates.get("00:00:00:00:00:06"));
+        assertEquals(1, calls.get());
+    }
+
+    private BluetoothConnectionManager.Listener listener(CountDownLatch connected) {
+        return new BluetoothConnectionManager.Listener() {
+            @Override
+            public void onSessionChanged(BluetoothConnectionManager.SessionInfo session) {
+                lastStates.put(session.address, session.state);
+                if (session.state == BluetoothConnectionManager.SessionState.CONNECTED) {
+                    connected.countDown();
+                }
+            }
+
+            @Override
+            public void onData(String address, byte[] buffer, int offset, int length) {
+            }
+        };
+    }
+
+    private static class HangingTransport implements RfcommTransport {
+        private final CountDownLatch started;
+        private final CountDownLatch aborted;
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        HangingTransport(CountDownLatch started, CountDownLatch aborted) {
+            this.started = started;
+            this.aborted = aborted;
+        }
+
+        @Override
+        public void connect() throws IOException {
+            started.countDown();
+            try {
+                closed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            aborted.countDown();
+            throw new IOException("Socket closed");
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.multifeatureapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.*;
+
+public class BluetoothDeviceCacheTest {
+    private static final String ADDRESS = "00:11:22:33:44:55";
+    private static final UUID SPP = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
+    private static final UUID HID = UUID.fromString("00001124-0000-1000-8000-00805F9B34FB");
+
+    private File file;
+    private ScheduledExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("bt_cache", ".bin");
+        file.delete();
+        executor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        file.delete();
+    }
+
+    @Test
+    public void roundTripsAllFields() throws Exception {
+        BluetoothDeviceCache cache = new BluetoothDeviceCache(file, executor, 60_000);
+        cache.load().get();
+        assertTrue(cache.updateName(ADDRESS, "Sensor \u00e9", 1000));
+        assertTrue(cache.updateDeviceClass(ADDRESS, 0x1F00, 1000));
+        assertTrue(cache.updateRssi(ADDRESS, -67, 1000));
+        assertTrue(cache.updateBondState(ADDRESS, 12, 1000));
+        assertTrue(cache.updateUuids(ADDRESS, Arrays.asList(SPP, HID), 2000));
+        cache.updateName("66:77:88:99:AA:BB", "Other", 3000);
+        cache.flush().get();
+
+        BluetoothDeviceCache reloaded = new BluetoothDeviceCache(file, executor, 60_000);
+        assertNull(reloaded.get(ADDRESS));
+        assertEquals(2, (int) reloaded.load().get());
+        BluetoothDeviceCache.Record record = reloaded.get(ADDRESS);
+        assertEquals("Sensor \u00e9", record.name);
+        assertEquals(0x1F00, record.deviceClass);
+        assertEquals(-67, record.rssi);
+        assertEquals(12, record.bondState);
+        assertEquals(Arrays.asList(SPP, HID), record.uuids);
+        assertEquals(2000, record.lastSeenMillis);
+        assertEquals("Other", reloaded.getName("66:77:88:99:AA:BB"));
+    }
+
+    @Test
+    public void unknownValuesDoNotOverwrite() throws Exception {
+        BluetoothDeviceCache cache = new BluetoothDeviceCache(file, executor, 60_000);
+        cache.updateName(ADDRESS, "Known", 1000);
+        assertFalse(cache.updateName(ADDRESS, null, 2000));
+        assertFalse(cache.updateName(ADDRESS, "Known", 3000));
+        assertFalse(cache.updateRssi(ADDRESS, BluetoothDeviceRegistry.RSSI_UNKNOWN, 4000));
+        assertFalse(cache.updateDeviceClass(ADDRESS, BluetoothDeviceCache.UNKNOWN, 5000));
+
+        BluetoothDeviceCache.Record record = cache.get(ADDRESS);
+        assertEquals("Known", record.name);
+        assertEquals(5000, record.lastSeenMillis);
+        assertFalse(cache.updateName("not an address", "x", 0));
+    }
+
+    @Test
+    public void batchesWritesWithinDelay() throws Exception {
+        BluetoothDeviceCache cache = new BluetoothDeviceCache(file, executor, 200);
+        cache.load().get();
+        for (int i = 0; i < 100; i++) {
+            cache.updateRssi(ADDRESS, -40 - i, i);
+        }
+        assertEquals(0, cache.getWriteCount());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cache.getWriteCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        Thread.sleep(300);
+        assertEquals(1, cache.getWriteCount());
+        assertTrue(file.exists());
+    }
+
+    @Test
+    public void evictsLeastRecentlySeenWhenFull() throws Exception {
+        BluetoothDeviceCache cache = new BluetoothDeviceCache(file, executor, 60_000);
+        cache.load().get();
+        for (int i = 0; i < BluetoothDeviceCache.MAX_RECORDS; i++) {
+            cache.updateName(MacAddresses.format(i + 1), "Device " + i, 1000 + i);
+        }
+        // Seeing the first device again keeps it over the second
+        cache.updateRssi(MacAddresses.format(1), -50, 10_000);
+        cache.updateName(MacAddresses.format(0xFFFF), "Newcomer", 10_001);
+
+        assertEquals(BluetoothDeviceCache.MAX_RECORDS, cache.size());
+        assertEquals("Device 0", cache.getName(MacAddresses.format(1)));
+        assertNull(cache.get(MacAddresses.format(2)));
+        assertEquals("Newcomer", cache.getName(MacAddresses.format(0xFFFF)));
+        assertEquals("Device 511", cache.getName(MacAddresses.format(512)));
+
+        cache.flush().get();
+        BluetoothDeviceCache reloaded = new BluetoothDeviceCache(file, executor, 60_000);
+        assertEquals(BluetoothDeviceCache.MAX_RECORDS, (int) reloaded.load().get());
+        assertNull(reloaded.get(MacAddresses.format(2)));
+    }
+
+    @Test
+    public void updatesBeforeLoadMergeWithStoredRecords() throws Exception {
+        BluetoothDeviceCache first = new BluetoothDeviceCache(file, executor, 60_000);
+        first.updateName(ADDRESS, "Stored", 1000);
+        first.updateUuids(ADDRESS, Arrays.asList(SPP), 1000);
+        first.flush().get();
+
+        BluetoothDeviceCache second = new BluetoothDeviceCache(file, executor, 60_000);
+        second.updateRssi(ADDRESS, -50, 5000);
+        // Writing before load must not drop what is on disk
+        second.flush().get();
+        second.load().get();
+
+        BluetoothDeviceCache.Record record = second.get(ADDRESS);
+        assertEquals("Stored", record.name);
+        assertEquals(-50, record.rssi);
+        assertEquals(Arrays.asList(SPP), record.uuids);
+    }
+
+    @Test
+    public void ignoresCorruptFile() throws Exception {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+        }
+        BluetoothDeviceCache cache = new BluetoothDeviceCache(file, executor, 60_000);
+        assertEquals(0, (int) cache.load().get());
+        assertTrue(cache.updateName(ADDRESS, "Fresh", 0));
+    }
+}
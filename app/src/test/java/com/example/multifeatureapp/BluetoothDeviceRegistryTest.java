@@ -0,0 +1,98 @@
+package com.example.multifeatureapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BluetoothDeviceRegistryTest {
+    @Test
+    public void upsertKeepsInsertionOrder() {
+        BluetoothDeviceRegistry<String> registry = new BluetoothDeviceRegistry<>();
+
+        assertTrue(registry.upsert("00:11:22:33:44:01", "first", -60, 1000));
+        assertTrue(registry.upsert("00:11:22:33:44:02", "second", -70, 1100));
+        assertFalse(registry.upsert("00:11:22:33:44:01", "first again", -50, 1200));
+
+        assertEquals(2, registry.size());
+        BluetoothDeviceRegistry.Entry<String> first = registry.getEntries().get(0);
+        assertEquals("first again", first.device);
+        assertEquals(-50, first.rssi);
+        assertEquals(1000, first.firstSeenMillis);
+        assertEquals(1200, first.lastSeenMillis);
+        assertEquals(2, first.sightings);
+    }
+
+    @Test
+    public void unknownRssiKeepsLastValue() {
+        BluetoothDeviceRegistry<String> registry = new BluetoothDeviceRegistry<>();
+        registry.upsert("00:11:22:33:44:01", "device", -60, 0);
+        registry.upsert("00:11:22:33:44:01", "device", BluetoothDeviceRegistry.RSSI_UNKNOWN, 10);
+
+        assertEquals(-60, registry.get("00:11:22:33:44:01").rssi);
+    }
+
+    @Test
+    public void smoothsRssiWithMovingAverage() {
+        BluetoothDeviceRegistry<String> registry = new BluetoothDeviceRegistry<>(0.5f);
+        registry.upsert("00:11:22:33:44:01", "device", -80, 0);
+        assertEquals(-80.0, registry.get("00:11:22:33:44:01").smoothedRssi, 1e-6);
+        registry.upsert("00:11:22:33:44:01", "device", -40, 10);
+        registry.upsert("00:11:22:33:44:01", "device", BluetoothDeviceRegistry.RSSI_UNKNOWN, 20);
+        registry.upsert("00:11:22:33:44:01", "device", -60, 30);
+
+        BluetoothDeviceRegistry.Entry<String> entry = registry.get("00:11:22:33:44:01");
+        assertEquals(-60.0, entry.smoothedRssi, 1e-6);
+        assertEquals(-60, entry.rssi);
+    }
+
+    @Test
+    public void expireDropsStaleDevicesAndKeepsOrder() {
+        BluetoothDeviceRegistry<String> registry = new BluetoothDeviceRegistry<>();
+        registry.upsert("00:11:22:33:44:01", "a", -60, 1000);
+        registry.upsert("00:11:22:33:44:02", "b", -60, 2000);
+        registry.upsert("00:11:22:33:44:03", "c", -60, 3000);
+        registry.upsert("00:11:22:33:44:01", "a", -60, 5000);
+        int version = registry.getVersion();
+
+        assertEquals(1, registry.expire(2500));
+        assertEquals(0, registry.expire(2500));
+
+        assertEquals(2, registry.size());
+        assertTrue(registry.getVersion() > version);
+        assertEquals("a", registry.getEntries().get(0).device);
+        assertEquals("c", registry.getEntries().get(1).device);
+        assertNull(registry.get("00:11:22:33:44:02"));
+        assertEquals("c", registry.get("00:11:22:33:44:03").device);
+
+        // An expired device comes back as new
+        assertTrue(registry.upsert("00:11:22:33:44:02", "b", -60, 6000));
+        assertEquals(2, registry.getEntries().indexOf(registry.get("00:11:22:33:44:02")));
+    }
+
+    @Test
+    public void entriesCannotBeModifiedFromOutside() {
+        BluetoothDeviceRegistry<String> registry = new BluetoothDeviceRegistry<>();
+        registry.upsert("00:11:22:33:44:01", "a", -50, 1000);
+        try {
+            registry.getEntries().remove(0);
+            fail("Expected the entries to be read-only");
+        } catch (UnsupportedOperationException expected) {
+            // The index still matches the list
+        }
+        assertEquals(1, registry.size());
+        assertEquals("a", registry.get("00:11:22:33:44:01").device);
+    }
+
+    @Test
+    public void scalesToThousandsOfDevices() {
+        BluetoothDeviceRegistry<Integer> registry = new BluetoothDeviceRegistry<>();
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 5000; i++) {
+                registry.upsert(MacAddresses.format(0x001122000000L + i), i, -i % 100, round);
+            }
+        }
+        assertEquals(5000, registry.size());
+        assertEquals(Integer.valueOf(4999), registry.get("00:11:22:00:13:87").device);
+        assertNull(registry.get("FF:FF:FF:FF:FF:FF"));
+    }
+}
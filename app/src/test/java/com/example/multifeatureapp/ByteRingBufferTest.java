@@ -0,0 +1,41 @@
+package com.example.multifeatureapp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ByteRingBufferTest {
+    @Test
+    public void timedOutWriteLeavesNothingBehind() throws Exception {
+        ByteRingBuffer ring = new ByteRingBuffer(1024);
+        assertEquals(600, ring.write(new byte[600], 0, 600, 0));
+        assertEquals(0, ring.write(new byte[600], 0, 600, 20));
+        assertEquals(600, ring.available());
+    }
+
+    @Test
+    public void wrapsAroundTheEnd() throws Exception {
+        ByteRingBuffer ring = new ByteRingBuffer(8);
+        byte[] out = new byte[8];
+        assertEquals(6, ring.write(new byte[]{1, 2, 3, 4, 5, 6}, 0, 6, 0));
+        assertEquals(6, ring.read(out, 0, 6));
+        assertEquals(5, ring.write(new byte[]{7, 8, 9, 10, 11}, 0, 5, 0));
+        assertEquals(2, ring.read(out, 0, 8));
+        assertEquals(3, ring.read(out, 2, 6));
+        assertArrayEquals(new byte[]{7, 8, 9, 10, 11}, Arrays.copyOf(out, 5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsWritesLargerThanTheRing() throws Exception {
+        new ByteRingBuffer(16).write(new byte[17], 0, 17, 1000);
+    }
+
+    @Test
+    public void closedRingRefusesWrites() throws Exception {
+        ByteRingBuffer ring = new ByteRingBuffer(16);
+        ring.close();
+        assertEquals(-1, ring.write(new byte[4], 0, 4, 1000));
+    }
+}
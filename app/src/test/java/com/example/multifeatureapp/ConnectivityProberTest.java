@@ -0,0 +1,94 @@
+package com.example.multifeatureapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class ConnectivityProberTest {
+    private StubHttpServer server;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubHttpServer()
+                .respond("/slow", 200, 3000)
+                .respond("/fast", 204, 50)
+                .respond("/error", 500, 0)
+                .respond("/portal", 200, 0, "<html>Sign in</html>".getBytes(StandardCharsets.UTF_8))
+                .respond("/empty", 200, 0);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        server.close();
+    }
+
+    @Test
+    public void firstSuccessWins() throws Exception {
+        ConnectivityProber prober = new ConnectivityProber(
+                Arrays.asList(server.url("/slow"), server.url("/error"), server.url("/fast")),
+                new ConnectivityProber.UrlConnectionTransport(5000), executor, 5000);
+
+        ConnectivityProber.Result result = prober.probe();
+
+        assertTrue(result.isConnected());
+        assertEquals(server.url("/fast"), result.endpoint);
+        assertTrue("latency " + result.latencyMs, result.latencyMs < 2000);
+        assertEquals(3, result.probesStarted);
+    }
+
+    @Test
+    public void allFailuresReportNotConnected() throws Exception {
+        ConnectivityProber prober = new ConnectivityProber(
+                Arrays.asList(server.url("/error"), "http://127.0.0.1:1/"),
+                new ConnectivityProber.UrlConnectionTransport(1000), executor, 5000);
+
+        assertFalse(prober.probe().isConnected());
+    }
+
+    @Test
+    public void captivePortalIsNotConnected() throws Exception {
+        ConnectivityProber prober = new ConnectivityProber(
+                Arrays.asList(server.url("/portal"), server.url("/empty")),
+                new ConnectivityProber.UrlConnectionTransport(1000), executor, 5000);
+
+        assertFalse(prober.probe().isConnected());
+
+        ConnectivityProber httpProber = new ConnectivityProber(
+                Arrays.asList(server.url("/portal"), server.url("/empty"), server.url("/fast")),
+                new HttpProber("GET", 1000), executor, 5000);
+        ConnectivityProber.Result result = httpProber.probe();
+        assertTrue(result.isConnected());
+        assertEquals(server.url("/fast"), result.endpoint);
+    }
+
+    @Test
+    public void onlyAnEmptyNoContentValidates() {
+        assertTrue(ConnectivityProber.isValidated(204, -1));
+        assertTrue(ConnectivityProber.isValidated(204, 0));
+        assertFalse(ConnectivityProber.isValidated(204, 512));
+        assertFalse(ConnectivityProber.isValidated(200, 0));
+        assertFalse(ConnectivityProber.isValidated(302, -1));
+    }
+
+    @Test
+    public void timeoutCancelsSlowProbes() throws Exception {
+        ConnectivityProber prober = new ConnectivityProber(
+                Arrays.asList(server.url("/slow")),
+                new ConnectivityProber.UrlConnectionTransport(5000), executor, 300);
+
+        ConnectivityProber.Result result = prober.probe();
+
+        assertFalse(result.isConnected());
+        assertTrue("latency " + result.latencyMs, result.latencyMs < 2000);
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.multifeatureapp;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CoordinateFormatTest {
+    @Test
+    public void matchesStringFormat() {
+        Random random = new Random(3);
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            double value = (random.nextDouble() - 0.5) * 360;
+            out.setLength(0);
+            CoordinateFormat.appendFixed(out, value, 6);
+            assertEquals(String.format(Locale.US, "%.6f", value), out.toString());
+        }
+    }
+
+    @Test
+    public void padsFractionAndHandlesSigns() {
+        assertEquals("12.000500", CoordinateFormat.appendFixed(new StringBuilder(), 12.0005, 6).toString());
+        assertEquals("-0.000001", CoordinateFormat.appendFixed(new StringBuilder(), -0.000001, 6).toString());
+        assertEquals("0.000000", CoordinateFormat.appendFixed(new StringBuilder(), -0.0000001, 6).toString());
+        assertEquals("-180", CoordinateFormat.appendFixed(new StringBuilder(), -180, 0).toString());
+        assertEquals("3.5", CoordinateFormat.appendFixed(new StringBuilder(), 3.45, 1).toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooManyDecimals() {
+        CoordinateFormat.appendFixed(new StringBuilder(), 1, 9);
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.multifeatureapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class EventDrainTest {
+    private ExecutorService consumerExecutor;
+
+    @Before
+    public void setUp() {
+        consumerExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        consumerExecutor.shutdownNow();
+    }
+
+    @Test
+    public void deliversEveryEventOnOneThread() throws Exception {
+        final int producers = 4;
+        final int perProducer = 20_000;
+        final int total = producers * perProducer;
+        final Set<Integer> seen = new HashSet<>();
+        final Set<Thread> consumerThreads = new HashSet<>();
+        final AtomicInteger passes = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        EventDrain<Integer> drain = new EventDrain<>(consumerExecutor, new EventDrain.Consumer<Integer>() {
+            int delivered;
+
+            @Override
+            public void onEvent(Integer event) {
+                // Plain collections are safe here, only one thread consumes
+                consumerThreads.add(Thread.currentThread());
+                assertTrue(seen.add(event));
+                delivered++;
+            }
+
+            @Override
+            public void onDrained(int eventCount) {
+                passes.incrementAndGet();
+                if (delivered == total) {
+                    done.countDown();
+                }
+            }
+        });
+
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int base = p * perProducer;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    drain.offer(base + i);
+                }
+            });
+            threads[p].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(total, seen.size());
+        assertEquals(1, consumerThreads.size());
+        assertEquals(0, drain.getPending());
+        // Bursts are applied in batches, not one wakeup per event
+        assertTrue("passes " + passes.get(), passes.get() < total);
+    }
+
+    @Test
+    public void eventOfferedDuringDrainIsNotLost() throws Exception {
+        final CountDownLatch done = new CountDownLatch(2);
+        final AtomicReference<EventDrain<String>> drain = new AtomicReference<>();
+        drain.set(new EventDrain<>(consumerExecutor, new EventDrain.Consumer<String>() {
+            @Override
+            public void onEvent(String event) {
+                if (event.equals("first")) {
+                    drain.get().offer("second");
+                }
+                done.countDown();
+            }
+
+            @Override
+            public void onDrained(int eventCount) {
+            }
+        }));
+
+        drain.get().offer("first");
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void rejectedPassIsScheduledAgainByTheNextOffer() {
+        final List<String> seen = new ArrayList<>();
+        final AtomicBoolean accepting = new AtomicBoolean();
+        EventDrain<String> drain = new EventDrain<>(task -> {
+            if (!accepting.get()) {
+                throw new RejectedExecutionException();
+            }
+            task.run();
+        }, new EventDrain.Consumer<String>() {
+            @Override
+            public void onEvent(String event) {
+                seen.add(event);
+            }
+
+            @Override
+            public void onDrained(int eventCount) {
+            }
+        });
+
+        drain.offer("first");
+        assertEquals(1, drain.getPending());
+        accepting.set(true);
+        drain.offer("second");
+        assertEquals(Arrays.asList("first", "second"), seen);
+        assertEquals(0, drain.getPending());
+    }
+}
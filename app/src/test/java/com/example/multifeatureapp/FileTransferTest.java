@@ -0,0 +1,301 @@
+package com.example.multifeatureapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class FileTransferTest {
+    private static final int CHUNK_SIZE = 4096;
+    private static final int WINDOW = 8;
+    private static final long ACK_TIMEOUT_MS = 300;
+
+    private File sourceFile;
+    private File receiveDir;
+    private FileChannel source;
+    private byte[] content;
+
+    // Sender and receiver connected by RfcommConnections over a loopback pair
+    private static class Link implements FileTransfer.Receiver.Listener {
+        final RfcommConnection senderSide;
+        final RfcommConnection receiverSide;
+        final FileTransfer.Receiver receiver;
+        final FrameCodec.Writer senderWriter;
+        volatile long closeAfterBytes = Long.MAX_VALUE;
+        volatile File received;
+
+        volatile IOException failure;
+
+        Link(FileTransfer.Sender sender, File receiveDir, FrameCodec.Sink sinkWrapper) throws IOException {
+            this(sender, receiveDir, sinkWrapper, FileTransfer.DEFAULT_MAX_FILE_SIZE);
+        }
+
+        Link(FileTransfer.Sender sender, File receiveDir, FrameCodec.Sink sinkWrapper, long maxFileSize)
+                throws IOException {
+            LoopbackTransport[] pair = LoopbackTransport.createPair();
+            FrameCodec.Decoder senderDecoder = new FrameCodec.Decoder(64 * 1024);
+            FrameCodec.Decoder receiverDecoder = new FrameCodec.Decoder(64 * 1024);
+            FileTransfer.Receiver[] receiverRef = new FileTransfer.Receiver[1];
+            senderSide = new RfcommConnection("sender", pair[0], 64 * 1024, new RfcommConnection.Listener() {
+                @Override
+                public void onData(byte[] buffer, int offset, int length) {
+                    senderDecoder.feed(buffer, offset, length, sender::onFrame);
+                }
+
+                @Override
+                public void onClosed(IOException cause) {
+                    sender.abort(cause != null ? cause : new IOException("Closed"));
+                }
+            });
+            receiverSide = new RfcommConnection("receiver", pair[1], 64 * 1024, new RfcommConnection.Listener() {
+                @Override
+                public void onData(byte[] buffer, int offset, int length) {
+                    receiverDecoder.feed(buffer, offset, length, receiverRef[0]::onFrame);
+                }
+
+                @Override
+                public void onClosed(IOException cause) {
+                    receiverRef[0].close();
+                }
+            });
+            FrameCodec.Sink senderSink = FrameCodec.connectionSink(senderSide, 5000);
+            senderWriter = new FrameCodec.Writer(sinkWrapper != null ? batch -> {
+                sinkWrapper.write(batch);
+                senderSink.write(batch);
+            } : senderSink, 32 * 1024, null, 10);
+            receiver = new FileTransfer.Receiver(receiveDir,
+                    new FrameCodec.Writer(FrameCodec.connectionSink(receiverSide, 5000), 256, null, 0), this,
+                    maxFileSize);
+            receiverRef[0] = receiver;
+            senderSide.start();
+            receiverSide.start();
+        }
+
+        @Override
+        public void onProgress(String name, long receivedBytes, long size) {
+            if (receivedBytes >= closeAfterBytes) {
+                closeAfterBytes = Long.MAX_VALUE;
+                receiverSide.close();
+            }
+        }
+
+        @Override
+        public void onReceived(File file, long size) {
+            received = file;
+        }
+
+        @Override
+        public void onFailed(String name, IOException cause) {
+            failure = cause;
+        }
+
+        void close() {
+            senderSide.close();
+            receiverSide.close();
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        content = new byte[1_000_003];
+        new Random(7).nextBytes(content);
+        sourceFile = File.createTempFile("transfer_src", ".bin");
+        Files.write(sourceFile.toPath(), content);
+        source = FileChannel.open(sourceFile.toPath(), StandardOpenOption.READ);
+        receiveDir = Files.createTempDirectory("transfer_dst").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        source.close();
+        sourceFile.delete();
+        File[] files = receiveDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        receiveDir.delete();
+    }
+
+    @Test
+    public void transfersWholeFile() throws Exception {
+        FileTransfer.Sender sender = newSender();
+        Link link = new Link(sender, receiveDir, null);
+        try {
+            FileTransfer.Result result = sender.run(link.senderWriter);
+            assertEquals(0, result.startOffset);
+            assertEquals(content.length, result.getBytesTransferred());
+            assertTrue(result.getThroughputBytesPerSecond() > 0);
+            assertTrue(sender.isComplete());
+        } finally {
+            link.close();
+        }
+        assertReceived(link);
+    }
+
+    @Test
+    public void resumesFromConfirmedOffsetAfterDisconnect() throws Exception {
+        FileTransfer.Sender sender = newSender();
+        Link first = new Link(sender, receiveDir, null);
+        first.closeAfterBytes = content.length / 2;
+        try {
+            sender.run(first.senderWriter);
+            fail("Expected the dropped link to fail the run");
+        } catch (IOException expected) {
+            // The receiver closed its end halfway through
+        } finally {
+            first.close();
+        }
+        assertNull(first.received);
+
+        // A new receiver over the same directory, as after reconnecting
+        Link second = new Link(sender, receiveDir, null);
+        FileTransfer.Result result;
+        try {
+            result = sender.run(second.senderWriter);
+        } finally {
+            second.close();
+        }
+        assertTrue("resumed at " + result.startOffset, result.startOffset >= content.length / 2);
+        assertTrue(result.startOffset < content.length);
+        assertEquals(content.length - result.startOffset, result.getBytesTransferred());
+        assertReceived(second);
+    }
+
+    @Test
+    public void resendsAfterCorruptedChunk() throws Exception {
+        FileTransfer.Sender sender = newSender();
+        AtomicInteger batches = new AtomicInteger();
+        Link link = new Link(sender, receiveDir, batch -> {
+            if (batches.incrementAndGet() == 5) {
+                // Flip a byte in the middle of the batch, inside some chunk
+                int middle = batch.position() + batch.remaining() / 2;
+                batch.put(middle, (byte) ~batch.get(middle));
+            }
+        });
+        FileTransfer.Result result;
+        try {
+            result = sender.run(link.senderWriter);
+        } finally {
+            link.close();
+        }
+        assertTrue(result.bytesSent > content.length);
+        assertReceived(link);
+    }
+
+    @Test
+    public void refusesFilesOverTheSizeLimit() throws Exception {
+        FileTransfer.Sender sender = newSender();
+        Link link = new Link(sender, receiveDir, null, content.length - 1);
+        try {
+            sender.run(link.senderWriter);
+            fail("Expected the receiver to refuse the file");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("refused"));
+        } finally {
+            link.close();
+        }
+        assertNotNull(link.failure);
+        assertNull(link.received);
+        assertEquals(0, receiveDir.listFiles().length);
+    }
+
+    @Test
+    public void deletesAbandonedPartialFiles() throws Exception {
+        File stale = new File(receiveDir, "abcd.part");
+        File recent = new File(receiveDir, "1234.part");
+        File kept = new File(receiveDir, "old.bin");
+        long old = System.currentTimeMillis() - FileTransfer.PARTIAL_MAX_AGE_MS - 60_000;
+        for (File file : new File[]{stale, recent, kept}) {
+            Files.write(file.toPath(), new byte[10]);
+        }
+        assertTrue(stale.setLastModified(old));
+        assertTrue(kept.setLastModified(old));
+
+        new FileTransfer.Receiver(receiveDir, new FrameCodec.Writer(batch -> { }, 256, null, 0),
+                new FileTransfer.Receiver.Listener() {
+                    @Override
+                    public void onProgress(String name, long received, long size) {
+                    }
+
+                    @Override
+                    public void onReceived(File file, long size) {
+                    }
+
+                    @Override
+                    public void onFailed(String name, IOException cause) {
+                    }
+                });
+        assertFalse(stale.exists());
+        assertTrue(recent.exists());
+        assertTrue(kept.exists());
+    }
+
+    @Test
+    public void ignoresFramesOfOtherProtocols() throws Exception {
+        ByteBuffer frame = ByteBuffer.allocate(32);
+        frame.put(0, (byte) 0x01);
+        assertFalse(FileTransfer.isTransferFrame(frame, 0, 32));
+        frame.putInt(0, FileTransfer.MAGIC).put(4, FileTransfer.CHUNK);
+        assertTrue(FileTransfer.isTransferFrame(frame, 0, 32));
+        assertFalse(FileTransfer.isTransferFrame(frame, 0, 8));
+    }
+
+    @Test
+    public void passesThroughPayloadsThatStartWithATypeByte() throws Exception {
+        // An application message such as "p..." starts with the OFFER byte
+        ByteBuffer frame = ByteBuffer.allocate(64);
+        frame.put(FileTransfer.OFFER).putLong(0x1234).putLong(100).put("note.txt".getBytes(StandardCharsets.UTF_8));
+        frame.flip();
+        assertFalse(FileTransfer.isTransferFrame(frame, 0, frame.limit()));
+
+        AtomicInteger replies = new AtomicInteger();
+        FileTransfer.Receiver receiver = new FileTransfer.Receiver(receiveDir,
+                new FrameCodec.Writer(batch -> replies.incrementAndGet(), 256, null, 0),
+                new FileTransfer.Receiver.Listener() {
+                    @Override
+                    public void onProgress(String name, long received, long size) {
+                        fail("Not a transfer");
+                    }
+
+                    @Override
+                    public void onReceived(File file, long size) {
+                        fail("Not a transfer");
+                    }
+
+                    @Override
+                    public void onFailed(String name, IOException cause) {
+                        fail("Not a transfer");
+                    }
+                });
+        assertFalse(receiver.onFrame(frame, 0, frame.limit()));
+        assertFalse(newSender().onFrame(frame, 0, frame.limit()));
+        assertEquals(0, replies.get());
+        assertEquals(0, receiveDir.listFiles().length);
+    }
+
+    private FileTransfer.Sender newSender() throws IOException {
+        return new FileTransfer.Sender(source, 0x1234, "firmware.bin", CHUNK_SIZE, WINDOW, ACK_TIMEOUT_MS);
+    }
+
+    private void assertReceived(Link link) throws Exception {
+        File received = link.received;
+        assertNotNull(received);
+        assertEquals("firmware.bin", received.getName());
+        assertTrue(Arrays.equals(content, Files.readAllBytes(received.toPath())));
+        assertFalse(new File(receiveDir, "1234.part").exists());
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.multifeatureapp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+public class FrameCodecTest {
+    @Test
+    public void crcMatchesJdk() {
+        byte[] data = new byte[1000];
+        new Random(3).nextBytes(data);
+        CRC32 expected = new CRC32();
+        expected.update(data, 0, data.length);
+        assertEquals((int) expected.getValue(), Crc32.compute(data, 0, data.length));
+        assertEquals((int) expected.getValue(), Crc32.compute(ByteBuffer.wrap(data), 0, data.length));
+    }
+
+    @Test
+    public void roundTripsFramesOfEverySize() throws IOException {
+        List<byte[]> sent = new ArrayList<>();
+        List<ByteBuffer> batches = new ArrayList<>();
+        FrameCodec.Writer writer = new FrameCodec.Writer(capture(batches), 4096, null, 0);
+        Random random = new Random(7);
+        for (int length : new int[]{0, 1, 100, 4089, 4090, 5000, FrameCodec.MAX_PAYLOAD}) {
+            byte[] payload = new byte[length];
+            random.nextBytes(payload);
+            sent.add(payload);
+            writer.write(payload, 0, length);
+        }
+        writer.flush();
+
+        List<byte[]> received = new ArrayList<>();
+        FrameCodec.Decoder decoder = new FrameCodec.Decoder(0);
+        for (ByteBuffer batch : batches) {
+            // Feed in odd sized pieces so frames straddle reads
+            byte[] bytes = new byte[batch.remaining()];
+            batch.get(bytes);
+            for (int offset = 0; offset < bytes.length; offset += 777) {
+                decoder.feed(bytes, offset, Math.min(777, bytes.length - offset), collect(received));
+            }
+        }
+
+        assertEquals(sent.size(), received.size());
+        for (int i = 0; i < sent.size(); i++) {
+            assertArrayEquals(sent.get(i), received.get(i));
+        }
+        assertEquals(0, decoder.getCorruptFrames());
+    }
+
+    @Test
+    public void batchesSmallWritesUntilFlush() throws IOException {
+        List<ByteBuffer> batches = new ArrayList<>();
+        FrameCodec.Writer writer = new FrameCodec.Writer(capture(batches), 1024, null, 10_000);
+        byte[] payload = new byte[10];
+        for (int i = 0; i < 100; i++) {
+            writer.write(payload, 0, payload.length);
+        }
+        // 100 frames of 17 bytes do not fit in one 1 KB batch
+        assertEquals(1, batches.size());
+        writer.flush();
+        assertEquals(2, batches.size());
+        assertEquals(100, writer.getFramesWritten());
+        assertEquals(100 * (payload.length + FrameCodec.OVERHEAD),
+                batches.get(0).remaining() + batches.get(1).remaining());
+    }
+
+    @Test
+    public void flushWindowSendsPendingFrames() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        CountDownLatch flushed = new CountDownLatch(1);
+        List<ByteBuffer> batches = new ArrayList<>();
+        FrameCodec.Writer writer = new FrameCodec.Writer(batch -> {
+            capture(batches).write(batch);
+            flushed.countDown();
+        }, 4096, scheduler, 20);
+        writer.write(new byte[5], 0, 5);
+        writer.write(new byte[5], 0, 5);
+        assertEquals(0, batches.size());
+
+        assertTrue(flushed.await(2, TimeUnit.SECONDS));
+        assertEquals(1, batches.size());
+        assertEquals(2 * (5 + FrameCodec.OVERHEAD), batches.get(0).remaining());
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void resyncsAfterCorruption() throws IOException {
+        List<ByteBuffer> batches = new ArrayList<>();
+        FrameCodec.Writer writer = new FrameCodec.Writer(capture(batches), 4096, null, 10_000);
+        for (int i = 0; i < 3; i++) {
+            byte[] payload = new byte[20];
+            payload[0] = (byte) i;
+            writer.write(payload, 0, payload.length);
+        }
+        writer.flush();
+        byte[] bytes = new byte[batches.get(0).remaining()];
+        batches.get(0).get(bytes);
+        bytes[FrameCodec.HEADER_SIZE + 5] ^= 0x40; // Damage the first payload
+
+        List<byte[]> received = new ArrayList<>();
+        FrameCodec.Decoder decoder = new FrameCodec.Decoder(0);
+        decoder.feed(bytes, 0, bytes.length, collect(received));
+
+        assertEquals(2, received.size());
+        assertEquals(1, received.get(0)[0]);
+        assertEquals(2, received.get(1)[0]);
+        assertTrue(decoder.getCorruptFrames() >= 1);
+    }
+
+    @Test
+    public void streamsFramesOverPipeInOrder() throws Exception {
+        Pipe pipe = Pipe.open();
+        int frames = 200_000;
+        byte[] payload = new byte[64];
+        new Random(11).nextBytes(payload);
+        // Each frame carries its sequence number in the first four bytes
+        AtomicLong nextSequence = new AtomicLong();
+        AtomicLong damagedFrames = new AtomicLong();
+        FrameCodec.Decoder decoder = new FrameCodec.Decoder(64 * 1024);
+        Thread reader = new Thread(() -> {
+            try {
+                while (decoder.getFramesDecoded() < frames
+                        && decoder.readFrom(pipe.source(), (buffer, offset, length) -> {
+                    if (length != payload.length
+                            || buffer.getInt(offset) != (int) nextSequence.getAndIncrement()) {
+                        damagedFrames.incrementAndGet();
+                        return;
+                    }
+                    for (int i = 4; i < length; i++) {
+                        if (buffer.get(offset + i) != payload[i]) {
+                            damagedFrames.incrementAndGet();
+                            return;
+                        }
+                    }
+                }) != -1) {
+                    // Keep reading
+                }
+            } catch (IOException e) {
+                // Reported by the assertions below
+            }
+        });
+        reader.start();
+
+        FrameCodec.Writer writer = new FrameCodec.Writer(
+                FrameCodec.channelSink(pipe.sink()), 16 * 1024, null, 10_000);
+        ByteBuffer source = ByteBuffer.wrap(payload);
+        for (int i = 0; i < frames; i++) {
+            source.clear();
+            source.putInt(0, i);
+            writer.write(source);
+        }
+        writer.flush();
+        reader.join(30_000);
+
+        assertEquals(frames, decoder.getFramesDecoded());
+        assertEquals(frames, nextSequence.get());
+        assertEquals(0, damagedFrames.get());
+        assertEquals(0, decoder.getCorruptFrames());
+        assertTrue(writer.getBatchesWritten() < frames / 100);
+        pipe.sink().close();
+        pipe.source().close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOversizedPayload() throws IOException {
+        FrameCodec.Writer writer = new FrameCodec.Writer(batch -> { }, 1024, null, 0);
+        writer.write(new byte[FrameCodec.MAX_PAYLOAD + 1], 0, FrameCodec.MAX_PAYLOAD + 1);
+    }
+
+    private static FrameCodec.Sink capture(List<ByteBuffer> batches) {
+        return batch -> {
+            ByteArrayOutputStream copy = new ByteArrayOutputStream();
+            while (batch.hasRemaining()) {
+                copy.write(batch.get());
+            }
+            batches.add(ByteBuffer.wrap(copy.toByteArray()));
+        };
+    }
+
+    private static FrameCodec.FrameHandler collect(List<byte[]> received) {
+        return (buffer, offset, length) -> {
+            byte[] copy = new byte[length];
+            for (int i = 0; i < length; i++) {
+                copy[i] = buffer.get(offset + i);
+            }
+            received.add(copy);
+        };
+    }
+}
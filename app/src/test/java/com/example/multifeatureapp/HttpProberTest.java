@@ -0,0 +1,63 @@
+package com.example.multifeatureapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HttpProberTest {
+    private StubHttpServer server;
+    private HttpProber prober;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubHttpServer()
+                .respond("/generate_204", 204, 0)
+                .respond("/page", 200, 0, new byte[4096]);
+        prober = new HttpProber("GET", 2000);
+    }
+
+    @After
+    public void tearDown() {
+        prober.evictAll();
+        server.close();
+    }
+
+    @Test
+    public void reusesKeepAliveConnection() throws Exception {
+        HttpProber.Timing first = prober.probe(server.url("/generate_204"));
+        HttpProber.Timing second = prober.probe(server.url("/generate_204"));
+
+        assertEquals(204, first.statusCode);
+        assertFalse(first.reused);
+        assertEquals(204, second.statusCode);
+        assertTrue(second.reused);
+        assertEquals(0, second.connectMicros);
+        assertTrue("received " + second.bytesReceived, second.bytesReceived < 512);
+        assertSame(second, prober.getLastTiming(server.url("/generate_204")));
+    }
+
+    @Test
+    public void drainsBodyBeforeReuse() throws Exception {
+        HttpProber.Timing page = prober.probe(server.url("/page"));
+        HttpProber.Timing probe = prober.probe(server.url("/generate_204"));
+
+        assertEquals(200, page.statusCode);
+        assertTrue(page.bytesReceived > 4096);
+        assertFalse(page.isValidated());
+        assertEquals(204, probe.statusCode);
+        assertTrue(probe.isValidated());
+        assertTrue(probe.reused);
+    }
+
+    @Test
+    public void headSkipsBody() throws Exception {
+        HttpProber headProber = new HttpProber("HEAD", 2000);
+        HttpProber.Timing timing = headProber.probe(server.url("/page"));
+
+        assertEquals(200, timing.statusCode);
+        assertTrue("received " + timing.bytesReceived, timing.bytesReceived < 512);
+        headProber.evictAll();
+    }
+}
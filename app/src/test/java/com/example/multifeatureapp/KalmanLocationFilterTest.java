@@ -0,0 +1,176 @@
+package com.example.multifeatureapp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class KalmanLocationFilterTest {
+    private static final double LATITUDE = 51.5;
+    private static final double LONGITUDE = -0.12;
+    private static final double METERS_PER_DEGREE_LATITUDE = GeoMath.metersPerDegreeLatitude();
+    private static final double METERS_PER_DEGREE_LONGITUDE = GeoMath.metersPerDegreeLongitude(LATITUDE);
+
+    // Keeps the newest output
+    private static class Last implements KalmanLocationFilter.Listener {
+        int count;
+        long time;
+        double latitude;
+        double longitude;
+        float accuracy;
+        float speed;
+
+        @Override
+        public void onFiltered(long timeMillis, double latitude, double longitude, float accuracyMeters,
+                               float speedMps) {
+            count++;
+            time = timeMillis;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            accuracy = accuracyMeters;
+            speed = speedMps;
+        }
+    }
+
+    private static long nanos(long millis) {
+        return millis * 1_000_000L;
+    }
+
+    private static double latitudeAt(double northMeters) {
+        return LATITUDE + northMeters / METERS_PER_DEGREE_LATITUDE;
+    }
+
+    private static double longitudeAt(double eastMeters) {
+        return LONGITUDE + eastMeters / METERS_PER_DEGREE_LONGITUDE;
+    }
+
+    @Test
+    public void smoothsNoisyWalk() {
+        KalmanLocationFilter filter = new KalmanLocationFilter(0.5);
+        Last last = new Last();
+        filter.addListener(last);
+        Random random = new Random(3);
+        double noise = 8;
+        double rawSquares = 0;
+        double filteredSquares = 0;
+        double speeds = 0;
+        int measured = 0;
+        for (int i = 0; i < 600; i++) {
+            // 1.4 m/s north-east, one fix a second
+            double north = i * 1.0;
+            double east = i * 1.0;
+            double fixNorth = north + random.nextGaussian() * noise;
+            double fixEast = east + random.nextGaussian() * noise;
+            boolean accepted = filter.onFix(nanos(1000L * i), 1000L * i, latitudeAt(fixNorth),
+                    longitudeAt(fixEast), (float) noise);
+            if (accepted && i >= 100) {
+                double errorNorth = (last.latitude - LATITUDE) * METERS_PER_DEGREE_LATITUDE - north;
+                double errorEast = (last.longitude - LONGITUDE) * METERS_PER_DEGREE_LONGITUDE - east;
+                filteredSquares += errorNorth * errorNorth + errorEast * errorEast;
+                rawSquares += (fixNorth - north) * (fixNorth - north) + (fixEast - east) * (fixEast - east);
+                speeds += last.speed;
+                measured++;
+            }
+        }
+        // Honest noise is rarely mistaken for an outlier
+        assertTrue(filter.getRejected() <= 2);
+        assertEquals(600 - filter.getRejected(), last.count);
+        double rawRms = Math.sqrt(rawSquares / measured);
+        double filteredRms = Math.sqrt(filteredSquares / measured);
+        assertTrue("raw " + rawRms + " filtered " + filteredRms, filteredRms < rawRms * 0.6);
+        assertEquals(Math.sqrt(2), speeds / measured, 0.3);
+        assertTrue(last.accuracy < noise);
+    }
+
+    @Test
+    public void rejectsASingleJump() {
+        KalmanLocationFilter filter = new KalmanLocationFilter(1);
+        Last last = new Last();
+        filter.addListener(last);
+        for (int i = 0; i < 20; i++) {
+            filter.onFix(nanos(1000L * i), 1000L * i, LATITUDE, LONGITUDE, 10f);
+        }
+        // An indoor fix 300 m off that claims 10 m accuracy
+        assertFalse(filter.onFix(nanos(20000), 20000, latitudeAt(300), LONGITUDE, 10f));
+        assertEquals(20, last.count);
+        assertTrue(filter.onFix(nanos(21000), 21000, LATITUDE, LONGITUDE, 10f));
+        assertEquals(LATITUDE, last.latitude, 1e-5);
+        assertEquals(1, filter.getRejected());
+        assertEquals(0, filter.getResets());
+    }
+
+    @Test
+    public void startsOverAfterRepeatedRejections() {
+        KalmanLocationFilter filter = new KalmanLocationFilter(1);
+        Last last = new Last();
+        filter.addListener(last);
+        for (int i = 0; i < 20; i++) {
+            filter.onFix(nanos(1000L * i), 1000L * i, LATITUDE, LONGITUDE, 5f);
+        }
+        // Out of a tunnel, far from where the filter thinks we are
+        double farLatitude = latitudeAt(2000);
+        assertFalse(filter.onFix(nanos(20000), 20000, farLatitude, LONGITUDE, 5f));
+        assertFalse(filter.onFix(nanos(21000), 21000, farLatitude, LONGITUDE, 5f));
+        assertTrue(filter.onFix(nanos(22000), 22000, farLatitude, LONGITUDE, 5f));
+        assertEquals(farLatitude, last.latitude, 1e-9);
+        assertEquals(1, filter.getResets());
+        assertTrue(filter.onFix(nanos(23000), 23000, farLatitude, LONGITUDE, 5f));
+    }
+
+    @Test
+    public void dropsFixesThatAreNotNewerWithoutStartingOver() {
+        KalmanLocationFilter filter = new KalmanLocationFilter(1);
+        Last last = new Last();
+        filter.addListener(last);
+        for (int i = 0; i < 30; i++) {
+            filter.onFix(nanos(1000L * i), 1000L * i, latitudeAt(i), LONGITUDE, 3f);
+        }
+        float speed = last.speed;
+        assertEquals(1, speed, 0.2);
+
+        // Delivered late, and once more with the same timestamp
+        assertFalse(filter.onFix(nanos(15000), 15000, latitudeAt(15), LONGITUDE, 3f));
+        assertFalse(filter.onFix(nanos(29000), 29000, latitudeAt(29), LONGITUDE, 3f));
+        assertEquals(30, last.count);
+        assertEquals(2, filter.getRejected());
+        assertEquals(0, filter.getResets());
+        assertEquals(speed, filter.getSpeedMps(), 1e-6);
+
+        // The wall clock stepping back doesn't matter, elapsed time moves on
+        assertTrue(filter.onFix(nanos(30000), 5000, latitudeAt(30), LONGITUDE, 3f));
+        assertEquals(5000, last.time);
+        assertEquals(1, last.speed, 0.2);
+    }
+
+    @Test
+    public void weightsFixesByAccuracy() {
+        KalmanLocationFilter filter = new KalmanLocationFilter(1);
+        filter.onFix(nanos(0), 0, LATITUDE, LONGITUDE, 5f);
+        // A vague fix 20 m north barely moves the estimate
+        filter.onFix(nanos(1000), 1000, latitudeAt(20), LONGITUDE, 100f);
+        double vague = (filter.getLatitude() - LATITUDE) * METERS_PER_DEGREE_LATITUDE;
+
+        KalmanLocationFilter other = new KalmanLocationFilter(1);
+        other.onFix(nanos(0), 0, LATITUDE, LONGITUDE, 5f);
+        other.onFix(nanos(1000), 1000, latitudeAt(20), LONGITUDE, 5f);
+        double precise = (other.getLatitude() - LATITUDE) * METERS_PER_DEGREE_LATITUDE;
+
+        assertTrue(vague < 2);
+        assertTrue(precise > 8);
+    }
+
+    @Test
+    public void followsLongDrivesAcrossOriginChanges() {
+        KalmanLocationFilter filter = new KalmanLocationFilter(2);
+        Last last = new Last();
+        filter.addListener(last);
+        // 100 km east at 25 m/s, fixes exact
+        for (int i = 0; i <= 4000; i++) {
+            assertTrue(filter.onFix(nanos(1000L * i), 1000L * i, LATITUDE, longitudeAt(25.0 * i), 3f));
+        }
+        assertEquals(longitudeAt(100_000), last.longitude, 2 / METERS_PER_DEGREE_LONGITUDE);
+        assertEquals(LATITUDE, last.latitude, 1e-6);
+        assertEquals(25, last.speed, 0.5);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.multifeatureapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 50; i++) {
+            histogram.record(i);
+        }
+        assertEquals(25, histogram.getPercentile(50));
+        assertEquals(45, histogram.getPercentile(90));
+        assertEquals(50, histogram.getPercentile(100));
+        assertEquals(1, histogram.getMin());
+        assertEquals(25.5, histogram.getMean(), 0.001);
+    }
+
+    @Test
+    public void largeValuesStayWithinRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i * 100L);
+        }
+        assertEquals(500000, histogram.getPercentile(50), 500000 * 0.03);
+        assertEquals(990000, histogram.getPercentile(99), 990000 * 0.03);
+        assertEquals(10000, histogram.getCount());
+    }
+
+    @Test
+    public void bucketIndexRoundTrips() {
+        for (long value = 1; value < (1L << 40); value = value * 3 + 1) {
+            long bucketValue = LatencyHistogram.valueAt(LatencyHistogram.indexOf(value));
+            assertEquals("value " + value, value, bucketValue, Math.max(1, value * 0.032));
+        }
+    }
+
+    @Test
+    public void addMergesCounts() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        a.record(10);
+        b.record(1000);
+        a.add(b);
+        assertEquals(2, a.getCount());
+        assertEquals(10, a.getMin());
+        assertEquals(1000, a.getMax());
+    }
+}
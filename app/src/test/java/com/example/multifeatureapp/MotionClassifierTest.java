@@ -0,0 +1,140 @@
+package com.example.multifeatureapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MotionClassifierTest {
+    private static final double LAT = 52.0;
+    private static final double LON = 4.0;
+    private static final float NO_SPEED = Float.NaN;
+
+    @Test
+    public void upgradesAfterTwoFastFixes() {
+        MotionClassifier classifier = new MotionClassifier(MotionClassifier.Profile.STATIONARY);
+        long t = 0;
+        for (int i = 0; i < 5; i++) {
+            assertEquals(MotionClassifier.Profile.STATIONARY, classifier.onFix(t += 15000, LAT, LON, 0f, 5f));
+        }
+        assertEquals(MotionClassifier.Profile.STATIONARY, classifier.onFix(t += 15000, LAT, LON, 15f, 5f));
+        // Median of 0, 15, 15
+        assertEquals(MotionClassifier.Profile.STATIONARY, classifier.onFix(t += 1000, LAT, LON, 15f, 5f));
+        assertEquals(MotionClassifier.Profile.DRIVING, classifier.onFix(t += 1000, LAT, LON, 15f, 5f));
+        assertEquals(1, classifier.getSwitches());
+    }
+
+    @Test
+    public void downgradesOnlyAfterDwell() {
+        MotionClassifier classifier = new MotionClassifier(MotionClassifier.Profile.DRIVING);
+        long t = 0;
+        for (int i = 0; i < 3; i++) {
+            classifier.onFix(t += 1000, LAT, LON, 12f, 5f);
+        }
+        // A red light: stopped for 20 s, then moving again
+        for (int i = 0; i < 20; i++) {
+            assertEquals(MotionClassifier.Profile.DRIVING, classifier.onFix(t += 1000, LAT, LON, 0f, 5f));
+        }
+        for (int i = 0; i < 3; i++) {
+            assertEquals(MotionClassifier.Profile.DRIVING, classifier.onFix(t += 1000, LAT, LON, 12f, 5f));
+        }
+        // Parked
+        MotionClassifier.Profile profile = null;
+        long stoppedAt = t;
+        while (profile != MotionClassifier.Profile.STATIONARY) {
+            profile = classifier.onFix(t += 1000, LAT, LON, 0f, 5f);
+            assertTrue(t - stoppedAt < 2 * MotionClassifier.DOWNGRADE_DWELL_MS);
+        }
+        assertTrue(t - stoppedAt >= MotionClassifier.DOWNGRADE_DWELL_MS);
+    }
+
+    @Test
+    public void downgradesWhenFixesStop() {
+        MotionClassifier classifier = new MotionClassifier(MotionClassifier.Profile.DRIVING);
+        long t = 0;
+        for (int i = 0; i < 10; i++) {
+            classifier.onFix(t += 1000, LAT, LON, 12f, 5f);
+        }
+        long lastFix = t;
+        // Parked underground, nothing more arrives
+        assertEquals(MotionClassifier.Profile.DRIVING, classifier.onSilence(lastFix + 5000));
+        assertEquals(MotionClassifier.Profile.DRIVING,
+                classifier.onSilence(lastFix + MotionClassifier.DOWNGRADE_DWELL_MS - 1));
+        assertEquals(MotionClassifier.Profile.STATIONARY,
+                classifier.onSilence(lastFix + MotionClassifier.DOWNGRADE_DWELL_MS));
+        assertEquals(1, classifier.getSwitches());
+        assertEquals(9000 + MotionClassifier.DOWNGRADE_DWELL_MS,
+                classifier.getMillisIn(MotionClassifier.Profile.DRIVING));
+
+        // The speeds from before the stop don't bounce it straight back up
+        t = lastFix + 60000;
+        assertEquals(MotionClassifier.Profile.STATIONARY, classifier.onFix(t, LAT, LON, 0f, 5f));
+        assertEquals(MotionClassifier.Profile.STATIONARY, classifier.onFix(t += 30000, LAT, LON, 0f, 5f));
+        assertEquals(1, classifier.getSwitches());
+        assertEquals(60000, classifier.getMillisIn(MotionClassifier.Profile.STATIONARY));
+        // Silence while stationary changes nothing
+        assertEquals(MotionClassifier.Profile.STATIONARY, classifier.onSilence(t + 600000));
+    }
+
+    @Test
+    public void movingProfilesHaveNoDisplacementFilter() {
+        // Otherwise a device that stops gets no fixes to downgrade on
+        assertEquals(0f, MotionClassifier.Profile.WALKING.minDisplacementMeters, 0f);
+        assertEquals(0f, MotionClassifier.Profile.DRIVING.minDisplacementMeters, 0f);
+    }
+
+    @Test
+    public void hysteresisKeepsWalkingNearThreshold() {
+        MotionClassifier classifier = new MotionClassifier(MotionClassifier.Profile.WALKING);
+        assertEquals(MotionClassifier.Profile.WALKING, classifier.classify(0.5f));
+        assertEquals(MotionClassifier.Profile.STATIONARY, classifier.classify(0.3f));
+        assertEquals(MotionClassifier.Profile.WALKING, classifier.classify(5f));
+        assertEquals(MotionClassifier.Profile.DRIVING, classifier.classify(6.5f));
+        MotionClassifier stationary = new MotionClassifier(MotionClassifier.Profile.STATIONARY);
+        assertEquals(MotionClassifier.Profile.STATIONARY, stationary.classify(0.5f));
+    }
+
+    @Test
+    public void usesDisplacementWithoutReportedSpeed() {
+        MotionClassifier classifier = new MotionClassifier(MotionClassifier.Profile.STATIONARY);
+        double metersPerDegree = GeoMath.metersPerDegreeLatitude();
+        long t = 0;
+        // GPS jitter of a few meters inside 10 m accuracy is not movement
+        for (int i = 0; i < 10; i++) {
+            double jitter = (i % 2 == 0 ? 4 : -4) / metersPerDegree;
+            assertEquals(MotionClassifier.Profile.STATIONARY,
+                    classifier.onFix(t += 5000, LAT + jitter, LON, NO_SPEED, 10f));
+        }
+        assertEquals(0, classifier.getSpeedMps(), 0.01);
+        // Walking north at 1.5 m/s
+        double lat = LAT;
+        MotionClassifier.Profile profile = null;
+        for (int i = 0; i < 10; i++) {
+            lat += 7.5 / metersPerDegree;
+            profile = classifier.onFix(t += 5000, lat, LON, NO_SPEED, 5f);
+        }
+        assertEquals(MotionClassifier.Profile.WALKING, profile);
+        assertEquals(1.5, classifier.getSpeedMps(), 0.3);
+    }
+
+    @Test
+    public void countsFixesAndTimePerProfile() {
+        MotionClassifier classifier = new MotionClassifier(MotionClassifier.Profile.STATIONARY);
+        long t = 1_000_000;
+        for (int i = 0; i < 7; i++) {
+            classifier.onFix(t += 10000, LAT, LON, 0f, 5f);
+        }
+        for (int i = 0; i < 10; i++) {
+            classifier.onFix(t += 1000, LAT, LON, 10f, 5f);
+        }
+        // Out of order fixes are ignored
+        classifier.onFix(t - 5000, LAT, LON, 0f, 5f);
+
+        assertEquals(17, classifier.getFixes());
+        assertEquals(MotionClassifier.Profile.DRIVING, classifier.getProfile());
+        // The median turns fast at the second fast fix and the switch needs two
+        // such fixes, so the first 3 s at speed still count as stationary
+        assertEquals(60000 + 3000, classifier.getMillisIn(MotionClassifier.Profile.STATIONARY));
+        assertEquals(7000, classifier.getMillisIn(MotionClassifier.Profile.DRIVING));
+        assertEquals(16 * 60000.0 / 70000, classifier.getFixesPerMinute(), 1e-9);
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.multifeatureapp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NetworkStateDebouncerTest {
+    // Runs tasks on the test thread in time order
+    private static class FakeScheduler implements NetworkStateDebouncer.Scheduler {
+        private static class Task {
+            final Runnable runnable;
+            final long dueMillis;
+
+            Task(Runnable runnable, long dueMillis) {
+                this.runnable = runnable;
+                this.dueMillis = dueMillis;
+            }
+        }
+
+        private final List<Task> tasks = new ArrayList<>();
+        long now = 1000;
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            tasks.add(new Task(task, now + delayMs));
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            tasks.removeIf(t -> t.runnable == task);
+        }
+
+        @Override
+        public long nowMillis() {
+            return now;
+        }
+
+        void advance(long millis) {
+            long until = now + millis;
+            while (true) {
+                Task next = null;
+                for (Task task : tasks) {
+                    if (task.dueMillis <= until && (next == null || task.dueMillis < next.dueMillis)) {
+                        next = task;
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+                tasks.remove(next);
+                now = next.dueMillis;
+                next.runnable.run();
+            }
+            now = until;
+        }
+    }
+
+    private final FakeScheduler scheduler = new FakeScheduler();
+    private final List<NetworkStateStore.Snapshot> immediate = new ArrayList<>();
+    private final List<NetworkStateStore.Snapshot> settled = new ArrayList<>();
+    private NetworkStateDebouncer debouncer;
+
+    @Before
+    public void setUp() {
+        debouncer = new NetworkStateDebouncer(NetworkStateStore.Snapshot.DISCONNECTED, scheduler,
+                immediate::add, settled::add);
+    }
+
+    private static NetworkStateStore.Snapshot wifi(String ssid) {
+        return new NetworkStateStore.Snapshot(true, true, true, false, ssid, 0);
+    }
+
+    private static NetworkStateStore.Snapshot cellular() {
+        return new NetworkStateStore.Snapshot(true, true, false, true, null, 0);
+    }
+
+    @Test
+    public void publishesOnceTheStateHasSettled() {
+        debouncer.onStateChanged(wifi("Office"));
+        assertEquals(1, immediate.size());
+        scheduler.advance(NetworkStateDebouncer.DEBOUNCE_MS - 1);
+        assertTrue(settled.isEmpty());
+
+        scheduler.advance(1);
+        assertEquals(1, settled.size());
+        assertEquals("Office", settled.get(0).ssid);
+    }
+
+    @Test
+    public void signalUpdatesDoNotRestartTheWait() {
+        debouncer.onStateChanged(wifi("Office"));
+        // A capabilities update per RSSI change, each an equal snapshot
+        for (int i = 0; i < 20; i++) {
+            scheduler.advance(100);
+            debouncer.onStateChanged(wifi("Office"));
+            if (i == 4) {
+                // DEBOUNCE_MS after the real change, as if the updates never came
+                assertEquals(1, settled.size());
+            }
+        }
+        assertEquals(1, immediate.size());
+        assertEquals(1, settled.size());
+    }
+
+    @Test
+    public void stateThatKeepsChangingIsPublishedAfterTheMaxDelay() {
+        long step = NetworkStateDebouncer.DEBOUNCE_MS / 2;
+        for (long elapsed = 0; elapsed < NetworkStateDebouncer.MAX_DELAY_MS; elapsed += step) {
+            debouncer.onStateChanged(elapsed % (2 * step) == 0 ? wifi("Office") : cellular());
+            assertTrue(settled.isEmpty());
+            scheduler.advance(step);
+        }
+        assertEquals(1, settled.size());
+        assertEquals(NetworkStateDebouncer.MAX_DELAY_MS / step, immediate.size());
+    }
+
+    @Test
+    public void flappingBackToThePublishedStateIsNotPublished() {
+        debouncer.onStateChanged(wifi("Office"));
+        scheduler.advance(NetworkStateDebouncer.DEBOUNCE_MS);
+        assertEquals(1, settled.size());
+
+        debouncer.onStateChanged(NetworkStateStore.Snapshot.DISCONNECTED);
+        scheduler.advance(100);
+        debouncer.onStateChanged(wifi("Office"));
+        scheduler.advance(NetworkStateDebouncer.DEBOUNCE_MS);
+
+        assertEquals(3, immediate.size());
+        assertEquals(1, settled.size());
+    }
+
+    @Test
+    public void ssidChangeOnTheSameTransportIsPublished() {
+        debouncer.onStateChanged(wifi("Office"));
+        scheduler.advance(NetworkStateDebouncer.DEBOUNCE_MS);
+        debouncer.onStateChanged(wifi("Cafe"));
+        scheduler.advance(NetworkStateDebouncer.DEBOUNCE_MS);
+
+        assertEquals(2, settled.size());
+        assertEquals("Cafe", settled.get(1).ssid);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.multifeatureapp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ReconnectPolicyTest {
+    @Test
+    public void ceilingDoublesUpToCap() {
+        ReconnectPolicy policy = new ReconnectPolicy(500, 30_000, 0);
+        assertEquals(500, policy.getCeilingMs(1));
+        assertEquals(1000, policy.getCeilingMs(2));
+        assertEquals(16_000, policy.getCeilingMs(6));
+        assertEquals(30_000, policy.getCeilingMs(7));
+        assertEquals(30_000, policy.getCeilingMs(1000));
+    }
+
+    @Test
+    public void delaysAreJitteredWithinHalfToFullCeiling() {
+        ReconnectPolicy policy = new ReconnectPolicy(1000, 60_000, 0, new Random(42));
+        for (int attempt = 1; attempt <= 10; attempt++) {
+            long ceiling = policy.getCeilingMs(attempt);
+            long min = Long.MAX_VALUE;
+            long max = 0;
+            for (int i = 0; i < 1000; i++) {
+                long delay = policy.getDelayMs(attempt);
+                assertTrue(delay >= ceiling / 2 && delay <= ceiling);
+                min = Math.min(min, delay);
+                max = Math.max(max, delay);
+            }
+            // Spread over the range rather than a fixed value
+            assertTrue(max - min > ceiling / 4);
+        }
+    }
+
+    @Test
+    public void limitsAttempts() {
+        ReconnectPolicy limited = new ReconnectPolicy(100, 1000, 3);
+        assertTrue(limited.shouldRetry(1));
+        assertTrue(limited.shouldRetry(3));
+        assertFalse(limited.shouldRetry(4));
+        assertTrue(new ReconnectPolicy(100, 1000, 0).shouldRetry(Integer.MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCapBelowBase() {
+        new ReconnectPolicy(1000, 500, 0);
+    }
+}
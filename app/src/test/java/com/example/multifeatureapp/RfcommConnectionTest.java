@@ -0,0 +1,213 @@
+package com.example.multifeatureapp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RfcommConnectionTest {
+    @Test
+    public void streamsBothDirections() throws Exception {
+        LoopbackTransport[] pair = LoopbackTransport.createPair();
+        ByteArrayOutputStream receivedByA = new ByteArrayOutputStream();
+        ByteArrayOutputStream receivedByB = new ByteArrayOutputStream();
+        byte[] payload = new byte[256 * 1024];
+        new Random(1).nextBytes(payload);
+        CountDownLatch done = new CountDownLatch(2);
+
+        RfcommConnection a = new RfcommConnection("a", pair[0], 8192, collector(receivedByA, payload.length, done));
+        RfcommConnection b = new RfcommConnection("b", pair[1], 8192, collector(receivedByB, payload.length, done));
+        a.start();
+        b.start();
+
+        for (int offset = 0; offset < payload.length; offset += 1000) {
+            int length = Math.min(1000, payload.length - offset);
+            assertTrue(a.send(payload, offset, length, 5000));
+            assertTrue(b.send(payload, offset, length, 5000));
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertArrayEquals(payload, receivedByA.toByteArray());
+        assertArrayEquals(payload, receivedByB.toByteArray());
+        // The writer counts a chunk after the socket write returns, which can be after it arrived
+        long deadline = System.currentTimeMillis() + 5000;
+        while (a.getStats().bytesOut < payload.length && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        RfcommConnection.Stats stats = a.getStats();
+        assertEquals(payload.length, stats.bytesOut);
+        assertEquals(payload.length, stats.bytesIn);
+        assertEquals(263, stats.messagesOut);
+        a.close();
+        b.close();
+    }
+
+    @Test
+    public void slowConsumerAppliesBackpressure() throws Exception {
+        LoopbackTransport[] pair = LoopbackTransport.createPair();
+        CountDownLatch release = new CountDownLatch(1);
+        RfcommConnection receiver = new RfcommConnection("slow", pair[1], 1024, new RfcommConnection.Listener() {
+            @Override
+            public void onData(byte[] buffer, int offset, int length) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void onClosed(IOException cause) {
+            }
+        });
+        receiver.start();
+        RfcommConnection sender = new RfcommConnection("fast", pair[0], 1024, noop());
+        sender.start();
+
+        // Rings and the pipe fill up, after that send() times out instead of buffering
+        byte[] chunk = new byte[512];
+        boolean timedOut = false;
+        for (int i = 0; i < 10000 && !timedOut; i++) {
+            timedOut = !sender.send(chunk, 50);
+        }
+        assertTrue(timedOut);
+        assertTrue(receiver.getStats().bytesIn < 10000L * chunk.length);
+
+        release.countDown();
+        sender.close();
+        receiver.close();
+    }
+
+    @Test
+    public void timedOutSendsDoNotCorruptTheStream() throws Exception {
+        LoopbackTransport[] pair = LoopbackTransport.createPair();
+        CountDownLatch release = new CountDownLatch(1);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        RfcommConnection receiver = new RfcommConnection("slow", pair[1], 1024, new RfcommConnection.Listener() {
+            @Override
+            public void onData(byte[] buffer, int offset, int length) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                synchronized (received) {
+                    received.write(buffer, offset, length);
+                }
+            }
+
+            @Override
+            public void onClosed(IOException cause) {
+            }
+        });
+        receiver.start();
+        RfcommConnection sender = new RfcommConnection("fast", pair[0], 1024, noop());
+        sender.start();
+
+        // Messages of 700 bytes never fit twice, so timeouts hit with space left
+        ByteArrayOutputStream accepted = new ByteArrayOutputStream();
+        int timeouts = 0;
+        for (int i = 0; i < 200 && timeouts < 3; i++) {
+            byte[] message = new byte[700];
+            Arrays.fill(message, (byte) i);
+            if (sender.send(message, 20)) {
+                accepted.write(message, 0, message.length);
+            } else {
+                timeouts++;
+            }
+        }
+        assertEquals(3, timeouts);
+        release.countDown();
+        byte[] last = new byte[700];
+        Arrays.fill(last, (byte) 0x7F);
+        assertTrue(sender.send(last, 5000));
+        accepted.write(last, 0, last.length);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            synchronized (received) {
+                if (received.size() >= accepted.size()) {
+                    break;
+                }
+            }
+            Thread.sleep(10);
+        }
+        synchronized (received) {
+            assertArrayEquals(accepted.toByteArray(), received.toByteArray());
+        }
+        sender.close();
+        receiver.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMessagesLargerThanTheRing() throws Exception {
+        LoopbackTransport[] pair = LoopbackTransport.createPair();
+        RfcommConnection connection = new RfcommConnection("c", pair[0], 1024, noop());
+        try {
+            connection.send(new byte[1025], 100);
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void remoteCloseIsReported() throws Exception {
+        LoopbackTransport[] pair = LoopbackTransport.createPair();
+        CountDownLatch closed = new CountDownLatch(1);
+        IOException[] cause = new IOException[1];
+        RfcommConnection connection = new RfcommConnection("c", pair[0], 1024, new RfcommConnection.Listener() {
+            @Override
+            public void onData(byte[] buffer, int offset, int length) {
+            }
+
+            @Override
+            public void onClosed(IOException e) {
+                cause[0] = e;
+                closed.countDown();
+            }
+        });
+        connection.start();
+
+        pair[1].close();
+
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        assertNotNull(cause[0]);
+        assertFalse(connection.isOpen());
+        assertFalse(connection.send(new byte[1], 100));
+    }
+
+    private static RfcommConnection.Listener collector(ByteArrayOutputStream sink, int expected,
+                                                       CountDownLatch done) {
+        return new RfcommConnection.Listener() {
+            @Override
+            public void onData(byte[] buffer, int offset, int length) {
+                sink.write(buffer, offset, length);
+                if (sink.size() == expected) {
+                    done.countDown();
+                }
+            }
+
+            @Override
+            public void onClosed(IOException cause) {
+            }
+        };
+    }
+
+    private static RfcommConnection.Listener noop() {
+        return new RfcommConnection.Listener() {
+            @Override
+            public void onData(byte[] buffer, int offset, int length) {
+            }
+
+            @Override
+            public void onClosed(IOException cause) {
+            }
+        };
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.multifeatureapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScanHitStatsTest {
+    private static final long A = MacAddresses.pack("00:11:22:33:44:55");
+    private static final long B = MacAddresses.pack("66:77:88:99:AA:BB");
+
+    @Test
+    public void countsHitsAndUniqueDevices() {
+        ScanHitStats stats = new ScanHitStats();
+        stats.start(0);
+        assertTrue(stats.recordHit(A, 1000));
+        assertFalse(stats.recordHit(A, 2000));
+        assertTrue(stats.recordHit(B, 3000));
+
+        assertEquals(3, stats.getHits());
+        assertEquals(2, stats.getUniqueDevices());
+        assertEquals(1000, stats.getFirstHitDelayMillis());
+    }
+
+    @Test
+    public void ratesOnlyCountActiveTime() {
+        ScanHitStats stats = new ScanHitStats();
+        stats.start(0);
+        stats.recordHit(A, 10_000);
+        stats.stop(30_000);
+        // Idle for a minute, then another 30 s of scanning
+        stats.start(90_000);
+        stats.recordHit(B, 100_000);
+        stats.recordHit(B, 110_000);
+        stats.stop(120_000);
+
+        assertFalse(stats.isActive());
+        assertEquals(60_000, stats.getActiveMillis(500_000));
+        assertEquals(3.0, stats.getHitsPerMinute(500_000), 1e-9);
+        assertEquals(2.0, stats.getUniquePerMinute(500_000), 1e-9);
+    }
+
+    @Test
+    public void activePeriodCountsUpToNow() {
+        ScanHitStats stats = new ScanHitStats();
+        assertEquals(0.0, stats.getHitsPerMinute(1000), 1e-9);
+        assertEquals(-1, stats.getFirstHitDelayMillis());
+        stats.start(1000);
+        stats.start(5000); // Already running, keeps the first start
+        assertEquals(9000, stats.getActiveMillis(10_000));
+    }
+}
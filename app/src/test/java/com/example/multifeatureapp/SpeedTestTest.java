@@ -0,0 +1,54 @@
+package com.example.multifeatureapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SpeedTestTest {
+    private StubHttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubHttpServer()
+                .respond("/ping", 204, 0)
+                .respond("/down", 200, 0, new byte[4 * 1024 * 1024])
+                .respond("/up", 200, 0);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void measuresLoopbackServer() throws Exception {
+        SpeedTest speedTest = new SpeedTest(server.url("/ping"), server.url("/down"),
+                server.url("/up"), 5000);
+
+        SpeedTest.Result result = speedTest.run(20, 2 * 1024 * 1024, 10000);
+
+        assertEquals(20, result.latency.getCount());
+        assertTrue(result.latency.getPercentile(99) >= result.latency.getPercentile(50));
+        assertTrue(result.bytesDownloaded > 0);
+        assertTrue(result.downloadMbps > 0);
+        assertEquals(2 * 1024 * 1024, result.bytesUploaded);
+        assertTrue(result.uploadMbps > 0);
+    }
+
+    @Test
+    public void uploadStopsAtTheDeadline() throws Exception {
+        SpeedTest speedTest = new SpeedTest(server.url("/ping"), server.url("/down"),
+                server.url("/up"), 5000);
+        long maxBytes = 1L << 40;
+
+        long start = System.nanoTime();
+        long[] upload = speedTest.measureUpload(maxBytes, 200);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(upload[0] > 0);
+        assertTrue(upload[0] < maxBytes);
+        assertTrue("Took " + elapsedMs + " ms", elapsedMs < 5000);
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.multifeatureapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TrackRecorderTest {
+    private static final long START_MILLIS = 1_700_000_000_000L;
+
+    private File track;
+
+    @Before
+    public void setUp() throws IOException {
+        track = File.createTempFile("track", ".trk");
+        assertTrue(track.delete());
+    }
+
+    @After
+    public void tearDown() {
+        track.delete();
+    }
+
+    // Deterministic random walk shared by the writer and the checks
+    private static class Walk {
+        private final Random random = new Random(42);
+        long time = START_MILLIS;
+        double latitude = 52.5;
+        double longitude = 13.4;
+        float accuracy;
+
+        void step() {
+            time += 1000 + random.nextInt(4000);
+            latitude += (random.nextDouble() - 0.5) * 1e-3;
+            longitude += (random.nextDouble() - 0.5) * 1e-3;
+            accuracy = 3 + random.nextInt(300) / 10f;
+        }
+    }
+
+    @Test
+    public void roundTripsManyPointsCompactly() throws IOException {
+        int points = 100_000;
+        Walk walk = new Walk();
+        try (TrackRecorder recorder = new TrackRecorder(track, Long.MAX_VALUE)) {
+            for (int i = 0; i < points; i++) {
+                walk.step();
+                recorder.append(walk.time, walk.latitude, walk.longitude, walk.accuracy);
+            }
+            assertEquals(points, recorder.getPointCount());
+        }
+        // Raw longs and floats would be 28 bytes a point
+        assertTrue("size " + track.length(), track.length() < points * 12L);
+
+        Walk expected = new Walk();
+        try (TrackReader reader = new TrackReader(track)) {
+            for (int i = 0; i < points; i++) {
+                expected.step();
+                assertTrue(reader.next());
+                assertEquals(expected.time, reader.getTimeMillis());
+                assertEquals(expected.latitude, reader.getLatitude(), 1e-7);
+                assertEquals(expected.longitude, reader.getLongitude(), 1e-7);
+                assertEquals(expected.accuracy, reader.getAccuracyMeters(), 0.051f);
+            }
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void dropsTornTailAndKeepsAppending() throws IOException {
+        long goodSize;
+        try (TrackRecorder recorder = new TrackRecorder(track, Long.MAX_VALUE)) {
+            for (int i = 0; i < 10; i++) {
+                recorder.append(START_MILLIS + i * 1000L, 1 + i * 1e-4, 2, 5f);
+            }
+            recorder.flush();
+            goodSize = recorder.getFileSize();
+            for (int i = 10; i < 20; i++) {
+                recorder.append(START_MILLIS + i * 1000L, 1 + i * 1e-4, 2, 5f);
+            }
+        }
+        // A crash halfway through writing the second block
+        try (RandomAccessFile file = new RandomAccessFile(track, "rw")) {
+            file.setLength(file.length() - 5);
+        }
+
+        try (TrackRecorder recorder = new TrackRecorder(track, Long.MAX_VALUE)) {
+            assertEquals(10, recorder.getPointCount());
+            assertEquals(goodSize, recorder.getFileSize());
+            assertTrue(recorder.getDroppedBytes() > 0);
+            recorder.append(START_MILLIS + 60_000, 3, 4, Float.NaN);
+        }
+
+        try (TrackReader reader = new TrackReader(track)) {
+            int count = 0;
+            while (reader.next()) {
+                count++;
+            }
+            assertEquals(11, count);
+            assertEquals(START_MILLIS + 60_000, reader.getTimeMillis());
+            assertEquals(3, reader.getLatitude(), 1e-7);
+            assertEquals(0f, reader.getAccuracyMeters(), 0f);
+        }
+    }
+
+    @Test
+    public void flushesOnceTheOldestBufferedFixIsTooOld() throws IOException {
+        try (TrackRecorder recorder = new TrackRecorder(track, 60_000)) {
+            recorder.append(START_MILLIS, 1, 1, 5f);
+            recorder.append(START_MILLIS + 30_000, 1, 1, 5f);
+            assertEquals(0, recorder.getBlocksWritten());
+            recorder.append(START_MILLIS + 60_000, 1, 1, 5f);
+            assertEquals(1, recorder.getBlocksWritten());
+        }
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        Files.write(track.toPath(), "not a track".getBytes("UTF-8"));
+        try {
+            new TrackRecorder(track, 1000).close();
+            fail("Opened a file that is not a track");
+        } catch (IOException expected) {
+            // The file is left alone
+        }
+        assertEquals(11, track.length());
+    }
+
+    @Test
+    public void exportsGpxAndGeoJson() throws IOException {
+        try (TrackRecorder recorder = new TrackRecorder(track, Long.MAX_VALUE)) {
+            recorder.append(START_MILLIS, 52.5, 13.4, 5f);
+            recorder.append(START_MILLIS + 1000, -33.8688, 151.2093, 5f);
+        }
+
+        StringWriter gpx = new StringWriter();
+        assertEquals(2, TrackExport.writeGpx(track, gpx, "Day <1>"));
+        String gpxText = gpx.toString();
+        assertTrue(gpxText.contains("<name>Day &lt;1&gt;</name>"));
+        assertTrue(gpxText.contains("<trkpt lat=\"52.5000000\" lon=\"13.4000000\"><time>2023-11-14T22:13:20Z</time></trkpt>"));
+        assertTrue(gpxText.contains("<trkpt lat=\"-33.8688000\" lon=\"151.2093000\"><time>2023-11-14T22:13:21Z</time></trkpt>"));
+        assertTrue(gpxText.endsWith("</gpx>\n"));
+
+        StringWriter json = new StringWriter();
+        assertEquals(2, TrackExport.writeGeoJson(track, json, "Day \"1\""));
+        assertEquals("{\"type\":\"FeatureCollection\",\"features\":[{\"type\":\"Feature\","
+                        + "\"properties\":{\"name\":\"Day \\\"1\\\"\",\"coordTimes\":"
+                        + "[\"2023-11-14T22:13:20Z\",\"2023-11-14T22:13:21Z\"]},"
+                        + "\"geometry\":{\"type\":\"LineString\",\"coordinates\":"
+                        + "[[13.4000000,52.5000000],[151.2093000,-33.8688000]]}}]}\n",
+                json.toString());
+    }
+
+    @Test
+    public void formatsIsoTimes() {
+        assertEquals("1970-01-01T00:00:00Z", TrackExport.appendIsoTime(new StringBuilder(), 0).toString());
+        assertEquals("2000-02-29T23:59:59Z",
+                TrackExport.appendIsoTime(new StringBuilder(), 951868799999L).toString());
+        assertEquals("1969-12-31T23:59:59Z", TrackExport.appendIsoTime(new StringBuilder(), -1).toString());
+    }
+}
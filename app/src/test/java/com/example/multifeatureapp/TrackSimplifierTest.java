@@ -0,0 +1,119 @@
+package com.example.multifeatureapp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TrackSimplifierTest {
+    private static final double TOLERANCE_DP = 1.5;
+    private static final double ORIGIN_LATITUDE = 48.2;
+    private static final double ORIGIN_LONGITUDE = 16.37;
+
+    private static double toleranceMeters(int zoom) {
+        return TOLERANCE_DP * 156543.03392 * Math.cos(Math.toRadians(ORIGIN_LATITUDE)) / (1L << zoom);
+    }
+
+    // Distance from a point to a polyline, both in the flat projection the simplifier uses
+    private static double distanceToLine(double[] xs, double[] ys, int count, double x, double y) {
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            double ax = xs[i];
+            double ay = ys[i];
+            double bx = i + 1 < count ? xs[i + 1] : ax;
+            double by = i + 1 < count ? ys[i + 1] : ay;
+            double dx = bx - ax;
+            double dy = by - ay;
+            double lengthSquared = dx * dx + dy * dy;
+            double t = lengthSquared > 0 ? ((x - ax) * dx + (y - ay) * dy) / lengthSquared : 0;
+            t = Math.max(0, Math.min(1, t));
+            best = Math.min(best, Math.hypot(ax + t * dx - x, ay + t * dy - y));
+        }
+        return best;
+    }
+
+    @Test
+    public void everyPointStaysWithinToleranceOfItsLevel() {
+        int points = 3000;
+        double[] latitudes = new double[points];
+        double[] longitudes = new double[points];
+        Random random = new Random(7);
+        TrackSimplifier simplifier = new TrackSimplifier(TOLERANCE_DP);
+        double latitude = ORIGIN_LATITUDE;
+        double longitude = ORIGIN_LONGITUDE;
+        double heading = 0;
+        for (int i = 0; i < points; i++) {
+            latitudes[i] = latitude;
+            longitudes[i] = longitude;
+            simplifier.add(latitude, longitude);
+            // Walking pace with a wandering heading and some GPS noise
+            heading += (random.nextDouble() - 0.5) * 0.6;
+            latitude += Math.cos(heading) * 1.5e-5 + random.nextGaussian() * 2e-6;
+            longitude += Math.sin(heading) * 2.2e-5 + random.nextGaussian() * 3e-6;
+        }
+        assertEquals(points, simplifier.getPointsAdded());
+
+        double metersPerDegreeLongitude = GeoMath.metersPerDegreeLongitude(ORIGIN_LATITUDE);
+        double metersPerDegreeLatitude = GeoMath.metersPerDegreeLatitude();
+        int previousCount = Integer.MAX_VALUE;
+        for (int zoom = TrackSimplifier.MAX_ZOOM; zoom >= TrackSimplifier.MIN_ZOOM; zoom--) {
+            int kept = simplifier.getKeptCount(zoom);
+            int count = kept + (simplifier.hasTail(zoom) ? 1 : 0);
+            double[] xs = new double[count];
+            double[] ys = new double[count];
+            for (int i = 0; i < count; i++) {
+                double lat = i < kept ? simplifier.getKeptLatitude(zoom, i) : simplifier.getLastLatitude();
+                double lon = i < kept ? simplifier.getKeptLongitude(zoom, i) : simplifier.getLastLongitude();
+                xs[i] = (lon - ORIGIN_LONGITUDE) * metersPerDegreeLongitude;
+                ys[i] = (lat - ORIGIN_LATITUDE) * metersPerDegreeLatitude;
+            }
+            double tolerance = toleranceMeters(zoom) + 1e-6;
+            for (int i = 0; i < points; i++) {
+                double x = (longitudes[i] - ORIGIN_LONGITUDE) * metersPerDegreeLongitude;
+                double y = (latitudes[i] - ORIGIN_LATITUDE) * metersPerDegreeLatitude;
+                assertTrue("zoom " + zoom + " point " + i,
+                        distanceToLine(xs, ys, count, x, y) <= tolerance);
+            }
+            // Ends where the track ends
+            assertEquals(latitudes[points - 1], ys[count - 1] / metersPerDegreeLatitude + ORIGIN_LATITUDE, 1e-9);
+            // Coarser levels keep fewer points
+            assertTrue("zoom " + zoom, kept <= previousCount);
+            assertTrue("zoom " + zoom, kept < points);
+            previousCount = kept;
+        }
+        assertTrue(simplifier.getKeptCount(TrackSimplifier.MIN_ZOOM) < points / 20);
+    }
+
+    @Test
+    public void straightLineKeepsOnlyForcedPoints() {
+        TrackSimplifier simplifier = new TrackSimplifier(TOLERANCE_DP);
+        for (int i = 0; i < 1000; i++) {
+            simplifier.add(ORIGIN_LATITUDE + i * 1e-5, ORIGIN_LONGITUDE);
+        }
+        // One point per full window of pending points, plus the first
+        assertTrue(simplifier.getKeptCount(TrackSimplifier.MAX_ZOOM) <= 1000 / 63 + 1);
+        assertTrue(simplifier.hasTail(TrackSimplifier.MAX_ZOOM));
+        assertEquals(ORIGIN_LATITUDE, simplifier.getKeptLatitude(TrackSimplifier.MAX_ZOOM, 0), 0);
+    }
+
+    @Test
+    public void clearStartsOver() {
+        TrackSimplifier simplifier = new TrackSimplifier(TOLERANCE_DP);
+        simplifier.add(1, 1);
+        simplifier.add(1.001, 1);
+        simplifier.clear();
+        assertEquals(0, simplifier.getPointsAdded());
+        simplifier.add(2, 2);
+        assertEquals(1, simplifier.getKeptCount(TrackSimplifier.MIN_ZOOM));
+        assertFalse(simplifier.hasTail(TrackSimplifier.MIN_ZOOM));
+        assertEquals(2, simplifier.getKeptLatitude(TrackSimplifier.MIN_ZOOM, 0), 0);
+    }
+
+    @Test
+    public void levelsAreClampedToTheKeptRange() {
+        assertEquals(TrackSimplifier.MIN_ZOOM, TrackSimplifier.levelFor(3.5f));
+        assertEquals(15, TrackSimplifier.levelFor(15.9f));
+        assertEquals(TrackSimplifier.MAX_ZOOM, TrackSimplifier.levelFor(21f));
+    }
+}
@@ -0,0 +1,305 @@
+package com.example.multifeatureapp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class WifiConnectStateMachineTest {
+    private static final String TARGET = "Office";
+    private static final String OTHER = "Neighbour";
+
+    // Runs tasks on the test thread in time order
+    private static class FakeScheduler implements WifiConnectStateMachine.Scheduler {
+        private static class Task {
+            final Runnable runnable;
+            final long dueMillis;
+
+            Task(Runnable runnable, long dueMillis) {
+                this.runnable = runnable;
+                this.dueMillis = dueMillis;
+            }
+        }
+
+        private final List<Task> tasks = new ArrayList<>();
+        long now = 1000;
+
+        @Override
+        public void post(Runnable task) {
+            postDelayed(task, 0);
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            tasks.add(new Task(task, now + delayMs));
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            tasks.removeIf(t -> t.runnable == task);
+        }
+
+        @Override
+        public long nowMillis() {
+            return now;
+        }
+
+        void advance(long millis) {
+            long until = now + millis;
+            while (true) {
+                Task next = null;
+                for (Task task : tasks) {
+                    if (task.dueMillis <= until && (next == null || task.dueMillis < next.dueMillis)) {
+                        next = task;
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+                tasks.remove(next);
+                now = next.dueMillis;
+                next.runnable.run();
+            }
+            now = until;
+        }
+    }
+
+    private static class FakeConnector implements WifiConnectStateMachine.Connector {
+        final List<CompletableFuture<Boolean>> suggestions = new ArrayList<>();
+        final List<CompletableFuture<Boolean>> legacyConnects = new ArrayList<>();
+        String connectedSsid;
+
+        @Override
+        public CompletableFuture<Boolean> suggest(String ssid, String password) {
+            CompletableFuture<Boolean> future = new CompletableFuture<>();
+            suggestions.add(future);
+            return future;
+        }
+
+        @Override
+        public CompletableFuture<Boolean> connectLegacy(String ssid, String password) {
+            CompletableFuture<Boolean> future = new CompletableFuture<>();
+            legacyConnects.add(future);
+            return future;
+        }
+
+        @Override
+        public String getConnectedSsid() {
+            return connectedSsid;
+        }
+    }
+
+    private final FakeScheduler scheduler = new FakeScheduler();
+    private final FakeConnector connector = new FakeConnector();
+    private final List<WifiConnectStateMachine.State> states = new ArrayList<>();
+    private final List<WifiConnectStateMachine.Attempt> finished = new ArrayList<>();
+    private WifiConnectStateMachine machine;
+
+    @Before
+    public void setUp() {
+        machine = new WifiConnectStateMachine(connector, scheduler, new WifiConnectStateMachine.Listener() {
+            @Override
+            public void onStateChanged(String ssid, WifiConnectStateMachine.State state) {
+                states.add(state);
+            }
+
+            @Override
+            public void onAttemptFinished(WifiConnectStateMachine.Attempt attempt) {
+                finished.add(attempt);
+            }
+        });
+    }
+
+    @Test
+    public void connectsThroughTheSuggestion() {
+        machine.connect(TARGET, "secret");
+        connector.suggestions.get(0).complete(true);
+        scheduler.advance(800);
+        machine.onSupplicantStateChanged(TARGET, WifiConnectStateMachine.SupplicantProgress.HANDSHAKING);
+        machine.onSupplicantStateChanged(TARGET, WifiConnectStateMachine.SupplicantProgress.COMPLETED);
+        machine.onWifiConnected(TARGET);
+
+        assertEquals(WifiConnectStateMachine.State.CONNECTED, machine.getState());
+        assertEquals(Arrays.asList(WifiConnectStateMachine.State.SUGGESTING,
+                WifiConnectStateMachine.State.AUTHENTICATING, WifiConnectStateMachine.State.CONNECTED), states);
+        WifiConnectStateMachine.Attempt attempt = finished.get(0);
+        assertTrue(attempt.isSuccessful());
+        assertFalse(attempt.usedFallback);
+        assertEquals(800, attempt.durationMs);
+        // The timers are gone with the attempt
+        scheduler.advance(WifiConnectStateMachine.CONNECT_TIMEOUT_MS);
+        assertTrue(connector.legacyConnects.isEmpty());
+        assertEquals(1, finished.size());
+    }
+
+    @Test
+    public void fallsBackWhenTheSuggestionTimesOut() {
+        machine.connect(TARGET, "secret");
+        scheduler.advance(WifiConnectStateMachine.SUGGESTION_TIMEOUT_MS - 1);
+        assertEquals(WifiConnectStateMachine.State.SUGGESTING, machine.getState());
+        scheduler.advance(1);
+        assertEquals(WifiConnectStateMachine.State.CONNECTING, machine.getState());
+        assertEquals(1, connector.legacyConnects.size());
+
+        connector.legacyConnects.get(0).complete(true);
+        scheduler.advance(0);
+        machine.onWifiConnected(TARGET);
+        assertTrue(finished.get(0).isSuccessful());
+        assertTrue(finished.get(0).usedFallback);
+    }
+
+    @Test
+    public void rejectedSuggestionFallsBackAtOnce() {
+        machine.connect(TARGET, "secret");
+        connector.suggestions.get(0).complete(false);
+        scheduler.advance(0);
+        assertEquals(WifiConnectStateMachine.State.CONNECTING, machine.getState());
+        assertEquals(1, connector.legacyConnects.size());
+
+        // The suggestion timer no longer applies
+        scheduler.advance(WifiConnectStateMachine.SUGGESTION_TIMEOUT_MS);
+        assertEquals(1, connector.legacyConnects.size());
+    }
+
+    @Test
+    public void failedLegacyConfigurationFails() {
+        machine.connect(TARGET, "secret");
+        connector.suggestions.get(0).complete(false);
+        scheduler.advance(0);
+        connector.legacyConnects.get(0).complete(false);
+        scheduler.advance(0);
+
+        assertEquals(WifiConnectStateMachine.State.FAILED, machine.getState());
+        assertEquals(WifiConnectStateMachine.FailureReason.CONFIGURATION, finished.get(0).failureReason);
+    }
+
+    @Test
+    public void suggestionThatThrowsFailsAtOnce() {
+        machine.connect(TARGET, "short");
+        // WifiNetworkSuggestion.Builder rejects a passphrase under 8 characters
+        connector.suggestions.get(0).completeExceptionally(new IllegalArgumentException("passphrase"));
+        scheduler.advance(0);
+
+        assertEquals(WifiConnectStateMachine.State.FAILED, machine.getState());
+        assertEquals(WifiConnectStateMachine.FailureReason.ERROR, finished.get(0).failureReason);
+        assertEquals(0, finished.get(0).durationMs);
+        assertTrue(connector.legacyConnects.isEmpty());
+        // No timer is left to report the attempt again
+        scheduler.advance(WifiConnectStateMachine.CONNECT_TIMEOUT_MS);
+        assertEquals(1, finished.size());
+    }
+
+    @Test
+    public void legacyConnectThatThrowsFailsAtOnce() {
+        machine.connect(TARGET, "secret");
+        scheduler.advance(WifiConnectStateMachine.SUGGESTION_TIMEOUT_MS);
+        connector.legacyConnects.get(0).completeExceptionally(new SecurityException("CHANGE_WIFI_STATE"));
+        scheduler.advance(0);
+
+        assertEquals(WifiConnectStateMachine.State.FAILED, machine.getState());
+        assertEquals(WifiConnectStateMachine.FailureReason.ERROR, finished.get(0).failureReason);
+        assertTrue(finished.get(0).usedFallback);
+        scheduler.advance(WifiConnectStateMachine.CONNECT_TIMEOUT_MS);
+        assertEquals(1, finished.size());
+    }
+
+    @Test
+    public void ignoresEventsAboutOtherNetworks() {
+        machine.connect(TARGET, "secret");
+        machine.onSupplicantStateChanged(OTHER, WifiConnectStateMachine.SupplicantProgress.HANDSHAKING);
+        assertEquals(WifiConnectStateMachine.State.SUGGESTING, machine.getState());
+        machine.onAuthenticationFailed(OTHER);
+        machine.onWifiConnected(OTHER);
+        // Without an SSID an error can't be ours unless our handshake is running
+        machine.onAuthenticationFailed(null);
+        assertEquals(WifiConnectStateMachine.State.SUGGESTING, machine.getState());
+        assertTrue(finished.isEmpty());
+
+        machine.onWifiConnected(TARGET);
+        assertEquals(WifiConnectStateMachine.State.CONNECTED, machine.getState());
+    }
+
+    @Test
+    public void handshakeHoldsTheFallbackUntilItEnds() {
+        machine.connect(TARGET, "secret");
+        machine.onSupplicantStateChanged(TARGET, WifiConnectStateMachine.SupplicantProgress.HANDSHAKING);
+        scheduler.advance(WifiConnectStateMachine.SUGGESTION_TIMEOUT_MS);
+        assertEquals(WifiConnectStateMachine.State.AUTHENTICATING, machine.getState());
+        assertTrue(connector.legacyConnects.isEmpty());
+
+        // The handshake gave up, the overdue fallback runs straight away
+        machine.onSupplicantStateChanged(null, WifiConnectStateMachine.SupplicantProgress.DISCONNECTED);
+        assertEquals(WifiConnectStateMachine.State.CONNECTING, machine.getState());
+        assertEquals(1, connector.legacyConnects.size());
+
+        // The legacy path can still authenticate and connect
+        machine.onSupplicantStateChanged(TARGET, WifiConnectStateMachine.SupplicantProgress.HANDSHAKING);
+        assertEquals(WifiConnectStateMachine.State.AUTHENTICATING, machine.getState());
+        machine.onWifiConnected(TARGET);
+        assertTrue(finished.get(0).isSuccessful());
+        assertTrue(finished.get(0).usedFallback);
+    }
+
+    @Test
+    public void handshakeEndingBeforeTheTimeoutKeepsSuggesting() {
+        machine.connect(TARGET, "secret");
+        machine.onSupplicantStateChanged(TARGET, WifiConnectStateMachine.SupplicantProgress.HANDSHAKING);
+        machine.onSupplicantStateChanged(TARGET, WifiConnectStateMachine.SupplicantProgress.DISCONNECTED);
+        assertEquals(WifiConnectStateMachine.State.SUGGESTING, machine.getState());
+        assertTrue(connector.legacyConnects.isEmpty());
+
+        scheduler.advance(WifiConnectStateMachine.SUGGESTION_TIMEOUT_MS);
+        assertEquals(WifiConnectStateMachine.State.CONNECTING, machine.getState());
+    }
+
+    @Test
+    public void authenticationErrorDuringOurHandshakeFails() {
+        machine.connect(TARGET, "wrong");
+        machine.onSupplicantStateChanged(TARGET, WifiConnectStateMachine.SupplicantProgress.HANDSHAKING);
+        machine.onAuthenticationFailed(null);
+
+        assertEquals(WifiConnectStateMachine.State.FAILED, machine.getState());
+        assertEquals(WifiConnectStateMachine.FailureReason.AUTHENTICATION, finished.get(0).failureReason);
+    }
+
+    @Test
+    public void timesOutWithoutALink() {
+        machine.connect(TARGET, "secret");
+        scheduler.advance(WifiConnectStateMachine.CONNECT_TIMEOUT_MS);
+
+        assertEquals(WifiConnectStateMachine.State.FAILED, machine.getState());
+        WifiConnectStateMachine.Attempt attempt = finished.get(0);
+        assertEquals(WifiConnectStateMachine.FailureReason.TIMEOUT, attempt.failureReason);
+        assertTrue(attempt.usedFallback);
+        assertEquals(WifiConnectStateMachine.CONNECT_TIMEOUT_MS, attempt.durationMs);
+    }
+
+    @Test
+    public void newAttemptCancelsTheOldOneAndIgnoresItsResults() {
+        machine.connect(OTHER, "one");
+        machine.connect(TARGET, "two");
+        assertEquals(WifiConnectStateMachine.FailureReason.CANCELLED, finished.get(0).failureReason);
+        assertEquals(OTHER, finished.get(0).ssid);
+
+        // The first attempt's suggestion is rejected late
+        connector.suggestions.get(0).complete(false);
+        scheduler.advance(0);
+        assertEquals(WifiConnectStateMachine.State.SUGGESTING, machine.getState());
+        assertTrue(connector.legacyConnects.isEmpty());
+    }
+
+    @Test
+    public void alreadyConnectedFinishesAtOnce() {
+        connector.connectedSsid = TARGET;
+        machine.connect(TARGET, "secret");
+
+        assertEquals(WifiConnectStateMachine.State.CONNECTED, machine.getState());
+        assertTrue(connector.suggestions.isEmpty());
+        assertEquals(0, finished.get(0).durationMs);
+    }
+}
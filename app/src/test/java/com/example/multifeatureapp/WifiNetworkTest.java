@@ -0,0 +1,54 @@
+package com.example.multifeatureapp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WifiNetworkTest {
+    @Test
+    public void groupsBySsidStrongestFirst() {
+        List<WifiNetwork> sorted = WifiNetwork.groupAndSort(Arrays.asList(
+                new WifiNetwork("00:00:00:00:00:01", "Office", "[WPA2-PSK-CCMP]", -70, 2412),
+                new WifiNetwork("00:00:00:00:00:02", "Cafe", "[ESS]", -60, 2437),
+                new WifiNetwork("00:00:00:00:00:03", "Office", "[WPA2-PSK-CCMP]", -40, 5180),
+                new WifiNetwork("00:00:00:00:00:04", "Cafe", "[ESS]", -60, 2462)));
+
+        assertEquals("00:00:00:00:00:03", sorted.get(0).bssid);
+        assertTrue(sorted.get(0).firstInGroup);
+        assertEquals("00:00:00:00:00:01", sorted.get(1).bssid);
+        assertFalse(sorted.get(1).firstInGroup);
+        // Equal signal falls back to BSSID order
+        assertEquals("00:00:00:00:00:02", sorted.get(2).bssid);
+        assertTrue(sorted.get(2).firstInGroup);
+        assertEquals("00:00:00:00:00:04", sorted.get(3).bssid);
+    }
+
+    @Test
+    public void parsesSecurityOnce() {
+        WifiNetwork open = new WifiNetwork("00:00:00:00:00:01", "", "[ESS]", -50, 2412);
+        WifiNetwork wep = new WifiNetwork("00:00:00:00:00:02", "Old", "[WEP][ESS]", -50, 2412);
+
+        assertEquals("Hidden Network", open.title);
+        assertFalse(open.requiresPassword());
+        assertEquals("WEP", wep.security);
+        assertTrue(wep.requiresPassword());
+    }
+
+    @Test
+    public void recognisesWpa3AndOwe() {
+        assertEquals("WPA3", WifiNetwork.securityOf("[RSN-SAE-CCMP][ESS][MFPR]"));
+        assertEquals("WPA2/WPA3", WifiNetwork.securityOf("[WPA2-PSK+SAE-CCMP][RSN-PSK+SAE-CCMP][ESS]"));
+        assertEquals("OWE", WifiNetwork.securityOf("[RSN-OWE-CCMP][ESS][MFPR]"));
+        assertEquals("WPA2", WifiNetwork.securityOf("[RSN-PSK-CCMP][ESS]"));
+        assertEquals("WPA", WifiNetwork.securityOf("[WPA-PSK-TKIP][ESS]"));
+        assertEquals("Open", WifiNetwork.securityOf("[ESS]"));
+
+        WifiNetwork sae = new WifiNetwork("00:00:00:00:00:05", "Home", "[RSN-SAE-CCMP][ESS]", -50, 5180);
+        WifiNetwork owe = new WifiNetwork("00:00:00:00:00:06", "Airport", "[RSN-OWE-CCMP][ESS]", -50, 2412);
+        assertTrue(sae.requiresPassword());
+        assertFalse(owe.requiresPassword());
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.multifeatureapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class WifiScanHistoryTest {
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("wifi_history", ".bin");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void queriesByBssidAndTimeWindow() throws Exception {
+        long start = 1_700_000_000_000L;
+        try (WifiScanHistory history = new WifiScanHistory(file, 10000)) {
+            for (int scan = 0; scan < 100; scan++) {
+                long time = start + scan * 30_000L;
+                history.append(time, "AA:BB:CC:00:00:01", "Office", "[WPA2-PSK-CCMP][ESS]", -40 - scan % 10);
+                history.append(time, "aa:bb:cc:00:00:02", "Cafe", "[ESS]", -70);
+            }
+
+            int[] sum = new int[2];
+            int visited = history.query("AA:BB:CC:00:00:01", start + 10 * 30_000L, start + 19 * 30_000L,
+                    (timestampMillis, rssi) -> {
+                        sum[0] += rssi;
+                        sum[1]++;
+                    });
+
+            assertEquals(10, visited);
+            assertEquals(-445, sum[0]);
+            assertEquals(200, history.getSampleCount());
+            assertEquals(2, history.getBssidCount());
+            assertEquals(0, history.query("AA:BB:CC:00:00:03", start, start + 3_600_000L, (t, r) -> { }));
+        }
+    }
+
+    @Test
+    public void reopensWithDictionaries() throws Exception {
+        try (WifiScanHistory history = new WifiScanHistory(file, 1000)) {
+            history.append(1000, "AA:BB:CC:00:00:01", "Office", "[WPA2-PSK-CCMP][ESS]", -55);
+            history.append(2000, "AA:BB:CC:00:00:02", "Office", "[WPA2-PSK-CCMP][ESS]", -65);
+        }
+
+        try (WifiScanHistory history = new WifiScanHistory(file, 1000)) {
+            assertEquals(2, history.getSampleCount());
+            assertEquals("Office", history.getSsid("AA:BB:CC:00:00:02"));
+            int capabilities = history.getCapabilities("AA:BB:CC:00:00:01");
+            assertTrue(WifiCapability.WPA2.isSet(capabilities));
+            assertTrue(WifiCapability.PSK.isSet(capabilities));
+            assertFalse(WifiCapability.isOpen(capabilities));
+
+            history.append(3000, "AA:BB:CC:00:00:01", "Office", "[WPA2-PSK-CCMP][ESS]", -50);
+            assertEquals(2, history.query("AA:BB:CC:00:00:01", 0, 10_000, (t, r) -> { }));
+            assertEquals(2, history.getBssidCount());
+        }
+    }
+
+    @Test
+    public void sharesOneInstanceUntilTheLastRelease() throws Exception {
+        WifiScanHistory first = WifiScanHistory.acquire(file, 1000);
+        WifiScanHistory second = WifiScanHistory.acquire(file, 1000);
+        assertSame(first, second);
+        first.append(1000, "AA:BB:CC:00:00:01", "Office", "[ESS]", -55);
+
+        // An activity going away while its replacement holds the file
+        WifiScanHistory.release(first);
+        assertSame(second, WifiScanHistory.acquire(file, 1000));
+        WifiScanHistory.release(second);
+        WifiScanHistory.release(second);
+
+        WifiScanHistory reopened = WifiScanHistory.acquire(file, 1000);
+        assertNotSame(first, reopened);
+        assertEquals(1, reopened.getSampleCount());
+        WifiScanHistory.release(reopened);
+        // Releasing a closed instance again is harmless
+        WifiScanHistory.release(reopened);
+    }
+
+    @Test
+    public void rejectsSamplesWhenFull() throws Exception {
+        try (WifiScanHistory history = new WifiScanHistory(file, 2)) {
+            assertTrue(history.append(0, "AA:BB:CC:00:00:01", "a", "", -50));
+            assertTrue(history.append(1, "AA:BB:CC:00:00:01", "a", "", -50));
+            assertFalse(history.append(2, "AA:BB:CC:00:00:01", "a", "", -50));
+            assertTrue(history.isFull());
+        }
+    }
+
+    @Test
+    public void packsMacAddresses() {
+        long packed = MacAddresses.pack("01:23:45:67:89:ab");
+        assertEquals(0x0123456789ABL, packed);
+        assertEquals("01:23:45:67:89:AB", MacAddresses.format(packed));
+        assertEquals(MacAddresses.INVALID, MacAddresses.pack("not a mac"));
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.multifeatureapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WifiScanSchedulerTest {
+    private static final long WINDOW_MS = 120000;
+
+    @Test
+    public void allowsFourScansPerWindow() {
+        WifiScanScheduler.ScanBudget budget = new WifiScanScheduler.ScanBudget(4, WINDOW_MS);
+
+        assertTrue(budget.tryAcquire(0));
+        assertTrue(budget.tryAcquire(1000));
+        assertTrue(budget.tryAcquire(2000));
+        assertTrue(budget.tryAcquire(3000));
+        assertFalse(budget.tryAcquire(4000));
+        assertEquals(WINDOW_MS, budget.nextAvailableAt(4000));
+    }
+
+    @Test
+    public void slotFreesUpWhenOldestScanLeavesWindow() {
+        WifiScanScheduler.ScanBudget budget = new WifiScanScheduler.ScanBudget(4, WINDOW_MS);
+        for (int i = 0; i < 4; i++) {
+            budget.tryAcquire(i * 1000);
+        }
+
+        assertFalse(budget.tryAcquire(WINDOW_MS - 1));
+        assertTrue(budget.tryAcquire(WINDOW_MS));
+        assertFalse(budget.tryAcquire(WINDOW_MS + 500));
+        assertTrue(budget.tryAcquire(WINDOW_MS + 1000));
+    }
+
+    @Test
+    public void exhaustBlocksForWholeWindow() {
+        WifiScanScheduler.ScanBudget budget = new WifiScanScheduler.ScanBudget(4, WINDOW_MS);
+        budget.exhaust(5000);
+
+        assertFalse(budget.tryAcquire(5000 + WINDOW_MS - 1));
+        assertTrue(budget.tryAcquire(5000 + WINDOW_MS));
+    }
+}